@@ -38,6 +38,7 @@ dependencies {
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
+    implementation(project(":engine"))
     
     // Additional Material Design 3 components
     implementation("com.google.android.material:material:1.10.0")
@@ -0,0 +1,71 @@
+package com.example.calculator;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import com.example.calculator.engine.Instrumentation;
+
+/**
+ * Frame timing for a window, from the platform's per-frame metrics. Every
+ * {@link #LOG_INTERVAL_FRAMES} frames it logs how many missed the frame budget and the
+ * slowest one, so animation changes can be compared with {@code adb logcat -s FrameStats}.
+ * Frames also go to the {@link Instrumentation} frame histograms, separately for frames
+ * that ran animations such as a key press. Metrics are delivered on a background thread
+ * and counted without allocating.
+ */
+final class FrameStats implements Window.OnFrameMetricsAvailableListener {
+
+    private static final String TAG = "FrameStats";
+    private static final int LOG_INTERVAL_FRAMES = 300;
+
+    private final HandlerThread thread = new HandlerThread("frame-stats");
+
+    private int frames;
+    private int slowFrames;
+    private int droppedReports;
+    private long totalNanos;
+    private long worstNanos;
+
+    private FrameStats() {}
+
+    static FrameStats attach(Window window) {
+        FrameStats stats = new FrameStats();
+        stats.thread.start();
+        window.addOnFrameMetricsAvailableListener(stats, new Handler(stats.thread.getLooper()));
+        return stats;
+    }
+
+    void detach(Window window) {
+        window.removeOnFrameMetricsAvailableListener(this);
+        thread.quitSafely();
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+        long duration = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        frames++;
+        totalNanos += duration;
+        droppedReports += dropCountSinceLastInvocation;
+        if (duration > Instrumentation.FRAME_BUDGET_NANOS) slowFrames++;
+        if (duration > worstNanos) worstNanos = duration;
+        
+        Instrumentation.record(Instrumentation.FRAME, duration);
+        if (frameMetrics.getMetric(FrameMetrics.ANIMATION_DURATION) > 0) {
+            Instrumentation.record(Instrumentation.ANIMATION_FRAME, duration);
+        }
+
+        if (frames == LOG_INTERVAL_FRAMES) {
+            Log.i(TAG, frames + " frames: " + slowFrames + " over budget, mean "
+                + totalNanos / frames / 1000 + " us, worst " + worstNanos / 1000 + " us, "
+                + droppedReports + " unreported");
+            frames = 0;
+            slowFrames = 0;
+            droppedReports = 0;
+            totalNanos = 0;
+            worstNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.calculator;
+
+import android.os.Bundle;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.calculator.engine.CompiledExpression;
+import com.example.calculator.engine.EvaluationException;
+
+/**
+ * Plots y = f(x) for an expression in {@link #VARIABLE}, passed in
+ * {@link #EXTRA_EXPRESSION}. Drag to pan and pinch to zoom.
+ */
+public class GraphActivity extends AppCompatActivity {
+
+    static final String EXTRA_EXPRESSION = "expression";
+    static final String VARIABLE = "x";
+
+    private GraphView graph;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        String text = getIntent().getStringExtra(EXTRA_EXPRESSION);
+        CompiledExpression expression;
+        try {
+            // Sampled thousands of times per frame, so worth optimizing
+            expression = CompiledExpression.compile(text, VARIABLE).optimize();
+        } catch (EvaluationException e) {
+            Toast.makeText(this, R.string.error_invalid_expression, Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        setTitle(getString(R.string.graph_title, text));
+        graph = new GraphView(this);
+        graph.setContentDescription(getString(R.string.cd_graph));
+        graph.setColors(getColor(R.color.md_theme_light_onSurface), getColor(R.color.md_theme_light_primary));
+        setContentView(graph);
+        graph.setExpression(expression, VARIABLE);
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (graph != null) {
+            graph.release();
+        }
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.calculator;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import com.example.calculator.engine.CompiledExpression;
+import com.example.calculator.engine.GraphSampler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Draws a {@link GraphSampler.Plot} and resamples it as the viewport is dragged or pinched.
+ *
+ * <p>Sampling runs on a single background thread. Each pan or zoom cancels the sample in
+ * flight and queues a new one, and until it arrives the previous plot is drawn at the new
+ * viewport from its world coordinates, so gestures never wait for the sampler. The plot
+ * covers half a screen beyond each side so small pans have points to show straight away.
+ * Drawing reuses its paints and line buffer and allocates nothing per frame.
+ */
+final class GraphView extends View {
+
+    // Initial x range, centred on the origin; y follows from the aspect ratio
+    private static final double INITIAL_HALF_WIDTH = 10;
+    private static final float MAX_SCALE_STEP = 2f;
+
+    // Lines further off screen than this, in view heights, are clipped
+    private static final float CLIP_HEIGHTS = 2f;
+
+    private final Paint axisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint curvePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final GestureDetector gestures;
+    private final ScaleGestureDetector scaleGestures;
+
+    private final ExecutorService samplingExecutor = Executors.newSingleThreadExecutor();
+    private Future<?> pendingSample;
+    private GraphSampler sampler;
+
+    private double xMin = -INITIAL_HALF_WIDTH;
+    private double xMax = INITIAL_HALF_WIDTH;
+    private double yMin;
+    private double yMax;
+
+    private GraphSampler.Plot plot;
+    // Segment endpoints for drawLines, grown as needed
+    private float[] lines = new float[0];
+
+    GraphView(Context context) {
+        super(context);
+        axisPaint.setStrokeWidth(getResources().getDisplayMetrics().density);
+        curvePaint.setStrokeWidth(2 * getResources().getDisplayMetrics().density);
+        curvePaint.setStyle(Paint.Style.STROKE);
+
+        gestures = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                double dx = distanceX * (xMax - xMin) / getWidth();
+                double dy = distanceY * (yMax - yMin) / getHeight();
+                xMin += dx;
+                xMax += dx;
+                yMin -= dy;
+                yMax -= dy;
+                viewportChanged();
+                return true;
+            }
+        });
+        scaleGestures = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                float factor = Math.max(1 / MAX_SCALE_STEP, Math.min(MAX_SCALE_STEP, detector.getScaleFactor()));
+                // Zoom about the focus so the point under the fingers stays put
+                double focusX = toWorldX(detector.getFocusX());
+                double focusY = toWorldY(detector.getFocusY());
+                xMin = focusX + (xMin - focusX) / factor;
+                xMax = focusX + (xMax - focusX) / factor;
+                yMin = focusY + (yMin - focusY) / factor;
+                yMax = focusY + (yMax - focusY) / factor;
+                clampViewport();
+                viewportChanged();
+                return true;
+            }
+        });
+    }
+
+    void setColors(int axisColor, int curveColor) {
+        axisPaint.setColor(axisColor);
+        curvePaint.setColor(curveColor);
+        invalidate();
+    }
+
+    void setExpression(CompiledExpression expression, String variable) {
+        sampler = new GraphSampler(expression, variable);
+        plot = null;
+        requestSample();
+    }
+
+    /**
+     * Stops the sampling thread. The view draws nothing new afterwards.
+     */
+    void release() {
+        samplingExecutor.shutdownNow();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        if (w == 0 || h == 0) return;
+        // Equal scales on both axes, keeping the y centre
+        double yCentre = oldh == 0 ? 0 : (yMin + yMax) / 2;
+        double halfHeight = (xMax - xMin) * h / w / 2;
+        yMin = yCentre - halfHeight;
+        yMax = yCentre + halfHeight;
+        requestSample();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleGestures.onTouchEvent(event);
+        if (!scaleGestures.isInProgress()) {
+            handled |= gestures.onTouchEvent(event);
+        }
+        return handled || super.onTouchEvent(event);
+    }
+
+    /**
+     * Keeps each axis within the range the sampler can plot, about its centre, so that
+     * zooming cannot collapse the viewport to a point or widen it past a double.
+     */
+    private void clampViewport() {
+        double xCentre = xMin / 2 + xMax / 2;
+        double xRange = GraphSampler.clampRange(xCentre, xMax - xMin);
+        if (xRange != xMax - xMin) {
+            xMin = xCentre - xRange / 2;
+            xMax = xCentre + xRange / 2;
+        }
+        double yCentre = yMin / 2 + yMax / 2;
+        double yRange = GraphSampler.clampRange(yCentre, yMax - yMin);
+        if (yRange != yMax - yMin) {
+            yMin = yCentre - yRange / 2;
+            yMax = yCentre + yRange / 2;
+        }
+    }
+
+    private void viewportChanged() {
+        invalidate();
+        requestSample();
+    }
+
+    /**
+     * Queues a sample of the current viewport, cancelling any still running.
+     */
+    private void requestSample() {
+        int width = getWidth();
+        int height = getHeight();
+        if (sampler == null || width == 0 || height == 0 || samplingExecutor.isShutdown()) return;
+
+        if (pendingSample != null) {
+            pendingSample.cancel(true);
+        }
+        GraphSampler sampler = this.sampler;
+        double margin = (xMax - xMin) / 2;
+        double from = xMin - margin;
+        double to = xMax + margin;
+        double bottom = yMin;
+        double top = yMax;
+        pendingSample = samplingExecutor.submit(() -> {
+            GraphSampler.Plot sampled = sampler.sample(from, to, bottom, top, 2 * width, height);
+            if (sampled == null) return;
+            post(() -> {
+                // A newer expression replaces the sampler; its plot is on the way
+                if (sampler != this.sampler) return;
+                plot = sampled;
+                invalidate();
+            });
+        });
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int width = getWidth();
+        int height = getHeight();
+
+        float originX = toScreenX(0);
+        float originY = toScreenY(0);
+        if (originX >= 0 && originX <= width) canvas.drawLine(originX, 0, originX, height, axisPaint);
+        if (originY >= 0 && originY <= height) canvas.drawLine(0, originY, width, originY, axisPaint);
+
+        GraphSampler.Plot plot = this.plot;
+        if (plot == null) return;
+
+        int needed = 4 * plot.getCount();
+        if (lines.length < needed) {
+            lines = new float[needed];
+        }
+        float clipLow = -CLIP_HEIGHTS * height;
+        float clipHigh = (1 + CLIP_HEIGHTS) * height;
+        int n = 0;
+        for (int i = 0; i + 1 < plot.getCount(); i++) {
+            double y0 = plot.getY(i);
+            double y1 = plot.getY(i + 1);
+            if (Double.isNaN(y0) || Double.isNaN(y1)) continue;
+            float x0 = toScreenX(plot.getX(i));
+            float x1 = toScreenX(plot.getX(i + 1));
+            if (x1 < 0 || x0 > width) continue;
+            lines[n++] = x0;
+            lines[n++] = clamp(toScreenY(y0), clipLow, clipHigh);
+            lines[n++] = x1;
+            lines[n++] = clamp(toScreenY(y1), clipLow, clipHigh);
+        }
+        canvas.drawLines(lines, 0, n, curvePaint);
+    }
+
+    private float toScreenX(double x) {
+        return (float) ((x - xMin) * getWidth() / (xMax - xMin));
+    }
+
+    private float toScreenY(double y) {
+        return (float) (getHeight() - (y - yMin) * getHeight() / (yMax - yMin));
+    }
+
+    private double toWorldX(float screenX) {
+        return xMin + screenX * (xMax - xMin) / getWidth();
+    }
+
+    private double toWorldY(float screenY) {
+        return yMin + (getHeight() - screenY) * (yMax - yMin) / getHeight();
+    }
+
+    private static float clamp(float value, float low, float high) {
+        return Math.max(low, Math.min(high, value));
+    }
+}
@@ -1,14 +1,19 @@
 package com.example.calculator;
 
-import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.view.KeyEvent;
 import android.view.View;
-import android.view.animation.DecelerateInterpolator;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -20,59 +25,316 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.google.android.material.button.MaterialButton;
 import android.widget.EditText;
+import android.widget.FrameLayout;
 
+import com.example.calculator.engine.CalculatorSnapshot;
+import com.example.calculator.engine.CalculusEvaluator;
+import com.example.calculator.engine.ComplexEvaluator;
+import com.example.calculator.engine.EvaluationException;
+import com.example.calculator.engine.EvaluationScheduler;
+import com.example.calculator.engine.ExpressionBuffer;
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.HistoryLog;
+import com.example.calculator.engine.Instrumentation;
+import com.example.calculator.engine.Keypad;
+import com.example.calculator.engine.Lexer;
+import com.example.calculator.engine.NumberFormatter;
+import com.example.calculator.engine.RateTable;
+import com.example.calculator.engine.Rational;
+import com.example.calculator.engine.ResultCache;
+import com.example.calculator.engine.UnitEvaluator;
+import com.example.calculator.engine.Workspace;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
-import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
-import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class MainActivity extends AppCompatActivity {
 
-public class MainActivity extends AppCompatActivity implements View.OnClickListener {
+    private static final String TAG = "MainActivity";
+    
+    // Saved instance state key for the CalculatorSnapshot bytes
+    private static final String STATE_SNAPSHOT = "calculator_snapshot";
+    private static final String STATE_VARIABLES = "calculator_variables";
 
+    // Key presses arriving within one frame are evaluated together
+    private static final long PREVIEW_COALESCE_MILLIS = 16;
+    
+    // Memory cap for cached expression and subexpression results
+    private static final long RESULT_CACHE_BYTES = 256 * 1024;
+    
+    // Precisions offered by long-pressing "="; 0 is standard double arithmetic
+    private static final int EXACT_FRACTIONS = -1;
+    private static final int COMPLEX = -2;
+    private static final int[] PRECISION_DIGITS = {0, EXACT_FRACTIONS, 34, 100, 1000, COMPLEX};
+    
+    // History is compacted on open once it grows past this many entries
+    private static final String HISTORY_FILE = "history.log";
+    private static final int HISTORY_MAX_ENTRIES = 100_000;
+    
+    // Long-pressing "C" toggles instrumentation; the dump is written here when it stops
+    private static final String INSTRUMENTATION_FILE = "instrumentation.txt";
+    // Offline currency rates in the RateTable format, if the user has loaded some
+    private static final String RATES_FILE = "rates.bin";
+    private static final long OVERLAY_REFRESH_MILLIS = 500;
+    
+    // Keypad buttons and the keys they press, resolved to listeners once at startup
+    private static final int[] BUTTON_IDS = {
+        R.id.btn_0, R.id.btn_1, R.id.btn_2, R.id.btn_3, R.id.btn_4,
+        R.id.btn_5, R.id.btn_6, R.id.btn_7, R.id.btn_8, R.id.btn_9,
+        R.id.btn_decimal, R.id.btn_add, R.id.btn_subtract, R.id.btn_multiply, R.id.btn_divide,
+        R.id.btn_percentage, R.id.btn_sqrt, R.id.btn_power, R.id.btn_parentheses,
+        R.id.btn_clear, R.id.btn_delete, R.id.btn_equals,
+        R.id.btn_memory_add, R.id.btn_memory_recall
+    };
+    private static final int[] BUTTON_KEYS = {
+        // Digit keys are their own value
+        0, 1, 2, 3, 4, 5, 6, 7, 8, 9,
+        Keypad.KEY_DECIMAL, Keypad.KEY_ADD, Keypad.KEY_SUBTRACT, Keypad.KEY_MULTIPLY, Keypad.KEY_DIVIDE,
+        Keypad.KEY_PERCENT, Keypad.KEY_SQRT, Keypad.KEY_SQUARE, Keypad.KEY_PARENTHESES,
+        Keypad.KEY_CLEAR, Keypad.KEY_DELETE, Keypad.KEY_EQUALS,
+        Keypad.KEY_MEMORY_ADD, Keypad.KEY_MEMORY_RECALL
+    };
+    
+    // Durations of the key press and result change pulses
+    private static final long PRESS_ANIMATION_MILLIS = 150;
+    private static final long RESULT_ANIMATION_MILLIS = 200;
+    
     // UI Components
     private EditText expressionInput;
     private TextView resultDisplay;
     
+    // Press and result animations, built once and restarted on each use
+    private final PulseAnimation[] keyAnimations = new PulseAnimation[Keypad.KEY_COUNT];
+    private PulseAnimation resultAnimation;
+    
+    // Frame timing, collected in debuggable builds or while instrumentation is on
+    private FrameStats frameStats;
+    
+    // Debug overlay showing the instrumentation histograms while they are recorded
+    private TextView instrumentationOverlay;
+    private final Runnable overlayRefresh = this::refreshInstrumentationOverlay;
+    private long equalsStart;
+    
     // Calculator State
-    private String currentExpression = "";
+    private final ExpressionBuffer expression = new ExpressionBuffer();
+    private final Lexer lexer = new Lexer();
     private String lastResult = "0";
     private boolean isResultDisplayed = false;
     private boolean hasError = false;
     
-    // Number formatting
-    private DecimalFormat decimalFormat;
-    private MathContext mathContext;
+    // Number formatting; the formatter loads locale data, so it is created on first use
+    private NumberFormatter numberFormatter;
+    private final MathContext mathContext = new MathContext(15, RoundingMode.HALF_UP);
+    private final StringBuilder displayText = new StringBuilder();
+    
+    // Decimal evaluation context, or null for standard precision
+    private int precisionIndex = 0;
+    private MathContext decimalContext;
+    
+    // Expression engine
+    // Variables, ans and the memory register, with the formulas between them
+    private final Workspace workspace = new Workspace();
+    // Unit and currency conversion; created on first use, with the rate table if present
+    private UnitEvaluator unitEvaluator;
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_BYTES);
+    private final Evaluator evaluator = new Evaluator(resultCache);
+    // Owns a worker thread; created on the first evaluation
+    private EvaluationScheduler evaluationScheduler;
+    private final EvaluationScheduler.Callback previewCallback = new EvaluationScheduler.Callback() {
+        @Override
+        public void onResult(double value) {
+            showPreview(value);
+        }
+        
+        @Override
+        public void onError(EvaluationException error) {
+            // Ignore preview calculation errors
+        }
+    };
+    
+    // Every key press, from any source, is dispatched here
+    private final Keypad.Target keyTarget = new Keypad.Target() {
+        @Override
+        public void onDigit(String digit) {
+            handleNumber(digit);
+        }
+        
+        @Override
+        public void onDecimal() {
+            handleDecimal();
+        }
+        
+        @Override
+        public void onOperator(String operator) {
+            handleBasicOperator(operator);
+        }
+        
+        @Override
+        public void onVariable(String name) {
+            // The variable is an operand, entered like a number
+            handleNumber(name);
+        }
+        
+        @Override
+        public void onText(String text) {
+            handleText(text);
+        }
+        
+        @Override
+        public void onPercent() {
+            handlePercentage();
+        }
+        
+        @Override
+        public void onSquareRoot() {
+            handleSquareRoot();
+        }
+        
+        @Override
+        public void onSquare() {
+            handlePower();
+        }
+        
+        @Override
+        public void onParentheses() {
+            handleParentheses();
+        }
+        
+        @Override
+        public void onClear() {
+            handleClear();
+        }
+        
+        @Override
+        public void onDelete() {
+            handleDelete();
+        }
+        
+        @Override
+        public void onEquals() {
+            handleEquals();
+        }
+        
+        @Override
+        public void onMemoryAdd() {
+            handleMemoryAdd();
+        }
+        
+        @Override
+        public void onMemoryRecall() {
+            // The register is an operand, entered like a number
+            handleNumber(Workspace.MEMORY);
+        }
+    };
+    
+    // History and instrumentation files are only touched on this thread
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private HistoryLog history;
+    
+    // solve, ∫ and d/dx can run for seconds, so they get a thread of their own; the
+    // evaluator is only used on it. Clearing or a new "=" cancels the one in flight.
+    private final ExecutorService calculusExecutor = Executors.newSingleThreadExecutor();
+    private final CalculusEvaluator calculusEvaluator = new CalculusEvaluator();
+    private Future<?> pendingCalculus;
     
     // Animation
     private Handler animationHandler;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createStart = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_main);
         
-        // Initialize components
+        // Only what the first frame shows is set up here; the rest waits until it is drawn
         initializeViews();
         setupWindowInsets();
-        setupNumberFormatting();
         setupAnimationHandler();
-        setupButtonListeners();
-        setupExpressionWatcher();
+        if (savedInstanceState != null) {
+            restoreState(savedInstanceState.getByteArray(STATE_SNAPSHOT));
+            ArrayList<String> variables = savedInstanceState.getStringArrayList(STATE_VARIABLES);
+            if (variables != null) {
+                workspace.restore(variables);
+            }
+        }
         
         // Initialize display
         updateDisplay();
+        setupExpressionWatcher();
+        
+        onFirstFrame(createStart, savedInstanceState == null);
+    }
+    
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putByteArray(STATE_SNAPSHOT, new CalculatorSnapshot(
+            expression.toString(), lastResult, isResultDisplayed, hasError, precisionIndex).toBytes());
+        outState.putStringArrayList(STATE_VARIABLES, new ArrayList<>(workspace.getDefinitions()));
+    }
+    
+    private void restoreState(byte[] bytes) {
+        CalculatorSnapshot snapshot = CalculatorSnapshot.fromBytes(bytes);
+        if (snapshot == null || snapshot.getPrecisionIndex() >= PRECISION_DIGITS.length) return;
+        
+        expression.replace(snapshot.getExpression());
+        lastResult = snapshot.getLastResult();
+        isResultDisplayed = snapshot.isResultDisplayed();
+        hasError = snapshot.hasError();
+        precisionIndex = snapshot.getPrecisionIndex();
+        decimalContext = decimalContext(precisionIndex);
+    }
+    
+    /**
+     * Logs time to first frame and finishes the deferred setup once that frame is drawn.
+     * Filter logcat on the tag to compare startup before and after a change.
+     */
+    private void onFirstFrame(long createStart, boolean coldStart) {
+        View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                long now = SystemClock.uptimeMillis();
+                if (coldStart) {
+                    Log.i(TAG, "Startup: first frame " + (now - Process.getStartUptimeMillis())
+                        + " ms after process start, " + (now - createStart) + " ms after onCreate");
+                } else {
+                    Log.i(TAG, "Startup: first frame " + (now - createStart) + " ms after onCreate");
+                }
+                
+                // Runs after this frame is drawn
+                animationHandler.post(() -> {
+                    setupButtonListeners();
+                    setupHistory();
+                    if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+                        frameStats = FrameStats.attach(getWindow());
+                    }
+                    reportFullyDrawn();
+                });
+                return true;
+            }
+        });
     }
     
     private void initializeViews() {
         expressionInput = findViewById(R.id.expression_input);
         resultDisplay = findViewById(R.id.result_display);
         
-        // Disable keyboard input for expression field
+        // No soft keyboard or focus for the expression field: hardware keys reach
+        // onKeyDown and are typed through the Keypad like the buttons
         if (expressionInput != null) {
             expressionInput.setShowSoftInputOnFocus(false);
             expressionInput.setFocusable(false);
@@ -88,56 +350,129 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         });
     }
     
-    private void setupNumberFormatting() {
-        DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.getDefault());
-        decimalFormat = new DecimalFormat("#,##0.##########", symbols);
-        decimalFormat.setRoundingMode(RoundingMode.HALF_UP);
-        mathContext = new MathContext(15, RoundingMode.HALF_UP);
+    private NumberFormatter numberFormatter() {
+        if (numberFormatter == null) {
+            DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.getDefault());
+            numberFormatter = new NumberFormatter(symbols.getDecimalSeparator(), symbols.getGroupingSeparator());
+        }
+        return numberFormatter;
     }
     
     private void setupAnimationHandler() {
         animationHandler = new Handler(Looper.getMainLooper());
     }
     
+    private EvaluationScheduler evaluationScheduler() {
+        if (evaluationScheduler == null) {
+            // Results are posted back through the same main-thread handler as animations
+            evaluationScheduler = new EvaluationScheduler(animationHandler::post, PREVIEW_COALESCE_MILLIS, resultCache);
+        }
+        return evaluationScheduler;
+    }
+    
+    /**
+     * Runs a solve, ∫ or d/dx call off the UI thread, showing its progress in the result
+     * line until it finishes.
+     */
+    private void evaluateCalculus(String text) {
+        CalculusEvaluator.Progress progress = fraction -> animationHandler.post(() -> {
+            if (!expression.contentEquals(text) || isResultDisplayed || hasError) return;
+            lastResult = getString(R.string.calculus_progress, (int) (fraction * 100));
+            updateDisplay();
+        });
+        pendingCalculus = calculusExecutor.submit(() -> {
+            try {
+                double value = calculusEvaluator.evaluate(text, progress);
+                animationHandler.post(() -> {
+                    if (!expression.contentEquals(text)) return;
+                    workspace.setAnswer(value);
+                    showResult(formatNumber(value));
+                });
+            } catch (EvaluationException e) {
+                animationHandler.post(() -> {
+                    if (!expression.contentEquals(text)) return;
+                    showError(getErrorMessage(e.getReason()));
+                    updateDisplay();
+                });
+            } catch (InterruptedException e) {
+                // Cancelled; a newer request or a clear has taken over the display
+            }
+        });
+    }
+    
+    private void cancelCalculus() {
+        if (pendingCalculus != null) {
+            pendingCalculus.cancel(true);
+            pendingCalculus = null;
+        }
+    }
+    
+    private UnitEvaluator unitEvaluator() {
+        if (unitEvaluator == null) {
+            RateTable rates = null;
+            File file = new File(getFilesDir(), RATES_FILE);
+            if (file.exists()) {
+                try {
+                    // Mapped, not read, so even a large table opens immediately
+                    rates = RateTable.map(file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Rate table unavailable", e);
+                }
+            }
+            unitEvaluator = new UnitEvaluator(rates);
+        }
+        return unitEvaluator;
+    }
+    
+    private void setupHistory() {
+        File file = new File(getFilesDir(), HISTORY_FILE);
+        ioExecutor.execute(() -> {
+            try {
+                HistoryLog log = HistoryLog.open(file);
+                log.compactIfNeeded(HISTORY_MAX_ENTRIES);
+                history = log;
+            } catch (IOException e) {
+                Log.w(TAG, "History unavailable", e);
+            }
+        });
+    }
+    
     private void setupButtonListeners() {
-        // Number buttons
-        setButtonListener(R.id.btn_0);
-        setButtonListener(R.id.btn_1);
-        setButtonListener(R.id.btn_2);
-        setButtonListener(R.id.btn_3);
-        setButtonListener(R.id.btn_4);
-        setButtonListener(R.id.btn_5);
-        setButtonListener(R.id.btn_6);
-        setButtonListener(R.id.btn_7);
-        setButtonListener(R.id.btn_8);
-        setButtonListener(R.id.btn_9);
-        
-        // Operator buttons
-        setButtonListener(R.id.btn_add);
-        setButtonListener(R.id.btn_subtract);
-        setButtonListener(R.id.btn_multiply);
-        setButtonListener(R.id.btn_divide);
-        setButtonListener(R.id.btn_percentage);
-        
-        // Function buttons
-        setButtonListener(R.id.btn_sqrt);
-        setButtonListener(R.id.btn_power);
-        setButtonListener(R.id.btn_decimal);
-        setButtonListener(R.id.btn_parentheses);
-        
-        // Control buttons
-        setButtonListener(R.id.btn_clear);
-        setButtonListener(R.id.btn_delete);
-        setButtonListener(R.id.btn_equals);
-    }
-    
-    private void setButtonListener(int buttonId) {
-        MaterialButton button = findViewById(buttonId);
-        if (button != null) {
-            button.setOnClickListener(this);
+        for (int i = 0; i < BUTTON_IDS.length; i++) {
+            MaterialButton button = findViewById(BUTTON_IDS[i]);
+            if (button == null) continue;
+            
+            int key = BUTTON_KEYS[i];
+            keyAnimations[key] = pressAnimation(button);
+            // Accessibility clicks arrive here as well
+            button.setOnClickListener(v -> pressKey(key));
+            
+            // Long press on equals switches the precision mode
+            if (key == Keypad.KEY_EQUALS) {
+                button.setOnLongClickListener(v -> {
+                    cyclePrecision();
+                    return true;
+                });
+            } else if (key == Keypad.KEY_CLEAR) {
+                button.setOnLongClickListener(v -> {
+                    toggleInstrumentation();
+                    return true;
+                });
+            }
         }
     }
     
+    private static PulseAnimation pressAnimation(MaterialButton button) {
+        // Taken once, so presses restarted mid-flight cannot ratchet the elevation up
+        float elevation = button.getElevation();
+        return new PulseAnimation(PRESS_ANIMATION_MILLIS, amount -> {
+            float scale = 1.0f - 0.05f * amount;
+            button.setScaleX(scale);
+            button.setScaleY(scale);
+            button.setElevation(elevation + 2f * amount);
+        });
+    }
+    
     private void setupExpressionWatcher() {
         if (expressionInput != null) {
             expressionInput.addTextChangedListener(new TextWatcher() {
@@ -146,10 +481,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 
                 @Override
                 public void onTextChanged(CharSequence s, int start, int before, int count) {
-                    currentExpression = s.toString();
-                    if (!hasError && !currentExpression.isEmpty()) {
-                        calculatePreview();
-                    }
+                    // The field mirrors the buffer, whose text is already built for the edit.
+                    // Every edit is forwarded so the background preview state stays in sync
+                    evaluationScheduler().schedulePreview(expression.toString(), start, previewCallback);
                 }
                 
                 @Override
@@ -159,91 +493,115 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     }
     
     @Override
-    public void onClick(View v) {
-        int id = v.getId();
-        
-        // Add button press animation
-        animateButtonPress((MaterialButton) v);
-        
-        // Handle button clicks
-        if (id == R.id.btn_clear) {
-            handleClear();
-        } else if (id == R.id.btn_delete) {
-            handleDelete();
-        } else if (id == R.id.btn_equals) {
-            handleEquals();
-        } else if (id == R.id.btn_0 || id == R.id.btn_1 || id == R.id.btn_2 || 
-                   id == R.id.btn_3 || id == R.id.btn_4 || id == R.id.btn_5 || 
-                   id == R.id.btn_6 || id == R.id.btn_7 || id == R.id.btn_8 || 
-                   id == R.id.btn_9) {
-            handleNumber(getButtonText(id));
-        } else if (id == R.id.btn_decimal) {
-            handleDecimal();
-        } else if (id == R.id.btn_add || id == R.id.btn_subtract || 
-                   id == R.id.btn_multiply || id == R.id.btn_divide) {
-            handleBasicOperator(getOperatorSymbol(id));
-        } else if (id == R.id.btn_percentage) {
-            handlePercentage();
-        } else if (id == R.id.btn_sqrt) {
-            handleSquareRoot();
-        } else if (id == R.id.btn_power) {
-            handlePower();
-        } else if (id == R.id.btn_parentheses) {
-            handleParentheses();
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        int key = hardwareKey(keyCode, event);
+        if (key != Keypad.NO_KEY) {
+            pressKey(key);
+            return true;
+        }
+        // Letters of names and the separators of the other modes have no key
+        char c = (char) event.getUnicodeChar();
+        if (Keypad.textFor(c) != null) {
+            typeText(c);
+            return true;
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+    
+    private static int hardwareKey(int keyCode, KeyEvent event) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DEL:
+                return Keypad.KEY_DELETE;
+            case KeyEvent.KEYCODE_ENTER:
+            case KeyEvent.KEYCODE_NUMPAD_ENTER:
+                return Keypad.KEY_EQUALS;
+            case KeyEvent.KEYCODE_ESCAPE:
+            case KeyEvent.KEYCODE_CLEAR:
+                return Keypad.KEY_CLEAR;
+            default:
+                // Digits, operators and parentheses, including the numeric keypad
+                return Keypad.forChar((char) event.getUnicodeChar());
+        }
+    }
+    
+    private void pressKey(int key) {
+        long start = Instrumentation.start();
+        PulseAnimation animation = keyAnimations[key];
+        if (animation != null) {
+            animation.start();
         }
         
+        Keypad.dispatch(key, keyTarget);
         updateDisplay();
+        Instrumentation.stop(Instrumentation.KEY_PRESS, start);
     }
     
-    private void animateButtonPress(MaterialButton button) {
-        // Scale animation
-        ObjectAnimator scaleX = ObjectAnimator.ofFloat(button, "scaleX", 1.0f, 0.95f, 1.0f);
-        ObjectAnimator scaleY = ObjectAnimator.ofFloat(button, "scaleY", 1.0f, 0.95f, 1.0f);
-        
-        scaleX.setDuration(150);
-        scaleY.setDuration(150);
-        scaleX.setInterpolator(new DecelerateInterpolator());
-        scaleY.setInterpolator(new DecelerateInterpolator());
-        
-        scaleX.start();
-        scaleY.start();
-        
-        // Elevation animation
-        ValueAnimator elevationAnimator = ValueAnimator.ofFloat(
-            button.getElevation(), 
-            button.getElevation() + 2f, 
-            button.getElevation()
-        );
-        elevationAnimator.setDuration(150);
-        elevationAnimator.addUpdateListener(animation -> 
-            button.setElevation((Float) animation.getAnimatedValue()));
-        elevationAnimator.start();
-    }
-    
-    private String getButtonText(int buttonId) {
-        if (buttonId == R.id.btn_0) return "0";
-        if (buttonId == R.id.btn_1) return "1";
-        if (buttonId == R.id.btn_2) return "2";
-        if (buttonId == R.id.btn_3) return "3";
-        if (buttonId == R.id.btn_4) return "4";
-        if (buttonId == R.id.btn_5) return "5";
-        if (buttonId == R.id.btn_6) return "6";
-        if (buttonId == R.id.btn_7) return "7";
-        if (buttonId == R.id.btn_8) return "8";
-        if (buttonId == R.id.btn_9) return "9";
-        return "";
-    }
-    
-    private String getOperatorSymbol(int buttonId) {
-        if (buttonId == R.id.btn_add) return "+";
-        if (buttonId == R.id.btn_subtract) return "-";
-        if (buttonId == R.id.btn_multiply) return "×";
-        if (buttonId == R.id.btn_divide) return "÷";
-        return "";
+    private void typeText(char c) {
+        long start = Instrumentation.start();
+        Keypad.type(c, keyTarget);
+        updateDisplay();
+        Instrumentation.stop(Instrumentation.KEY_PRESS, start);
+    }
+    
+    private void toggleInstrumentation() {
+        boolean enable = !Instrumentation.isEnabled();
+        Instrumentation.setEnabled(enable);
+        
+        if (enable) {
+            Instrumentation.reset();
+            if (frameStats == null) {
+                frameStats = FrameStats.attach(getWindow());
+            }
+            showInstrumentationOverlay();
+            Toast.makeText(this, R.string.instrumentation_on, Toast.LENGTH_SHORT).show();
+        } else {
+            animationHandler.removeCallbacks(overlayRefresh);
+            if (instrumentationOverlay != null) {
+                instrumentationOverlay.setVisibility(View.GONE);
+            }
+            dumpInstrumentation();
+            Toast.makeText(this, R.string.instrumentation_off, Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    private void showInstrumentationOverlay() {
+        if (instrumentationOverlay == null) {
+            instrumentationOverlay = new TextView(this);
+            instrumentationOverlay.setTypeface(Typeface.MONOSPACE);
+            instrumentationOverlay.setTextSize(9);
+            instrumentationOverlay.setBackgroundColor(0xB0000000);
+            instrumentationOverlay.setTextColor(0xFFFFFFFF);
+            // Leaves touches to the keypad underneath
+            instrumentationOverlay.setClickable(false);
+            addContentView(instrumentationOverlay, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.WRAP_CONTENT));
+        }
+        instrumentationOverlay.setVisibility(View.VISIBLE);
+        refreshInstrumentationOverlay();
+    }
+    
+    private void refreshInstrumentationOverlay() {
+        if (!Instrumentation.isEnabled()) return;
+        instrumentationOverlay.setText(Instrumentation.dump());
+        animationHandler.postDelayed(overlayRefresh, OVERLAY_REFRESH_MILLIS);
+    }
+    
+    private void dumpInstrumentation() {
+        String dump = Instrumentation.dump();
+        Log.i(TAG, "Instrumentation:\n" + dump);
+        File file = new File(getFilesDir(), INSTRUMENTATION_FILE);
+        ioExecutor.execute(() -> {
+            try (Writer out = new FileWriter(file)) {
+                out.write(dump);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write instrumentation dump", e);
+            }
+        });
     }
     
     private void handleClear() {
-        currentExpression = "";
+        cancelCalculus();
+        expression.clear();
         lastResult = "0";
         isResultDisplayed = false;
         hasError = false;
@@ -257,27 +615,189 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
         
         if (isResultDisplayed) {
-            currentExpression = lastResult;
+            expression.replace(lastResult);
             isResultDisplayed = false;
         }
         
-        if (!currentExpression.isEmpty()) {
-            currentExpression = currentExpression.substring(0, currentExpression.length() - 1);
-        }
+        expression.deleteBefore();
     }
     
     private void handleEquals() {
-        if (currentExpression.isEmpty()) return;
+        if (expression.isEmpty()) return;
         
-        try {
-            String result = evaluateExpression(currentExpression);
-            lastResult = result;
-            isResultDisplayed = true;
-            hasError = false;
-            animateResultChange();
-        } catch (Exception e) {
-            showError("Invalid expression");
+        final String text = expression.toString();
+        cancelCalculus();
+        if (CalculusEvaluator.accepts(text)) {
+            equalsStart = Instrumentation.start();
+            evaluateCalculus(text);
+            return;
+        }
+        if (workspace.accepts(text)) {
+            // Assignments and expressions in named variables are small, so they are
+            // evaluated here rather than on the scheduler
+            equalsStart = Instrumentation.start();
+            try {
+                showResult(formatNumber(workspace.evaluate(text)));
+            } catch (EvaluationException e) {
+                showError(getErrorMessage(e.getReason()));
+                updateDisplay();
+            }
+            return;
+        }
+        if (unitEvaluator().accepts(text)) {
+            equalsStart = Instrumentation.start();
+            try {
+                UnitEvaluator.Quantity quantity = unitEvaluator().evaluate(text);
+                workspace.setAnswer(quantity.getValue());
+                String value = formatNumber(quantity.getValue());
+                showResult(quantity.getUnit().isEmpty() ? value : value + " " + quantity.getUnit());
+            } catch (EvaluationException e) {
+                showError(getErrorMessage(e.getReason()));
+                updateDisplay();
+            }
+            return;
+        }
+        // Only x on its own makes a function of x; the x in exp or max does not
+        boolean function = lexer.mentions(text, GraphActivity.VARIABLE);
+        if (function && text.indexOf(TableActivity.SEPARATOR) >= 0) {
+            // f(x); start; step; count lists values rather than plotting them
+            try {
+                startActivity(TableActivity.newIntent(this, text));
+            } catch (EvaluationException e) {
+                showError(getErrorMessage(e.getReason()));
+                updateDisplay();
+            }
+            return;
         }
+        if (function) {
+            // An expression in x is plotted rather than evaluated
+            startActivity(new Intent(this, GraphActivity.class)
+                .putExtra(GraphActivity.EXTRA_EXPRESSION, text));
+            return;
+        }
+        
+        equalsStart = Instrumentation.start();
+        if (PRECISION_DIGITS[precisionIndex] == EXACT_FRACTIONS) {
+            evaluationScheduler().evaluateExact(text, new EvaluationScheduler.ValueCallback<Rational>() {
+                @Override
+                public void onResult(Rational value) {
+                    if (!expression.contentEquals(text)) return;
+                    workspace.setAnswer(value.doubleValue());
+                    showResult(formatRational(value));
+                }
+                
+                @Override
+                public void onError(EvaluationException error) {
+                    if (!expression.contentEquals(text)) return;
+                    showError(getErrorMessage(error.getReason()));
+                    updateDisplay();
+                }
+            });
+            return;
+        }
+        if (PRECISION_DIGITS[precisionIndex] == COMPLEX) {
+            evaluationScheduler().evaluateComplex(text, new EvaluationScheduler.ValueCallback<ComplexEvaluator.Complex>() {
+                @Override
+                public void onResult(ComplexEvaluator.Complex value) {
+                    if (!expression.contentEquals(text)) return;
+                    if (value.isReal()) {
+                        workspace.setAnswer(value.getReal());
+                    }
+                    showResult(formatComplex(value));
+                }
+                
+                @Override
+                public void onError(EvaluationException error) {
+                    if (!expression.contentEquals(text)) return;
+                    showError(getErrorMessage(error.getReason()));
+                    updateDisplay();
+                }
+            });
+            return;
+        }
+        
+        final MathContext context = decimalContext;
+        if (context != null) {
+            evaluationScheduler().evaluateNow(text, context, new EvaluationScheduler.ValueCallback<BigDecimal>() {
+                @Override
+                public void onResult(BigDecimal value) {
+                    if (!expression.contentEquals(text)) return;
+                    workspace.setAnswer(value.doubleValue());
+                    showResult(formatDecimal(value, context.getPrecision()));
+                }
+                
+                @Override
+                public void onError(EvaluationException error) {
+                    if (!expression.contentEquals(text)) return;
+                    showError(getErrorMessage(error.getReason()));
+                    updateDisplay();
+                }
+            });
+            return;
+        }
+        
+        evaluationScheduler().evaluateNow(text, new EvaluationScheduler.Callback() {
+            @Override
+            public void onResult(double value) {
+                // Drop the result if the expression was edited while it was computed
+                if (!expression.contentEquals(text)) return;
+                workspace.setAnswer(value);
+                showResult(formatNumber(value));
+            }
+            
+            @Override
+            public void onError(EvaluationException error) {
+                if (!expression.contentEquals(text)) return;
+                showError(getErrorMessage(error.getReason()));
+                updateDisplay();
+            }
+        });
+    }
+    
+    private void showResult(String result) {
+        Instrumentation.stop(Instrumentation.TAP_TO_RESULT, equalsStart);
+        equalsStart = 0;
+        recordHistory(expression.toString(), result);
+        lastResult = result;
+        isResultDisplayed = true;
+        hasError = false;
+        animateResultChange();
+        updateDisplay();
+    }
+    
+    private void recordHistory(String expression, String result) {
+        long timestamp = System.currentTimeMillis();
+        ioExecutor.execute(() -> {
+            if (history == null) return;
+            try {
+                history.append(expression, result, timestamp);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not record history", e);
+            }
+        });
+    }
+    
+    private void cyclePrecision() {
+        precisionIndex = (precisionIndex + 1) % PRECISION_DIGITS.length;
+        int digits = PRECISION_DIGITS[precisionIndex];
+        decimalContext = decimalContext(precisionIndex);
+        
+        String message;
+        if (digits == EXACT_FRACTIONS) {
+            message = getString(R.string.precision_exact);
+        } else if (digits == COMPLEX) {
+            message = getString(R.string.precision_complex);
+        } else if (digits > 0) {
+            message = getString(R.string.precision_digits, digits);
+        } else {
+            message = getString(R.string.precision_standard);
+        }
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+    }
+    
+    private static MathContext decimalContext(int precisionIndex) {
+        int digits = PRECISION_DIGITS[precisionIndex];
+        return digits > 0 ? new MathContext(digits, RoundingMode.HALF_UP) : null;
     }
     
     private void handleNumber(String number) {
@@ -286,11 +806,11 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
         
         if (isResultDisplayed) {
-            currentExpression = "";
+            expression.clear();
             isResultDisplayed = false;
         }
         
-        currentExpression += number;
+        expression.insert(number);
     }
     
     private void handleDecimal() {
@@ -299,21 +819,16 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
         
         if (isResultDisplayed) {
-            currentExpression = "0";
+            expression.replace("0");
             isResultDisplayed = false;
         }
         
-        // Check if current number already has decimal
-        String[] parts = currentExpression.split("[+\\-×÷]");
-        if (parts.length > 0) {
-            String lastPart = parts[parts.length - 1];
-            if (!lastPart.contains(".")) {
-                if (lastPart.isEmpty() || isOperator(lastPart.charAt(lastPart.length() - 1))) {
-                    currentExpression += "0.";
-                } else {
-                    currentExpression += ".";
-                }
-            }
+        // One decimal point per number; a bare point starts a new "0."
+        if (expression.numberHasDecimal()) return;
+        if (Character.isDigit(expression.charBeforeCursor())) {
+            expression.insert('.');
+        } else {
+            expression.insert("0.");
         }
     }
     
@@ -321,34 +836,59 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         if (hasError) return;
         
         if (isResultDisplayed) {
-            currentExpression = lastResult;
+            expression.replace(lastResult);
             isResultDisplayed = false;
         }
         
-        if (currentExpression.isEmpty()) {
+        if (expression.getCursor() == 0) {
             if (operator.equals("-")) {
-                currentExpression = "-";
+                expression.insert('-');
             }
             return;
         }
         
-        // Replace last operator if expression ends with operator
-        char lastChar = currentExpression.charAt(currentExpression.length() - 1);
-        if (isOperator(lastChar)) {
-            currentExpression = currentExpression.substring(0, currentExpression.length() - 1);
+        // Replace the operator before the cursor
+        if (isOperator(expression.charBeforeCursor())) {
+            expression.deleteBefore();
         }
         
-        currentExpression += operator;
+        expression.insert(operator);
+    }
+    
+    private void handleText(String text) {
+        if (hasError) return;
+        
+        // Like an operator, text such as ! or ; carries on from a result
+        if (isResultDisplayed) {
+            expression.replace(lastResult);
+            isResultDisplayed = false;
+        }
+        
+        expression.insert(text);
+    }
+    
+    private void handleMemoryAdd() {
+        if (hasError || expression.isEmpty()) return;
+        
+        try {
+            // The result on show, or the value "=" would give the expression
+            double value = isResultDisplayed ? workspace.getAnswer() : workspace.evaluate(expression.toString());
+            workspace.memoryAdd(value);
+        } catch (EvaluationException e) {
+            showError(getErrorMessage(e.getReason()));
+            updateDisplay();
+        }
     }
     
     private void handlePercentage() {
-        if (hasError || currentExpression.isEmpty()) return;
+        if (hasError || expression.isEmpty()) return;
         
         try {
-            String result = evaluateExpression(currentExpression);
+            String result = evaluateExpression(expression.toString());
             double value = Double.parseDouble(result);
             value = value / 100.0;
-            currentExpression = formatNumber(value);
+            workspace.setAnswer(value);
+            expression.replace(formatNumber(value));
             isResultDisplayed = true;
         } catch (Exception e) {
             showError("Invalid expression");
@@ -358,8 +898,8 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     private void handleSquareRoot() {
         if (hasError) return;
         
-        if (currentExpression.isEmpty()) {
-            currentExpression = "√(";
+        if (expression.isEmpty()) {
+            expression.insert("√(");
         } else if (isResultDisplayed) {
             try {
                 double value = Double.parseDouble(lastResult);
@@ -368,14 +908,15 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                     return;
                 }
                 double result = Math.sqrt(value);
-                currentExpression = formatNumber(result);
-                lastResult = currentExpression;
+                workspace.setAnswer(result);
+                lastResult = formatNumber(result);
+                expression.replace(lastResult);
                 isResultDisplayed = true;
             } catch (Exception e) {
                 showError(getString(R.string.error_invalid_operation));
             }
         } else {
-            currentExpression += "√(";
+            expression.insert("√(");
         }
     }
     
@@ -383,12 +924,12 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         if (hasError) return;
         
         if (isResultDisplayed) {
-            currentExpression = lastResult;
+            expression.replace(lastResult);
             isResultDisplayed = false;
         }
         
-        if (!currentExpression.isEmpty()) {
-            currentExpression += "²";
+        if (expression.getCursor() > 0) {
+            expression.insert('²');
         }
     }
     
@@ -398,231 +939,75 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
         
         if (isResultDisplayed) {
-            currentExpression = "";
+            expression.clear();
             isResultDisplayed = false;
         }
         
         // Smart parentheses handling
-        int openCount = countChar(currentExpression, '(');
-        int closeCount = countChar(currentExpression, ')');
-        
-        if (currentExpression.isEmpty() || 
-            isOperator(currentExpression.charAt(currentExpression.length() - 1)) ||
-            currentExpression.endsWith("(")) {
-            currentExpression += "(";
-        } else if (openCount > closeCount) {
-            currentExpression += ")";
+        char before = expression.charBeforeCursor();
+        if (expression.getCursor() == 0 || isOperator(before) || before == '('
+                || expression.functionBeforeCursor()) {
+            expression.insert('(');
+        } else if (expression.getOpenParenCount() > expression.getCloseParenCount()) {
+            expression.insert(')');
         } else {
-            currentExpression += "×(";
+            expression.insert("×(");
         }
     }
     
-    private void calculatePreview() {
-        if (currentExpression.isEmpty() || isResultDisplayed) return;
+    private void showPreview(double value) {
+        if (hasError || expression.isEmpty() || isResultDisplayed) return;
         
-        try {
-            // Only calculate if expression seems complete
-            if (!endsWithOperator(currentExpression)) {
-                String result = evaluateExpression(currentExpression);
-                // Don't update if result is same as expression (single number)
-                if (!result.equals(currentExpression)) {
-                    lastResult = result;
-                }
-            }
-        } catch (Exception e) {
-            // Ignore preview calculation errors
+        // Only show if expression seems complete
+        if (isOperator(expression.charAt(expression.length() - 1))) return;
+        
+        String result = formatNumber(value);
+        // Don't update if result is same as expression (single number)
+        if (!expression.contentEquals(result)) {
+            lastResult = result;
+            updateDisplay();
         }
     }
     
     private String evaluateExpression(String expression) throws Exception {
         if (expression.isEmpty()) return "0";
         
-        // Handle special functions
-        expression = preprocessExpression(expression);
-        
-        // Convert to postfix notation and evaluate
-        List<String> tokens = tokenize(expression);
-        List<String> postfix = infixToPostfix(tokens);
-        double result = evaluatePostfix(postfix);
-        
-        // Check for special values
-        if (Double.isNaN(result)) {
-            throw new Exception(getString(R.string.error_not_a_number));
-        }
-        if (Double.isInfinite(result)) {
-            throw new Exception(getString(R.string.error_infinity));
-        }
-        
-        return formatNumber(result);
-    }
-    
-    private String preprocessExpression(String expression) {
-        // Replace display symbols with calculation symbols
-        expression = expression.replace("×", "*");
-        expression = expression.replace("÷", "/");
-        
-        // Handle square root
-        expression = expression.replace("√", "sqrt");
-        
-        // Handle power (x²)
-        expression = expression.replace("²", "^2");
-        
-        // Handle implicit multiplication
-        expression = addImplicitMultiplication(expression);
-        
-        return expression;
-    }
-    
-    private String addImplicitMultiplication(String expression) {
-        StringBuilder result = new StringBuilder();
-        
-        for (int i = 0; i < expression.length(); i++) {
-            char current = expression.charAt(i);
-            result.append(current);
-            
-            if (i < expression.length() - 1) {
-                char next = expression.charAt(i + 1);
-                
-                // Add multiplication between number and opening parenthesis
-                if (Character.isDigit(current) && next == '(') {
-                    result.append("*");
-                }
-                // Add multiplication between closing and opening parenthesis
-                else if (current == ')' && next == '(') {
-                    result.append("*");
-                }
-                // Add multiplication between closing parenthesis and number
-                else if (current == ')' && Character.isDigit(next)) {
-                    result.append("*");
-                }
-            }
-        }
-        
-        return result.toString();
-    }
-    
-    private List<String> tokenize(String expression) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder currentToken = new StringBuilder();
-        
-        for (int i = 0; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-            
-            if (Character.isDigit(c) || c == '.') {
-                currentToken.append(c);
-            } else if (c == 's' && expression.substring(i).startsWith("sqrt")) {
-                if (currentToken.length() > 0) {
-                    tokens.add(currentToken.toString());
-                    currentToken.setLength(0);
-                }
-                tokens.add("sqrt");
-                i += 3; // Skip "qrt"
-            } else {
-                if (currentToken.length() > 0) {
-                    tokens.add(currentToken.toString());
-                    currentToken.setLength(0);
-                }
-                tokens.add(String.valueOf(c));
-            }
-        }
-        
-        if (currentToken.length() > 0) {
-            tokens.add(currentToken.toString());
-        }
-        
-        return tokens;
-    }
-    
-    private List<String> infixToPostfix(List<String> tokens) {
-        List<String> output = new ArrayList<>();
-        Stack<String> operators = new Stack<>();
-        
-        for (String token : tokens) {
-            if (isNumber(token)) {
-                output.add(token);
-            } else if (token.equals("sqrt")) {
-                operators.push(token);
-            } else if (isOperator(token.charAt(0))) {
-                while (!operators.isEmpty() && 
-                       !operators.peek().equals("(") &&
-                       getPrecedence(operators.peek()) >= getPrecedence(token)) {
-                    output.add(operators.pop());
-                }
-                operators.push(token);
-            } else if (token.equals("(")) {
-                operators.push(token);
-            } else if (token.equals(")")) {
-                while (!operators.isEmpty() && !operators.peek().equals("(")) {
-                    output.add(operators.pop());
-                }
-                if (!operators.isEmpty()) {
-                    operators.pop(); // Remove the "("
-                }
-                if (!operators.isEmpty() && operators.peek().equals("sqrt")) {
-                    output.add(operators.pop());
-                }
-            }
-        }
-        
-        while (!operators.isEmpty()) {
-            output.add(operators.pop());
-        }
-        
-        return output;
-    }
-    
-    private double evaluatePostfix(List<String> postfix) throws Exception {
-        Stack<Double> stack = new Stack<>();
-        
-        for (String token : postfix) {
-            if (isNumber(token)) {
-                stack.push(Double.parseDouble(token));
-            } else if (token.equals("sqrt")) {
-                if (stack.isEmpty()) throw new Exception("Invalid expression");
-                double operand = stack.pop();
-                if (operand < 0) throw new Exception(getString(R.string.error_sqrt_negative));
-                stack.push(Math.sqrt(operand));
-            } else if (isOperator(token.charAt(0))) {
-                if (stack.size() < 2) throw new Exception("Invalid expression");
-                double b = stack.pop();
-                double a = stack.pop();
-                
-                switch (token) {
-                    case "+":
-                        stack.push(a + b);
-                        break;
-                    case "-":
-                        stack.push(a - b);
-                        break;
-                    case "*":
-                        stack.push(a * b);
-                        break;
-                    case "/":
-                        if (b == 0) throw new Exception(getString(R.string.error_division_by_zero));
-                        stack.push(a / b);
-                        break;
-                    case "^":
-                        stack.push(Math.pow(a, b));
-                        break;
-                    default:
-                        throw new Exception("Unknown operator: " + token);
-                }
+        try {
+            // Usually already computed by the preview
+            String key = ResultCache.normalize(expression);
+            double result = resultCache.get(key);
+            if (Double.isNaN(result)) {
+                result = evaluator.evaluate(expression);
+                resultCache.put(key, result);
             }
+            return formatNumber(result);
+        } catch (EvaluationException e) {
+            throw new Exception(getErrorMessage(e.getReason()), e);
         }
-        
-        if (stack.size() != 1) {
-            throw new Exception("Invalid expression");
-        }
-        
-        return stack.pop();
     }
     
-    private boolean isNumber(String token) {
-        try {
-            Double.parseDouble(token);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+    private String getErrorMessage(EvaluationException.Reason reason) {
+        switch (reason) {
+            case DIVISION_BY_ZERO:
+                return getString(R.string.error_division_by_zero);
+            case SQRT_NEGATIVE:
+                return getString(R.string.error_sqrt_negative);
+            case NOT_A_NUMBER:
+                return getString(R.string.error_not_a_number);
+            case INFINITY:
+                return getString(R.string.error_infinity);
+            case DOMAIN_ERROR:
+                return getString(R.string.error_domain);
+            case UNDEFINED_VARIABLE:
+                return getString(R.string.error_undefined_variable);
+            case CIRCULAR_REFERENCE:
+                return getString(R.string.error_circular_reference);
+            case INCOMPATIBLE_UNITS:
+                return getString(R.string.error_incompatible_units);
+            case NO_CONVERGENCE:
+                return getString(R.string.error_no_convergence);
+            default:
+                return getString(R.string.error_invalid_expression);
         }
     }
     
@@ -630,57 +1015,42 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         return c == '+' || c == '-' || c == '*' || c == '/' || c == '^' || c == '×' || c == '÷';
     }
     
-    private int getPrecedence(String operator) {
-        switch (operator) {
-            case "+":
-            case "-":
-                return 1;
-            case "*":
-            case "/":
-                return 2;
-            case "^":
-                return 3;
-            case "sqrt":
-                return 4;
-            default:
-                return 0;
-        }
+    private String formatNumber(double number) {
+        // 15 significant digits, or scientific notation for very large or small numbers
+        long start = Instrumentation.start();
+        String formatted = numberFormatter().format(number);
+        Instrumentation.stop(Instrumentation.FORMAT, start);
+        return formatted;
     }
     
-    private boolean endsWithOperator(String expression) {
-        if (expression.isEmpty()) return false;
-        char lastChar = expression.charAt(expression.length() - 1);
-        return isOperator(lastChar);
+    private String formatComplex(ComplexEvaluator.Complex number) {
+        long start = Instrumentation.start();
+        String formatted = numberFormatter().formatComplex(number.getReal(), number.getImaginary());
+        Instrumentation.stop(Instrumentation.FORMAT, start);
+        return formatted;
     }
     
-    private int countChar(String str, char c) {
-        int count = 0;
-        for (char ch : str.toCharArray()) {
-            if (ch == c) count++;
+    private String formatDecimal(BigDecimal number, int precision) {
+        BigDecimal bd = number.stripTrailingZeros();
+        if (bd.signum() == 0) return "0";
+        
+        // Plain digits while they fit the precision, scientific beyond that
+        int exponent = bd.precision() - bd.scale() - 1;
+        if (exponent < -6 || exponent >= precision) {
+            return bd.toString();
         }
-        return count;
+        return bd.toPlainString();
     }
     
-    private String formatNumber(double number) {
-        // Handle very large or very small numbers
-        if (Math.abs(number) >= 1e10 || (Math.abs(number) < 1e-6 && number != 0)) {
-            return String.format("%.6E", number);
-        }
-        
-        // Use BigDecimal for precise formatting
-        BigDecimal bd = new BigDecimal(number, mathContext);
-        bd = bd.stripTrailingZeros();
-        
-        if (bd.scale() <= 0) {
-            return bd.toBigInteger().toString();
-        } else {
-            return bd.toPlainString();
-        }
+    private String formatRational(Rational number) {
+        // The fraction is divided out once, at the display precision
+        return formatDecimal(number.toBigDecimal(mathContext), mathContext.getPrecision());
     }
     
     private void updateDisplay() {
+        long start = Instrumentation.start();
         if (expressionInput != null) {
-            expressionInput.setText(currentExpression);
+            updateExpressionInput();
         }
         
         if (resultDisplay != null) {
@@ -688,30 +1058,47 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 resultDisplay.setText("Error");
                 resultDisplay.setTextColor(getColor(R.color.md_theme_light_error));
             } else if (isResultDisplayed) {
-                resultDisplay.setText(lastResult);
+                resultDisplay.setText(localize(lastResult));
                 resultDisplay.setTextColor(getColor(R.color.md_theme_light_primary));
             } else {
-                resultDisplay.setText(lastResult);
+                resultDisplay.setText(localize(lastResult));
                 resultDisplay.setTextColor(getColor(R.color.md_theme_light_onSurface));
             }
         }
+        Instrumentation.stop(Instrumentation.UPDATE_DISPLAY, start);
+    }
+    
+    private CharSequence localize(String result) {
+        // Short integers need no locale data, which keeps the formatter off the startup path
+        if (result.length() < 4 && result.indexOf('.') < 0) return result;
+        
+        // Grouping is for display only; lastResult stays in the form the engine reads back
+        displayText.setLength(0);
+        numberFormatter().localize(result, displayText);
+        return displayText;
+    }
+    
+    private void updateExpressionInput() {
+        Editable text = expressionInput.getText();
+        int common = 0;
+        int max = Math.min(text.length(), expression.length());
+        while (common < max && text.charAt(common) == expression.charAt(common)) {
+            common++;
+        }
+        
+        if (common == text.length() && common == expression.length()) return;
+        
+        // Replace only the changed tail so the watcher reports the real edit to the preview
+        text.replace(common, text.length(), expression, common, expression.length());
     }
     
     private void animateResultChange() {
-        if (resultDisplay != null) {
-            ObjectAnimator fadeOut = ObjectAnimator.ofFloat(resultDisplay, "alpha", 1.0f, 0.3f);
-            ObjectAnimator fadeIn = ObjectAnimator.ofFloat(resultDisplay, "alpha", 0.3f, 1.0f);
-            
-            fadeOut.setDuration(100);
-            fadeIn.setDuration(100);
-            
-            fadeOut.addUpdateListener(animation -> {
-                if (animation.getAnimatedFraction() == 1.0f) {
-                    fadeIn.start();
-                }
-            });
-            
-            fadeOut.start();
+        if (resultAnimation == null && resultDisplay != null) {
+            resultAnimation = new PulseAnimation(RESULT_ANIMATION_MILLIS,
+                amount -> resultDisplay.setAlpha(1.0f - 0.7f * amount));
+        }
+        if (resultAnimation != null) {
+            resultAnimation.start();
         }
     }
     
@@ -732,8 +1119,24 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (evaluationScheduler != null) {
+            evaluationScheduler.shutdown();
+        }
         if (animationHandler != null) {
             animationHandler.removeCallbacksAndMessages(null);
         }
+        if (frameStats != null) {
+            frameStats.detach(getWindow());
+        }
+        ioExecutor.execute(() -> {
+            if (history == null) return;
+            try {
+                history.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close history", e);
+            }
+        });
+        ioExecutor.shutdown();
+        calculusExecutor.shutdownNow();
     }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package com.example.calculator;
+
+import android.animation.TimeInterpolator;
+import android.animation.ValueAnimator;
+import android.view.animation.DecelerateInterpolator;
+
+/**
+ * A reusable out-and-back animation: the amount rises from 0 to 1 and returns to 0.
+ * Each instance owns one animator and its update listener, built once, so starting it
+ * again on every tap allocates nothing.
+ */
+final class PulseAnimation implements ValueAnimator.AnimatorUpdateListener {
+
+    interface Target {
+        void onPulse(float amount);
+    }
+
+    // Interpolators are stateless, so every pulse shares one
+    private static final TimeInterpolator INTERPOLATOR = new DecelerateInterpolator();
+
+    private final ValueAnimator animator;
+    private final Target target;
+
+    PulseAnimation(long durationMillis, Target target) {
+        this.target = target;
+        animator = ValueAnimator.ofFloat(0f, 1f);
+        animator.setDuration(durationMillis);
+        animator.setInterpolator(INTERPOLATOR);
+        animator.addUpdateListener(this);
+    }
+
+    /**
+     * Starts the pulse. If one is already on its way back, it turns around from where it
+     * is instead of jumping back to rest.
+     */
+    void start() {
+        if (animator.isRunning()) {
+            long duration = animator.getDuration();
+            long elapsed = animator.getCurrentPlayTime();
+            if (elapsed > duration / 2) {
+                animator.setCurrentPlayTime(duration - elapsed);
+            }
+            return;
+        }
+        animator.start();
+    }
+
+    void cancel() {
+        animator.cancel();
+        target.onPulse(0f);
+    }
+
+    @Override
+    public void onAnimationUpdate(ValueAnimator animation) {
+        // getAnimatedFraction() avoids boxing the animated value
+        float fraction = animation.getAnimatedFraction();
+        target.onPulse(1f - Math.abs(2f * fraction - 1f));
+    }
+}
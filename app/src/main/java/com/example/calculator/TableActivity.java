@@ -0,0 +1,166 @@
+package com.example.calculator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.calculator.engine.CompiledExpression;
+import com.example.calculator.engine.EvaluationException;
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.Instrumentation;
+import com.example.calculator.engine.NumberFormatter;
+import com.example.calculator.engine.ValueTable;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lists x and f(x) for an expression in {@link GraphActivity#VARIABLE} over
+ * {@code count} steps, entered as {@code f(x); start; step; count}.
+ *
+ * <p>Rows come from a {@link ValueTable}, which computes pages of values as the list
+ * scrolls and prefetches the next one on a background thread; a row is formatted only
+ * when its view is bound. The list shows at most {@link Integer#MAX_VALUE} rows.
+ */
+public class TableActivity extends AppCompatActivity {
+
+    static final String EXTRA_EXPRESSION = "expression";
+    static final String EXTRA_START = "start";
+    static final String EXTRA_STEP = "step";
+    static final String EXTRA_COUNT = "count";
+
+    // Separates the expression from its range
+    static final char SEPARATOR = ';';
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+    private NumberFormatter numberFormatter;
+    private ValueTable table;
+
+    /**
+     * Intent for text of the form {@code f(x); start; step; count}, where the range may
+     * itself be arithmetic such as {@code 1÷8}.
+     */
+    static Intent newIntent(Context context, String text) throws EvaluationException {
+        String[] parts = text.split(String.valueOf(SEPARATOR), -1);
+        if (parts.length != 4) {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, text.length());
+        }
+        Evaluator evaluator = new Evaluator();
+        double start = evaluator.evaluate(parts[1]);
+        double step = evaluator.evaluate(parts[2]);
+        double count = evaluator.evaluate(parts[3]);
+        if (!(count >= 1) || count != Math.rint(count) || count > Long.MAX_VALUE) {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, text.lastIndexOf(SEPARATOR) + 1);
+        }
+        return new Intent(context, TableActivity.class)
+            .putExtra(EXTRA_EXPRESSION, parts[0].trim())
+            .putExtra(EXTRA_START, start)
+            .putExtra(EXTRA_STEP, step)
+            .putExtra(EXTRA_COUNT, (long) count);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        Intent intent = getIntent();
+        String text = intent.getStringExtra(EXTRA_EXPRESSION);
+        CompiledExpression expression;
+        try {
+            // Evaluated a page at a time, so worth optimizing
+            expression = CompiledExpression.compile(text, GraphActivity.VARIABLE).optimize();
+        } catch (EvaluationException e) {
+            Toast.makeText(this, R.string.error_invalid_expression, Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        table = new ValueTable(expression, GraphActivity.VARIABLE,
+            intent.getDoubleExtra(EXTRA_START, 0), intent.getDoubleExtra(EXTRA_STEP, 1),
+            intent.getLongExtra(EXTRA_COUNT, 0), prefetchExecutor);
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.getDefault());
+        numberFormatter = new NumberFormatter(symbols.getDecimalSeparator(), symbols.getGroupingSeparator());
+
+        setTitle(getString(R.string.table_title, text));
+        ListView list = new ListView(this);
+        list.setContentDescription(getString(R.string.cd_table));
+        list.setAdapter(new RowAdapter());
+        setContentView(list);
+    }
+
+    @Override
+    protected void onDestroy() {
+        prefetchExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
+    private String formatNumber(double number) {
+        if (Double.isNaN(number)) return getString(R.string.table_undefined);
+        long start = Instrumentation.start();
+        String formatted = numberFormatter.format(number);
+        Instrumentation.stop(Instrumentation.FORMAT, start);
+        return formatted;
+    }
+
+    private final class RowAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return (int) Math.min(table.getCount(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Object getItem(int position) {
+            // Rows are read through the table, not as objects
+            return null;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            RowViews row = convertView != null ? (RowViews) convertView.getTag() : new RowViews(parent.getContext());
+            row.x.setText(formatNumber(table.getX(position)));
+            row.y.setText(formatNumber(table.getY(position)));
+            return row.layout;
+        }
+    }
+
+    private static final class RowViews {
+        final LinearLayout layout;
+        final TextView x;
+        final TextView y;
+
+        RowViews(Context context) {
+            int padding = (int) (16 * context.getResources().getDisplayMetrics().density);
+            layout = new LinearLayout(context);
+            layout.setPadding(padding, padding / 2, padding, padding / 2);
+            x = column(context, Gravity.START);
+            y = column(context, Gravity.END);
+            layout.addView(x, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1));
+            layout.addView(y, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 2));
+            layout.setTag(this);
+        }
+
+        private static TextView column(Context context, int gravity) {
+            TextView view = new TextView(context);
+            view.setGravity(gravity);
+            view.setTextAppearance(android.R.style.TextAppearance_Medium);
+            return view;
+        }
+    }
+}
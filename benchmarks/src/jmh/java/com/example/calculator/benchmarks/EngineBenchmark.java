@@ -0,0 +1,115 @@
+package com.example.calculator.benchmarks;
+
+import com.example.calculator.engine.CompiledExpression;
+import com.example.calculator.engine.EvaluationException;
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.IncrementalEvaluator;
+import com.example.calculator.engine.Lexer;
+import com.example.calculator.engine.NumberFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The engine's counterparts of the {@link LegacyPipelineBenchmark} stages on the same
+ * inputs. The engine has no preprocessing or postfix stage: the lexer reads display text
+ * directly and the parser evaluates as it goes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({Expressions.SHORT, Expressions.TERMS_1K, Expressions.TERMS_10K,
+            Expressions.NESTED, Expressions.SQRT_SQUARE})
+    public String shape;
+
+    private final Lexer lexer = new Lexer();
+    private final Evaluator evaluator = new Evaluator();
+    private final IncrementalEvaluator incrementalEvaluator = new IncrementalEvaluator();
+    private final NumberFormatter formatter = new NumberFormatter();
+    private final StringBuilder formatted = new StringBuilder();
+    private final double[] noVariables = new double[0];
+
+    private String expression;
+    private CompiledExpression compiled;
+    private CompiledExpression optimized;
+    private double result;
+
+    @Setup
+    public void setUp() throws EvaluationException {
+        expression = Expressions.forShape(shape);
+        compiled = CompiledExpression.compile(expression);
+        optimized = compiled.optimize();
+        result = evaluator.evaluate(expression);
+    }
+
+    @Benchmark
+    public int tokenize() {
+        lexer.reset(expression);
+        int count = 0;
+        while (lexer.next() != Lexer.END) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public double evaluate() throws EvaluationException {
+        return evaluator.evaluate(expression);
+    }
+
+    @Benchmark
+    public double evaluateCompiled() throws EvaluationException {
+        return compiled.evaluate(noVariables);
+    }
+
+    @Benchmark
+    public double evaluateOptimized() throws EvaluationException {
+        return optimized.evaluate(noVariables);
+    }
+
+    /**
+     * The live preview while typing the expression: one edit and one evaluation per character.
+     */
+    @Benchmark
+    public double typeWithPreview() {
+        incrementalEvaluator.clear();
+        double last = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            incrementalEvaluator.append(expression.charAt(i));
+            try {
+                last = incrementalEvaluator.evaluate();
+            } catch (EvaluationException e) {
+                // Incomplete while typing, as in the app
+            }
+        }
+        return last;
+    }
+
+    @Benchmark
+    public StringBuilder formatNumber() {
+        formatted.setLength(0);
+        formatter.format(result, formatted);
+        return formatted;
+    }
+
+    @Benchmark
+    public String endToEnd() throws EvaluationException {
+        return formatter.format(evaluator.evaluate(expression));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.calculator.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Benchmark inputs, written in display symbols that both the legacy pipeline and the
+ * engine accept. Generated inputs use a fixed seed so runs are comparable.
+ */
+final class Expressions {
+
+    static final String SHORT = "short";
+    static final String TERMS_1K = "terms1k";
+    static final String TERMS_10K = "terms10k";
+    static final String NESTED = "nested";
+    static final String SQRT_SQUARE = "sqrtSquare";
+
+    private static final String[] OPERATORS = {"+", "-", "×", "÷"};
+
+    private Expressions() {}
+
+    static String forShape(String shape) {
+        switch (shape) {
+            case SHORT:
+                // What one types on the keypad
+                return "12.5×(3+4)÷2-√(16)";
+            case TERMS_1K:
+                return terms(1_000);
+            case TERMS_10K:
+                return terms(10_000);
+            case NESTED:
+                return nested(500);
+            case SQRT_SQUARE:
+                return sqrtSquare(1_000);
+            default:
+                throw new IllegalArgumentException(shape);
+        }
+    }
+
+    /**
+     * {@code count} decimal operands joined by the four basic operators.
+     */
+    static String terms(int count) {
+        Random random = new Random(count);
+        StringBuilder sb = new StringBuilder(count * 8);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+            }
+            // Never zero, so ÷ is always defined
+            sb.append(1 + random.nextInt(999)).append('.').append(random.nextInt(100));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parentheses nested {@code depth} deep; alternating + and × keep the value bounded.
+     */
+    static String nested(int depth) {
+        StringBuilder sb = new StringBuilder(depth * 8);
+        for (int i = 0; i < depth; i++) {
+            sb.append(i % 2 == 0 ? "(2+" : "(0.5×");
+        }
+        sb.append('1');
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * {@code count} terms of the form √(n²+7)².
+     */
+    static String sqrtSquare(int count) {
+        StringBuilder sb = new StringBuilder(count * 10);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append('+');
+            sb.append("√(").append(i % 9 + 1).append("²+7)²");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.calculator.benchmarks;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * The string-rewriting pipeline MainActivity used before the engine module, kept
+ * verbatim (minus string resources) as the baseline the engine is measured against.
+ */
+final class LegacyPipeline {
+
+    private final MathContext mathContext = new MathContext(15, RoundingMode.HALF_UP);
+
+    String evaluateExpression(String expression) throws Exception {
+        if (expression.isEmpty()) return "0";
+
+        expression = preprocessExpression(expression);
+
+        List<String> tokens = tokenize(expression);
+        List<String> postfix = infixToPostfix(tokens);
+        double result = evaluatePostfix(postfix);
+
+        if (Double.isNaN(result)) {
+            throw new Exception("Result is not a number");
+        }
+        if (Double.isInfinite(result)) {
+            throw new Exception("Result is infinity");
+        }
+
+        return formatNumber(result);
+    }
+
+    String preprocessExpression(String expression) {
+        expression = expression.replace("×", "*");
+        expression = expression.replace("÷", "/");
+        expression = expression.replace("√", "sqrt");
+        expression = expression.replace("²", "^2");
+        expression = addImplicitMultiplication(expression);
+        return expression;
+    }
+
+    String addImplicitMultiplication(String expression) {
+        StringBuilder result = new StringBuilder();
+
+        for (int i = 0; i < expression.length(); i++) {
+            char current = expression.charAt(i);
+            result.append(current);
+
+            if (i < expression.length() - 1) {
+                char next = expression.charAt(i + 1);
+
+                if (Character.isDigit(current) && next == '(') {
+                    result.append("*");
+                } else if (current == ')' && next == '(') {
+                    result.append("*");
+                } else if (current == ')' && Character.isDigit(next)) {
+                    result.append("*");
+                }
+            }
+        }
+
+        return result.toString();
+    }
+
+    List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder currentToken = new StringBuilder();
+
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+
+            if (Character.isDigit(c) || c == '.') {
+                currentToken.append(c);
+            } else if (c == 's' && expression.substring(i).startsWith("sqrt")) {
+                if (currentToken.length() > 0) {
+                    tokens.add(currentToken.toString());
+                    currentToken.setLength(0);
+                }
+                tokens.add("sqrt");
+                i += 3;
+            } else {
+                if (currentToken.length() > 0) {
+                    tokens.add(currentToken.toString());
+                    currentToken.setLength(0);
+                }
+                tokens.add(String.valueOf(c));
+            }
+        }
+
+        if (currentToken.length() > 0) {
+            tokens.add(currentToken.toString());
+        }
+
+        return tokens;
+    }
+
+    List<String> infixToPostfix(List<String> tokens) {
+        List<String> output = new ArrayList<>();
+        Stack<String> operators = new Stack<>();
+
+        for (String token : tokens) {
+            if (isNumber(token)) {
+                output.add(token);
+            } else if (token.equals("sqrt")) {
+                operators.push(token);
+            } else if (isOperator(token.charAt(0))) {
+                while (!operators.isEmpty() &&
+                       !operators.peek().equals("(") &&
+                       getPrecedence(operators.peek()) >= getPrecedence(token)) {
+                    output.add(operators.pop());
+                }
+                operators.push(token);
+            } else if (token.equals("(")) {
+                operators.push(token);
+            } else if (token.equals(")")) {
+                while (!operators.isEmpty() && !operators.peek().equals("(")) {
+                    output.add(operators.pop());
+                }
+                if (!operators.isEmpty()) {
+                    operators.pop();
+                }
+                if (!operators.isEmpty() && operators.peek().equals("sqrt")) {
+                    output.add(operators.pop());
+                }
+            }
+        }
+
+        while (!operators.isEmpty()) {
+            output.add(operators.pop());
+        }
+
+        return output;
+    }
+
+    double evaluatePostfix(List<String> postfix) throws Exception {
+        Stack<Double> stack = new Stack<>();
+
+        for (String token : postfix) {
+            if (isNumber(token)) {
+                stack.push(Double.parseDouble(token));
+            } else if (token.equals("sqrt")) {
+                if (stack.isEmpty()) throw new Exception("Invalid expression");
+                double operand = stack.pop();
+                if (operand < 0) throw new Exception("Cannot calculate square root of negative number");
+                stack.push(Math.sqrt(operand));
+            } else if (isOperator(token.charAt(0))) {
+                if (stack.size() < 2) throw new Exception("Invalid expression");
+                double b = stack.pop();
+                double a = stack.pop();
+
+                switch (token) {
+                    case "+":
+                        stack.push(a + b);
+                        break;
+                    case "-":
+                        stack.push(a - b);
+                        break;
+                    case "*":
+                        stack.push(a * b);
+                        break;
+                    case "/":
+                        if (b == 0) throw new Exception("Cannot divide by zero");
+                        stack.push(a / b);
+                        break;
+                    case "^":
+                        stack.push(Math.pow(a, b));
+                        break;
+                    default:
+                        throw new Exception("Unknown operator: " + token);
+                }
+            }
+        }
+
+        if (stack.size() != 1) {
+            throw new Exception("Invalid expression");
+        }
+
+        return stack.pop();
+    }
+
+    String formatNumber(double number) {
+        if (Math.abs(number) >= 1e10 || (Math.abs(number) < 1e-6 && number != 0)) {
+            return String.format("%.6E", number);
+        }
+
+        BigDecimal bd = new BigDecimal(number, mathContext);
+        bd = bd.stripTrailingZeros();
+
+        if (bd.scale() <= 0) {
+            return bd.toBigInteger().toString();
+        } else {
+            return bd.toPlainString();
+        }
+    }
+
+    private boolean isNumber(String token) {
+        try {
+            Double.parseDouble(token);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private boolean isOperator(char c) {
+        return c == '+' || c == '-' || c == '*' || c == '/' || c == '^' || c == '×' || c == '÷';
+    }
+
+    private int getPrecedence(String operator) {
+        switch (operator) {
+            case "+":
+            case "-":
+                return 1;
+            case "*":
+            case "/":
+                return 2;
+            case "^":
+                return 3;
+            case "sqrt":
+                return 4;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.calculator.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each stage of the pre-engine pipeline on its own, fed the output of the previous
+ * stage, plus the whole pipeline end to end.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LegacyPipelineBenchmark {
+
+    @Param({Expressions.SHORT, Expressions.TERMS_1K, Expressions.TERMS_10K,
+            Expressions.NESTED, Expressions.SQRT_SQUARE})
+    public String shape;
+
+    private final LegacyPipeline pipeline = new LegacyPipeline();
+
+    private String expression;
+    private String substituted;
+    private String preprocessed;
+    private List<String> tokens;
+    private List<String> postfix;
+    private double result;
+
+    @Setup
+    public void setUp() throws Exception {
+        expression = Expressions.forShape(shape);
+        substituted = expression.replace("×", "*").replace("÷", "/")
+            .replace("√", "sqrt").replace("²", "^2");
+        preprocessed = pipeline.preprocessExpression(expression);
+        tokens = pipeline.tokenize(preprocessed);
+        postfix = pipeline.infixToPostfix(tokens);
+        result = pipeline.evaluatePostfix(postfix);
+    }
+
+    @Benchmark
+    public String preprocessExpression() {
+        return pipeline.preprocessExpression(expression);
+    }
+
+    @Benchmark
+    public String addImplicitMultiplication() {
+        return pipeline.addImplicitMultiplication(substituted);
+    }
+
+    @Benchmark
+    public List<String> tokenize() {
+        return pipeline.tokenize(preprocessed);
+    }
+
+    @Benchmark
+    public List<String> infixToPostfix() {
+        return pipeline.infixToPostfix(tokens);
+    }
+
+    @Benchmark
+    public double evaluatePostfix() throws Exception {
+        return pipeline.evaluatePostfix(postfix);
+    }
+
+    @Benchmark
+    public String formatNumber() {
+        return pipeline.formatNumber(result);
+    }
+
+    @Benchmark
+    public String endToEnd() throws Exception {
+        return pipeline.evaluateExpression(expression);
+    }
+}
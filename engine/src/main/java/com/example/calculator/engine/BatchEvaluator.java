@@ -0,0 +1,198 @@
+package com.example.calculator.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a line-delimited file of expressions with the app's rules, one output line
+ * per input line:
+ *
+ * <pre>
+ * OK	39.75
+ * DIVISION_BY_ZERO
+ * </pre>
+ *
+ * <p>Results are formatted by {@link NumberFormatter} as the display shows them; failures
+ * are the {@link EvaluationException.Reason} name. An empty line evaluates to 0.
+ *
+ * <p>Input is read in chunks of {@code chunkLines} lines that are evaluated in parallel
+ * on a {@link ForkJoinPool} and written back in input order. At most two chunks per
+ * worker are in flight, so memory stays bounded however long the file is.
+ *
+ * <p>Also runnable from the command line: {@code BatchEvaluator <input> <output> [threads]}.
+ */
+public final class BatchEvaluator {
+
+    public static final int DEFAULT_CHUNK_LINES = 4096;
+
+    private static final String OK = "OK";
+
+    // Evaluators are not thread-safe; each worker keeps its own
+    private static final ThreadLocal<Worker> WORKERS = ThreadLocal.withInitial(Worker::new);
+
+    private final int parallelism;
+    private final int chunkLines;
+
+    public BatchEvaluator() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_LINES);
+    }
+
+    public BatchEvaluator(int parallelism, int chunkLines) {
+        if (parallelism < 1 || chunkLines < 1) {
+            throw new IllegalArgumentException("parallelism and chunkLines must be positive");
+        }
+        this.parallelism = parallelism;
+        this.chunkLines = chunkLines;
+    }
+
+    /**
+     * Counts of the lines evaluated by one run.
+     */
+    public static final class Summary {
+        private final long[] failures = new long[EvaluationException.Reason.values().length];
+        private long lineCount;
+
+        public long getLineCount() {
+            return lineCount;
+        }
+
+        public long getFailureCount() {
+            long total = 0;
+            for (long count : failures) {
+                total += count;
+            }
+            return total;
+        }
+
+        public long getFailureCount(EvaluationException.Reason reason) {
+            return failures[reason.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(lineCount).append(" lines, ").append(getFailureCount()).append(" failed");
+            for (EvaluationException.Reason reason : EvaluationException.Reason.values()) {
+                if (failures[reason.ordinal()] > 0) {
+                    sb.append(", ").append(reason).append('=').append(failures[reason.ordinal()]);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    public Summary evaluate(Path input, Path output) throws IOException, InterruptedException {
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return evaluate(in, out);
+        }
+    }
+
+    /**
+     * Evaluates every line of {@code in} and writes the results to {@code out} in order.
+     * Neither stream is closed.
+     */
+    public Summary evaluate(BufferedReader in, Writer out) throws IOException, InterruptedException {
+        Summary summary = new Summary();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        try {
+            while (true) {
+                String[] lines = new String[chunkLines];
+                int count = 0;
+                String line;
+                while (count < chunkLines && (line = in.readLine()) != null) {
+                    lines[count++] = line;
+                }
+                if (count == 0) break;
+
+                if (inFlight.size() == 2 * parallelism) {
+                    write(inFlight.poll(), out, summary);
+                }
+                int size = count;
+                inFlight.add(pool.submit(() -> WORKERS.get().evaluate(lines, size)));
+                if (count < chunkLines) break;
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), out, summary);
+            }
+            out.flush();
+            return summary;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write(Future<Chunk> future, Writer out, Summary summary)
+            throws IOException, InterruptedException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (ExecutionException e) {
+            // Evaluation reports failures as results, so this is a bug
+            throw new IllegalStateException(e.getCause());
+        }
+        out.append(chunk.text);
+        summary.lineCount += chunk.lineCount;
+        for (int i = 0; i < summary.failures.length; i++) {
+            summary.failures[i] += chunk.failures[i];
+        }
+    }
+
+    private static final class Chunk {
+        final StringBuilder text;
+        final int lineCount;
+        final long[] failures = new long[EvaluationException.Reason.values().length];
+
+        Chunk(int lineCount) {
+            this.text = new StringBuilder(lineCount * 16);
+            this.lineCount = lineCount;
+        }
+    }
+
+    private static final class Worker {
+        private final Evaluator evaluator = new Evaluator();
+        private final NumberFormatter formatter = new NumberFormatter();
+
+        Chunk evaluate(String[] lines, int count) {
+            Chunk chunk = new Chunk(count);
+            StringBuilder text = chunk.text;
+            for (int i = 0; i < count; i++) {
+                try {
+                    double value = evaluator.evaluate(lines[i]);
+                    text.append(OK).append('\t');
+                    formatter.format(value, text);
+                } catch (EvaluationException e) {
+                    text.append(e.getReason().name());
+                    chunk.failures[e.getReason().ordinal()]++;
+                }
+                text.append('\n');
+            }
+            return chunk;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: BatchEvaluator <input> <output> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        Summary summary = new BatchEvaluator(threads, DEFAULT_CHUNK_LINES)
+            .evaluate(Paths.get(args[0]), Paths.get(args[1]));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.err.println(summary + " in " + millis + " ms");
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.calculator.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The calculator's display state in a compact binary form, small enough for a saved
+ * instance state bundle and cheap to restore before the first frame.
+ *
+ * <pre>
+ * version:byte flags:byte precisionIndex:byte expression:string lastResult:string
+ * string := length:varint utf8
+ * </pre>
+ */
+public final class CalculatorSnapshot {
+
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_RESULT_DISPLAYED = 1;
+    private static final int FLAG_ERROR = 2;
+
+    private final String expression;
+    private final String lastResult;
+    private final boolean resultDisplayed;
+    private final boolean error;
+    private final int precisionIndex;
+
+    public CalculatorSnapshot(String expression, String lastResult, boolean resultDisplayed,
+                              boolean error, int precisionIndex) {
+        if (precisionIndex < 0 || precisionIndex > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("precisionIndex out of range: " + precisionIndex);
+        }
+        this.expression = expression;
+        this.lastResult = lastResult;
+        this.resultDisplayed = resultDisplayed;
+        this.error = error;
+        this.precisionIndex = precisionIndex;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public String getLastResult() {
+        return lastResult;
+    }
+
+    public boolean isResultDisplayed() {
+        return resultDisplayed;
+    }
+
+    public boolean hasError() {
+        return error;
+    }
+
+    public int getPrecisionIndex() {
+        return precisionIndex;
+    }
+
+    public byte[] toBytes() {
+        byte[] expressionBytes = expression.getBytes(StandardCharsets.UTF_8);
+        byte[] resultBytes = lastResult.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(3 + 10 + expressionBytes.length + resultBytes.length);
+
+        int flags = (resultDisplayed ? FLAG_RESULT_DISPLAYED : 0) | (error ? FLAG_ERROR : 0);
+        out.put(VERSION).put((byte) flags).put((byte) precisionIndex);
+        putString(out, expressionBytes);
+        putString(out, resultBytes);
+
+        byte[] bytes = new byte[out.position()];
+        out.flip();
+        out.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes {@link #toBytes()} output. Returns null for a snapshot that is truncated or
+     * from another version, so callers fall back to a fresh state.
+     */
+    public static CalculatorSnapshot fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 3 || bytes[0] != VERSION) return null;
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        in.position(1);
+        int flags = in.get();
+        int precisionIndex = in.get();
+        String expression = getString(in);
+        String lastResult = expression != null ? getString(in) : null;
+        if (lastResult == null || precisionIndex < 0) return null;
+        return new CalculatorSnapshot(expression, lastResult,
+            (flags & FLAG_RESULT_DISPLAYED) != 0, (flags & FLAG_ERROR) != 0, precisionIndex);
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        int length = bytes.length;
+        while ((length & ~0x7f) != 0) {
+            out.put((byte) (length & 0x7f | 0x80));
+            length >>>= 7;
+        }
+        out.put((byte) length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (!in.hasRemaining() || shift > 28) return null;
+            byte b = in.get();
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) break;
+        }
+        if (length < 0 || length > in.remaining()) return null;
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,588 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Roots, integrals and derivatives of an expression in {@link #VARIABLE}, written as
+ * calls around ordinary expressions:
+ *
+ * <pre>
+ * solve(x²-2, 0, 2)      root in [0, 2], by Brent's method
+ * ∫(sin x, 0, 3.14159)   integral over [0, 3.14159], by adaptive Gauss–Kronrod
+ * d/dx(x³, 2)            derivative at 2, by Ridders' extrapolation
+ * </pre>
+ *
+ * <p>On the keypad the comma types a decimal point and / types ÷, so the arguments may
+ * also be separated by semicolons and the derivative written {@code d÷dx}.
+ *
+ * <p>Each of these evaluates the function thousands of times, so the function is
+ * compiled once into a {@link CompiledExpression} and run with x bound in a
+ * {@code double[]}; the bounds are plain expressions. The integrator evaluates the 15
+ * Kronrod points of an interval, and both halves of a split, in one
+ * {@link CompiledExpression#evaluateBatch} call, and always splits the interval with
+ * the largest error estimate until the total is within tolerance.
+ *
+ * <p>A search that cannot succeed (no sign change for {@code solve}, an integral that does
+ * not converge) fails with {@link EvaluationException.Reason#NO_CONVERGENCE}. The methods
+ * check for interruption between steps and throw {@link InterruptedException}, which is
+ * how a caller on another thread cancels them, and report their progress towards the
+ * tolerance to an optional {@link Progress}.
+ *
+ * <p>Instances are reusable but not thread-safe.
+ */
+public final class CalculusEvaluator {
+
+    /**
+     * Receives the estimated fraction of the work done, from 0 to 1, on the evaluating
+     * thread. Calls are at least a percent apart.
+     */
+    public interface Progress {
+        void onProgress(double fraction);
+    }
+
+    public static final String VARIABLE = "x";
+
+    private static final int SOLVE = 0;
+    private static final int INTEGRATE = 1;
+    private static final int DIFFERENTIATE = 2;
+    private static final String[] NAMES = {"solve", "∫", "integrate", "d/dx", "d÷dx"};
+    private static final int[] OPERATIONS = {SOLVE, INTEGRATE, INTEGRATE, DIFFERENTIATE, DIFFERENTIATE};
+    private static final int[] ARGUMENT_COUNTS = {3, 3, 2};
+
+    static final int MAX_SOLVER_ITERATIONS = 200;
+    static final int MAX_INTERVALS = 2000;
+    static final double RELATIVE_TOLERANCE = 1e-12;
+    static final double ABSOLUTE_TOLERANCE = 1e-14;
+    // Intervals are not split below this fraction of the whole, about 1e-30
+    private static final int MAX_SPLIT_DEPTH = 100;
+
+    // Gauss–Kronrod 7–15 rule on [-1, 1] (QUADPACK's qk15): the Kronrod nodes from the
+    // edge inwards, the odd ones being the Gauss nodes, with the centre last
+    private static final double[] KRONROD_NODES = {
+        0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+        0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+        0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+        0.207784955007898467600689403773245, 0
+    };
+    private static final double[] KRONROD_WEIGHTS = {
+        0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+        0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+        0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+        0.204432940075298892414161999234649, 0.209482141084727828012999174891714
+    };
+    // For Kronrod nodes 1, 3, 5 and 7
+    private static final double[] GAUSS_WEIGHTS = {
+        0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+        0.381830050505118944950369775488975, 0.417959183673469387755102040816327
+    };
+    private static final int RULE_POINTS = 15;
+
+    // Ridders: step shrink factor, table size, and when to give up on a growing error
+    private static final double RIDDERS_SHRINK = 1.4;
+    private static final int RIDDERS_STEPS = 10;
+    private static final double RIDDERS_SAFE = 2;
+    // The first step relative to |x|, how many times and by how much shorter to start
+    // again, and the relative error past which there is no answer
+    private static final double RIDDERS_FIRST_STEP = 0.1;
+    private static final int RIDDERS_STARTS = 4;
+    private static final double RIDDERS_RESTART_SHRINK = 10;
+    private static final double RIDDERS_MAX_ERROR = 1e-6;
+
+    private final Evaluator boundEvaluator = new Evaluator();
+
+    private CompiledExpression function;
+    private int slot;
+    private double[] variables;
+    private double[] stack;
+    private double[][] columns;
+    private final double[] xs = new double[2 * RULE_POINTS];
+    private final double[] ys = new double[2 * RULE_POINTS];
+    private final double[] ruleBounds = new double[3];
+    private long evaluationCount;
+    private double derivativeError;
+
+    private Progress progress;
+    private int reportedPercent;
+
+    // Integration intervals, a max-heap on error
+    private double[] lows = new double[64];
+    private double[] highs = new double[64];
+    private double[] results = new double[64];
+    private double[] errors = new double[64];
+    private int intervalCount;
+
+    /**
+     * Whether {@code input} is one of the calls this evaluator handles.
+     */
+    public static boolean accepts(CharSequence input) {
+        return operation(input) >= 0;
+    }
+
+    /**
+     * Evaluates a {@code solve}, {@code ∫} or {@code d/dx} call. Error positions point
+     * into {@code input}.
+     */
+    public double evaluate(CharSequence input, Progress progress) throws EvaluationException, InterruptedException {
+        int match = operation(input);
+        if (match < 0) {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, 0);
+        }
+        int operation = OPERATIONS[match];
+        int open = skipSpaces(input, skipSpaces(input, 0) + NAMES[match].length());
+        int close = closingParen(input, open);
+        if (close < 0 || skipSpaces(input, close + 1) != input.length()) {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, open);
+        }
+
+        // Arguments are split at the commas or semicolons between the parentheses
+        int[] bounds = new int[ARGUMENT_COUNTS[operation] + 1];
+        int count = 0;
+        bounds[count++] = open + 1;
+        int depth = 0;
+        for (int i = open + 1; i < close; i++) {
+            char c = input.charAt(i);
+            if (c == '(') depth++;
+            if (c == ')') depth--;
+            if ((c == ',' || c == ';') && depth == 0) {
+                if (count == bounds.length - 1) {
+                    throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, i);
+                }
+                bounds[count++] = i + 1;
+            }
+        }
+        if (count != bounds.length - 1) {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, close);
+        }
+        bounds[count] = close + 1;
+
+        CompiledExpression f;
+        try {
+            f = CompiledExpression.compile(input.subSequence(bounds[0], bounds[1] - 1), VARIABLE).optimize();
+        } catch (EvaluationException e) {
+            throw offset(e, bounds[0]);
+        }
+        double a = bound(input, bounds[1], bounds[2] - 1);
+        switch (operation) {
+            case SOLVE:
+                return solve(f, VARIABLE, a, bound(input, bounds[2], bounds[3] - 1), progress);
+            case INTEGRATE:
+                return integrate(f, VARIABLE, a, bound(input, bounds[2], bounds[3] - 1), progress);
+            default:
+                return differentiate(f, VARIABLE, a);
+        }
+    }
+
+    /**
+     * A root of {@code f} between {@code a} and {@code b}, where it must change sign.
+     * Brent's method: inverse quadratic or secant steps while they converge, bisection
+     * when they do not, so it is never slower than bisection.
+     */
+    public double solve(CompiledExpression f, String variable, double a, double b, Progress progress)
+            throws EvaluationException, InterruptedException {
+        bind(f, variable, progress);
+        double fa = call(a);
+        double fb = call(b);
+        if (fa == 0) return a;
+        if (fb == 0) return b;
+        if ((fa > 0) == (fb > 0)) {
+            throw new EvaluationException(EvaluationException.Reason.NO_CONVERGENCE, -1);
+        }
+        double endValue = Math.max(Math.abs(fa), Math.abs(fb));
+
+        double c = a;
+        double fc = fa;
+        double d = b - a;
+        double e = d;
+        double initialWidth = Math.abs(b - a);
+        for (int iteration = 0; iteration < MAX_SOLVER_ITERATIONS; iteration++) {
+            checkInterrupted();
+            if ((fb > 0) == (fc > 0)) {
+                // Keep the root between b and c
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+            double tolerance = 2 * Math.ulp(b) + ABSOLUTE_TOLERANCE / 2;
+            double middle = (c - b) / 2;
+            if (Math.abs(middle) <= tolerance || fb == 0) {
+                // A sign change with no zero, across a pole or a jump
+                if (Math.abs(fb) > endValue) {
+                    throw new EvaluationException(EvaluationException.Reason.NO_CONVERGENCE, -1);
+                }
+                return b;
+            }
+            report(Math.log(initialWidth / Math.abs(middle)) / Math.log(initialWidth / tolerance));
+
+            if (Math.abs(e) < tolerance || Math.abs(fa) <= Math.abs(fb)) {
+                d = middle;
+                e = d;
+            } else {
+                double p;
+                double q;
+                double s = fb / fa;
+                if (a == c) {
+                    // Secant
+                    p = 2 * middle * s;
+                    q = 1 - s;
+                } else {
+                    // Inverse quadratic interpolation
+                    q = fa / fc;
+                    double r = fb / fc;
+                    p = s * (2 * middle * q * (q - r) - (b - a) * (r - 1));
+                    q = (q - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0) {
+                    q = -q;
+                } else {
+                    p = -p;
+                }
+                if (2 * p < Math.min(3 * middle * q - Math.abs(tolerance * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                } else {
+                    d = middle;
+                    e = d;
+                }
+            }
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tolerance ? d : Math.copySign(tolerance, middle);
+            fb = call(b);
+        }
+        throw new EvaluationException(EvaluationException.Reason.NO_CONVERGENCE, -1);
+    }
+
+    /**
+     * The integral of {@code f} from {@code a} to {@code b}, to a relative accuracy of
+     * about {@value #RELATIVE_TOLERANCE}.
+     */
+    public double integrate(CompiledExpression f, String variable, double a, double b, Progress progress)
+            throws EvaluationException, InterruptedException {
+        bind(f, variable, progress);
+        if (a == b) return 0;
+        intervalCount = 0;
+        ruleBounds[0] = a;
+        ruleBounds[1] = b;
+        rule(1);
+        push(a, b, ys[0], ys[1]);
+        double total = ys[0];
+        double error = ys[1];
+        double initialError = error;
+        double minWidth = Math.scalb(Math.abs(b - a), -MAX_SPLIT_DEPTH);
+
+        while (error > Math.max(ABSOLUTE_TOLERANCE, RELATIVE_TOLERANCE * Math.abs(total))) {
+            checkInterrupted();
+            if (intervalCount == MAX_INTERVALS) {
+                throw new EvaluationException(EvaluationException.Reason.NO_CONVERGENCE, -1);
+            }
+            double target = Math.max(ABSOLUTE_TOLERANCE, RELATIVE_TOLERANCE * Math.abs(total));
+            report(Math.log(initialError / error) / Math.log(initialError / target));
+
+            double low = lows[0];
+            double high = highs[0];
+            total -= results[0];
+            error -= errors[0];
+            pop();
+            double middle = (low + high) / 2;
+            // Still short of the tolerance this deep, the integral is taken not to converge
+            if (Math.abs(high - low) < minWidth || middle == low || middle == high) {
+                throw new EvaluationException(EvaluationException.Reason.NO_CONVERGENCE, -1);
+            }
+            ruleBounds[0] = low;
+            ruleBounds[1] = middle;
+            ruleBounds[2] = high;
+            rule(2);
+            push(low, middle, ys[0], ys[1]);
+            push(middle, high, ys[2], ys[3]);
+            total += ys[0] + ys[2];
+            error += ys[1] + ys[3];
+        }
+
+        // Sum afresh rather than trust the running total's cancellations
+        double sum = 0;
+        for (int i = 0; i < intervalCount; i++) {
+            sum += results[i];
+        }
+        return Opcodes.checkResult(sum);
+    }
+
+    /**
+     * The derivative of {@code f} at {@code x}: central differences at shrinking steps,
+     * extrapolated to a step of zero, with the estimate whose error is smallest. Throws
+     * NO_CONVERGENCE when even that error is large next to the derivative.
+     */
+    public double differentiate(CompiledExpression f, String variable, double x) throws EvaluationException {
+        bind(f, variable, null);
+        // On the scale of x, so that a nearby pole or a fast oscillation is not stepped
+        // over; the extrapolation is started again from shorter steps if its error stays
+        // large next to the derivative
+        double h = RIDDERS_FIRST_STEP * Math.max(Math.abs(x), RIDDERS_FIRST_STEP);
+        double[][] table = new double[RIDDERS_STEPS][RIDDERS_STEPS];
+        double best = 0;
+        double bestError = Double.MAX_VALUE;
+        for (int start = 0; start < RIDDERS_STARTS; start++, h /= RIDDERS_RESTART_SHRINK) {
+            double derivative = ridders(x, h, table);
+            if (derivativeError < bestError) {
+                best = derivative;
+                bestError = derivativeError;
+            }
+            if (bestError <= RIDDERS_MAX_ERROR * Math.max(1, Math.abs(best))) {
+                return Opcodes.checkResult(best);
+            }
+        }
+        throw new EvaluationException(EvaluationException.Reason.NO_CONVERGENCE, -1);
+    }
+
+    /**
+     * Function evaluations by the last call, for measurements.
+     */
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    private void bind(CompiledExpression f, String variable, Progress progress) {
+        int slot = f.getVariableSlot(variable);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Not compiled with " + variable);
+        }
+        if (f != function) {
+            function = f;
+            variables = new double[f.getVariableCount()];
+            stack = new double[f.getMaxStackDepth()];
+            columns = f.newBatchStack(2 * RULE_POINTS);
+        }
+        this.slot = slot;
+        this.progress = progress;
+        reportedPercent = 0;
+        evaluationCount = 0;
+    }
+
+    private double call(double x) throws EvaluationException {
+        variables[slot] = x;
+        evaluationCount++;
+        return function.evaluate(variables, stack);
+    }
+
+    /**
+     * Applies the Gauss–Kronrod rule to the {@code intervals} consecutive intervals
+     * between the points in {@link #ruleBounds}, in one batch. Leaves the result and error
+     * estimate of interval {@code k} in {@code ys[2k]} and {@code ys[2k + 1]}.
+     */
+    private void rule(int intervals) throws EvaluationException {
+        double[] bounds = ruleBounds;
+        int n = 0;
+        for (int k = 0; k < intervals; k++) {
+            double centre = (bounds[k] + bounds[k + 1]) / 2;
+            double half = (bounds[k + 1] - bounds[k]) / 2;
+            for (int j = 0; j < KRONROD_NODES.length - 1; j++) {
+                xs[n++] = centre - half * KRONROD_NODES[j];
+                xs[n++] = centre + half * KRONROD_NODES[j];
+            }
+            xs[n++] = centre;
+        }
+        function.evaluateBatch(variables, slot, xs, ys, n, columns);
+        evaluationCount += n;
+
+        // Results go over the first values, which interval 0 has read by then
+        for (int k = 0; k < intervals; k++) {
+            int base = k * RULE_POINTS;
+            double half = (bounds[k + 1] - bounds[k]) / 2;
+            double centreValue = ys[base + RULE_POINTS - 1];
+            double kronrod = KRONROD_WEIGHTS[7] * centreValue;
+            double gauss = GAUSS_WEIGHTS[3] * centreValue;
+            for (int j = 0; j < KRONROD_NODES.length - 1; j++) {
+                double pair = ys[base + 2 * j] + ys[base + 2 * j + 1];
+                kronrod += KRONROD_WEIGHTS[j] * pair;
+                if ((j & 1) == 1) gauss += GAUSS_WEIGHTS[j / 2] * pair;
+            }
+            if (Double.isNaN(kronrod)) {
+                throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, -1);
+            }
+            if (Double.isInfinite(kronrod)) {
+                throw new EvaluationException(EvaluationException.Reason.NO_CONVERGENCE, -1);
+            }
+            ys[2 * k] = kronrod * half;
+            ys[2 * k + 1] = Math.abs((kronrod - gauss) * half);
+        }
+    }
+
+    /**
+     * Ridders' extrapolation of central differences from step {@code h}: the estimate
+     * whose error is smallest, with that error left in {@link #derivativeError}.
+     */
+    private double ridders(double x, double h, double[][] table) throws EvaluationException {
+        // A step that leaves the domain is cut by more than half, so that the edge stays
+        // far off
+        for (int attempt = 0; !centralDifference(x, h, table, 0); attempt++) {
+            if (attempt == 64) throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, -1);
+            h /= 8;
+        }
+
+        double best = table[0][0];
+        double bestError = Double.MAX_VALUE;
+        for (int i = 1; i < RIDDERS_STEPS; i++) {
+            h /= RIDDERS_SHRINK;
+            if (!centralDifference(x, h, table, i)) break;
+            double factor = RIDDERS_SHRINK * RIDDERS_SHRINK;
+            for (int j = 1; j <= i; j++) {
+                table[j][i] = (table[j - 1][i] * factor - table[j - 1][i - 1]) / (factor - 1);
+                factor *= RIDDERS_SHRINK * RIDDERS_SHRINK;
+                double error = Math.max(Math.abs(table[j][i] - table[j - 1][i]),
+                    Math.abs(table[j][i] - table[j - 1][i - 1]));
+                if (error <= bestError) {
+                    bestError = error;
+                    best = table[j][i];
+                }
+            }
+            // Higher orders have started to lose precision
+            if (Math.abs(table[i][i] - table[i - 1][i - 1]) >= RIDDERS_SAFE * bestError) break;
+        }
+        derivativeError = bestError;
+        return best;
+    }
+
+    /**
+     * Stores the central difference at step {@code h} in {@code table[0][i]}; false if
+     * the function is undefined at either point.
+     */
+    private boolean centralDifference(double x, double h, double[][] table, int i) {
+        xs[0] = x + h;
+        xs[1] = x - h;
+        function.evaluateBatch(variables, slot, xs, ys, 2, columns);
+        evaluationCount += 2;
+        // The step actually taken, after rounding x ± h
+        double difference = (ys[0] - ys[1]) / (xs[0] - xs[1]);
+        table[0][i] = difference;
+        return !Double.isNaN(difference) && !Double.isInfinite(difference);
+    }
+
+    private void push(double low, double high, double result, double error) {
+        if (intervalCount == lows.length) {
+            int capacity = intervalCount * 2;
+            lows = Arrays.copyOf(lows, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+            results = Arrays.copyOf(results, capacity);
+            errors = Arrays.copyOf(errors, capacity);
+        }
+        int i = intervalCount++;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (errors[parent] >= error) break;
+            move(parent, i);
+            i = parent;
+        }
+        set(i, low, high, result, error);
+    }
+
+    private void pop() {
+        int last = --intervalCount;
+        if (last == 0) return;
+        double low = lows[last];
+        double high = highs[last];
+        double result = results[last];
+        double error = errors[last];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= last) break;
+            if (child + 1 < last && errors[child + 1] > errors[child]) child++;
+            if (errors[child] <= error) break;
+            move(child, i);
+            i = child;
+        }
+        set(i, low, high, result, error);
+    }
+
+    private void move(int from, int to) {
+        set(to, lows[from], highs[from], results[from], errors[from]);
+    }
+
+    private void set(int i, double low, double high, double result, double error) {
+        lows[i] = low;
+        highs[i] = high;
+        results[i] = result;
+        errors[i] = error;
+    }
+
+    private void report(double fraction) {
+        if (progress == null) return;
+        int percent = (int) (100 * Math.min(1, Math.max(0, fraction)));
+        if (percent > reportedPercent) {
+            reportedPercent = percent;
+            progress.onProgress(percent / 100.0);
+        }
+    }
+
+    private double bound(CharSequence input, int start, int end) throws EvaluationException {
+        try {
+            return boundEvaluator.evaluate(input.subSequence(start, end));
+        } catch (EvaluationException e) {
+            throw offset(e, start);
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+    }
+
+    private static EvaluationException offset(EvaluationException e, int offset) {
+        return e.getPosition() < 0 ? e : new EvaluationException(e.getReason(), e.getPosition() + offset);
+    }
+
+    /**
+     * Whether {@code input[0, end)} ends with the name of one of the calls.
+     */
+    static boolean endsWithName(CharSequence input, int end) {
+        for (String name : NAMES) {
+            if (end >= name.length() && regionMatches(input, end - name.length(), name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Index in {@link #NAMES} of the call {@code input} starts with, or -1.
+     */
+    private static int operation(CharSequence input) {
+        int start = skipSpaces(input, 0);
+        for (int i = 0; i < NAMES.length; i++) {
+            String name = NAMES[i];
+            if (regionMatches(input, start, name)) {
+                int open = skipSpaces(input, start + name.length());
+                if (open < input.length() && input.charAt(open) == '(') return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int closingParen(CharSequence input, int open) {
+        int depth = 0;
+        for (int i = open; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '(') depth++;
+            if (c == ')' && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(CharSequence input, int i) {
+        while (i < input.length() && input.charAt(i) <= ' ') i++;
+        return i;
+    }
+
+    private static boolean regionMatches(CharSequence input, int start, String word) {
+        if (start + word.length() > input.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (input.charAt(start + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+}
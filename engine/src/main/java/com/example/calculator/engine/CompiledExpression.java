@@ -0,0 +1,438 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * An expression parsed once into a flat postfix program.
+ * Instructions are {@link Opcodes} in an {@code int[]}, with constants in a separate
+ * {@code double[]} pool and named variables bound to slots, so sweeping a formula over
+ * many inputs only runs the interpreter loop:
+ *
+ * <pre>
+ * CompiledExpression f = CompiledExpression.compile("x²+2x+1", "x");
+ * double[] vars = new double[1];
+ * for (...) { vars[0] = x; y = f.evaluate(vars); }
+ * </pre>
+ *
+ * <p>{@link #optimize()} rewrites the program into a cheaper equivalent, which pays off
+ * when it is evaluated many times, as a plot or a table does.
+ *
+ * <p>{@link #evaluate(double[])} reuses an internal stack and is not thread-safe;
+ * concurrent callers pass their own stack to {@link #evaluate(double[], double[])}.
+ * {@link #evaluateBatch} sweeps one variable over a whole array of inputs at once.
+ */
+public final class CompiledExpression {
+
+    private static final String[] MNEMONICS = {
+        "const", "load", "+", "-", "*", "/", "^", "sqrt", "sqr", "neg"
+    };
+
+    private final String source;
+    private final String[] variables;
+    private final int[] code;
+    private final int[] positions;
+    private final double[] constants;
+    private final int maxStackDepth;
+    private final int eliminatedNodeCount;
+    private final double[] stack;
+
+    CompiledExpression(String source, String[] variables, int[] code, int[] positions,
+                       double[] constants, int maxStackDepth, int eliminatedNodeCount) {
+        this.source = source;
+        this.variables = variables;
+        this.code = code;
+        this.positions = positions;
+        this.constants = constants;
+        this.maxStackDepth = maxStackDepth;
+        this.eliminatedNodeCount = eliminatedNodeCount;
+        this.stack = new double[maxStackDepth];
+    }
+
+    /**
+     * Parses {@code expression}. Identifiers must be one of {@code variables}; the index
+     * of a name in that list is its slot in the array passed to {@link #evaluate(double[])}.
+     */
+    public static CompiledExpression compile(CharSequence expression, String... variables)
+            throws EvaluationException {
+        Compiler compiler = new Compiler(variables, null, false);
+        new ExpressionParser().parse(expression, compiler);
+        return compiler.build(expression.toString());
+    }
+
+    /**
+     * Parses {@code expression} with identifiers resolved to slots of {@code symbols}.
+     * Unknown names are added to the table if {@code declare} is set and are
+     * {@link EvaluationException.Reason#UNDEFINED_VARIABLE} otherwise.
+     */
+    static CompiledExpression compile(CharSequence expression, SymbolTable symbols, boolean declare)
+            throws EvaluationException {
+        Compiler compiler = new Compiler(null, symbols, declare);
+        new ExpressionParser(symbols).parse(expression, compiler);
+        return compiler.build(expression.toString());
+    }
+
+    /**
+     * An equivalent program with constant subexpressions folded, powers turned into
+     * multiplications and operands ordered for a shallower stack; see {@link Optimizer}.
+     * Results are the same except that an integer power may differ from
+     * {@link Math#pow} in the last bits.
+     */
+    public CompiledExpression optimize() {
+        return Optimizer.optimize(source, variables, code, positions, constants, eliminatedNodeCount);
+    }
+
+    public double evaluate(double[] variables) throws EvaluationException {
+        return evaluate(variables, stack);
+    }
+
+    /**
+     * Runs the program on a caller-supplied stack of at least {@link #getMaxStackDepth()} slots.
+     */
+    public double evaluate(double[] variables, double[] stack) throws EvaluationException {
+        int[] code = this.code;
+        int size = 0;
+        int pc = 0;
+
+        while (pc < code.length) {
+            int opcode = code[pc];
+            switch (opcode) {
+                case Opcodes.CONST:
+                    stack[size++] = constants[code[pc + 1]];
+                    pc += 2;
+                    continue;
+                case Opcodes.LOAD:
+                    stack[size++] = variables[code[pc + 1]];
+                    pc += 2;
+                    continue;
+                case Opcodes.INTEGER_POWER:
+                    stack[size - 1] = Opcodes.integerPower(stack[size - 1], code[pc + 1]);
+                    pc += 2;
+                    continue;
+                case Opcodes.ADD:
+                    size--;
+                    stack[size - 1] += stack[size];
+                    break;
+                case Opcodes.SUBTRACT:
+                    size--;
+                    stack[size - 1] -= stack[size];
+                    break;
+                case Opcodes.MULTIPLY:
+                    size--;
+                    stack[size - 1] *= stack[size];
+                    break;
+                case Opcodes.SQUARE:
+                    stack[size - 1] *= stack[size - 1];
+                    break;
+                case Opcodes.NEGATE:
+                    stack[size - 1] = -stack[size - 1];
+                    break;
+                default:
+                    if (Opcodes.isUnary(opcode)) {
+                        stack[size - 1] = Opcodes.applyUnary(opcode, stack[size - 1], positions[pc]);
+                    } else {
+                        size--;
+                        stack[size - 1] = Opcodes.applyBinary(opcode, stack[size - 1], stack[size], positions[pc]);
+                    }
+                    break;
+            }
+            pc++;
+        }
+
+        return Opcodes.checkResult(stack[0]);
+    }
+
+    /**
+     * A scratch stack for {@link #evaluateBatch}: one column of {@code width} values per
+     * stack slot.
+     */
+    public double[][] newBatchStack(int width) {
+        return new double[maxStackDepth][width];
+    }
+
+    /**
+     * Evaluates the program for {@code count} values of the variable in {@code slot} at
+     * once. Each instruction runs over whole columns, so the interpreter dispatch is paid
+     * once per instruction rather than once per point, and the inner loops are plain
+     * array arithmetic. Other variables are read from {@code variables}.
+     *
+     * <p>Points where the expression is undefined (division by zero, square root of a
+     * negative, a function outside its domain, overflow) come out as NaN instead of
+     * throwing, which is what a plot needs.
+     *
+     * @param columns scratch from {@link #newBatchStack(int)}, at least {@code count} wide
+     */
+    public void evaluateBatch(double[] variables, int slot, double[] xs, double[] ys, int count,
+                              double[][] columns) {
+        int[] code = this.code;
+        int size = 0;
+        int pc = 0;
+
+        while (pc < code.length) {
+            int opcode = code[pc];
+            if (opcode == Opcodes.CONST || opcode == Opcodes.LOAD) {
+                double[] column = columns[size++];
+                int operand = code[pc + 1];
+                if (opcode == Opcodes.LOAD && operand == slot) {
+                    System.arraycopy(xs, 0, column, 0, count);
+                } else {
+                    Arrays.fill(column, 0, count, opcode == Opcodes.CONST ? constants[operand] : variables[operand]);
+                }
+                pc += 2;
+                continue;
+            }
+            if (opcode == Opcodes.INTEGER_POWER) {
+                double[] column = columns[size - 1];
+                int exponent = code[pc + 1];
+                for (int i = 0; i < count; i++) column[i] = Opcodes.integerPower(column[i], exponent);
+                pc += 2;
+                continue;
+            }
+
+            double[] a;
+            double[] b;
+            switch (opcode) {
+                case Opcodes.ADD:
+                    a = columns[size - 2];
+                    b = columns[--size];
+                    for (int i = 0; i < count; i++) a[i] += b[i];
+                    break;
+                case Opcodes.SUBTRACT:
+                    a = columns[size - 2];
+                    b = columns[--size];
+                    for (int i = 0; i < count; i++) a[i] -= b[i];
+                    break;
+                case Opcodes.MULTIPLY:
+                    a = columns[size - 2];
+                    b = columns[--size];
+                    for (int i = 0; i < count; i++) a[i] *= b[i];
+                    break;
+                case Opcodes.DIVIDE:
+                    a = columns[size - 2];
+                    b = columns[--size];
+                    for (int i = 0; i < count; i++) a[i] = b[i] == 0 ? Double.NaN : a[i] / b[i];
+                    break;
+                case Opcodes.POWER:
+                    a = columns[size - 2];
+                    b = columns[--size];
+                    for (int i = 0; i < count; i++) a[i] = Math.pow(a[i], b[i]);
+                    break;
+                case Opcodes.SQRT:
+                    a = columns[size - 1];
+                    for (int i = 0; i < count; i++) a[i] = a[i] < 0 ? Double.NaN : Math.sqrt(a[i]);
+                    break;
+                case Opcodes.SQUARE:
+                    a = columns[size - 1];
+                    for (int i = 0; i < count; i++) a[i] *= a[i];
+                    break;
+                case Opcodes.NEGATE:
+                    a = columns[size - 1];
+                    for (int i = 0; i < count; i++) a[i] = -a[i];
+                    break;
+                case Opcodes.SIN:
+                    a = columns[size - 1];
+                    for (int i = 0; i < count; i++) a[i] = Math.sin(a[i]);
+                    break;
+                case Opcodes.COS:
+                    a = columns[size - 1];
+                    for (int i = 0; i < count; i++) a[i] = Math.cos(a[i]);
+                    break;
+                case Opcodes.EXP:
+                    a = columns[size - 1];
+                    for (int i = 0; i < count; i++) a[i] = Math.exp(a[i]);
+                    break;
+                default:
+                    if (!Opcodes.isFunction(opcode)) {
+                        throw new IllegalStateException("Unknown opcode " + opcode);
+                    }
+                    // Functions return NaN outside their domain, as a plot wants
+                    if (Opcodes.isUnary(opcode)) {
+                        a = columns[size - 1];
+                        for (int i = 0; i < count; i++) a[i] = Functions.unary(opcode, a[i]);
+                    } else {
+                        a = columns[size - 2];
+                        b = columns[--size];
+                        for (int i = 0; i < count; i++) a[i] = Functions.binary(opcode, a[i], b[i]);
+                    }
+                    break;
+            }
+            pc++;
+        }
+
+        double[] result = columns[0];
+        for (int i = 0; i < count; i++) {
+            ys[i] = Double.isInfinite(result[i]) ? Double.NaN : result[i];
+        }
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Slot of the named variable, or -1 if the expression was not compiled with it.
+     */
+    public int getVariableSlot(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * Instructions {@link #optimize()} removed from the program as compiled; 0 for one
+     * that was not optimized.
+     */
+    public int getEliminatedNodeCount() {
+        return eliminatedNodeCount;
+    }
+
+    /**
+     * Copy of the instruction stream, mainly for tooling and tests.
+     */
+    public int[] getCode() {
+        return code.clone();
+    }
+
+    public double[] getConstants() {
+        return constants.clone();
+    }
+
+    /**
+     * The distinct variable slots the program reads, in ascending order.
+     */
+    int[] getLoadedSlots() {
+        int[] slots = new int[code.length / 2];
+        int count = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            int opcode = code[pc];
+            if (opcode == Opcodes.LOAD) {
+                slots[count++] = code[pc + 1];
+            }
+            if (Opcodes.hasOperand(opcode)) pc++;
+        }
+        Arrays.sort(slots, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || slots[distinct - 1] != slots[i]) slots[distinct++] = slots[i];
+        }
+        return Arrays.copyOf(slots, distinct);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc++) {
+            if (sb.length() > 0) sb.append(' ');
+            int opcode = code[pc];
+            if (opcode == Opcodes.CONST) {
+                sb.append(constants[code[++pc]]);
+            } else if (opcode == Opcodes.LOAD) {
+                sb.append(variables[code[++pc]]);
+            } else if (opcode == Opcodes.INTEGER_POWER) {
+                sb.append('^').append(code[++pc]);
+            } else if (opcode < MNEMONICS.length) {
+                sb.append(MNEMONICS[opcode]);
+            } else {
+                sb.append(Functions.name(opcode));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Compiler implements ExpressionParser.Sink {
+        private final String[] variables;
+        private final SymbolTable symbols;
+        private final boolean declare;
+        private int[] code = new int[32];
+        private int[] positions = new int[32];
+        private int codeLength;
+        private double[] constants = new double[8];
+        private int constantCount;
+        private int depth;
+        private int maxDepth;
+
+        Compiler(String[] variables, SymbolTable symbols, boolean declare) {
+            this.variables = variables != null ? variables.clone() : null;
+            this.symbols = symbols;
+            this.declare = declare;
+        }
+
+        @Override
+        public void number(double value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            emit(Opcodes.CONST, -1);
+            emit(constantCount++, -1);
+            push();
+        }
+
+        @Override
+        public void identifier(CharSequence input, int start, int end) throws EvaluationException {
+            if (symbols != null) {
+                int slot = declare ? symbols.declare(input, start, end) : symbols.find(input, start, end);
+                if (slot < 0) {
+                    throw new EvaluationException(EvaluationException.Reason.UNDEFINED_VARIABLE, start);
+                }
+                emit(Opcodes.LOAD, start);
+                emit(slot, start);
+                push();
+                return;
+            }
+            for (int slot = 0; slot < variables.length; slot++) {
+                if (matches(variables[slot], input, start, end)) {
+                    emit(Opcodes.LOAD, start);
+                    emit(slot, start);
+                    push();
+                    return;
+                }
+            }
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, start);
+        }
+
+        @Override
+        public void operator(int opcode, int position) {
+            emit(opcode, position);
+            if (!Opcodes.isUnary(opcode)) {
+                depth--;
+            }
+        }
+
+        CompiledExpression build(String source) {
+            return new CompiledExpression(source, symbols != null ? symbols.getNames() : variables,
+                Arrays.copyOf(code, codeLength), Arrays.copyOf(positions, codeLength),
+                Arrays.copyOf(constants, constantCount), Math.max(maxDepth, 1), 0);
+        }
+
+        private void emit(int value, int position) {
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, codeLength * 2);
+                positions = Arrays.copyOf(positions, codeLength * 2);
+            }
+            positions[codeLength] = position;
+            code[codeLength++] = value;
+        }
+
+        private void push() {
+            depth++;
+            if (depth > maxDepth) maxDepth = depth;
+        }
+
+        private static boolean matches(String name, CharSequence input, int start, int end) {
+            if (name.length() != end - start) return false;
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != input.charAt(start + i)) return false;
+            }
+            return true;
+        }
+    }
+}
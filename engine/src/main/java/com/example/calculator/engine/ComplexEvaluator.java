@@ -0,0 +1,367 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates expressions over the complex numbers, where {@code i} is the imaginary unit:
+ * {@code √(-4)} is {@code 2i}, {@code (-8)^(1÷3)} is {@code 1+1.732050807568877i} and
+ * {@code ln(-1)} is {@code 3.141592653589793i}.
+ *
+ * <p>Values are kept as real and imaginary parts in two parallel {@code double} stacks,
+ * so, as in {@link Evaluator}, an operation allocates nothing; only the final result is
+ * an object. Where an operation has real operands and a real result, that result is
+ * {@link Evaluator}'s exactly, so real expressions evaluate as they do there; the complex
+ * formulas only take over where the real ones are undefined. Functions return their
+ * principal value. Γ, factorial and the combinatorics are real-only and fail with
+ * {@link EvaluationException.Reason#DOMAIN_ERROR} for non-real operands.
+ *
+ * <p>Instances are reusable but not thread-safe.
+ */
+public final class ComplexEvaluator {
+
+    /**
+     * A complex result. Format it with {@link NumberFormatter#formatComplex}.
+     */
+    public static final class Complex {
+        private final double real;
+        private final double imaginary;
+
+        Complex(double real, double imaginary) {
+            this.real = real;
+            this.imaginary = imaginary;
+        }
+
+        public double getReal() {
+            return real;
+        }
+
+        public double getImaginary() {
+            return imaginary;
+        }
+
+        public boolean isReal() {
+            return imaginary == 0;
+        }
+
+        @Override
+        public String toString() {
+            return new NumberFormatter().formatComplex(real, imaginary);
+        }
+    }
+
+    public static final String IMAGINARY_UNIT = "i";
+
+    private static final double LN_10 = Math.log(10);
+
+    // Integer powers up to this size are multiplied out, so that i² is exactly -1
+    private static final int MAX_MULTIPLIED_POWER = 64;
+
+    private final ExpressionParser parser = new ExpressionParser();
+    private final StackSink sink = new StackSink();
+
+    /**
+     * Evaluates display text with the same grammar as {@link Evaluator#evaluate}.
+     */
+    public Complex evaluate(CharSequence expression) throws EvaluationException {
+        sink.size = 0;
+        parser.parse(expression, sink);
+        return new Complex(Opcodes.checkResult(sink.re[0]), Opcodes.checkResult(sink.im[0]));
+    }
+
+    private static final class StackSink implements ExpressionParser.Sink {
+        double[] re = new double[16];
+        double[] im = new double[16];
+        int size;
+
+        // Result of the complex helpers, so that they need not allocate
+        private double resultRe;
+        private double resultIm;
+
+        @Override
+        public void number(double value) {
+            push(value, 0);
+        }
+
+        @Override
+        public void identifier(CharSequence input, int start, int end) throws EvaluationException {
+            if (end - start != 1 || input.charAt(start) != 'i') {
+                throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, start);
+            }
+            push(0, 1);
+        }
+
+        @Override
+        public void operator(int opcode, int position) throws EvaluationException {
+            if (Opcodes.isUnary(opcode)) {
+                int i = size - 1;
+                unary(opcode, re[i], im[i], position);
+                re[i] = resultRe;
+                im[i] = resultIm;
+            } else {
+                int j = --size;
+                int i = j - 1;
+                binary(opcode, re[i], im[i], re[j], im[j], position);
+                re[i] = resultRe;
+                im[i] = resultIm;
+            }
+        }
+
+        private void unary(int opcode, double x, double y, int position) throws EvaluationException {
+            if (y == 0) {
+                // Real operand: the real result when there is one
+                double real = realUnary(opcode, x);
+                if (!Double.isNaN(real) || Double.isNaN(x)) {
+                    set(real, 0);
+                    return;
+                }
+            }
+            switch (opcode) {
+                case Opcodes.SQRT:
+                    sqrt(x, y);
+                    return;
+                case Opcodes.SQUARE:
+                    set(x * x - y * y, 2 * x * y);
+                    return;
+                case Opcodes.NEGATE:
+                    set(-x, -y);
+                    return;
+                case Opcodes.SIN:
+                    set(Math.sin(x) * Math.cosh(y), Math.cos(x) * Math.sinh(y));
+                    return;
+                case Opcodes.COS:
+                    set(Math.cos(x) * Math.cosh(y), -Math.sin(x) * Math.sinh(y));
+                    return;
+                case Opcodes.TAN:
+                    divide(Math.sin(2 * x), Math.sinh(2 * y), Math.cos(2 * x) + Math.cosh(2 * y), 0, position);
+                    return;
+                case Opcodes.SINH:
+                    set(Math.sinh(x) * Math.cos(y), Math.cosh(x) * Math.sin(y));
+                    return;
+                case Opcodes.COSH:
+                    set(Math.cosh(x) * Math.cos(y), Math.sinh(x) * Math.sin(y));
+                    return;
+                case Opcodes.TANH:
+                    divide(Math.sinh(2 * x), Math.sin(2 * y), Math.cosh(2 * x) + Math.cos(2 * y), 0, position);
+                    return;
+                case Opcodes.ASIN:
+                    asin(x, y, position);
+                    return;
+                case Opcodes.ACOS:
+                    // acos z = π/2 - asin z
+                    asin(x, y, position);
+                    set(Math.PI / 2 - resultRe, -resultIm);
+                    return;
+                case Opcodes.ATAN:
+                    atan(x, y, position);
+                    return;
+                case Opcodes.LN:
+                    ln(x, y, position);
+                    return;
+                case Opcodes.LOG:
+                    ln(x, y, position);
+                    set(resultRe / LN_10, resultIm / LN_10);
+                    return;
+                case Opcodes.EXP:
+                    exp(x, y);
+                    return;
+                default:
+                    // Γ and factorial are real-only
+                    throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+            }
+        }
+
+        private void binary(int opcode, double a, double b, double c, double d, int position)
+                throws EvaluationException {
+            if (b == 0 && d == 0) {
+                // Real operands: the real result when there is one. This also keeps an
+                // infinite real part from turning the imaginary part into ∞·0 = NaN
+                double real = realBinary(opcode, a, c, position);
+                if (!Double.isNaN(real) || Double.isNaN(a) || Double.isNaN(c)) {
+                    set(real, 0);
+                    return;
+                }
+            }
+            switch (opcode) {
+                case Opcodes.ADD:
+                    set(a + c, b + d);
+                    return;
+                case Opcodes.SUBTRACT:
+                    set(a - c, b - d);
+                    return;
+                case Opcodes.MULTIPLY:
+                    if (b == 0) {
+                        set(a * c, a * d);
+                    } else if (d == 0) {
+                        set(a * c, b * c);
+                    } else {
+                        set(a * c - b * d, a * d + b * c);
+                    }
+                    return;
+                case Opcodes.DIVIDE:
+                    divide(a, b, c, d, position);
+                    return;
+                case Opcodes.POWER:
+                    power(a, b, c, d, position);
+                    return;
+                case Opcodes.ROOT:
+                    // n root z = z^(1/n)
+                    divide(1, 0, a, b, position);
+                    power(c, d, resultRe, resultIm, position);
+                    return;
+                default:
+                    // The combinatorics are real-only
+                    throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+            }
+        }
+
+        private static double realBinary(int opcode, double a, double c, int position) throws EvaluationException {
+            switch (opcode) {
+                case Opcodes.ADD:
+                case Opcodes.SUBTRACT:
+                case Opcodes.MULTIPLY:
+                case Opcodes.DIVIDE:
+                    return Opcodes.applyBinary(opcode, a, c, position);
+                case Opcodes.POWER:
+                    return Math.pow(a, c);
+                default:
+                    return Functions.binary(opcode, a, c);
+            }
+        }
+
+        private static double realUnary(int opcode, double x) {
+            switch (opcode) {
+                case Opcodes.SQRT:
+                    return x < 0 ? Double.NaN : Math.sqrt(x);
+                case Opcodes.SQUARE:
+                    return x * x;
+                case Opcodes.NEGATE:
+                    return -x;
+                default:
+                    return Functions.unary(opcode, x);
+            }
+        }
+
+        /**
+         * (a + bi) ÷ (c + di) by Smith's method, which scales by the larger part of the
+         * divisor so that squaring it cannot overflow.
+         */
+        private void divide(double a, double b, double c, double d, int position) throws EvaluationException {
+            if (c == 0 && d == 0) {
+                throw new EvaluationException(EvaluationException.Reason.DIVISION_BY_ZERO, position);
+            }
+            if (d == 0) {
+                set(a / c, b / c);
+            } else if (Math.abs(c) >= Math.abs(d)) {
+                double ratio = d / c;
+                double denominator = c + d * ratio;
+                set((a + b * ratio) / denominator, (b - a * ratio) / denominator);
+            } else {
+                double ratio = c / d;
+                double denominator = c * ratio + d;
+                set((a * ratio + b) / denominator, (b * ratio - a) / denominator);
+            }
+        }
+
+        /**
+         * (a + bi)^(c + di): integer powers by repeated squaring, others as e^(w ln z).
+         */
+        private void power(double a, double b, double c, double d, int position) throws EvaluationException {
+            if (d == 0 && Functions.isInteger(c) && Math.abs(c) <= MAX_MULTIPLIED_POWER) {
+                int n = (int) Math.abs(c);
+                double x = 1;
+                double y = 0;
+                for (int bit = Integer.highestOneBit(Math.max(n, 1)); bit != 0; bit >>>= 1) {
+                    double square = x * x - y * y;
+                    y = 2 * x * y;
+                    x = square;
+                    if ((n & bit) != 0) {
+                        double product = x * a - y * b;
+                        y = x * b + y * a;
+                        x = product;
+                    }
+                }
+                if (c < 0) {
+                    divide(1, 0, x, y, position);
+                } else {
+                    set(x, y);
+                }
+                return;
+            }
+            if (a == 0 && b == 0) {
+                if (c > 0) {
+                    set(0, 0);
+                    return;
+                }
+                throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+            }
+            ln(a, b, position);
+            double lnRe = resultRe;
+            double lnIm = resultIm;
+            exp(c * lnRe - d * lnIm, c * lnIm + d * lnRe);
+        }
+
+        /**
+         * Principal square root, computed so that neither part loses precision to
+         * cancellation.
+         */
+        private void sqrt(double x, double y) {
+            if (x == 0 && y == 0) {
+                set(0, 0);
+                return;
+            }
+            double t = Math.sqrt((Math.abs(x) + Math.hypot(x, y)) / 2);
+            if (x >= 0) {
+                set(t, y / (2 * t));
+            } else {
+                set(Math.abs(y) / (2 * t), Math.copySign(t, y));
+            }
+        }
+
+        private void exp(double x, double y) {
+            double magnitude = Math.exp(x);
+            set(magnitude * Math.cos(y), magnitude * Math.sin(y));
+        }
+
+        private void ln(double x, double y, int position) throws EvaluationException {
+            if (x == 0 && y == 0) {
+                throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+            }
+            set(Math.log(Math.hypot(x, y)), Math.atan2(y, x));
+        }
+
+        /**
+         * asin z = -i ln(iz + √(1 - z²)).
+         */
+        private void asin(double x, double y, int position) throws EvaluationException {
+            sqrt(1 - (x * x - y * y), -2 * x * y);
+            ln(resultRe - y, resultIm + x, position);
+            set(resultIm, -resultRe);
+        }
+
+        /**
+         * atan z = (i/2)(ln(1 - iz) - ln(1 + iz)); undefined at ±i.
+         */
+        private void atan(double x, double y, int position) throws EvaluationException {
+            ln(1 + y, -x, position);
+            double aRe = resultRe;
+            double aIm = resultIm;
+            ln(1 - y, x, position);
+            set((resultIm - aIm) / 2, (aRe - resultRe) / 2);
+        }
+
+        private void set(double real, double imaginary) {
+            resultRe = real;
+            resultIm = imaginary;
+        }
+
+        private void push(double real, double imaginary) {
+            if (size == re.length) {
+                re = Arrays.copyOf(re, size * 2);
+                im = Arrays.copyOf(im, size * 2);
+            }
+            re[size] = real;
+            im[size] = imaginary;
+            size++;
+        }
+    }
+}
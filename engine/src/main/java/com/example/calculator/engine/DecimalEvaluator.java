@@ -0,0 +1,507 @@
+package com.example.calculator.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Evaluates expressions in decimal arithmetic at a chosen {@link MathContext}, so
+ * {@code 0.1+0.2} is exactly {@code 0.3} and large integers keep every digit.
+ *
+ * <p>Values stay in {@code long} while they are integers that do not overflow, which
+ * covers most keypad input; an operand is promoted to {@link BigDecimal} only when a
+ * fraction, an overflow or an inexact operation needs it. Literals are parsed from their
+ * text rather than from the lexer's double. Results of inexact operations (division,
+ * √, negative powers) are rounded to the context's precision.
+ *
+ * <p>Trig, hyperbolic, exponential and logarithmic functions and n-th roots are computed
+ * at the context's precision by {@link DecimalMath}; factorials and combinatorics of
+ * integers are exact. Powers with a non-integer exponent other than ½, roots with a
+ * non-integer index and gamma of a non-integer are computed in double precision.
+ *
+ * <p>Instances are reusable but not thread-safe.
+ */
+public final class DecimalEvaluator {
+
+    // Integer literals of up to 18 digits always fit in a long
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+
+    // Exact factorials and combinatorics beyond this size overflow instead
+    private static final double MAX_EXACT_BITS = 1 << 20;
+
+    // Reducing a trigonometric argument needs π to as many digits as the argument has
+    // before the point, so beyond this size sin, cos and tan are not computed
+    private static final BigDecimal MAX_TRIG_ARGUMENT = new BigDecimal("1E1000");
+
+    // Powers with more digits than this before the point overflow instead, like the
+    // factorials past MAX_EXACT_BITS, rather than running into BigDecimal's exponent limit
+    private static final double MAX_MAGNITUDE = 1e9;
+
+    private final MathContext mathContext;
+    private final ExpressionParser parser = new ExpressionParser();
+    private final StackSink sink = new StackSink();
+
+    public DecimalEvaluator(MathContext mathContext) {
+        this.mathContext = mathContext;
+    }
+
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    /**
+     * Evaluates display text with the same grammar as {@link Evaluator#evaluate}.
+     */
+    public BigDecimal evaluate(CharSequence expression) throws EvaluationException {
+        sink.size = 0;
+        try {
+            parser.parse(expression, sink);
+        } catch (ArithmeticException e) {
+            // Exponent outside the range BigDecimal can represent
+            throw new EvaluationException(EvaluationException.Reason.INFINITY, -1);
+        }
+        return sink.get(0).round(mathContext);
+    }
+
+    private final class StackSink implements ExpressionParser.Sink {
+        // An entry is the long in longs[i] while decimals[i] is null
+        long[] longs = new long[16];
+        BigDecimal[] decimals = new BigDecimal[16];
+        int size;
+        char[] digits = new char[32];
+
+        @Override
+        public void number(double value) {
+            // Only called for the implicit zero of an empty expression
+            pushLong((long) value);
+        }
+
+        @Override
+        public void number(double value, CharSequence input, int start, int end)
+                throws EvaluationException {
+            int length = end - start;
+            boolean integer = length <= MAX_LONG_DIGITS;
+            long parsed = 0;
+            for (int i = start; integer && i < end; i++) {
+                char c = input.charAt(i);
+                if (c < '0' || c > '9') {
+                    integer = false;
+                } else {
+                    parsed = parsed * 10 + (c - '0');
+                }
+            }
+            if (integer) {
+                pushLong(parsed);
+                return;
+            }
+
+            if (digits.length < length) {
+                digits = new char[Math.max(length, digits.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                digits[i] = input.charAt(start + i);
+            }
+            try {
+                pushDecimal(new BigDecimal(digits, 0, length));
+            } catch (NumberFormatException e) {
+                // Only an exponent beyond int range gets past the lexer
+                throw new EvaluationException(EvaluationException.Reason.INFINITY, start);
+            }
+        }
+
+        @Override
+        public void identifier(CharSequence input, int start, int end) throws EvaluationException {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, start);
+        }
+
+        @Override
+        public void operator(int opcode, int position) throws EvaluationException {
+            if (Opcodes.isUnary(opcode)) {
+                applyUnary(opcode, size - 1, position);
+            } else {
+                size--;
+                applyBinary(opcode, size - 1, size, position);
+            }
+        }
+
+        private void applyUnary(int opcode, int i, int position) throws EvaluationException {
+            boolean isLong = decimals[i] == null;
+            long a = longs[i];
+            switch (opcode) {
+                case Opcodes.NEGATE:
+                    if (isLong && a != Long.MIN_VALUE) {
+                        longs[i] = -a;
+                    } else {
+                        decimals[i] = get(i).negate();
+                    }
+                    return;
+                case Opcodes.SQUARE:
+                    multiply(i, i);
+                    return;
+                case Opcodes.SQRT:
+                    if (signum(i) < 0) {
+                        throw new EvaluationException(EvaluationException.Reason.SQRT_NEGATIVE, position);
+                    }
+                    long root = isLong ? IntegerMath.exactSqrt(a) : -1;
+                    if (root >= 0) {
+                        longs[i] = root;
+                    } else {
+                        decimals[i] = DecimalMath.sqrt(get(i), mathContext);
+                    }
+                    return;
+                default:
+                    applyFunction(opcode, i, position);
+            }
+        }
+
+        private void applyFunction(int opcode, int i, int position) throws EvaluationException {
+            BigDecimal x = get(i);
+            if (opcode == Opcodes.SIN || opcode == Opcodes.COS || opcode == Opcodes.TAN) {
+                if (x.abs().compareTo(MAX_TRIG_ARGUMENT) > 0) {
+                    throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+                }
+            }
+            switch (opcode) {
+                case Opcodes.SIN:
+                    decimals[i] = DecimalMath.sin(x, mathContext);
+                    return;
+                case Opcodes.COS:
+                    decimals[i] = DecimalMath.cos(x, mathContext);
+                    return;
+                case Opcodes.TAN:
+                    decimals[i] = DecimalMath.tan(x, mathContext);
+                    return;
+                case Opcodes.ASIN:
+                case Opcodes.ACOS:
+                    if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+                        throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+                    }
+                    decimals[i] = opcode == Opcodes.ASIN ? DecimalMath.asin(x, mathContext) : DecimalMath.acos(x, mathContext);
+                    return;
+                case Opcodes.ATAN:
+                    decimals[i] = DecimalMath.atan(x, mathContext);
+                    return;
+                case Opcodes.SINH:
+                    decimals[i] = DecimalMath.sinh(x, mathContext);
+                    return;
+                case Opcodes.COSH:
+                    decimals[i] = DecimalMath.cosh(x, mathContext);
+                    return;
+                case Opcodes.TANH:
+                    decimals[i] = DecimalMath.tanh(x, mathContext);
+                    return;
+                case Opcodes.LN:
+                case Opcodes.LOG:
+                    if (x.signum() < 0) {
+                        throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+                    }
+                    if (x.signum() == 0) {
+                        // -Infinity in double mode
+                        throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+                    }
+                    decimals[i] = opcode == Opcodes.LN ? DecimalMath.ln(x, mathContext) : DecimalMath.log10(x, mathContext);
+                    return;
+                case Opcodes.EXP:
+                    decimals[i] = DecimalMath.exp(x, mathContext);
+                    return;
+                case Opcodes.FACTORIAL:
+                case Opcodes.GAMMA: {
+                    if (!isIntegral(x)) {
+                        decimals[i] = BigDecimal.valueOf(Opcodes.checkResult(
+                            Opcodes.applyUnary(opcode, x.doubleValue(), position)));
+                        return;
+                    }
+                    // Γ(n) = (n - 1)!, with poles at 0 and the negative integers
+                    long n = opcode == Opcodes.GAMMA ? count(i) - 1 : count(i);
+                    if (n < 0) {
+                        throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+                    }
+                    if (n > IntegerMath.MAX_SIEVE || Functions.lnGamma(n + 1) / Math.log(2) > MAX_EXACT_BITS) {
+                        throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+                    }
+                    setExact(i, IntegerMath.factorial((int) n));
+                    return;
+                }
+                default:
+                    throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, position);
+            }
+        }
+
+        private void applyBinary(int opcode, int i, int j, int position) throws EvaluationException {
+            boolean bothLong = decimals[i] == null && decimals[j] == null;
+            long a = longs[i];
+            long b = longs[j];
+            switch (opcode) {
+                case Opcodes.ADD: {
+                    long r = a + b;
+                    if (bothLong && ((a ^ r) & (b ^ r)) >= 0) {
+                        longs[i] = r;
+                    } else {
+                        decimals[i] = get(i).add(get(j), mathContext);
+                    }
+                    return;
+                }
+                case Opcodes.SUBTRACT: {
+                    long r = a - b;
+                    if (bothLong && ((a ^ b) & (a ^ r)) >= 0) {
+                        longs[i] = r;
+                    } else {
+                        decimals[i] = get(i).subtract(get(j), mathContext);
+                    }
+                    return;
+                }
+                case Opcodes.MULTIPLY:
+                    multiply(i, j);
+                    return;
+                case Opcodes.DIVIDE:
+                    if (signum(j) == 0) {
+                        throw new EvaluationException(EvaluationException.Reason.DIVISION_BY_ZERO, position);
+                    }
+                    if (bothLong && a % b == 0 && !(a == Long.MIN_VALUE && b == -1)) {
+                        longs[i] = a / b;
+                    } else {
+                        decimals[i] = get(i).divide(get(j), mathContext);
+                    }
+                    return;
+                case Opcodes.POWER:
+                    power(i, j, position);
+                    return;
+                case Opcodes.COMBINATIONS:
+                case Opcodes.PERMUTATIONS:
+                    combinatorics(opcode, i, j, position);
+                    return;
+                case Opcodes.ROOT:
+                    root(i, j, position);
+                    return;
+                default:
+                    throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, position);
+            }
+        }
+
+        /**
+         * nCr or nPr of the entries at {@code i} and {@code j}, exactly.
+         */
+        private void combinatorics(int opcode, int i, int j, int position) throws EvaluationException {
+            long n = count(i);
+            long k = count(j);
+            if (n < 0 || k < 0) {
+                throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+            }
+            if (k <= n) {
+                double bits = opcode == Opcodes.COMBINATIONS
+                    ? Functions.log2Binomial(n, k) : Functions.log2Permutations(n, k);
+                if (bits > MAX_EXACT_BITS) {
+                    throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+                }
+            }
+            setExact(i, opcode == Opcodes.COMBINATIONS ? IntegerMath.binomial(n, k) : IntegerMath.permutations(n, k));
+        }
+
+        /**
+         * The root of index {@code i} of the entry at {@code j}, left at {@code i}.
+         */
+        private void root(int i, int j, int position) throws EvaluationException {
+            BigDecimal index = get(i);
+            BigDecimal x = get(j);
+            if (!isIntegral(index) || index.abs().compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) > 0) {
+                decimals[i] = BigDecimal.valueOf(Opcodes.checkResult(
+                    Opcodes.applyBinary(Opcodes.ROOT, index.doubleValue(), x.doubleValue(), position)));
+                return;
+            }
+            int n = index.intValue();
+            if (n == 0 || (x.signum() < 0 && (n & 1) == 0)) {
+                throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+            }
+            if (x.signum() == 0 && n < 0) {
+                throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+            }
+            BigDecimal root = DecimalMath.root(x.abs(), n, mathContext);
+            decimals[i] = x.signum() < 0 ? root.negate() : root;
+        }
+
+        /**
+         * The entry at {@code i} if it is a non-negative integer in long range, else -1.
+         */
+        private long count(int i) {
+            if (decimals[i] == null) {
+                return longs[i] >= 0 ? longs[i] : -1;
+            }
+            BigDecimal value = decimals[i];
+            if (value.signum() < 0 || !isIntegral(value) || value.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+                return -1;
+            }
+            return value.longValue();
+        }
+
+        private void setExact(int i, BigInteger value) {
+            if (value.bitLength() < 64) {
+                longs[i] = value.longValue();
+                decimals[i] = null;
+            } else {
+                decimals[i] = new BigDecimal(value).round(mathContext);
+            }
+        }
+
+        private void multiply(int i, int j) {
+            long a = longs[i];
+            long b = longs[j];
+            if (decimals[i] == null && decimals[j] == null) {
+                long r = a * b;
+                if (!IntegerMath.multiplyOverflows(a, b, r)) {
+                    longs[i] = r;
+                    return;
+                }
+            }
+            decimals[i] = get(i).multiply(get(j), mathContext);
+        }
+
+        private void power(int i, int j, int position) throws EvaluationException {
+            BigDecimal exponent = get(j);
+            long n;
+            if (decimals[j] == null) {
+                n = longs[j];
+            } else if (isIntegral(exponent) && exponent.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) <= 0
+                    && exponent.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) >= 0) {
+                n = exponent.longValue();
+            } else if (exponent.compareTo(HALF) == 0) {
+                applyUnary(Opcodes.SQRT, i, position);
+                return;
+            } else if (isIntegral(exponent)) {
+                hugePower(i, exponent);
+                return;
+            } else {
+                fractionalPower(i, exponent, position);
+                return;
+            }
+
+            if (n < 0 && signum(i) == 0) {
+                // 0 to a negative power, Infinity in double mode
+                throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+            }
+            if (decimals[i] == null && n >= 0 && powLong(i, n)) {
+                return;
+            }
+            if (signum(i) != 0 && n * log10(get(i).abs()) > MAX_MAGNITUDE) {
+                throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+            }
+            decimals[i] = DecimalMath.pow(get(i), n, mathContext);
+        }
+
+        /**
+         * The entry at {@code i} to a non-integer power, as e^(y·ln x) with as many extra
+         * digits as y·ln x has before the point, since exp scales its argument's error by
+         * that much.
+         */
+        private void fractionalPower(int i, BigDecimal exponent, int position) throws EvaluationException {
+            BigDecimal base = get(i);
+            if (base.signum() < 0) {
+                // NaN in double mode
+                throw new EvaluationException(EvaluationException.Reason.NOT_A_NUMBER, position);
+            }
+            if (base.signum() == 0) {
+                if (exponent.signum() < 0) {
+                    throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+                }
+                decimals[i] = BigDecimal.ZERO;
+                return;
+            }
+            double digits = exponent.doubleValue() * log10(base);
+            if (digits > MAX_MAGNITUDE) {
+                throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+            }
+            int extra = (int) Math.max(0, Math.ceil(Math.log10(Math.abs(digits * Math.log(10)) + 1)));
+            MathContext work = new MathContext(mathContext.getPrecision() + DecimalMath.GUARD_DIGITS + extra,
+                RoundingMode.HALF_EVEN);
+            BigDecimal power = exponent.multiply(DecimalMath.ln(base, work), work);
+            decimals[i] = DecimalMath.exp(power, work).round(mathContext);
+        }
+
+        /**
+         * log10 of a positive value, to double precision whatever its exponent.
+         */
+        private double log10(BigDecimal x) {
+            int magnitude = x.precision() - x.scale();
+            return magnitude + Math.log10(x.scaleByPowerOfTen(-magnitude).doubleValue());
+        }
+
+        /**
+         * Raises the long at {@code i} to {@code n} by squaring. Returns false, leaving the
+         * entry untouched, if any intermediate step overflows.
+         */
+        private boolean powLong(int i, long n) {
+            long base = longs[i];
+            long result = 1;
+            while (true) {
+                if ((n & 1) != 0) {
+                    long r = result * base;
+                    if (IntegerMath.multiplyOverflows(result, base, r)) return false;
+                    result = r;
+                }
+                n >>>= 1;
+                if (n == 0) break;
+                long square = base * base;
+                if (IntegerMath.multiplyOverflows(base, base, square)) return false;
+                base = square;
+            }
+            longs[i] = result;
+            return true;
+        }
+
+        /**
+         * An exponent beyond long range: only 0, ±1 and fractions stay finite.
+         */
+        private void hugePower(int i, BigDecimal exponent) throws EvaluationException {
+            BigDecimal base = get(i);
+            int magnitude = base.abs().compareTo(BigDecimal.ONE);
+            if (magnitude == 0) {
+                boolean odd = exponent.toBigInteger().testBit(0);
+                decimals[i] = odd ? base : base.abs();
+                return;
+            }
+            if (base.signum() == 0 ? exponent.signum() < 0 : (magnitude > 0) == (exponent.signum() > 0)) {
+                throw new EvaluationException(EvaluationException.Reason.INFINITY, -1);
+            }
+            decimals[i] = BigDecimal.ZERO;
+        }
+
+        BigDecimal get(int i) {
+            BigDecimal decimal = decimals[i];
+            return decimal != null ? decimal : BigDecimal.valueOf(longs[i]);
+        }
+
+        private int signum(int i) {
+            return decimals[i] != null ? decimals[i].signum() : Long.signum(longs[i]);
+        }
+
+        private void pushLong(long value) {
+            ensureCapacity();
+            longs[size] = value;
+            decimals[size] = null;
+            size++;
+        }
+
+        private void pushDecimal(BigDecimal value) {
+            ensureCapacity();
+            decimals[size] = value;
+            size++;
+        }
+
+        private void ensureCapacity() {
+            if (size == longs.length) {
+                long[] grownLongs = new long[size * 2];
+                BigDecimal[] grownDecimals = new BigDecimal[size * 2];
+                System.arraycopy(longs, 0, grownLongs, 0, size);
+                System.arraycopy(decimals, 0, grownDecimals, 0, size);
+                longs = grownLongs;
+                decimals = grownDecimals;
+            }
+        }
+    }
+
+    private static boolean isIntegral(BigDecimal value) {
+        return value.signum() == 0 || value.scale() <= 0 || value.stripTrailingZeros().scale() <= 0;
+    }
+}
@@ -0,0 +1,444 @@
+package com.example.calculator.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * {@link BigDecimal} functions that the platform lacks or implements slowly on Android
+ * ({@code BigDecimal.sqrt} needs API 33).
+ *
+ * <p>The transcendental functions work with {@link #GUARD_DIGITS} extra digits and round
+ * once at the end, so results are correct to within an ulp of the requested precision.
+ * Arguments are reduced first, with as many more digits as the reduction cancels.
+ */
+final class DecimalMath {
+
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    // Digits a double seed is good for
+    private static final int SEED_PRECISION = 15;
+
+    // Extra working digits for the transcendental functions
+    static final int GUARD_DIGITS = 5;
+
+    // exp overflows BigDecimal's exponent range well before this
+    private static final BigDecimal MAX_EXP = new BigDecimal("1E9");
+
+    // atan's argument is halved until it is below this
+    private static final BigDecimal ATAN_SERIES_LIMIT = new BigDecimal("0.01");
+
+    private static final double LOG2_10 = Math.log(10) / Math.log(2);
+
+    // π to the most digits computed so far; 64 digits to start with
+    private static volatile BigDecimal pi =
+        new BigDecimal("3.141592653589793238462643383279502884197169399375105820974944592");
+
+    private DecimalMath() {}
+
+    /**
+     * Square root of a non-negative value, accurate to within one ulp of
+     * {@code mathContext}. The value is shifted by an even power of ten to a significand
+     * in [0.1, 10), so that the divisions below never work across a large exponent gap,
+     * and the root shifted back by half as much. Newton's iteration roughly doubles the
+     * number of correct digits per step, so each step runs at twice the precision of the
+     * previous one and only the last one works at full precision.
+     */
+    static BigDecimal sqrt(BigDecimal value, MathContext mathContext) {
+        if (value.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+
+        int exponent = magnitude(value);
+        int shift = exponent - (exponent & 1);
+        BigDecimal significand = value.scaleByPowerOfTen(-shift);
+
+        int target = mathContext.getPrecision() + 2;
+        BigDecimal x = new BigDecimal(Math.sqrt(significand.doubleValue()));
+        int precision = SEED_PRECISION;
+        while (true) {
+            precision = Math.min(precision * 2, target);
+            MathContext step = new MathContext(precision, RoundingMode.HALF_EVEN);
+            x = x.add(significand.divide(x, step), step).multiply(HALF, step);
+            if (precision == target) break;
+        }
+        return x.round(mathContext).scaleByPowerOfTen(shift / 2);
+    }
+
+    /**
+     * {@code base} raised to an integer power by repeated squaring, which needs about
+     * 2·log2(n) multiplications instead of n. Intermediate products carry enough guard
+     * digits that the accumulated rounding error stays below the final rounding.
+     */
+    static BigDecimal pow(BigDecimal base, long exponent, MathContext mathContext) {
+        if (exponent == 0) {
+            return BigDecimal.ONE;
+        }
+        long n = Math.abs(exponent);
+        int guard = 64 - Long.numberOfLeadingZeros(n) + 2;
+        MathContext work = new MathContext(mathContext.getPrecision() + guard, RoundingMode.HALF_EVEN);
+
+        BigDecimal result = BigDecimal.ONE;
+        BigDecimal square = base;
+        while (true) {
+            if ((n & 1) != 0) {
+                result = result.multiply(square, work);
+            }
+            n >>>= 1;
+            if (n == 0) break;
+            square = square.multiply(square, work);
+        }
+
+        if (exponent < 0) {
+            return BigDecimal.ONE.divide(result, mathContext);
+        }
+        return result.round(mathContext);
+    }
+
+    /**
+     * π to {@code digits} significant digits, by Machin's formula
+     * π = 16·atan(1/5) − 4·atan(1/239). Kept for the largest precision asked for so far.
+     */
+    static BigDecimal pi(int digits) {
+        BigDecimal cached = pi;
+        if (cached.precision() < digits) {
+            // Fixed point: every series term is a division by a small integer, which is
+            // much cheaper on a BigInteger than at a MathContext
+            int scale = digits + 2 * GUARD_DIGITS;
+            BigInteger unity = BigInteger.TEN.pow(scale);
+            BigInteger value = atanOfInverse(5, unity).shiftLeft(4).subtract(atanOfInverse(239, unity).shiftLeft(2));
+            cached = new BigDecimal(value, scale).round(new MathContext(digits, RoundingMode.HALF_EVEN));
+            pi = cached;
+        }
+        return cached.round(new MathContext(digits, RoundingMode.HALF_EVEN));
+    }
+
+    /**
+     * e to the power {@code x}. The argument is halved s times until the Taylor series
+     * converges in a few dozen terms, and the sum squared s times; each squaring doubles the
+     * relative error, so s·log10(2) more digits are carried.
+     *
+     * @throws ArithmeticException if the result is beyond BigDecimal's exponent range
+     */
+    static BigDecimal exp(BigDecimal x, MathContext mathContext) {
+        if (x.signum() == 0) {
+            return BigDecimal.ONE;
+        }
+        if (x.abs().compareTo(MAX_EXP) > 0) {
+            if (x.signum() < 0) return BigDecimal.ZERO;
+            throw new ArithmeticException("Overflow");
+        }
+
+        int precision = mathContext.getPrecision();
+        int magnitude = magnitude(x);
+        int halvings = Math.max(0, (int) Math.ceil(magnitude * LOG2_10))
+            + Math.max(8, (int) Math.sqrt(precision));
+        int digits = precision + GUARD_DIGITS + (int) Math.ceil(halvings / LOG2_10);
+        MathContext work = new MathContext(digits, RoundingMode.HALF_EVEN);
+
+        BigDecimal r = x.divide(TWO.pow(halvings), work);
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal term = BigDecimal.ONE;
+        for (int n = 1; ; n++) {
+            term = term.multiply(r, work).divide(BigDecimal.valueOf(n), work);
+            sum = sum.add(term, work);
+            if (term.signum() == 0 || magnitude(term) < -digits) break;
+        }
+        for (int i = 0; i < halvings; i++) {
+            sum = sum.multiply(sum, work);
+        }
+        return sum.round(mathContext);
+    }
+
+    /**
+     * Natural logarithm of a positive value. Away from 1 the value is written as
+     * m·10^shift with m in [0.1, 1) and ln m + shift·ln 10 is returned, so that the
+     * iteration only ever sees small operands; the product carries as many extra digits
+     * as the shift has.
+     */
+    static BigDecimal ln(BigDecimal x, MathContext mathContext) {
+        if (x.compareTo(BigDecimal.ONE) == 0) {
+            return BigDecimal.ZERO;
+        }
+
+        int shift = magnitude(x);
+        // Only values within an order of magnitude of 1 are subtracted from it, as the
+        // exact difference has as many digits as the exponent is large
+        BigDecimal d = shift == 0 || shift == 1 ? x.subtract(BigDecimal.ONE) : null;
+        if (d != null && d.abs().compareTo(HALF) < 0) {
+            // Near 1 the logarithm is small and log1p keeps its relative accuracy; below
+            // double range ln(1 + d) is d to more digits than any precision asks for
+            double seed = Math.log1p(d.doubleValue());
+            return halley(x, seed == 0 ? d : new BigDecimal(seed), mathContext);
+        }
+        if (shift == 0) {
+            return halley(x, new BigDecimal(Math.log(x.doubleValue())), mathContext);
+        }
+
+        int shiftDigits = Integer.toString(Math.abs(shift)).length();
+        MathContext work = new MathContext(mathContext.getPrecision() + GUARD_DIGITS + shiftDigits, RoundingMode.HALF_EVEN);
+        BigDecimal ln10 = halley(BigDecimal.TEN, new BigDecimal(Math.log(10)), work);
+        BigDecimal lnSignificand = ln(x.scaleByPowerOfTen(-shift), work);
+        return lnSignificand.add(ln10.multiply(BigDecimal.valueOf(shift), work), work).round(mathContext);
+    }
+
+    /**
+     * Refines a double seed {@code y} for ln x by Halley's iteration
+     * y ← y + 2(x − eʸ)/(x + eʸ). Each step triples the number of correct digits, so only
+     * the last one computes eʸ at full precision.
+     */
+    private static BigDecimal halley(BigDecimal x, BigDecimal y, MathContext mathContext) {
+        // Digits after the point: known from the seed, and needed in the result
+        int magnitude = magnitude(y);
+        int correct = SEED_PRECISION - magnitude;
+        int goal = mathContext.getPrecision() + GUARD_DIGITS - magnitude;
+        while (correct < goal) {
+            correct = Math.min(3 * correct, goal);
+            MathContext step = new MathContext(correct + Math.max(0, magnitude) + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+            BigDecimal e = exp(y, step);
+            y = y.add(TWO.multiply(x.subtract(e, step)).divide(x.add(e, step), step), step);
+        }
+        return y.round(mathContext);
+    }
+
+    /**
+     * Base-10 logarithm, exact for powers of ten.
+     */
+    static BigDecimal log10(BigDecimal x, MathContext mathContext) {
+        BigDecimal stripped = x.stripTrailingZeros();
+        if (stripped.unscaledValue().equals(BigInteger.ONE)) {
+            return BigDecimal.valueOf(-(long) stripped.scale());
+        }
+        MathContext work = new MathContext(mathContext.getPrecision() + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+        return ln(x, work).divide(ln(BigDecimal.TEN, work), mathContext);
+    }
+
+    static BigDecimal sin(BigDecimal x, MathContext mathContext) {
+        return sinOrCos(x, mathContext, 0);
+    }
+
+    static BigDecimal cos(BigDecimal x, MathContext mathContext) {
+        return sinOrCos(x, mathContext, 1);
+    }
+
+    static BigDecimal tan(BigDecimal x, MathContext mathContext) {
+        MathContext work = new MathContext(mathContext.getPrecision() + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+        return sin(x, work).divide(cos(x, work), mathContext);
+    }
+
+    /**
+     * sin(x + quadrant·π/2). x is reduced to r = x − k·π/2 with |r| ≤ π/4 against π to
+     * as many digits as x has before the point plus the result's; if r still comes out
+     * small, x was close to a multiple of π/2 and the reduction is redone with the digits
+     * that cancelled. The quadrant k picks ±sin r or ±cos r.
+     */
+    private static BigDecimal sinOrCos(BigDecimal x, MathContext mathContext, int quadrant) {
+        if (x.signum() == 0) {
+            return quadrant == 0 ? BigDecimal.ZERO : BigDecimal.ONE;
+        }
+
+        int precision = mathContext.getPrecision();
+        int integerDigits = Math.max(0, magnitude(x));
+        int cancelled = 0;
+        while (true) {
+            int digits = precision + GUARD_DIGITS + integerDigits + cancelled;
+            MathContext work = new MathContext(digits, RoundingMode.HALF_EVEN);
+            BigDecimal halfPi = pi(digits).multiply(HALF);
+            BigInteger k = x.divide(halfPi, new MathContext(integerDigits + 3, RoundingMode.HALF_EVEN))
+                .setScale(0, RoundingMode.HALF_EVEN).toBigInteger();
+            BigDecimal r = x.subtract(halfPi.multiply(new BigDecimal(k)), work);
+
+            // The guard digits absorb a digit or two of cancellation
+            int lost = r.signum() == 0 ? digits : -magnitude(r);
+            if (k.signum() != 0 && lost > cancelled + 2 && cancelled < precision) {
+                cancelled = lost + 1;
+                continue;
+            }
+
+            int turn = k.add(BigInteger.valueOf(quadrant)).intValue() & 3;
+            BigDecimal value = (turn & 1) == 0 ? sinSeries(r, work) : cosSeries(r, work);
+            return (turn & 2) == 0 ? value.round(mathContext) : value.negate().round(mathContext);
+        }
+    }
+
+    private static BigDecimal sinSeries(BigDecimal r, MathContext work) {
+        BigDecimal square = r.multiply(r, work);
+        BigDecimal sum = r;
+        BigDecimal term = r;
+        int limit = magnitude(r) - work.getPrecision();
+        for (int n = 1; ; n++) {
+            term = term.multiply(square, work).divide(BigDecimal.valueOf(-2L * n * (2 * n + 1)), work);
+            sum = sum.add(term, work);
+            if (term.signum() == 0 || magnitude(term) < limit) return sum;
+        }
+    }
+
+    private static BigDecimal cosSeries(BigDecimal r, MathContext work) {
+        BigDecimal square = r.multiply(r, work);
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal term = BigDecimal.ONE;
+        int limit = -work.getPrecision();
+        for (int n = 1; ; n++) {
+            term = term.multiply(square, work).divide(BigDecimal.valueOf(-2L * n * (2 * n - 1)), work);
+            sum = sum.add(term, work);
+            if (term.signum() == 0 || magnitude(term) < limit) return sum;
+        }
+    }
+
+    /**
+     * Arctangent. Arguments above 1 use atan(x) = π/2 − atan(1/x); the rest are halved with
+     * atan(x) = 2·atan(x / (1 + √(1 + x²))) until the series converges quickly.
+     */
+    static BigDecimal atan(BigDecimal x, MathContext mathContext) {
+        if (x.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        int digits = mathContext.getPrecision() + GUARD_DIGITS;
+        MathContext work = new MathContext(digits, RoundingMode.HALF_EVEN);
+
+        BigDecimal a = x.abs();
+        boolean inverted = a.compareTo(BigDecimal.ONE) > 0;
+        if (inverted) {
+            a = BigDecimal.ONE.divide(a, work);
+        }
+        int doublings = 0;
+        while (a.compareTo(ATAN_SERIES_LIMIT) > 0) {
+            BigDecimal root = sqrt(BigDecimal.ONE.add(a.multiply(a, work)), work);
+            a = a.divide(BigDecimal.ONE.add(root), work);
+            doublings++;
+        }
+
+        BigDecimal square = a.multiply(a, work);
+        BigDecimal sum = a;
+        BigDecimal power = a;
+        int limit = magnitude(a) - digits;
+        for (int n = 1; ; n++) {
+            power = power.multiply(square, work).negate();
+            BigDecimal term = power.divide(BigDecimal.valueOf(2L * n + 1), work);
+            sum = sum.add(term, work);
+            if (term.signum() == 0 || magnitude(term) < limit) break;
+        }
+        sum = sum.multiply(TWO.pow(doublings));
+        if (inverted) {
+            sum = pi(digits).multiply(HALF).subtract(sum, work);
+        }
+        return x.signum() < 0 ? sum.negate().round(mathContext) : sum.round(mathContext);
+    }
+
+    /**
+     * Arcsine of a value in [−1, 1], as atan(x / √(1 − x²)).
+     */
+    static BigDecimal asin(BigDecimal x, MathContext mathContext) {
+        int digits = mathContext.getPrecision() + GUARD_DIGITS;
+        if (x.abs().compareTo(BigDecimal.ONE) == 0) {
+            BigDecimal halfPi = pi(digits).multiply(HALF);
+            return (x.signum() < 0 ? halfPi.negate() : halfPi).round(mathContext);
+        }
+        MathContext work = new MathContext(digits, RoundingMode.HALF_EVEN);
+        // 1 − x² is exact, so nothing cancels near ±1
+        BigDecimal cosine = sqrt(BigDecimal.ONE.subtract(x.multiply(x)), work);
+        return atan(x.divide(cosine, work), mathContext);
+    }
+
+    /**
+     * Arccosine of a value in [−1, 1], as 2·atan(√((1 − x)/(1 + x))), which unlike
+     * π/2 − asin(x) keeps its digits near x = 1.
+     */
+    static BigDecimal acos(BigDecimal x, MathContext mathContext) {
+        int digits = mathContext.getPrecision() + GUARD_DIGITS;
+        if (x.compareTo(BigDecimal.ONE.negate()) == 0) {
+            return pi(mathContext.getPrecision());
+        }
+        MathContext work = new MathContext(digits, RoundingMode.HALF_EVEN);
+        BigDecimal ratio = BigDecimal.ONE.subtract(x).divide(BigDecimal.ONE.add(x), work);
+        return atan(sqrt(ratio, work), work).multiply(TWO).round(mathContext);
+    }
+
+    static BigDecimal sinh(BigDecimal x, MathContext mathContext) {
+        return hyperbolic(x, mathContext, Opcodes.SINH);
+    }
+
+    static BigDecimal cosh(BigDecimal x, MathContext mathContext) {
+        return hyperbolic(x, mathContext, Opcodes.COSH);
+    }
+
+    static BigDecimal tanh(BigDecimal x, MathContext mathContext) {
+        // Beyond this, tanh is 1 to the requested precision
+        if (x.abs().compareTo(BigDecimal.valueOf(1.2 * mathContext.getPrecision() + 1)) > 0) {
+            return BigDecimal.valueOf(x.signum()).round(mathContext);
+        }
+        return hyperbolic(x, mathContext, Opcodes.TANH);
+    }
+
+    /**
+     * sinh, cosh or tanh from eˣ. Near zero eˣ − e⁻ˣ cancels, so the digits that cancel
+     * are added to the working precision.
+     */
+    private static BigDecimal hyperbolic(BigDecimal x, MathContext mathContext, int opcode) {
+        if (x.signum() == 0) {
+            return opcode == Opcodes.COSH ? BigDecimal.ONE : BigDecimal.ZERO;
+        }
+        int digits = mathContext.getPrecision() + GUARD_DIGITS + Math.max(0, -magnitude(x));
+        MathContext work = new MathContext(digits, RoundingMode.HALF_EVEN);
+        BigDecimal e = exp(x, work);
+        BigDecimal inverse = BigDecimal.ONE.divide(e, work);
+        switch (opcode) {
+            case Opcodes.SINH:
+                return e.subtract(inverse, work).multiply(HALF).round(mathContext);
+            case Opcodes.COSH:
+                return e.add(inverse, work).multiply(HALF).round(mathContext);
+            default:
+                return e.subtract(inverse, work).divide(e.add(inverse, work), mathContext);
+        }
+    }
+
+    /**
+     * The {@code n}-th root of a non-negative value, exact when the root has fewer digits
+     * than the precision.
+     */
+    static BigDecimal root(BigDecimal x, int n, MathContext mathContext) {
+        if (x.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        if (n == 2) {
+            return sqrt(x, mathContext);
+        }
+        MathContext work = new MathContext(mathContext.getPrecision() + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+        BigDecimal root = exp(ln(x, work).divide(BigDecimal.valueOf(n), work), mathContext);
+        // A root that rounds to a short number may be that number exactly. Its digits u
+        // raised to n have at least n·log10(2)·(bits of u − 1) digits, so when that is more
+        // than x has the power cannot equal x and is not computed
+        BigDecimal candidate = root.stripTrailingZeros();
+        if (n > 0 && candidate.precision() < mathContext.getPrecision()
+                && (double) n * (candidate.unscaledValue().bitLength() - 1) / LOG2_10 <= x.precision()
+                && candidate.pow(n).compareTo(x) == 0) {
+            return candidate;
+        }
+        return root;
+    }
+
+    /**
+     * atan(1/n)·{@code unity} by its series in 1/n², truncating each term; the error is at
+     * most one unit per term.
+     */
+    private static BigInteger atanOfInverse(int n, BigInteger unity) {
+        BigInteger square = BigInteger.valueOf((long) n * n);
+        BigInteger power = unity.divide(BigInteger.valueOf(n));
+        BigInteger sum = power;
+        for (int k = 1; power.signum() != 0; k++) {
+            power = power.divide(square);
+            BigInteger term = power.divide(BigInteger.valueOf(2L * k + 1));
+            sum = (k & 1) == 0 ? sum.add(term) : sum.subtract(term);
+        }
+        return sum;
+    }
+
+    /**
+     * Position of the leading digit: |x| is in [10^(m−1), 10^m) for the returned m.
+     */
+    private static int magnitude(BigDecimal x) {
+        return x.precision() - x.scale();
+    }
+}
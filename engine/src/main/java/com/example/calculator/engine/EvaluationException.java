@@ -0,0 +1,50 @@
+package com.example.calculator.engine;
+
+/**
+ * Thrown when an expression cannot be evaluated.
+ * The {@link Reason} lets callers map the failure onto their own messages
+ * (the app uses string resources, the engine has no Android dependency).
+ */
+public class EvaluationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        INVALID_EXPRESSION,
+        DIVISION_BY_ZERO,
+        SQRT_NEGATIVE,
+        NOT_A_NUMBER,
+        INFINITY,
+        // A function applied outside its domain, such as ln of a negative
+        DOMAIN_ERROR,
+        // A name with no value in the Workspace
+        UNDEFINED_VARIABLE,
+        // A Workspace formula that depends on itself
+        CIRCULAR_REFERENCE,
+        // Quantities of different dimensions combined, such as metres plus seconds
+        INCOMPATIBLE_UNITS,
+        // A root or integral that could not be found to the required accuracy
+        NO_CONVERGENCE
+    }
+
+    private final Reason reason;
+    private final int position;
+
+    public EvaluationException(Reason reason, int position) {
+        // Previews hit this for every incomplete expression, so skip the stack trace
+        super(reason.name() + " at " + position, null, false, false);
+        this.reason = reason;
+        this.position = position;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Index in the input where the problem was detected, or -1 if it applies to the result.
+     */
+    public int getPosition() {
+        return position;
+    }
+}
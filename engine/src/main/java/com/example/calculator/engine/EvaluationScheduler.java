@@ -0,0 +1,330 @@
+package com.example.calculator.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs evaluations on a background thread and delivers only the latest result.
+ *
+ * <p>Preview requests arriving within the coalescing window are merged into one
+ * evaluation: the edits are folded into a single {@link IncrementalEvaluator#update}
+ * from the earliest changed offset. A newer request supersedes any evaluation that is
+ * already running; its result is dropped rather than delivered. Results are handed to
+ * the {@code resultExecutor} (the UI thread's handler in the app) and checked there
+ * once more, so a callback never sees a stale value.
+ *
+ * <p>Previews and final results ({@link #evaluateNow}) are tracked separately, so typing
+ * does not discard the result of a pending "=". With a {@link ResultCache}, every preview
+ * is recorded so that "=" on the same text is answered from the cache.
+ *
+ * <p>Final results can also be computed in decimal ({@link DecimalEvaluator}), exact
+ * rational ({@link RationalEvaluator}) or complex ({@link ComplexEvaluator}) arithmetic;
+ * previews stay in double precision, which is all the preview line shows.
+ *
+ * <p>Queue wait, evaluation and delivery times are recorded in {@link Instrumentation}
+ * when it is enabled.
+ */
+public final class EvaluationScheduler {
+
+    public interface Callback {
+        void onResult(double value);
+
+        void onError(EvaluationException error);
+    }
+
+    /**
+     * Receives a final result computed in decimal, rational or complex arithmetic.
+     */
+    public interface ValueCallback<T> {
+        void onResult(T value);
+
+        void onError(EvaluationException error);
+    }
+
+    private interface Computation<T> {
+        T compute() throws EvaluationException;
+    }
+
+    private final Executor resultExecutor;
+    private final long coalesceDelayMillis;
+    private final ScheduledThreadPoolExecutor executor;
+    private final ResultCache resultCache;
+
+    // Only touched on the worker thread
+    private final IncrementalEvaluator previewEvaluator = new IncrementalEvaluator();
+    private final Evaluator evaluator;
+    private DecimalEvaluator decimalEvaluator;
+    private RationalEvaluator rationalEvaluator;
+    private ComplexEvaluator complexEvaluator;
+
+    private final Object lock = new Object();
+    private String pendingText;
+    private int pendingChangeStart = Integer.MAX_VALUE;
+    private Callback pendingCallback;
+    private long pendingGeneration;
+    private boolean previewQueued;
+    private Future<?> previewFuture;
+    private Future<?> runningPreview;
+
+    // Bumped by every request; previews under the lock, results from the caller's thread
+    private volatile long previewGeneration;
+    private volatile long resultGeneration;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+
+    public EvaluationScheduler(Executor resultExecutor, long coalesceDelayMillis) {
+        this(resultExecutor, coalesceDelayMillis, null);
+    }
+
+    public EvaluationScheduler(Executor resultExecutor, long coalesceDelayMillis, ResultCache resultCache) {
+        this.resultExecutor = resultExecutor;
+        this.coalesceDelayMillis = coalesceDelayMillis;
+        this.resultCache = resultCache;
+        this.evaluator = new Evaluator(resultCache);
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "calculator-evaluation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Queues a preview of {@code text}, which differs from the previously scheduled text
+     * from {@code changeStart} onwards. Every edit must be reported, even ones whose
+     * result the caller will ignore, so the incremental state stays in sync.
+     */
+    public void schedulePreview(String text, int changeStart, Callback callback) {
+        submittedCount.incrementAndGet();
+        synchronized (lock) {
+            pendingGeneration = ++previewGeneration;
+            pendingText = text;
+            pendingChangeStart = Math.min(pendingChangeStart, changeStart);
+            pendingCallback = callback;
+
+            if (previewQueued) {
+                coalescedCount.incrementAndGet();
+                return;
+            }
+
+            if (runningPreview != null) {
+                // Superseded; its result will fail the generation check
+                runningPreview.cancel(true);
+            }
+            previewQueued = true;
+            previewFuture = executor.schedule(this::runPreview, coalesceDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Evaluates {@code text} as soon as possible, skipping the coalescing delay.
+     */
+    public void evaluateNow(String text, Callback callback) {
+        submittedCount.incrementAndGet();
+        long generation = ++resultGeneration;
+        long submitted = Instrumentation.start();
+        executor.execute(() -> {
+            Instrumentation.stop(Instrumentation.QUEUE_WAIT, submitted);
+            if (generation != resultGeneration) {
+                cancelledCount.incrementAndGet();
+                return;
+            }
+            long start = Instrumentation.start();
+            try {
+                double value = evaluateCached(text);
+                Instrumentation.stop(Instrumentation.EVALUATE, start);
+                deliver(false, generation, callback, value, null);
+            } catch (EvaluationException e) {
+                deliver(false, generation, callback, 0, e);
+            }
+        });
+    }
+
+    /**
+     * Evaluates {@code text} in decimal arithmetic at {@code mathContext}. All final
+     * results share one generation, so any kind of request supersedes the others.
+     */
+    public void evaluateNow(String text, MathContext mathContext, ValueCallback<BigDecimal> callback) {
+        submitResult(callback, () -> {
+            if (decimalEvaluator == null || !decimalEvaluator.getMathContext().equals(mathContext)) {
+                decimalEvaluator = new DecimalEvaluator(mathContext);
+            }
+            return decimalEvaluator.evaluate(text);
+        });
+    }
+
+    /**
+     * Evaluates {@code text} as an exact fraction.
+     */
+    public void evaluateExact(String text, ValueCallback<Rational> callback) {
+        submitResult(callback, () -> {
+            if (rationalEvaluator == null) {
+                rationalEvaluator = new RationalEvaluator();
+            }
+            return rationalEvaluator.evaluate(text);
+        });
+    }
+
+    /**
+     * Evaluates {@code text} over the complex numbers.
+     */
+    public void evaluateComplex(String text, ValueCallback<ComplexEvaluator.Complex> callback) {
+        submitResult(callback, () -> {
+            if (complexEvaluator == null) {
+                complexEvaluator = new ComplexEvaluator();
+            }
+            return complexEvaluator.evaluate(text);
+        });
+    }
+
+    /**
+     * Drops any pending or running work without delivering it.
+     */
+    public void cancel() {
+        synchronized (lock) {
+            previewGeneration++;
+            if (runningPreview != null) {
+                runningPreview.cancel(true);
+            }
+        }
+        resultGeneration++;
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tasks waiting for the worker thread, including a coalescing preview.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * Requests merged into a preview that was already queued.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Evaluations whose result was dropped because a newer request superseded them.
+     */
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    private void runPreview() {
+        String text;
+        int changeStart;
+        Callback callback;
+        long generation;
+        synchronized (lock) {
+            text = pendingText;
+            changeStart = pendingChangeStart;
+            callback = pendingCallback;
+            generation = pendingGeneration;
+            pendingChangeStart = Integer.MAX_VALUE;
+            previewQueued = false;
+            runningPreview = previewFuture;
+        }
+
+        // The edit is applied even if superseded, since later edits build on it
+        long start = Instrumentation.start();
+        previewEvaluator.update(text, changeStart);
+        try {
+            if (generation == previewGeneration) {
+                double value = previewEvaluator.evaluate();
+                Instrumentation.stop(Instrumentation.PREVIEW, start);
+                if (resultCache != null) {
+                    resultCache.put(ResultCache.normalize(text), value);
+                }
+                deliver(true, generation, callback, value, null);
+            } else {
+                cancelledCount.incrementAndGet();
+            }
+        } catch (EvaluationException e) {
+            deliver(true, generation, callback, 0, e);
+        } finally {
+            synchronized (lock) {
+                runningPreview = null;
+            }
+        }
+    }
+
+    private double evaluateCached(String text) throws EvaluationException {
+        if (resultCache == null) {
+            return evaluator.evaluate(text);
+        }
+        String key = ResultCache.normalize(text);
+        double value = resultCache.get(key);
+        if (Double.isNaN(value)) {
+            value = evaluator.evaluate(text);
+            resultCache.put(key, value);
+        }
+        return value;
+    }
+
+    private <T> void submitResult(ValueCallback<T> callback, Computation<T> computation) {
+        submittedCount.incrementAndGet();
+        long generation = ++resultGeneration;
+        long submitted = Instrumentation.start();
+        executor.execute(() -> {
+            Instrumentation.stop(Instrumentation.QUEUE_WAIT, submitted);
+            if (generation != resultGeneration) {
+                cancelledCount.incrementAndGet();
+                return;
+            }
+            long start = Instrumentation.start();
+            try {
+                T value = computation.compute();
+                Instrumentation.stop(Instrumentation.EVALUATE, start);
+                deliver(false, generation, () -> callback.onResult(value));
+            } catch (EvaluationException e) {
+                deliver(false, generation, () -> callback.onError(e));
+            }
+        });
+    }
+
+    private void deliver(boolean preview, long generation, Callback callback,
+                         double value, EvaluationException error) {
+        deliver(preview, generation, () -> {
+            if (error != null) {
+                callback.onError(error);
+            } else {
+                callback.onResult(value);
+            }
+        });
+    }
+
+    private void deliver(boolean preview, long generation, Runnable delivery) {
+        long posted = Instrumentation.start();
+        resultExecutor.execute(() -> {
+            Instrumentation.stop(Instrumentation.DELIVERY, posted);
+            if (generation != (preview ? previewGeneration : resultGeneration)) {
+                cancelledCount.incrementAndGet();
+                return;
+            }
+            completedCount.incrementAndGet();
+            delivery.run();
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.calculator.engine;
+
+/**
+ * Evaluates calculator expressions in a single pass.
+ * The {@link ExpressionParser} drives the {@link Lexer} and hands over each operator
+ * as soon as its operands are complete, so values live on a primitive stack and no
+ * token lists or intermediate strings are built. Once the stack has grown to the
+ * deepest expression seen, evaluation does not allocate.
+ *
+ * <p>Instances are reusable but not thread-safe.
+ */
+public final class Evaluator {
+
+    private final ExpressionParser parser = new ExpressionParser();
+    private final StackSink sink = new StackSink();
+    private final ResultCache groupCache;
+
+    public Evaluator() {
+        this(null);
+    }
+
+    /**
+     * Creates an evaluator that reuses the values of closed parenthesized groups from
+     * {@code groupCache} and records new ones there.
+     */
+    public Evaluator(ResultCache groupCache) {
+        this.groupCache = groupCache;
+    }
+
+    /**
+     * Evaluates display text such as {@code 2(3+√(16))÷4²}. An empty expression is zero.
+     */
+    public double evaluate(CharSequence expression) throws EvaluationException {
+        sink.size = 0;
+        if (groupCache != null) {
+            parser.parse(expression, sink, groupCache);
+        } else {
+            parser.parse(expression, sink);
+        }
+        return Opcodes.checkResult(sink.stack[0]);
+    }
+
+    private static final class StackSink implements ExpressionParser.ValueSink {
+        double[] stack = new double[16];
+        int size;
+
+        @Override
+        public void number(double value) {
+            if (size == stack.length) {
+                double[] grown = new double[size * 2];
+                System.arraycopy(stack, 0, grown, 0, size);
+                stack = grown;
+            }
+            stack[size++] = value;
+        }
+
+        @Override
+        public double peek() {
+            return stack[size - 1];
+        }
+
+        @Override
+        public void identifier(CharSequence input, int start, int end) throws EvaluationException {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, start);
+        }
+
+        @Override
+        public void operator(int opcode, int position) throws EvaluationException {
+            if (Opcodes.isUnary(opcode)) {
+                stack[size - 1] = Opcodes.applyUnary(opcode, stack[size - 1], position);
+            } else {
+                double b = stack[--size];
+                stack[size - 1] = Opcodes.applyBinary(opcode, stack[size - 1], b, position);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Editable expression text as a gap buffer: the unused capacity sits at the cursor, so
+ * inserting or deleting there moves no text and typing is O(1) however long the
+ * expression grows. Moving the cursor costs the distance moved.
+ *
+ * <p>The buffer also keeps what the keypad asks about on every press: the parenthesis
+ * counts, updated as characters come and go, and whether the number just before the
+ * cursor already has a decimal point, worked out only after an edit that could have
+ * changed it.
+ */
+public final class ExpressionBuffer implements CharSequence {
+
+    private static final int DECIMAL_UNKNOWN = -1;
+    private static final int DECIMAL_NO = 0;
+    private static final int DECIMAL_YES = 1;
+
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    private int openParens;
+    private int closeParens;
+    private int decimalState = DECIMAL_NO;
+
+    // Reused by toString() until the next edit
+    private String text = "";
+
+    public ExpressionBuffer() {
+        this(64);
+    }
+
+    public ExpressionBuffer(int capacity) {
+        chars = new char[Math.max(capacity, 16)];
+        gapEnd = chars.length;
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    public boolean isEmpty() {
+        return length() == 0;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException(index + " of " + length());
+        }
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    public int getCursor() {
+        return gapStart;
+    }
+
+    public void setCursor(int cursor) {
+        if (cursor < 0 || cursor > length()) {
+            throw new IndexOutOfBoundsException(cursor + " of " + length());
+        }
+        if (cursor == gapStart) return;
+        if (cursor < gapStart) {
+            int count = gapStart - cursor;
+            System.arraycopy(chars, cursor, chars, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else {
+            int count = cursor - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+        decimalState = DECIMAL_UNKNOWN;
+    }
+
+    /**
+     * The character before the cursor, or 0 at the start.
+     */
+    public char charBeforeCursor() {
+        return gapStart > 0 ? chars[gapStart - 1] : 0;
+    }
+
+    public void insert(char c) {
+        if (gapStart == gapEnd) {
+            grow(1);
+        }
+        chars[gapStart++] = c;
+        inserted(c);
+        text = null;
+    }
+
+    public void insert(CharSequence s) {
+        int count = s.length();
+        if (gapEnd - gapStart < count) {
+            grow(count);
+        }
+        for (int i = 0; i < count; i++) {
+            char c = s.charAt(i);
+            chars[gapStart++] = c;
+            inserted(c);
+        }
+        text = null;
+    }
+
+    /**
+     * Deletes the character before the cursor. Returns false at the start of the text.
+     */
+    public boolean deleteBefore() {
+        if (gapStart == 0) return false;
+        removed(chars[--gapStart]);
+        text = null;
+        return true;
+    }
+
+    /**
+     * Deletes the character after the cursor. Returns false at the end of the text.
+     */
+    public boolean deleteAfter() {
+        if (gapEnd == chars.length) return false;
+        char c = chars[gapEnd++];
+        if (c == '(') openParens--;
+        if (c == ')') closeParens--;
+        text = null;
+        return true;
+    }
+
+    /**
+     * Replaces the whole text and moves the cursor to its end.
+     */
+    public void replace(CharSequence s) {
+        clear();
+        insert(s);
+    }
+
+    public void clear() {
+        gapStart = 0;
+        gapEnd = chars.length;
+        openParens = 0;
+        closeParens = 0;
+        decimalState = DECIMAL_NO;
+        text = "";
+    }
+
+    public int getOpenParenCount() {
+        return openParens;
+    }
+
+    public int getCloseParenCount() {
+        return closeParens;
+    }
+
+    /**
+     * Whether the number ending at the cursor already contains a decimal point.
+     */
+    public boolean numberHasDecimal() {
+        if (decimalState == DECIMAL_UNKNOWN) {
+            int i = gapStart - 1;
+            while (i >= 0 && isDigit(chars[i])) i--;
+            decimalState = i >= 0 && chars[i] == '.' ? DECIMAL_YES : DECIMAL_NO;
+        }
+        return decimalState == DECIMAL_YES;
+    }
+
+    /**
+     * Whether the text before the cursor ends with the name of a function, or of
+     * {@code solve}, {@code ∫} or {@code d/dx}, so that a parenthesis there opens its
+     * arguments.
+     */
+    public boolean functionBeforeCursor() {
+        int start = gapStart;
+        while (start > 0 && Lexer.isIdentifierPart(chars[start - 1])) start--;
+        // Names start with a letter, so digits before one are a number
+        while (start < gapStart && isDigit(chars[start])) start++;
+        return start < gapStart && Functions.find(this, start, gapStart) >= 0
+            || CalculusEvaluator.endsWithName(this, gapStart);
+    }
+
+    public boolean contentEquals(CharSequence s) {
+        int length = length();
+        if (s.length() != length) return false;
+        for (int i = 0; i < gapStart; i++) {
+            if (chars[i] != s.charAt(i)) return false;
+        }
+        int offset = gapEnd - gapStart;
+        for (int i = gapStart; i < length; i++) {
+            if (chars[i + offset] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (text == null) {
+            char[] joined = new char[length()];
+            System.arraycopy(chars, 0, joined, 0, gapStart);
+            System.arraycopy(chars, gapEnd, joined, gapStart, chars.length - gapEnd);
+            text = new String(joined);
+        }
+        return text;
+    }
+
+    private void inserted(char c) {
+        if (c == '(') {
+            openParens++;
+        } else if (c == ')') {
+            closeParens++;
+        }
+
+        if (c == '.') {
+            decimalState = DECIMAL_YES;
+        } else if (!isDigit(c)) {
+            decimalState = DECIMAL_NO;
+        }
+        // A digit continues the current number, so its state is unchanged
+    }
+
+    private void removed(char c) {
+        if (c == '(') {
+            openParens--;
+        } else if (c == ')') {
+            closeParens--;
+        }
+
+        if (c == '.') {
+            decimalState = DECIMAL_NO;
+        } else if (!isDigit(c)) {
+            // The cursor may now be at the end of an earlier number
+            decimalState = DECIMAL_UNKNOWN;
+        }
+    }
+
+    private void grow(int needed) {
+        int length = length();
+        int capacity = Math.max(chars.length * 2, length + needed);
+        int tail = chars.length - gapEnd;
+        char[] grown = Arrays.copyOf(chars, capacity);
+        System.arraycopy(chars, gapEnd, grown, capacity - tail, tail);
+        gapEnd = capacity - tail;
+        chars = grown;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
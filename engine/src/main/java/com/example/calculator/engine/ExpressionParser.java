@@ -0,0 +1,300 @@
+package com.example.calculator.engine;
+
+/**
+ * Precedence-climbing parser for the calculator grammar.
+ * It emits operands and {@link Opcodes} to a {@link Sink} in postfix order as soon as
+ * they are complete, so the same parse can either evaluate directly ({@link Evaluator})
+ * or record a program ({@link CompiledExpression}).
+ *
+ * <pre>
+ * expression := unary (binary-op unary | implicit-operand)*
+ * unary      := ('-' | '+') power-level-expression | postfix
+ * postfix    := prefix ('²' | '!')*
+ * prefix     := ('√' | function) prefix | primary
+ * primary    := number | identifier | '(' expression ')'?
+ * </pre>
+ *
+ * Infix functions such as nCr are binary operators at the precedence of ×.
+ */
+final class ExpressionParser {
+
+    interface Sink {
+        void number(double value);
+
+        /**
+         * A number literal, with its text at {@code input[start, end)} for sinks that
+         * parse it more precisely than {@link Lexer#value()}.
+         */
+        default void number(double value, CharSequence input, int start, int end)
+                throws EvaluationException {
+            number(value);
+        }
+
+        void identifier(CharSequence input, int start, int end) throws EvaluationException;
+
+        void operator(int opcode, int position) throws EvaluationException;
+    }
+
+    /**
+     * A sink that evaluates as it goes, which lets the parser cache group values.
+     */
+    interface ValueSink extends Sink {
+        double peek();
+    }
+
+    static final int PRECEDENCE_ADDITIVE = 1;
+    static final int PRECEDENCE_MULTIPLICATIVE = 2;
+    static final int PRECEDENCE_POWER = 3;
+
+    // Shorter groups such as (2) or (1+2) are cheaper to parse than to look up
+    private static final int MIN_CACHED_GROUP_LENGTH = 8;
+
+    // Each parenthesis, prefix function or sign nests the recursion one level deeper;
+    // past this an expression is rejected rather than overflowing the thread's stack
+    static final int MAX_DEPTH = 500;
+
+    private final Lexer lexer = new Lexer();
+    private CharSequence input;
+    private Sink sink;
+    private ValueSink valueSink;
+    private ResultCache groupCache;
+    private int depth;
+    // Whether a X ÷ b Y divides by b Y rather than multiplying the quotient by Y
+    private boolean unitsBindToNumbers;
+
+    ExpressionParser() {
+    }
+
+    /**
+     * Reads a name directly after the number on the right of ÷ as part of the divisor,
+     * as a unit is: {@code 10 m ÷ 2 s} is {@code (10 m)÷(2 s)}.
+     */
+    ExpressionParser setUnitsBindToNumbers(boolean unitsBindToNumbers) {
+        this.unitsBindToNumbers = unitsBindToNumbers;
+        return this;
+    }
+
+    /**
+     * A parser that reads the names declared in {@code names} whole, even where they
+     * start with a function name, as cost does.
+     */
+    ExpressionParser(SymbolTable names) {
+        lexer.setNames(names);
+    }
+
+    /**
+     * Parses the whole input. An empty expression emits the number zero.
+     */
+    void parse(CharSequence expression, Sink sink) throws EvaluationException {
+        parse(expression, sink, null, null);
+    }
+
+    /**
+     * Parses the input, reusing and recording the values of closed parenthesized groups
+     * in {@code groupCache}.
+     */
+    void parse(CharSequence expression, ValueSink sink, ResultCache groupCache) throws EvaluationException {
+        parse(expression, sink, sink, groupCache);
+    }
+
+    private void parse(CharSequence expression, Sink sink, ValueSink valueSink, ResultCache groupCache)
+            throws EvaluationException {
+        this.input = expression;
+        this.sink = sink;
+        this.valueSink = valueSink;
+        this.groupCache = groupCache;
+        this.depth = 0;
+        lexer.reset(expression);
+
+        try {
+            if (lexer.next() == Lexer.END) {
+                sink.number(0);
+                return;
+            }
+
+            parseExpression(PRECEDENCE_ADDITIVE);
+            if (lexer.token() != Lexer.END) {
+                throw invalid();
+            }
+        } finally {
+            this.input = null;
+            this.sink = null;
+            this.valueSink = null;
+            this.groupCache = null;
+        }
+    }
+
+    private void parseExpression(int minPrecedence) throws EvaluationException {
+        enter();
+        parseUnary();
+
+        while (true) {
+            int token = lexer.token();
+            int precedence = binaryPrecedence(token);
+            if (precedence == 0 || precedence < minPrecedence) {
+                depth--;
+                return;
+            }
+
+            // An operand directly after an operand is an implicit multiplication
+            boolean implicit = startsOperand(token);
+            int opcode = implicit ? Opcodes.MULTIPLY : token == Lexer.INFIX ? lexer.opcode() : binaryOpcode(token);
+            int position = lexer.tokenStart();
+            if (!implicit) {
+                lexer.next();
+            }
+
+            // Left associative: the right operand only takes tighter operators
+            boolean number = lexer.token() == Lexer.NUMBER;
+            parseExpression(precedence + 1);
+            if (opcode == Opcodes.DIVIDE && number && unitsBindToNumbers) {
+                while (lexer.token() == Lexer.IDENTIFIER) {
+                    int unitPosition = lexer.tokenStart();
+                    parseExpression(PRECEDENCE_POWER);
+                    sink.operator(Opcodes.MULTIPLY, unitPosition);
+                }
+            }
+            sink.operator(opcode, position);
+        }
+    }
+
+    private void parseUnary() throws EvaluationException {
+        int token = lexer.token();
+        if (token == Lexer.MINUS) {
+            int position = lexer.tokenStart();
+            lexer.next();
+            parseExpression(PRECEDENCE_POWER);
+            sink.operator(Opcodes.NEGATE, position);
+        } else if (token == Lexer.PLUS) {
+            lexer.next();
+            parseExpression(PRECEDENCE_POWER);
+        } else {
+            parsePostfix();
+        }
+    }
+
+    private void parsePostfix() throws EvaluationException {
+        parsePrefix();
+        while (lexer.token() == Lexer.SQUARE || lexer.token() == Lexer.FACTORIAL) {
+            sink.operator(lexer.token() == Lexer.SQUARE ? Opcodes.SQUARE : Opcodes.FACTORIAL, lexer.tokenStart());
+            lexer.next();
+        }
+    }
+
+    private void parsePrefix() throws EvaluationException {
+        int token = lexer.token();
+        if (token == Lexer.SQRT || token == Lexer.FUNCTION) {
+            int opcode = token == Lexer.SQRT ? Opcodes.SQRT : lexer.opcode();
+            int position = lexer.tokenStart();
+            lexer.next();
+            enter();
+            parsePrefix();
+            depth--;
+            sink.operator(opcode, position);
+        } else {
+            parsePrimary();
+        }
+    }
+
+    private void parsePrimary() throws EvaluationException {
+        int token = lexer.token();
+        if (token == Lexer.NUMBER) {
+            sink.number(lexer.value(), input, lexer.tokenStart(), lexer.tokenEnd());
+            lexer.next();
+        } else if (token == Lexer.IDENTIFIER) {
+            sink.identifier(input, lexer.tokenStart(), lexer.tokenEnd());
+            lexer.next();
+        } else if (token == Lexer.LEFT_PAREN) {
+            int open = lexer.tokenStart();
+            int close = groupCache != null ? findClosingParen(open) : -1;
+            boolean cacheable = close - open > MIN_CACHED_GROUP_LENGTH;
+            if (cacheable) {
+                double cached = groupCache.get(input, open + 1, close);
+                if (!Double.isNaN(cached)) {
+                    sink.number(cached);
+                    lexer.reset(input, close + 1, input.length());
+                    lexer.next();
+                    return;
+                }
+            }
+
+            lexer.next();
+            parseExpression(PRECEDENCE_ADDITIVE);
+            // Unclosed parentheses are closed at the end of input, as while typing
+            if (lexer.token() == Lexer.RIGHT_PAREN) {
+                lexer.next();
+            } else if (lexer.token() != Lexer.END) {
+                throw invalid();
+            }
+
+            // Not an overflow, which a whole expression with the same text must report
+            if (cacheable && Double.isFinite(valueSink.peek())) {
+                groupCache.put(input, open + 1, close, valueSink.peek());
+            }
+        } else {
+            throw invalid();
+        }
+    }
+
+    /**
+     * Index of the parenthesis closing the one at {@code open}, or -1 if it is unclosed.
+     */
+    private int findClosingParen(int open) {
+        int depth = 0;
+        for (int i = open; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void enter() throws EvaluationException {
+        if (++depth > MAX_DEPTH) {
+            throw invalid();
+        }
+    }
+
+    private EvaluationException invalid() {
+        return new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, lexer.tokenStart());
+    }
+
+    static boolean startsOperand(int token) {
+        return token == Lexer.NUMBER || token == Lexer.LEFT_PAREN
+            || token == Lexer.SQRT || token == Lexer.IDENTIFIER || token == Lexer.FUNCTION;
+    }
+
+    static int binaryPrecedence(int token) {
+        switch (token) {
+            case Lexer.PLUS:
+            case Lexer.MINUS:
+                return PRECEDENCE_ADDITIVE;
+            case Lexer.MULTIPLY:
+            case Lexer.DIVIDE:
+            case Lexer.INFIX:
+                return PRECEDENCE_MULTIPLICATIVE;
+            case Lexer.POWER:
+                return PRECEDENCE_POWER;
+            default:
+                return startsOperand(token) ? PRECEDENCE_MULTIPLICATIVE : 0;
+        }
+    }
+
+    static int binaryOpcode(int token) {
+        switch (token) {
+            case Lexer.PLUS:
+                return Opcodes.ADD;
+            case Lexer.MINUS:
+                return Opcodes.SUBTRACT;
+            case Lexer.DIVIDE:
+                return Opcodes.DIVIDE;
+            case Lexer.POWER:
+                return Opcodes.POWER;
+            default:
+                return Opcodes.MULTIPLY;
+        }
+    }
+}
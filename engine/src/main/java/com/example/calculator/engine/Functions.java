@@ -0,0 +1,283 @@
+package com.example.calculator.engine;
+
+import java.math.BigInteger;
+
+/**
+ * Registry of the named functions and their double-precision definitions.
+ *
+ * <p>The {@link Lexer} looks identifiers up here, so a new function is a row in
+ * {@link #NAMES}/{@link #OPCODES}, an opcode and a case in {@link #unary} or
+ * {@link #binary}; the grammar does not change. Prefix functions are written like √
+ * ({@code sin 30}, {@code sin(30)}), infix ones between their operands ({@code 5 nCr 2},
+ * {@code 3 root 27}, the cube root of 27). Factorial is the postfix {@code !}.
+ *
+ * <p>Every function returns NaN outside its domain, which the evaluators report as
+ * {@link EvaluationException.Reason#DOMAIN_ERROR}. Angles are in radians. The trig
+ * functions are {@link Math}'s, which reduce the argument against enough bits of π that
+ * they are accurate for any finite double, {@code sin(1e15)} included. Integer factorials
+ * and combinatorics are computed exactly in {@link IntegerMath} and rounded once.
+ */
+final class Functions {
+
+    private static final String[] NAMES = {
+        "sqrt", "sin", "cos", "tan", "asin", "acos", "atan", "sinh", "cosh", "tanh",
+        "ln", "log", "exp", "gamma", "nCr", "nPr", "root"
+    };
+    private static final int[] OPCODES = {
+        Opcodes.SQRT, Opcodes.SIN, Opcodes.COS, Opcodes.TAN, Opcodes.ASIN, Opcodes.ACOS, Opcodes.ATAN,
+        Opcodes.SINH, Opcodes.COSH, Opcodes.TANH, Opcodes.LN, Opcodes.LOG, Opcodes.EXP, Opcodes.GAMMA,
+        Opcodes.COMBINATIONS, Opcodes.PERMUTATIONS, Opcodes.ROOT
+    };
+
+    // 170! is the largest factorial below Double.MAX_VALUE
+    static final int MAX_DOUBLE_FACTORIAL = 170;
+
+    // Results of more bits than this overflow a double
+    private static final double MAX_DOUBLE_BITS = 1025;
+
+    // Lanczos approximation, g = 7 and nine terms, good to about 15 digits
+    private static final double LANCZOS_G = 7;
+    private static final double[] LANCZOS = {
+        0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+        -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+        1.5056327351493116e-7
+    };
+    private static final double SQRT_TWO_PI = Math.sqrt(2 * Math.PI);
+    private static final double LN_2 = Math.log(2);
+
+    private Functions() {}
+
+    /**
+     * Opcode of the function named {@code input[start, end)}, or -1. The table is small
+     * enough that a scan rejecting on length and first letter is faster than hashing.
+     */
+    static int find(CharSequence input, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < NAMES.length; i++) {
+            String name = NAMES[i];
+            if (name.length() == length && startsWith(input, start, name)) {
+                return OPCODES[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Length of the longest function name that {@code input[start, end)} starts with, or 0,
+     * so that {@code sin30} and {@code 5nCr2} read as a name followed by an operand.
+     */
+    static int findPrefix(CharSequence input, int start, int end) {
+        int longest = 0;
+        for (String name : NAMES) {
+            if (name.length() > longest && name.length() <= end - start && startsWith(input, start, name)) {
+                longest = name.length();
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Whether the function is written between two operands.
+     */
+    static boolean isInfix(int opcode) {
+        return opcode == Opcodes.COMBINATIONS || opcode == Opcodes.PERMUTATIONS || opcode == Opcodes.ROOT;
+    }
+
+    static String name(int opcode) {
+        for (int i = 0; i < OPCODES.length; i++) {
+            if (OPCODES[i] == opcode) return NAMES[i];
+        }
+        return opcode == Opcodes.FACTORIAL ? "!" : null;
+    }
+
+    static double unary(int opcode, double x) {
+        switch (opcode) {
+            case Opcodes.SIN:
+                return Math.sin(x);
+            case Opcodes.COS:
+                return Math.cos(x);
+            case Opcodes.TAN:
+                return Math.tan(x);
+            case Opcodes.ASIN:
+                return Math.asin(x);
+            case Opcodes.ACOS:
+                return Math.acos(x);
+            case Opcodes.ATAN:
+                return Math.atan(x);
+            case Opcodes.SINH:
+                return Math.sinh(x);
+            case Opcodes.COSH:
+                return Math.cosh(x);
+            case Opcodes.TANH:
+                return Math.tanh(x);
+            case Opcodes.LN:
+                return x < 0 ? Double.NaN : Math.log(x);
+            case Opcodes.LOG:
+                return x < 0 ? Double.NaN : Math.log10(x);
+            case Opcodes.EXP:
+                return Math.exp(x);
+            case Opcodes.GAMMA:
+                return gamma(x);
+            case Opcodes.FACTORIAL:
+                return factorial(x);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    static double binary(int opcode, double a, double b) {
+        switch (opcode) {
+            case Opcodes.COMBINATIONS:
+                return combinations(a, b);
+            case Opcodes.PERMUTATIONS:
+                return permutations(a, b);
+            case Opcodes.ROOT:
+                return root(a, b);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * x! for integers, Γ(x + 1) otherwise. Integer factorials are looked up, correctly
+     * rounded.
+     */
+    static double factorial(double x) {
+        if (!isInteger(x)) {
+            return Double.isNaN(x) || x == Double.NEGATIVE_INFINITY ? Double.NaN : gamma(x + 1);
+        }
+        if (x < 0) return Double.NaN;
+        if (x > MAX_DOUBLE_FACTORIAL) return Double.POSITIVE_INFINITY;
+        return FactorialTable.VALUES[(int) x];
+    }
+
+    /**
+     * The gamma function, with poles (NaN) at zero and the negative integers.
+     */
+    static double gamma(double x) {
+        if (isInteger(x)) {
+            return x <= 0 ? Double.NaN : factorial(x - 1);
+        }
+        if (Double.isNaN(x) || x == Double.NEGATIVE_INFINITY) return Double.NaN;
+        if (x > MAX_DOUBLE_FACTORIAL + 2) return Double.POSITIVE_INFINITY;
+        if (x < 0.5) {
+            // Reflection: Γ(x)Γ(1 - x) = π / sin(πx)
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        x -= 1;
+        double t = x + LANCZOS_G + 0.5;
+        // t^(x + 0.5) overflows near the top of the range, so it is applied in halves
+        double half = Math.pow(t, (x + 0.5) / 2);
+        return SQRT_TWO_PI * half * (Math.exp(-t) * half) * lanczosSum(x);
+    }
+
+    /**
+     * ln Γ(x) for x > 0, used to size results before computing them exactly.
+     */
+    static double lnGamma(double x) {
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - lnGamma(1 - x);
+        }
+        x -= 1;
+        double t = x + LANCZOS_G + 0.5;
+        return Math.log(SQRT_TWO_PI) + (x + 0.5) * Math.log(t) - t + Math.log(lanczosSum(x));
+    }
+
+    /**
+     * Approximate bits in C(n, k) for 0 ≤ k ≤ n.
+     */
+    static double log2Binomial(double n, double k) {
+        return (lnGamma(n + 1) - lnGamma(k + 1) - lnGamma(n - k + 1)) / LN_2;
+    }
+
+    /**
+     * Approximate bits in P(n, k) for 0 ≤ k ≤ n.
+     */
+    static double log2Permutations(double n, double k) {
+        return (lnGamma(n + 1) - lnGamma(n - k + 1)) / LN_2;
+    }
+
+    /**
+     * C(n, k) for integers 0 ≤ k, 0 ≤ n; 0 when k exceeds n.
+     */
+    static double combinations(double n, double k) {
+        if (!isCount(n) || !isCount(k)) return Double.NaN;
+        if (k > n) return 0;
+        if (Math.min(k, n - k) > 0 && log2Binomial(n, k) > MAX_DOUBLE_BITS) return Double.POSITIVE_INFINITY;
+        return toDouble(IntegerMath.binomial((long) n, (long) k));
+    }
+
+    /**
+     * P(n, k) for integers 0 ≤ k, 0 ≤ n; 0 when k exceeds n.
+     */
+    static double permutations(double n, double k) {
+        if (!isCount(n) || !isCount(k)) return Double.NaN;
+        if (k > n) return 0;
+        if (k > 0 && log2Permutations(n, k) > MAX_DOUBLE_BITS) return Double.POSITIVE_INFINITY;
+        return toDouble(IntegerMath.permutations((long) n, (long) k));
+    }
+
+    /**
+     * The {@code n}-th root of {@code x}. Negative x has a real root only for odd integer n.
+     */
+    static double root(double n, double x) {
+        if (n == 2) return x < 0 ? Double.NaN : Math.sqrt(x);
+        if (n == 3) return Math.cbrt(x);
+        if (n == 0 || Double.isNaN(n)) return Double.NaN;
+        boolean integer = isInteger(n);
+        if (x < 0 && !(integer && Math.abs(n) < 0x1p53 && ((long) n & 1) != 0)) return Double.NaN;
+
+        double magnitude = Math.abs(x);
+        double r = Math.pow(magnitude, 1 / n);
+        // 1/n is itself rounded, which can leave an exact integer root an ulp off
+        double rounded = Math.rint(r);
+        if (integer && rounded != r && Math.pow(rounded, n) == magnitude) {
+            r = rounded;
+        }
+        return x < 0 ? -r : r;
+    }
+
+    static boolean isInteger(double x) {
+        return x == Math.rint(x) && !Double.isInfinite(x);
+    }
+
+    private static boolean isCount(double x) {
+        return isInteger(x) && x >= 0 && x < 0x1p62;
+    }
+
+    private static double toDouble(BigInteger value) {
+        // BigInteger.doubleValue rounds to nearest, so exact results are rounded once
+        return value.doubleValue();
+    }
+
+    private static double lanczosSum(double x) {
+        double sum = LANCZOS[0];
+        for (int i = 1; i < LANCZOS.length; i++) {
+            sum += LANCZOS[i] / (x + i);
+        }
+        return sum;
+    }
+
+    private static boolean startsWith(CharSequence input, int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (input.charAt(start + i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 0! to 170!, each the exact product rounded once, built on first use.
+     */
+    private static final class FactorialTable {
+        static final double[] VALUES = new double[MAX_DOUBLE_FACTORIAL + 1];
+
+        static {
+            BigInteger product = BigInteger.ONE;
+            VALUES[0] = 1;
+            for (int i = 1; i <= MAX_DOUBLE_FACTORIAL; i++) {
+                product = product.multiply(BigInteger.valueOf(i));
+                VALUES[i] = product.doubleValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Samples y = f(x) for a plot of a viewport.
+ *
+ * <p>The expression is compiled once and evaluated in batches with
+ * {@link CompiledExpression#evaluateBatch}. Points lie on a grid whose spacing is a
+ * power of two, which makes every sample x exactly representable and shared between
+ * zoom levels: panning only evaluates the newly exposed columns, and zooming by a factor
+ * of two reuses every other point. Evaluated points are kept in a cache keyed by x.
+ *
+ * <p>After the uniform pass, intervals are bisected where the curve moves more than a few
+ * pixels between neighbours or crosses the edge of its domain (÷ by zero, √ of a
+ * negative), up to {@link #MAX_REFINE_DEPTH} times. A jump still taller than the viewport
+ * at that resolution is treated as a pole and the line is broken there.
+ *
+ * <p>Not thread-safe; the app keeps one per expression on its sampling thread.
+ */
+public final class GraphSampler {
+
+    /**
+     * Points of a plot in x order. A NaN y breaks the line.
+     */
+    public static final class Plot {
+        private final double[] xs;
+        private final double[] ys;
+        private final int count;
+
+        Plot(double[] xs, double[] ys, int count) {
+            this.xs = xs;
+            this.ys = ys;
+            this.count = count;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getX(int i) {
+            return xs[i];
+        }
+
+        public double getY(int i) {
+            return ys[i];
+        }
+    }
+
+    // Target spacing of the uniform pass, in pixels
+    static final int PIXELS_PER_SAMPLE = 2;
+    static final int MAX_REFINE_DEPTH = 6;
+
+    // Neighbours further apart than this, in pixels, are refined
+    private static final double MAX_STEP_PIXELS = 4;
+
+    private static final int MAX_CACHED_POINTS = 1 << 16;
+
+    // Narrowest viewport relative to its centre, where neighbouring samples still
+    // differ in x, and widest, whose grid step still fits in a double
+    static final double MIN_RELATIVE_RANGE = 1e-12;
+    static final double MAX_RANGE = 1e300;
+
+    private final CompiledExpression expression;
+    private final int slot;
+    private final double[] variables;
+    private final SampleCache cache = new SampleCache();
+
+    // Batch scratch, grown as needed
+    private double[] batchXs = new double[0];
+    private double[] batchYs = new double[0];
+    private int[] batchIndices = new int[0];
+    private double[][] columns = new double[0][];
+
+    private long evaluatedCount;
+
+    public GraphSampler(CompiledExpression expression, String variable) {
+        this.expression = expression;
+        this.slot = expression.getVariableSlot(variable);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Not compiled with " + variable);
+        }
+        this.variables = new double[expression.getVariableCount()];
+    }
+
+    /**
+     * Points evaluated so far, not counting those served from the cache.
+     */
+    public long getEvaluatedCount() {
+        return evaluatedCount;
+    }
+
+    /**
+     * The width of a viewport about {@code centre}, within the range that can be
+     * sampled: at least {@value #MIN_RELATIVE_RANGE} of the centre's size and at most
+     * {@value #MAX_RANGE}.
+     */
+    public static double clampRange(double centre, double range) {
+        return Math.max(MIN_RELATIVE_RANGE * Math.max(1, Math.abs(centre)), Math.min(MAX_RANGE, range));
+    }
+
+    /**
+     * Samples the curve across [{@code xMin}, {@code xMax}] for a viewport of the given
+     * size in pixels; {@code yMin}..{@code yMax} decides what counts as steep. A viewport
+     * narrower or wider than {@link #clampRange} allows is sampled at that limit about its
+     * centre. Returns null if the thread is interrupted, which is how a newer request
+     * cancels this one.
+     */
+    public Plot sample(double xMin, double xMax, double yMin, double yMax, int widthPixels, int heightPixels) {
+        if (!(xMax >= xMin) || !(yMax >= yMin) || widthPixels <= 0 || heightPixels <= 0
+                || Double.isInfinite(xMax - xMin) || Double.isInfinite(yMax - yMin)) {
+            throw new IllegalArgumentException("Empty viewport");
+        }
+        double xCentre = xMin / 2 + xMax / 2;
+        double xRange = clampRange(xCentre, xMax - xMin);
+        if (xRange != xMax - xMin) {
+            xMin = xCentre - xRange / 2;
+            xMax = xCentre + xRange / 2;
+        }
+        double yCentre = yMin / 2 + yMax / 2;
+        double yRange = clampRange(yCentre, yMax - yMin);
+        if (yRange != yMax - yMin) {
+            yMin = yCentre - yRange / 2;
+            yMax = yCentre + yRange / 2;
+        }
+        double pixelsPerY = heightPixels / (yMax - yMin);
+
+        // Largest power of two not above the target spacing
+        double target = (xMax - xMin) * PIXELS_PER_SAMPLE / widthPixels;
+        double step = Math.scalb(1.0, Math.getExponent(target));
+        long first = (long) Math.floor(xMin / step) - 1;
+        long last = (long) Math.ceil(xMax / step) + 1;
+
+        int count = (int) (last - first + 1);
+        double[] xs = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = (first + i) * step;
+        }
+        double[] ys = new double[count];
+        evaluate(xs, ys, count);
+
+        for (int depth = 0; depth < MAX_REFINE_DEPTH; depth++) {
+            if (Thread.currentThread().isInterrupted()) return null;
+
+            double[] midXs = new double[count - 1];
+            boolean[] refine = new boolean[count - 1];
+            int midCount = 0;
+            for (int i = 0; i + 1 < count; i++) {
+                if (needsRefinement(ys[i], ys[i + 1], yMin, yMax, pixelsPerY)) {
+                    refine[i] = true;
+                    midXs[midCount++] = (xs[i] + xs[i + 1]) / 2;
+                }
+            }
+            if (midCount == 0) break;
+
+            double[] midYs = new double[midCount];
+            evaluate(midXs, midYs, midCount);
+
+            double[] mergedXs = new double[count + midCount];
+            double[] mergedYs = new double[count + midCount];
+            int out = 0;
+            int mid = 0;
+            for (int i = 0; i < count; i++) {
+                mergedXs[out] = xs[i];
+                mergedYs[out++] = ys[i];
+                if (i + 1 < count && refine[i]) {
+                    mergedXs[out] = midXs[mid];
+                    mergedYs[out++] = midYs[mid++];
+                }
+            }
+            xs = mergedXs;
+            ys = mergedYs;
+            count = out;
+        }
+
+        return breakPoles(xs, ys, count, yMax - yMin);
+    }
+
+    private static boolean needsRefinement(double y0, double y1, double yMin, double yMax, double pixelsPerY) {
+        boolean defined0 = !Double.isNaN(y0);
+        boolean defined1 = !Double.isNaN(y1);
+        if (defined0 != defined1) {
+            // The domain ends in between; narrow down where
+            return true;
+        }
+        if (!defined0) return false;
+        // Entirely above or below the viewport
+        if ((y0 > yMax && y1 > yMax) || (y0 < yMin && y1 < yMin)) return false;
+        return Math.abs(y1 - y0) * pixelsPerY > MAX_STEP_PIXELS;
+    }
+
+    /**
+     * Breaks the line where a jump is still taller than the viewport at the finest
+     * resolution, so a pole is not drawn as a vertical stroke.
+     */
+    private static Plot breakPoles(double[] xs, double[] ys, int count, double viewportHeight) {
+        int breaks = 0;
+        for (int i = 0; i + 1 < count; i++) {
+            if (Math.abs(ys[i + 1] - ys[i]) > viewportHeight) breaks++;
+        }
+        if (breaks == 0) return new Plot(xs, ys, count);
+
+        double[] brokenXs = new double[count + breaks];
+        double[] brokenYs = new double[count + breaks];
+        int out = 0;
+        for (int i = 0; i < count; i++) {
+            brokenXs[out] = xs[i];
+            brokenYs[out++] = ys[i];
+            if (i + 1 < count && Math.abs(ys[i + 1] - ys[i]) > viewportHeight) {
+                brokenXs[out] = (xs[i] + xs[i + 1]) / 2;
+                brokenYs[out++] = Double.NaN;
+            }
+        }
+        return new Plot(brokenXs, brokenYs, out);
+    }
+
+    /**
+     * Fills {@code ys} from the cache and evaluates the misses in one batch.
+     */
+    private void evaluate(double[] xs, double[] ys, int count) {
+        if (cache.size() > MAX_CACHED_POINTS) {
+            cache.clear();
+        }
+
+        if (batchXs.length < count) {
+            batchXs = new double[count];
+            batchYs = new double[count];
+            batchIndices = new int[count];
+            columns = expression.newBatchStack(count);
+        }
+        int misses = 0;
+        for (int i = 0; i < count; i++) {
+            int found = cache.find(xs[i]);
+            if (found >= 0) {
+                ys[i] = cache.valueAt(found);
+            } else {
+                batchIndices[misses] = i;
+                batchXs[misses++] = xs[i];
+            }
+        }
+        if (misses == 0) return;
+
+        expression.evaluateBatch(variables, slot, batchXs, batchYs, misses, columns);
+        evaluatedCount += misses;
+
+        for (int i = 0; i < misses; i++) {
+            ys[batchIndices[i]] = batchYs[i];
+            cache.put(batchXs[i], batchYs[i]);
+        }
+    }
+
+    /**
+     * Open-addressing map from x, by its bits, to y.
+     */
+    private static final class SampleCache {
+        private long[] keys = new long[1024];
+        private double[] values = new double[1024];
+        private boolean[] used = new boolean[1024];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int find(double x) {
+            long key = Double.doubleToLongBits(x);
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask) {
+                if (keys[i] == key) return i;
+            }
+            return -1;
+        }
+
+        double valueAt(int index) {
+            return values[index];
+        }
+
+        void put(double x, double y) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            long key = Double.doubleToLongBits(x);
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (used[i] && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (!used[i]) size++;
+            used[i] = true;
+            keys[i] = key;
+            values[i] = y;
+        }
+
+        void clear() {
+            Arrays.fill(used, false);
+            size = 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            double[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) put(Double.longBitsToDouble(oldKeys[i]), oldValues[i]);
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package com.example.calculator.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Calculation history in an append-only file.
+ *
+ * <p>Each calculation is appended as one record; clearing the history appends a marker
+ * instead of rewriting anything. Reads go through a memory-mapped view of the file, and
+ * opening only walks the record headers to find the live entries, so a history of 100k
+ * entries opens in milliseconds and an entry is decoded only when it is shown.
+ * {@link #compact} rewrites the file without cleared and surplus entries.
+ *
+ * <p>{@link #search} finds entries whose expression contains a query. It uses an index
+ * of the byte trigrams of every expression, built on the first search and kept up to
+ * date by appends, and then confirms candidates on the mapped bytes without decoding.
+ *
+ * <pre>
+ * file   := magic:int version:int record*
+ * record := length:int type:byte timestamp:long [exprLength:int expr resultLength:int result]
+ * </pre>
+ *
+ * <p>All methods are synchronized.
+ */
+public final class HistoryLog implements Closeable {
+
+    public static final class Entry {
+        private final String expression;
+        private final String result;
+        private final long timestamp;
+
+        Entry(String expression, String result, long timestamp) {
+            this.expression = expression;
+            this.result = result;
+            this.timestamp = timestamp;
+        }
+
+        public String getExpression() {
+            return expression;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        /**
+         * Milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return expression + " = " + result;
+        }
+    }
+
+    private static final int MAGIC = 0x43484953; // "CHIS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+
+    private static final byte TYPE_ENTRY = 1;
+    private static final byte TYPE_CLEAR = 2;
+
+    // length:int type:byte timestamp:long
+    private static final int RECORD_HEADER_BYTES = 13;
+
+    private final File file;
+    private RandomAccessFile access;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long fileSize;
+
+    // Offsets of the live records, oldest first
+    private int[] offsets = new int[256];
+    private int size;
+
+    // Built on first search
+    private TrigramIndex index;
+
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(512);
+
+    private HistoryLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens or creates the history at {@code file}. A record cut short by a crash is
+     * discarded.
+     */
+    public static HistoryLog open(File file) throws IOException {
+        HistoryLog log = new HistoryLog(file);
+        log.openFile();
+        return log;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Entry {@code index}, counting from the oldest live entry.
+     */
+    public synchronized Entry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index + " of " + size);
+        }
+        int offset = offsets[index];
+        ByteBuffer view = view(offset);
+        long timestamp = view.getLong(offset + 5);
+        int expressionLength = view.getInt(offset + RECORD_HEADER_BYTES);
+        int expressionStart = offset + RECORD_HEADER_BYTES + 4;
+        int resultLength = view.getInt(expressionStart + expressionLength);
+        int resultStart = expressionStart + expressionLength + 4;
+        return new Entry(decode(view, expressionStart, expressionLength),
+            decode(view, resultStart, resultLength), timestamp);
+    }
+
+    public synchronized void append(String expression, String result, long timestamp) throws IOException {
+        byte[] expressionBytes = expression.getBytes(StandardCharsets.UTF_8);
+        byte[] resultBytes = result.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER_BYTES + 8 + expressionBytes.length + resultBytes.length;
+
+        ByteBuffer buffer = length <= writeBuffer.capacity() ? writeBuffer : ByteBuffer.allocate(length);
+        buffer.clear();
+        buffer.putInt(length).put(TYPE_ENTRY).putLong(timestamp)
+            .putInt(expressionBytes.length).put(expressionBytes)
+            .putInt(resultBytes.length).put(resultBytes);
+        int offset = write(buffer);
+
+        addOffset(offset);
+        if (index != null) {
+            index.add(size - 1, expressionBytes, 0, expressionBytes.length);
+        }
+    }
+
+    /**
+     * Removes every entry. The bytes stay in the file until the next {@link #compact}.
+     */
+    public synchronized void clear() throws IOException {
+        writeBuffer.clear();
+        writeBuffer.putInt(RECORD_HEADER_BYTES).put(TYPE_CLEAR).putLong(System.currentTimeMillis());
+        write(writeBuffer);
+        size = 0;
+        index = null;
+    }
+
+    /**
+     * Indices of up to {@code limit} entries whose expression contains {@code query}, or
+     * starts with it if {@code prefix} is set, newest first.
+     */
+    public synchronized int[] search(String query, boolean prefix, int limit) {
+        byte[] pattern = query.getBytes(StandardCharsets.UTF_8);
+        int[] matches = new int[Math.min(limit, size)];
+        int count = 0;
+
+        if (pattern.length < TrigramIndex.GRAM) {
+            for (int i = size - 1; i >= 0 && count < matches.length; i--) {
+                if (matches(i, pattern, prefix)) matches[count++] = i;
+            }
+            return Arrays.copyOf(matches, count);
+        }
+
+        if (index == null) {
+            buildIndex();
+        }
+        int[] candidates = index.candidates(pattern);
+        for (int i = candidates.length - 1; i >= 0 && count < matches.length; i--) {
+            if (matches(candidates[i], pattern, prefix)) matches[count++] = candidates[i];
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Bytes held by cleared entries that {@link #compact} would drop.
+     */
+    public synchronized long getDeadBytes() {
+        long live = size > 0 ? fileSize - offsets[0] : 0;
+        return fileSize - HEADER_BYTES - live;
+    }
+
+    /**
+     * Compacts when cleared records take more space than live ones or there are more
+     * than {@code maxEntries} entries. Returns whether it did.
+     */
+    public synchronized boolean compactIfNeeded(int maxEntries) throws IOException {
+        long dead = getDeadBytes();
+        if (size <= maxEntries && dead <= fileSize - HEADER_BYTES - dead) {
+            return false;
+        }
+        compact(maxEntries);
+        return true;
+    }
+
+    /**
+     * Rewrites the file with only the newest {@code maxEntries} live entries. The new file
+     * replaces the old one by an atomic rename, so a crash leaves one or the other. The
+     * rename is {@link File#renameTo}, as java.nio.file is only on Android from API 26.
+     */
+    public synchronized void compact(int maxEntries) throws IOException {
+        int first = Math.max(0, size - maxEntries);
+        File temp = new File(file.getPath() + ".compact");
+
+        try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+            out.setLength(0);
+            FileChannel target = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            target.write(header);
+            if (first < size) {
+                // Live records are contiguous, so this is a single copy, though transferTo
+                // may move fewer bytes than asked per call
+                for (long position = offsets[first]; position < fileSize; ) {
+                    position += channel.transferTo(position, fileSize - position, target);
+                }
+            }
+            target.force(true);
+        }
+
+        closeFile();
+        boolean renamed = temp.renameTo(file);
+        openFile();
+        index = null;
+        if (!renamed) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file + " with " + temp);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeFile();
+    }
+
+    private void openFile() throws IOException {
+        access = new RandomAccessFile(file, "rw");
+        channel = access.getChannel();
+        fileSize = channel.size();
+        size = 0;
+
+        if (fileSize < HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            fileSize = HEADER_BYTES;
+        }
+
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            closeFile();
+            throw new IOException("Not a history file: " + file);
+        }
+
+        // Only the record headers are read here
+        int offset = HEADER_BYTES;
+        while (offset + RECORD_HEADER_BYTES <= fileSize) {
+            int length = mapped.getInt(offset);
+            if (length < RECORD_HEADER_BYTES || offset + (long) length > fileSize) break;
+            if (mapped.get(offset + 4) == TYPE_CLEAR) {
+                size = 0;
+            } else {
+                addOffset(offset);
+            }
+            offset += length;
+        }
+        if (offset < fileSize) {
+            // Torn write from a crash; drop it so appends continue from a record boundary
+            channel.truncate(offset);
+            fileSize = offset;
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+    }
+
+    private void closeFile() throws IOException {
+        mapped = null;
+        if (access != null) {
+            access.close();
+            access = null;
+            channel = null;
+        }
+    }
+
+    private int write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int offset = (int) fileSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, fileSize + buffer.position());
+        }
+        fileSize += buffer.limit();
+        return offset;
+    }
+
+    /**
+     * The mapped file, remapped if the record at {@code offset} was appended after the
+     * current mapping was made.
+     */
+    private ByteBuffer view(int offset) {
+        if (offset + RECORD_HEADER_BYTES > mapped.capacity() || offset + mapped.getInt(offset) > mapped.capacity()) {
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            } catch (IOException e) {
+                throw new IllegalStateException("History file unreadable", e);
+            }
+        }
+        return mapped;
+    }
+
+    private void addOffset(int offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        offsets[size++] = offset;
+    }
+
+    private boolean matches(int entry, byte[] pattern, boolean prefix) {
+        int offset = offsets[entry];
+        ByteBuffer view = view(offset);
+        int length = view.getInt(offset + RECORD_HEADER_BYTES);
+        int start = offset + RECORD_HEADER_BYTES + 4;
+        int last = prefix ? 0 : length - pattern.length;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < pattern.length && view.get(start + i + j) == pattern[j]) j++;
+            if (j == pattern.length) return true;
+        }
+        return false;
+    }
+
+    private void buildIndex() {
+        index = new TrigramIndex();
+        for (int i = 0; i < size; i++) {
+            int offset = offsets[i];
+            ByteBuffer view = view(offset);
+            int length = view.getInt(offset + RECORD_HEADER_BYTES);
+            int start = offset + RECORD_HEADER_BYTES + 4;
+            byte[] bytes = new byte[length];
+            for (int j = 0; j < length; j++) {
+                bytes[j] = view.get(start + j);
+            }
+            index.add(i, bytes, 0, length);
+        }
+    }
+
+    private static String decode(ByteBuffer view, int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = view.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Posting lists of entry indices, in ascending order, keyed by three consecutive bytes.
+     * Open addressing on int keys, so lookups do not box.
+     */
+    private static final class TrigramIndex {
+        static final int GRAM = 3;
+
+        private int[] keys = new int[1024];
+        private int[][] postings = new int[1024][];
+        private int[] postingSizes = new int[1024];
+        private int count;
+
+        void add(int entry, byte[] bytes, int start, int end) {
+            for (int i = start; i + GRAM <= end; i++) {
+                int slot = slot(key(bytes, i), true);
+                int n = postingSizes[slot];
+                int[] list = postings[slot];
+                // Repeated trigrams within one expression are recorded once
+                if (n > 0 && list[n - 1] == entry) continue;
+                if (n == list.length) {
+                    list = postings[slot] = Arrays.copyOf(list, n * 2);
+                }
+                list[n] = entry;
+                postingSizes[slot] = n + 1;
+            }
+        }
+
+        /**
+         * Entries containing every trigram of {@code pattern}, ascending.
+         */
+        int[] candidates(byte[] pattern) {
+            int[] result = null;
+            int resultSize = 0;
+            for (int i = 0; i + GRAM <= pattern.length; i++) {
+                int slot = slot(key(pattern, i), false);
+                if (slot < 0) return new int[0];
+                int[] list = postings[slot];
+                int n = postingSizes[slot];
+                if (result == null) {
+                    result = Arrays.copyOf(list, n);
+                    resultSize = n;
+                } else {
+                    resultSize = intersect(result, resultSize, list, n);
+                }
+            }
+            return Arrays.copyOf(result, resultSize);
+        }
+
+        private static int intersect(int[] a, int aSize, int[] b, int bSize) {
+            int i = 0;
+            int j = 0;
+            int out = 0;
+            while (i < aSize && j < bSize) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    a[out++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return out;
+        }
+
+        private int slot(int key, boolean insert) {
+            int mask = keys.length - 1;
+            int slot = (key * 0x9E3779B1) >>> 16 & mask;
+            while (postings[slot] != null) {
+                if (keys[slot] == key) return slot;
+                slot = (slot + 1) & mask;
+            }
+            if (!insert) return -1;
+
+            if (2 * (count + 1) > keys.length) {
+                grow();
+                return slot(key, true);
+            }
+            keys[slot] = key;
+            postings[slot] = new int[4];
+            count++;
+            return slot;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[][] oldPostings = postings;
+            int[] oldSizes = postingSizes;
+            keys = new int[oldKeys.length * 2];
+            postings = new int[oldKeys.length * 2][];
+            postingSizes = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldPostings[i] == null) continue;
+                int slot = (oldKeys[i] * 0x9E3779B1) >>> 16 & mask;
+                while (postings[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                postings[slot] = oldPostings[i];
+                postingSizes[slot] = oldSizes[i];
+            }
+        }
+
+        private static int key(byte[] bytes, int i) {
+            return (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the parse state of an expression that is being typed, so the live preview does
+ * not re-evaluate the whole text on every key press.
+ *
+ * <p>Complete tokens are fed into a journaled {@link ShuntingYard} and a checkpoint is
+ * kept per token. Appending a character rescans only the trailing token (a number or
+ * name can still grow), deleting rolls the machine back to the checkpoint of the first
+ * affected token, and {@link #evaluate()} finishes a copy-free trial reduction that is
+ * rolled back afterwards. Typing is therefore amortized O(1) per character and a preview
+ * costs O(nesting depth) rather than O(length).
+ *
+ * <p>Instances are not thread-safe.
+ */
+public final class IncrementalEvaluator {
+
+    private final StringBuilder text = new StringBuilder();
+    private final ShuntingYard machine = new ShuntingYard(true);
+    private final Lexer lexer = new Lexer();
+
+    // One checkpoint per committed token: where it starts and ends, the journal
+    // position before it was fed, and any failure the machine was already in
+    private int[] tokenStarts = new int[32];
+    private int[] tokenEnds = new int[32];
+    private int[] marks = new int[32];
+    private EvaluationException[] failuresBefore = new EvaluationException[32];
+    private int tokenCount;
+
+    // End of the last committed token; the text after it is still being typed
+    private int committedEnd;
+    private EvaluationException failure;
+
+    /**
+     * Applies an edit: the text from {@code changeStart} onwards is replaced by the
+     * corresponding tail of {@code newText}, which is the full text after the edit.
+     * This matches what {@code TextWatcher.onTextChanged} reports.
+     */
+    public void update(CharSequence newText, int changeStart) {
+        truncate(Math.min(changeStart, text.length()));
+        for (int i = text.length(); i < newText.length(); i++) {
+            text.append(newText.charAt(i));
+        }
+        commitCompleteTokens();
+    }
+
+    public void append(char c) {
+        text.append(c);
+        commitCompleteTokens();
+    }
+
+    /**
+     * Shortens the text to {@code length} characters, rolling back to the checkpoint of
+     * the first token that is no longer complete.
+     */
+    public void truncate(int length) {
+        if (length >= text.length()) return;
+        text.setLength(length);
+
+        // A token ending exactly at the cut may grow again, so it is reopened too
+        int reopen = tokenCount;
+        while (reopen > 0 && tokenEnds[reopen - 1] >= length) {
+            reopen--;
+        }
+        // So is a number followed by what is now an unfinished exponent, as in "6E-"
+        for (int i = reopen - 1; i >= 0 && i >= reopen - 3; i--) {
+            if (endsInExponentPrefix(i)) {
+                reopen = i;
+                break;
+            }
+        }
+
+        while (tokenCount > reopen) {
+            tokenCount--;
+            machine.rollback(marks[tokenCount]);
+            failure = failuresBefore[tokenCount];
+            failuresBefore[tokenCount] = null;
+        }
+        committedEnd = tokenCount > 0 ? tokenEnds[tokenCount - 1] : 0;
+        commitCompleteTokens();
+    }
+
+    public void clear() {
+        text.setLength(0);
+        machine.reset();
+        Arrays.fill(failuresBefore, 0, tokenCount, null);
+        tokenCount = 0;
+        committedEnd = 0;
+        failure = null;
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * Number of tokens held in checkpoints, i.e. the prefix that will not be parsed again.
+     */
+    public int getCommittedTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Value of the current text as {@link Evaluator#evaluate} would compute it.
+     */
+    public double evaluate() throws EvaluationException {
+        if (failure != null) {
+            throw failure;
+        }
+
+        int mark = machine.mark();
+        try {
+            lexer.reset(text, committedEnd, text.length());
+            while (lexer.next() != Lexer.END) {
+                machine.token(lexer);
+            }
+            return Opcodes.checkResult(machine.finish(text.length()));
+        } finally {
+            machine.rollback(mark);
+        }
+    }
+
+    /**
+     * Feeds every token after {@link #committedEnd} that can no longer change when more
+     * characters are appended.
+     */
+    private void commitCompleteTokens() {
+        lexer.reset(text, committedEnd, text.length());
+
+        while (true) {
+            int token = lexer.next();
+            if (token == Lexer.END) return;
+
+            int start = lexer.tokenStart();
+            int end = lexer.tokenEnd();
+            if (end == text.length() && canGrow(text.charAt(end - 1))) {
+                // Still being typed
+                return;
+            }
+            if (token == Lexer.NUMBER && isExponentPrefix(end)) {
+                // "1.5E" or "1.5E-" may still become a number in scientific notation
+                return;
+            }
+
+            commit(start, end);
+        }
+    }
+
+    private void commit(int start, int end) {
+        if (tokenCount == tokenStarts.length) {
+            int capacity = tokenCount * 2;
+            tokenStarts = Arrays.copyOf(tokenStarts, capacity);
+            tokenEnds = Arrays.copyOf(tokenEnds, capacity);
+            marks = Arrays.copyOf(marks, capacity);
+            failuresBefore = Arrays.copyOf(failuresBefore, capacity);
+        }
+        tokenStarts[tokenCount] = start;
+        tokenEnds[tokenCount] = end;
+        marks[tokenCount] = machine.mark();
+        failuresBefore[tokenCount] = failure;
+        tokenCount++;
+        committedEnd = end;
+
+        if (failure == null) {
+            try {
+                machine.token(lexer);
+            } catch (EvaluationException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * True if the text from {@code p} to the end is an unfinished exponent such as
+     * {@code E} or {@code E+}.
+     */
+    private boolean isExponentPrefix(int p) {
+        if (p >= text.length() || text.charAt(p) != 'E') return false;
+        p++;
+        if (p < text.length() && (text.charAt(p) == '+' || text.charAt(p) == '-')) p++;
+        return p == text.length();
+    }
+
+    private boolean endsInExponentPrefix(int token) {
+        char first = text.charAt(tokenStarts[token]);
+        return (Character.isDigit(first) || first == '.') && isExponentPrefix(tokenEnds[token]);
+    }
+
+    private static boolean canGrow(char last) {
+        return Character.isLetterOrDigit(last) || last == '.' || last == '_';
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.calculator.engine;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Process-wide latency histograms for the stages between a key press and the updated
+ * display. Off by default; while off, {@link #start()} returns 0 after one volatile read
+ * and {@link #stop} returns at once, so the timers can stay in place permanently.
+ *
+ * <pre>
+ * long start = Instrumentation.start();
+ * ...
+ * Instrumentation.stop(Instrumentation.FORMAT, start);
+ * </pre>
+ */
+public final class Instrumentation {
+
+    // Engine stages
+    public static final int QUEUE_WAIT = 0;
+    public static final int EVALUATE = 1;
+    public static final int PREVIEW = 2;
+    public static final int DELIVERY = 3;
+
+    // App stages, recorded by the UI
+    public static final int KEY_PRESS = 4;
+    public static final int TAP_TO_RESULT = 5;
+    public static final int FORMAT = 6;
+    public static final int UPDATE_DISPLAY = 7;
+    public static final int FRAME = 8;
+    public static final int ANIMATION_FRAME = 9;
+
+    public static final int STAGE_COUNT = 10;
+
+    private static final String[] STAGE_NAMES = {
+        "queue_wait", "evaluate", "preview", "delivery",
+        "key_press", "tap_to_result", "format", "update_display", "frame", "animation_frame"
+    };
+
+    // Frames slower than this count as dropped
+    public static final long FRAME_BUDGET_NANOS = 16_666_667L;
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[STAGE_COUNT];
+
+    static {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+    }
+
+    private static volatile boolean enabled;
+
+    private Instrumentation() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Instrumentation.enabled = enabled;
+    }
+
+    /**
+     * A start time for {@link #stop}, or 0 when instrumentation is off.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since {@code start} under {@code stage}. Does nothing for a start
+     * taken while instrumentation was off.
+     */
+    public static void stop(int stage, long start) {
+        if (start != 0) {
+            HISTOGRAMS[stage].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a duration measured elsewhere, such as a frame time from the platform.
+     */
+    public static void record(int stage, long nanos) {
+        if (enabled) {
+            HISTOGRAMS[stage].record(nanos);
+        }
+    }
+
+    public static LatencyHistogram histogram(int stage) {
+        return HISTOGRAMS[stage];
+    }
+
+    public static String stageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Writes one line per stage that has samples: count, percentiles and maximum in
+     * microseconds, and for frame stages the number over the frame budget.
+     */
+    public static void dump(Appendable out) throws IOException {
+        out.append(String.format(Locale.ROOT, "%-16s %8s %9s %9s %9s %9s %7s%n",
+            "stage", "count", "p50_us", "p90_us", "p99_us", "max_us", "dropped"));
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            LatencyHistogram histogram = HISTOGRAMS[stage];
+            if (histogram.getCount() == 0) continue;
+            boolean frames = stage == FRAME || stage == ANIMATION_FRAME;
+            out.append(String.format(Locale.ROOT, "%-16s %8d %9.1f %9.1f %9.1f %9.1f %7s%n",
+                STAGE_NAMES[stage], histogram.getCount(),
+                histogram.getPercentileNanos(50) / 1e3, histogram.getPercentileNanos(90) / 1e3,
+                histogram.getPercentileNanos(99) / 1e3, histogram.getMaxNanos() / 1e3,
+                frames ? String.valueOf(histogram.getCountAbove(FRAME_BUDGET_NANOS)) : "-"));
+        }
+    }
+
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            dump(sb);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new AssertionError(e);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.calculator.engine;
+
+import java.math.BigInteger;
+
+/**
+ * Overflow checks and exact integer functions for the {@code long} fast paths of the
+ * decimal and rational evaluators, and exact factorials and binomial coefficients.
+ */
+final class IntegerMath {
+
+    // floor(sqrt(Long.MAX_VALUE)); anything larger squared overflows
+    private static final long MAX_LONG_ROOT = 3037000499L;
+
+    // 20! is the largest factorial in a long
+    static final int MAX_LONG_FACTORIAL = 20;
+
+    // Binomials C(n, k) for n up to this are looked up; C(66, 33) is the largest in a long
+    static final int MAX_TABLE_BINOMIAL = 66;
+
+    // Largest n whose primes are sieved for a factorial or a binomial
+    static final int MAX_SIEVE = 1 << 24;
+
+    // Below this many factors a plain loop beats splitting the product
+    private static final int SPLIT_THRESHOLD = 16;
+
+    private static final long[] FACTORIALS = new long[MAX_LONG_FACTORIAL + 1];
+
+    static {
+        FACTORIALS[0] = 1;
+        for (int i = 1; i <= MAX_LONG_FACTORIAL; i++) {
+            FACTORIALS[i] = FACTORIALS[i - 1] * i;
+        }
+    }
+
+    private IntegerMath() {}
+
+    /**
+     * Whether {@code r = a * b} overflowed; the test Math.multiplyExact does, without the exception.
+     */
+    static boolean multiplyOverflows(long a, long b, long r) {
+        if (((Math.abs(a) | Math.abs(b)) >>> 31) == 0) return false;
+        return (b != 0 && r / b != a) || (a == Long.MIN_VALUE && b == -1);
+    }
+
+    /**
+     * Binary GCD of two values read as unsigned, so {@code Math.abs(Long.MIN_VALUE)} works.
+     */
+    static long gcd(long a, long b) {
+        if (a == 0) return b;
+        if (b == 0) return a;
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+        while (b != 0) {
+            b >>>= Long.numberOfTrailingZeros(b);
+            if (Long.compareUnsigned(a, b) > 0) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        }
+        return a << shift;
+    }
+
+    /**
+     * Integer square root of a non-negative long, or -1 if it is not a perfect square.
+     */
+    static long exactSqrt(long value) {
+        long root = Math.min((long) Math.sqrt((double) value), MAX_LONG_ROOT);
+        // The double estimate can be one off either way for large values
+        while (root * root > value) root--;
+        while (root < MAX_LONG_ROOT && (root + 1) * (root + 1) <= value) root++;
+        return root * root == value ? root : -1;
+    }
+
+    /**
+     * Integer square root of a non-negative value, or null if it is not a perfect square.
+     * ({@code BigInteger.sqrt} needs API 33.)
+     */
+    static BigInteger exactSqrt(BigInteger value) {
+        if (value.bitLength() < 63) {
+            long root = exactSqrt(value.longValue());
+            return root >= 0 ? BigInteger.valueOf(root) : null;
+        }
+        // Newton's iteration decreases monotonically from any start above the root
+        BigInteger x = BigInteger.ONE.shiftLeft((value.bitLength() + 1) / 2);
+        while (true) {
+            BigInteger next = x.add(value.divide(x)).shiftRight(1);
+            if (next.compareTo(x) >= 0) break;
+            x = next;
+        }
+        return x.multiply(x).equals(value) ? x : null;
+    }
+
+    /**
+     * Integer n-th root of a non-negative value, or null if it is not a perfect power.
+     */
+    static BigInteger exactRoot(BigInteger value, int n) {
+        if (n == 1 || value.signum() == 0 || value.equals(BigInteger.ONE)) return value;
+        if (n == 2) return exactSqrt(value);
+        // A root of k bits has an n-th power of more than (k - 1) * n bits
+        int bits = value.bitLength() / n + 1;
+        if (bits < 2) return null;
+        // Newton's iteration from above, as in exactSqrt
+        BigInteger x = BigInteger.ONE.shiftLeft(bits);
+        BigInteger m = BigInteger.valueOf(n - 1);
+        BigInteger divisor = BigInteger.valueOf(n);
+        while (true) {
+            BigInteger next = x.multiply(m).add(value.divide(x.pow(n - 1))).divide(divisor);
+            if (next.compareTo(x) >= 0) break;
+            x = next;
+        }
+        return x.pow(n).equals(value) ? x : null;
+    }
+
+    /**
+     * n! by the prime swing algorithm: n! = (⌊n/2⌋!)² · swing(n), where the swing
+     * {@code n! / ⌊n/2⌋!²} is a product of few, known prime powers. The recursion
+     * squares ever larger numbers instead of multiplying n small ones, and each product is
+     * split in balanced halves so the big multiplications are of equal-sized operands.
+     * Factorials up to {@value #MAX_LONG_FACTORIAL}! come from a table.
+     */
+    static BigInteger factorial(int n) {
+        if (n < 0 || n > MAX_SIEVE) {
+            throw new IllegalArgumentException("Factorial of " + n);
+        }
+        if (n <= MAX_LONG_FACTORIAL) {
+            return BigInteger.valueOf(FACTORIALS[n]);
+        }
+        int[] primes = primesUpTo(n);
+        return factorial(n, primes, new long[primes.length]);
+    }
+
+    private static BigInteger factorial(int n, int[] primes, long[] factors) {
+        if (n <= MAX_LONG_FACTORIAL) {
+            return BigInteger.valueOf(FACTORIALS[n]);
+        }
+        BigInteger half = factorial(n / 2, primes, factors);
+        return half.multiply(half).multiply(swing(n, primes, factors));
+    }
+
+    /**
+     * {@code n! / ⌊n/2⌋!²}. The exponent of a prime p in it is the number of odd
+     * quotients ⌊n/pᵏ⌋, so primes in (n/3, n/2] are absent and those above n/2 appear once.
+     */
+    private static BigInteger swing(int n, int[] primes, long[] factors) {
+        int count = 0;
+        long word = 1;
+        for (int prime : primes) {
+            if (prime > n) break;
+            long power = 1;
+            for (long q = n / prime; q > 0; q /= prime) {
+                if ((q & 1) != 0) power *= prime;
+            }
+            if (power == 1) continue;
+            // Pack factors into words as long as they fit
+            if (word > Long.MAX_VALUE / power) {
+                factors[count++] = word;
+                word = power;
+            } else {
+                word *= power;
+            }
+        }
+        factors[count++] = word;
+        return product(factors, 0, count);
+    }
+
+    /**
+     * Binomial coefficient C(n, k), 0 for k outside [0, n]. Small n are looked up in
+     * Pascal's triangle; small k use k exact multiply-and-divide steps; otherwise the
+     * coefficient is assembled from its prime factorization, where by Kummer's theorem
+     * the exponent of p is the number of borrows when subtracting k from n in base p.
+     * Callers bound the size of the result first.
+     */
+    static BigInteger binomial(long n, long k) {
+        if (k < 0 || k > n) return BigInteger.ZERO;
+        k = Math.min(k, n - k);
+        if (n <= MAX_TABLE_BINOMIAL) {
+            return BigInteger.valueOf(BinomialTable.ROWS[(int) n][(int) k]);
+        }
+        if (k < SPLIT_THRESHOLD || n > MAX_SIEVE || k * k < n) {
+            // Each partial result C(n - k + i, i) is an integer, so every division is exact
+            BigInteger result = BigInteger.ONE;
+            for (long i = 1; i <= k; i++) {
+                result = result.multiply(BigInteger.valueOf(n - k + i)).divide(BigInteger.valueOf(i));
+            }
+            return result;
+        }
+
+        int[] primes = primesUpTo((int) n);
+        long[] factors = new long[primes.length];
+        int count = 0;
+        long word = 1;
+        for (int prime : primes) {
+            long power = 1;
+            long a = n;
+            long b = k;
+            int borrow = 0;
+            while (a > 0) {
+                int digit = (int) (a % prime) - (int) (b % prime) - borrow;
+                borrow = digit < 0 ? 1 : 0;
+                if (borrow != 0) power *= prime;
+                a /= prime;
+                b /= prime;
+            }
+            if (power == 1) continue;
+            if (word > Long.MAX_VALUE / power) {
+                factors[count++] = word;
+                word = power;
+            } else {
+                word *= power;
+            }
+        }
+        factors[count++] = word;
+        return product(factors, 0, count);
+    }
+
+    /**
+     * Permutations P(n, k) = n! / (n - k)!, the product of the k integers up to n,
+     * multiplied as a balanced split product. 0 for k outside [0, n].
+     */
+    static BigInteger permutations(long n, long k) {
+        if (k < 0 || k > n) return BigInteger.ZERO;
+        if (n <= MAX_LONG_FACTORIAL) {
+            return BigInteger.valueOf(FACTORIALS[(int) n] / FACTORIALS[(int) (n - k)]);
+        }
+        return rangeProduct(n - k + 1, n);
+    }
+
+    /**
+     * Product of the integers in [{@code from}, {@code to}].
+     */
+    private static BigInteger rangeProduct(long from, long to) {
+        if (from > to) return BigInteger.ONE;
+        if (to - from < SPLIT_THRESHOLD) {
+            BigInteger result = BigInteger.ONE;
+            long word = 1;
+            for (long i = from; i <= to; i++) {
+                if (word > Long.MAX_VALUE / i) {
+                    result = result.multiply(BigInteger.valueOf(word));
+                    word = i;
+                } else {
+                    word *= i;
+                }
+            }
+            return result.multiply(BigInteger.valueOf(word));
+        }
+        long middle = from + (to - from) / 2;
+        return rangeProduct(from, middle).multiply(rangeProduct(middle + 1, to));
+    }
+
+    /**
+     * Product of {@code factors[from, to)}, split in halves.
+     */
+    private static BigInteger product(long[] factors, int from, int to) {
+        int length = to - from;
+        if (length <= SPLIT_THRESHOLD) {
+            BigInteger result = BigInteger.valueOf(factors[from]);
+            for (int i = from + 1; i < to; i++) {
+                result = result.multiply(BigInteger.valueOf(factors[i]));
+            }
+            return result;
+        }
+        int middle = from + length / 2;
+        return product(factors, from, middle).multiply(product(factors, middle, to));
+    }
+
+    /**
+     * Primes up to {@code n} by an odd-only sieve of Eratosthenes.
+     */
+    static int[] primesUpTo(int n) {
+        if (n < 2) return new int[0];
+        // composite[i] is for 2i + 1
+        boolean[] composite = new boolean[n / 2 + 1];
+        int count = 1;
+        for (int i = 1; 2 * i + 1 <= n; i++) {
+            if (composite[i]) continue;
+            count++;
+            long p = 2 * i + 1;
+            for (long j = p * p; j <= n; j += 2 * p) {
+                composite[(int) (j / 2)] = true;
+            }
+        }
+        int[] primes = new int[count];
+        primes[0] = 2;
+        int next = 1;
+        for (int i = 1; 2 * i + 1 <= n; i++) {
+            if (!composite[i]) primes[next++] = 2 * i + 1;
+        }
+        return primes;
+    }
+
+    /**
+     * Pascal's triangle up to {@link #MAX_TABLE_BINOMIAL}, built on first use.
+     */
+    private static final class BinomialTable {
+        static final long[][] ROWS = new long[MAX_TABLE_BINOMIAL + 1][];
+
+        static {
+            for (int n = 0; n <= MAX_TABLE_BINOMIAL; n++) {
+                ROWS[n] = new long[n / 2 + 1];
+                ROWS[n][0] = 1;
+                for (int k = 1; k <= n / 2; k++) {
+                    // C(n-1, k) is C(n-1, n-1-k) when k is past the middle of the shorter row
+                    long right = k <= (n - 1) / 2 ? ROWS[n - 1][k] : ROWS[n - 1][n - 1 - k];
+                    ROWS[n][k] = ROWS[n - 1][k - 1] + right;
+                }
+            }
+        }
+    }
+}
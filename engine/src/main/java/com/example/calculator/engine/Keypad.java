@@ -0,0 +1,301 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * The calculator's keys as int codes, and the single dispatch path every source of key
+ * presses goes through: on-screen buttons, hardware keyboards, accessibility actions,
+ * macro playback and tests. Buttons are resolved to a key code once when they are set
+ * up, so a press is one table lookup and a {@code switch}, with no allocation.
+ *
+ * <p>Typed characters that have no key of their own, such as the letters of function,
+ * variable and unit names or the separators of the other modes, are entered as text by
+ * {@link #type}, again from shared constants.
+ */
+public final class Keypad {
+
+    // Digits are their own value
+    public static final int KEY_0 = 0;
+    public static final int KEY_9 = 9;
+    public static final int KEY_DECIMAL = 10;
+    public static final int KEY_ADD = 11;
+    public static final int KEY_SUBTRACT = 12;
+    public static final int KEY_MULTIPLY = 13;
+    public static final int KEY_DIVIDE = 14;
+    public static final int KEY_PERCENT = 15;
+    public static final int KEY_SQRT = 16;
+    public static final int KEY_SQUARE = 17;
+    public static final int KEY_PARENTHESES = 18;
+    public static final int KEY_CLEAR = 19;
+    public static final int KEY_DELETE = 20;
+    public static final int KEY_EQUALS = 21;
+    // The graphing variable
+    public static final int KEY_X = 22;
+    // Add the current value to the memory register, and enter the register
+    public static final int KEY_MEMORY_ADD = 23;
+    public static final int KEY_MEMORY_RECALL = 24;
+    public static final int KEY_COUNT = 25;
+
+    public static final int NO_KEY = -1;
+
+    public static final int GROUP_DIGIT = 0;
+    public static final int GROUP_OPERATOR = 1;
+    public static final int GROUP_FUNCTION = 2;
+    public static final int GROUP_CONTROL = 3;
+
+    /**
+     * Receives dispatched keys. Text arguments are shared constants.
+     */
+    public interface Target {
+        void onDigit(String digit);
+
+        void onDecimal();
+
+        void onOperator(String operator);
+
+        /**
+         * A name, or letters of one.
+         */
+        void onVariable(String name);
+
+        /**
+         * Text that is not an operand, such as the table separator {@code ;}.
+         */
+        void onText(String text);
+
+        void onPercent();
+
+        void onSquareRoot();
+
+        void onSquare();
+
+        void onParentheses();
+
+        void onClear();
+
+        void onDelete();
+
+        void onEquals();
+
+        void onMemoryAdd();
+
+        void onMemoryRecall();
+    }
+
+    private static final String[] SYMBOLS = {
+        "0", "1", "2", "3", "4", "5", "6", "7", "8", "9",
+        ".", "+", "-", "×", "÷", "%", "√", "²", "()", "C", "⌫", "=", "x", "M+", "MR"
+    };
+
+    private static final int[] GROUPS = new int[KEY_COUNT];
+
+    // Typed characters to keys, for hardware keyboards and macros
+    private static final int[] ASCII_KEYS = new int[128];
+
+    // Typed characters without a key to the text they enter, or null
+    private static final String[] ASCII_TEXT = new String[128];
+
+    private static final String DEGREE = "°";
+    private static final String INTEGRAL = "∫";
+    private static final String ARROW = "→";
+
+    static {
+        for (int key = KEY_0; key <= KEY_9; key++) {
+            GROUPS[key] = GROUP_DIGIT;
+        }
+        GROUPS[KEY_DECIMAL] = GROUP_DIGIT;
+        GROUPS[KEY_X] = GROUP_DIGIT;
+        GROUPS[KEY_ADD] = GROUP_OPERATOR;
+        GROUPS[KEY_SUBTRACT] = GROUP_OPERATOR;
+        GROUPS[KEY_MULTIPLY] = GROUP_OPERATOR;
+        GROUPS[KEY_DIVIDE] = GROUP_OPERATOR;
+        GROUPS[KEY_PERCENT] = GROUP_FUNCTION;
+        GROUPS[KEY_SQRT] = GROUP_FUNCTION;
+        GROUPS[KEY_SQUARE] = GROUP_FUNCTION;
+        GROUPS[KEY_PARENTHESES] = GROUP_FUNCTION;
+        GROUPS[KEY_MEMORY_ADD] = GROUP_FUNCTION;
+        GROUPS[KEY_MEMORY_RECALL] = GROUP_FUNCTION;
+        GROUPS[KEY_CLEAR] = GROUP_CONTROL;
+        GROUPS[KEY_DELETE] = GROUP_CONTROL;
+        GROUPS[KEY_EQUALS] = GROUP_CONTROL;
+
+        Arrays.fill(ASCII_KEYS, NO_KEY);
+        for (int key = KEY_0; key <= KEY_9; key++) {
+            ASCII_KEYS['0' + key] = key;
+        }
+        ASCII_KEYS['.'] = KEY_DECIMAL;
+        ASCII_KEYS[','] = KEY_DECIMAL;
+        ASCII_KEYS['+'] = KEY_ADD;
+        ASCII_KEYS['-'] = KEY_SUBTRACT;
+        ASCII_KEYS['*'] = KEY_MULTIPLY;
+        ASCII_KEYS['x'] = KEY_X;
+        ASCII_KEYS['X'] = KEY_X;
+        ASCII_KEYS['/'] = KEY_DIVIDE;
+        ASCII_KEYS['%'] = KEY_PERCENT;
+        ASCII_KEYS['^'] = KEY_SQUARE;
+        ASCII_KEYS['('] = KEY_PARENTHESES;
+        ASCII_KEYS[')'] = KEY_PARENTHESES;
+        ASCII_KEYS['='] = KEY_EQUALS;
+        ASCII_KEYS['\n'] = KEY_EQUALS;
+        ASCII_KEYS['\b'] = KEY_DELETE;
+        ASCII_KEYS[0x7f] = KEY_DELETE;
+        ASCII_KEYS[0x1b] = KEY_CLEAR;
+
+        for (char c = 'a'; c <= 'z'; c++) {
+            char upper = (char) (c - 'a' + 'A');
+            ASCII_TEXT[c] = String.valueOf(c);
+            ASCII_TEXT[upper] = String.valueOf(upper);
+        }
+        ASCII_TEXT['_'] = "_";
+        ASCII_TEXT['!'] = "!";
+        ASCII_TEXT[';'] = ";";
+        // '=' is the equals key, so an assignment's = is typed as ':', and → as '>'
+        ASCII_TEXT[':'] = "=";
+        ASCII_TEXT['>'] = ARROW;
+    }
+
+    private Keypad() {}
+
+    public static int group(int key) {
+        return GROUPS[key];
+    }
+
+    /**
+     * The key's label, which for digits and operators is also the text it inserts.
+     */
+    public static String symbol(int key) {
+        return SYMBOLS[key];
+    }
+
+    /**
+     * The key a typed character stands for, or {@link #NO_KEY}. Accepts the display
+     * symbols as well as their ASCII spellings.
+     */
+    public static int forChar(char c) {
+        if (c < ASCII_KEYS.length) {
+            return ASCII_KEYS[c];
+        }
+        switch (c) {
+            case '×':
+                return KEY_MULTIPLY;
+            case '÷':
+                return KEY_DIVIDE;
+            case '√':
+                return KEY_SQRT;
+            case '²':
+                return KEY_SQUARE;
+            case '⌫':
+                return KEY_DELETE;
+            default:
+                return NO_KEY;
+        }
+    }
+
+    /**
+     * The text a typed character without a key enters, or null. Letters and the other
+     * characters of names are passed to {@link Target#onVariable} by {@link #type}, the
+     * rest to {@link Target#onText}.
+     */
+    public static String textFor(char c) {
+        if (c < ASCII_TEXT.length) {
+            return ASCII_TEXT[c];
+        }
+        switch (c) {
+            case '°':
+                return DEGREE;
+            case '∫':
+                return INTEGRAL;
+            case '→':
+                return ARROW;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Types a character: dispatches its key if it has one, otherwise enters its
+     * {@link #textFor text}. Returns false if it is neither.
+     */
+    public static boolean type(char c, Target target) {
+        int key = forChar(c);
+        if (key != NO_KEY) {
+            dispatch(key, target);
+            return true;
+        }
+        String text = textFor(c);
+        if (text == null) {
+            return false;
+        }
+        // Letters, _ and ° make up names, and ∫ is one
+        if (Character.isLetter(c) || c == '_' || c == '°' || c == '∫') {
+            target.onVariable(text);
+        } else {
+            target.onText(text);
+        }
+        return true;
+    }
+
+    public static void dispatch(int key, Target target) {
+        switch (key) {
+            case KEY_DECIMAL:
+                target.onDecimal();
+                break;
+            case KEY_ADD:
+            case KEY_SUBTRACT:
+            case KEY_MULTIPLY:
+            case KEY_DIVIDE:
+                target.onOperator(SYMBOLS[key]);
+                break;
+            case KEY_PERCENT:
+                target.onPercent();
+                break;
+            case KEY_SQRT:
+                target.onSquareRoot();
+                break;
+            case KEY_SQUARE:
+                target.onSquare();
+                break;
+            case KEY_PARENTHESES:
+                target.onParentheses();
+                break;
+            case KEY_CLEAR:
+                target.onClear();
+                break;
+            case KEY_DELETE:
+                target.onDelete();
+                break;
+            case KEY_EQUALS:
+                target.onEquals();
+                break;
+            case KEY_X:
+                target.onVariable(SYMBOLS[key]);
+                break;
+            case KEY_MEMORY_ADD:
+                target.onMemoryAdd();
+                break;
+            case KEY_MEMORY_RECALL:
+                target.onMemoryRecall();
+                break;
+            default:
+                if (key < KEY_0 || key > KEY_9) {
+                    throw new IllegalArgumentException("Unknown key: " + key);
+                }
+                target.onDigit(SYMBOLS[key]);
+                break;
+        }
+    }
+
+    /**
+     * Plays back typed characters as if typed in order, skipping those that are neither
+     * keys nor text. Returns the number typed.
+     */
+    public static int play(CharSequence keys, Target target) {
+        int count = 0;
+        for (int i = 0; i < keys.length(); i++) {
+            if (type(keys.charAt(i), target)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
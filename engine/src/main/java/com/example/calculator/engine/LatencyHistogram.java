@@ -0,0 +1,105 @@
+package com.example.calculator.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with log-linear buckets, in the style
+ * of HdrHistogram: each power of two is split into {@link #SUB_BUCKETS} equal buckets,
+ * so any recorded value is known to within about 3% across the whole range from one
+ * nanosecond to hours. Recording is a few atomic increments and never allocates, so it
+ * can sit on the UI thread and the evaluation worker at once.
+ *
+ * <p>Reads are not a consistent snapshot while other threads record, which is fine for
+ * the counts and percentiles it reports.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    // Buckets per power of two above the linear range
+    static final int SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+
+    private static final int BUCKET_COUNT = index(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(index(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+
+    /**
+     * The value at {@code percentile} (0 to 100), reported as the top of its bucket and
+     * never more than the largest value recorded. 0 when empty.
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Values recorded above {@code nanos}, exact at bucket boundaries.
+     */
+    public long getCountAbove(long nanos) {
+        long above = 0;
+        for (int i = index(nanos) + 1; i < BUCKET_COUNT; i++) {
+            above += counts.get(i);
+        }
+        return above;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    static int index(long value) {
+        int msb = 63 - Long.numberOfLeadingZeros(value | 1);
+        int shift = Math.max(0, msb - SUB_BUCKET_BITS + 1);
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestInBucket(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index - (long) shift * SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
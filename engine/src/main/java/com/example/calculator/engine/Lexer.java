@@ -0,0 +1,287 @@
+package com.example.calculator.engine;
+
+/**
+ * Single-pass tokenizer over the calculator's display text.
+ * Reads the display symbols (×, ÷, √, ²) directly, so the expression never has
+ * to be rewritten before parsing. Tokens are reported as int constants and number
+ * values are kept in a field, which keeps scanning free of allocations.
+ *
+ * <p>Identifiers are looked up in {@link Functions}; a function name is reported as
+ * {@link #FUNCTION} or {@link #INFIX} with its opcode in {@link #opcode()}.
+ */
+public final class Lexer {
+
+    public static final int END = 0;
+    public static final int NUMBER = 1;
+    public static final int PLUS = 2;
+    public static final int MINUS = 3;
+    public static final int MULTIPLY = 4;
+    public static final int DIVIDE = 5;
+    public static final int POWER = 6;
+    public static final int SQRT = 7;
+    public static final int SQUARE = 8;
+    public static final int LEFT_PAREN = 9;
+    public static final int RIGHT_PAREN = 10;
+    public static final int INVALID = 11;
+    public static final int IDENTIFIER = 12;
+    // Prefix function such as sin; the opcode is in opcode()
+    public static final int FUNCTION = 13;
+    // Function written between its operands, such as nCr
+    public static final int INFIX = 14;
+    public static final int FACTORIAL = 15;
+
+    // Powers of ten that are exactly representable as a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private CharSequence input = "";
+    private int end;
+    private int position;
+
+    private int token = END;
+    private int tokenStart;
+    private double value;
+    private int opcode;
+    // Variables, read whole where a function name could be split off their start
+    private SymbolTable names;
+
+    public Lexer reset(CharSequence input) {
+        return reset(input, 0, input.length());
+    }
+
+    public Lexer reset(CharSequence input, int start, int end) {
+        this.input = input;
+        this.position = start;
+        this.end = end;
+        this.token = END;
+        this.tokenStart = start;
+        this.value = 0;
+        this.opcode = 0;
+        return this;
+    }
+
+    /**
+     * Reads an identifier declared in {@code names} as one {@link #IDENTIFIER} rather
+     * than a function run into its operand, so that a variable may be called cost.
+     */
+    Lexer setNames(SymbolTable names) {
+        this.names = names;
+        return this;
+    }
+
+    /**
+     * Advances to the next token and returns its type.
+     */
+    public int next() {
+        while (position < end && input.charAt(position) <= ' ') {
+            position++;
+        }
+
+        tokenStart = position;
+        if (position >= end) {
+            return token = END;
+        }
+
+        char c = input.charAt(position);
+        if ((c >= '0' && c <= '9') || c == '.') {
+            return token = scanNumber();
+        }
+        if (isIdentifierStart(c)) {
+            return token = scanIdentifier();
+        }
+
+        position++;
+        switch (c) {
+            case '+':
+                return token = PLUS;
+            case '-':
+            case '−':
+                return token = MINUS;
+            case '*':
+            case '×':
+                return token = MULTIPLY;
+            case '/':
+            case '÷':
+                return token = DIVIDE;
+            case '^':
+                return token = POWER;
+            case '√':
+                return token = SQRT;
+            case '²':
+                return token = SQUARE;
+            case '!':
+                return token = FACTORIAL;
+            case '(':
+                return token = LEFT_PAREN;
+            case ')':
+                return token = RIGHT_PAREN;
+            default:
+                return token = INVALID;
+        }
+    }
+
+    public int token() {
+        return token;
+    }
+
+    public int tokenStart() {
+        return tokenStart;
+    }
+
+    public int tokenEnd() {
+        return position;
+    }
+
+    /**
+     * Whether {@code input} has {@code name} as an identifier of its own, rather than as
+     * letters of a longer name or of a function such as exp. Leaves the lexer on it.
+     */
+    public boolean mentions(CharSequence input, String name) {
+        reset(input);
+        for (int token = next(); token != END; token = next()) {
+            if (token == IDENTIFIER && tokenEquals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the text of the current token with {@code name} without copying it.
+     */
+    public boolean tokenEquals(String name) {
+        return position - tokenStart == name.length() && regionMatches(tokenStart, name);
+    }
+
+    /**
+     * Value of the current {@link #NUMBER} token.
+     */
+    public double value() {
+        return value;
+    }
+
+    /**
+     * {@link Opcodes} function of the current {@link #FUNCTION} or {@link #INFIX} token.
+     */
+    public int opcode() {
+        return opcode;
+    }
+
+    private int scanNumber() {
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+
+        while (position < end) {
+            char c = input.charAt(position);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (seenDot) fractionDigits++;
+                if (significantDigits > 0 || c != '0') {
+                    significantDigits++;
+                    if (significantDigits <= 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                    }
+                }
+            } else if (c == '.') {
+                if (seenDot) {
+                    position++;
+                    return INVALID;
+                }
+                seenDot = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+
+        if (!seenDigit) {
+            return INVALID;
+        }
+
+        // Scientific notation as produced by the result formatter, e.g. 1.234568E+10
+        int exponent = 0;
+        if (position < end && input.charAt(position) == 'E') {
+            int p = position + 1;
+            boolean negative = false;
+            if (p < end && (input.charAt(p) == '+' || input.charAt(p) == '-')) {
+                negative = input.charAt(p) == '-';
+                p++;
+            }
+            if (p < end && isDigit(input.charAt(p))) {
+                while (p < end && isDigit(input.charAt(p))) {
+                    if (exponent < 10000) exponent = exponent * 10 + (input.charAt(p) - '0');
+                    p++;
+                }
+                if (negative) exponent = -exponent;
+                position = p;
+            }
+        }
+
+        value = toDouble(mantissa, significantDigits, exponent - fractionDigits);
+        if (Double.isNaN(value)) {
+            value = Double.parseDouble(input.subSequence(tokenStart, position).toString());
+        }
+        return NUMBER;
+    }
+
+    private int scanIdentifier() {
+        position++;
+        while (position < end && isIdentifierPart(input.charAt(position))) {
+            position++;
+        }
+
+        int function = Functions.find(input, tokenStart, position);
+        if (function < 0) {
+            if (names != null && names.find(input, tokenStart, position) >= 0) return IDENTIFIER;
+            // A name run into its operand, as in sin30
+            int length = Functions.findPrefix(input, tokenStart, position);
+            if (length == 0) return IDENTIFIER;
+            function = Functions.find(input, tokenStart, tokenStart + length);
+            position = tokenStart + length;
+        }
+        opcode = function;
+        // "sqrt" is the spelled-out √, as accepted by the original tokenizer
+        if (function == Opcodes.SQRT) return SQRT;
+        return Functions.isInfix(function) ? INFIX : FUNCTION;
+    }
+
+    /**
+     * Exact conversion when both the mantissa and the power of ten are representable,
+     * in which case a single multiply or divide is correctly rounded. Returns NaN when
+     * the caller has to fall back to {@link Double#parseDouble}.
+     */
+    static double toDouble(long mantissa, int significantDigits, int scale) {
+        if (mantissa == 0) return 0;
+        if (significantDigits > 15) return Double.NaN;
+        if (scale == 0) return mantissa;
+        if (scale > 0 && scale < POWERS_OF_TEN.length) return mantissa * POWERS_OF_TEN[scale];
+        if (scale < 0 && -scale < POWERS_OF_TEN.length) return mantissa / POWERS_OF_TEN[-scale];
+        return Double.NaN;
+    }
+
+    private boolean regionMatches(int from, String word) {
+        if (from + word.length() > end) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (input.charAt(from + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // ° starts unit names such as °C
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '°';
+    }
+
+    static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
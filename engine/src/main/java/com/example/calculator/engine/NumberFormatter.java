@@ -0,0 +1,398 @@
+package com.example.calculator.engine;
+
+/**
+ * Formats results for the display without String.format or BigDecimal.
+ *
+ * <p>Values from 1e-6 up to 1e10 are written in plain notation, rounded half-up to
+ * {@value #SIGNIFICANT_DIGITS} significant digits with trailing zeros removed; others in
+ * scientific notation with {@value #SCIENTIFIC_FRACTION_DIGITS} fraction digits, as in
+ * {@code 1.234568E+10}. Both are the text the {@link Lexer} reads back.
+ *
+ * <p>Digits are generated exactly from the binary value, so rounding matches
+ * {@code new BigDecimal(value, new MathContext(15, HALF_UP))}: the significand is split
+ * into an integer part and a binary fraction held in a word array, and the fraction is
+ * multiplied out nine decimal digits at a time. All scratch space is allocated once;
+ * {@link #format(double, StringBuilder)} does not allocate at all.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public final class NumberFormatter {
+
+    public static final int SIGNIFICANT_DIGITS = 15;
+    public static final int SCIENTIFIC_FRACTION_DIGITS = 6;
+
+    private static final double SCIENTIFIC_ABOVE = 1e10;
+    private static final double SCIENTIFIC_BELOW = 1e-6;
+    // 10^SIGNIFICANT_DIGITS: a complex part this much smaller than the other is not shown
+    private static final double NEGLIGIBLE_RATIO = 1e15;
+
+    private static final long CHUNK = 1_000_000_000L;
+    private static final int CHUNK_DIGITS = 9;
+    private static final long WORD_MASK = 0xffffffffL;
+
+    private final char decimalSeparator;
+    private final char groupingSeparator;
+
+    // Significant digits generated so far (one more than needed, for rounding), and the
+    // position of the decimal point relative to the first of them
+    private final byte[] digits = new byte[SIGNIFICANT_DIGITS + 1];
+    private int digitCount;
+    private int pointPosition;
+
+    // Binary fraction or integer part; 2^1074 needs 34 words, 2^1024 needs 32
+    private final int[] words = new int[36];
+    // Base 1e9 digits of a large integer part, least significant first
+    private final int[] chunks = new int[36];
+
+    private final StringBuilder text = new StringBuilder(32);
+
+    /**
+     * A formatter whose {@link #localize} output uses '.' and no grouping.
+     */
+    public NumberFormatter() {
+        this('.', (char) 0);
+    }
+
+    /**
+     * @param groupingSeparator separator inserted every three integer digits by
+     *                          {@link #localize}, or 0 for none
+     */
+    public NumberFormatter(char decimalSeparator, char groupingSeparator) {
+        this.decimalSeparator = decimalSeparator;
+        this.groupingSeparator = groupingSeparator;
+    }
+
+    /**
+     * Formats {@code value} into a new String; the only allocation is the result.
+     */
+    public String format(double value) {
+        text.setLength(0);
+        format(value, text);
+        return text.toString();
+    }
+
+    /**
+     * Appends the formatted value to {@code out}.
+     */
+    public void format(double value, StringBuilder out) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append(value);
+            return;
+        }
+        if (value == 0) {
+            out.append('0');
+            return;
+        }
+
+        double abs = Math.abs(value);
+        boolean scientific = abs >= SCIENTIFIC_ABOVE || abs < SCIENTIFIC_BELOW;
+        generateDigits(abs, scientific ? SCIENTIFIC_FRACTION_DIGITS + 1 : SIGNIFICANT_DIGITS);
+
+        if (value < 0) {
+            out.append('-');
+        }
+        if (scientific) {
+            appendScientific(out);
+        } else {
+            appendPlain(out);
+        }
+    }
+
+    /**
+     * Formats {@code real + imaginary×i} into a new String, as in {@code 3-4i}.
+     */
+    public String formatComplex(double real, double imaginary) {
+        text.setLength(0);
+        formatComplex(real, imaginary, text);
+        return text.toString();
+    }
+
+    /**
+     * Appends {@code real + imaginary×i} as {@code a+bi}, {@code a}, {@code bi}, {@code i}
+     * or {@code -i}. A part smaller than the other by more than the
+     * {@value #SIGNIFICANT_DIGITS} digits shown is rounding noise, as in e^(iπ), and is
+     * left out. The text is what the {@link Lexer} reads back.
+     */
+    public void formatComplex(double real, double imaginary, StringBuilder out) {
+        double realAbs = Math.abs(real);
+        double imaginaryAbs = Math.abs(imaginary);
+        if (imaginaryAbs * NEGLIGIBLE_RATIO < realAbs) {
+            imaginary = 0;
+        } else if (realAbs * NEGLIGIBLE_RATIO < imaginaryAbs) {
+            real = 0;
+        }
+
+        if (imaginary == 0) {
+            format(real, out);
+            return;
+        }
+        if (real != 0) {
+            format(real, out);
+            out.append(imaginary < 0 ? '-' : '+');
+        } else if (imaginary < 0) {
+            out.append('-');
+        }
+        if (imaginaryAbs != 1) {
+            format(imaginaryAbs, out);
+        }
+        out.append('i');
+    }
+
+    /**
+     * Appends {@code canonical}, text produced by {@link #format} or a plain decimal
+     * string, with this formatter's decimal separator and grouping of the integer digits.
+     * Only for display: the result is not valid calculator input.
+     */
+    public void localize(CharSequence canonical, StringBuilder out) {
+        int length = canonical.length();
+        int i = 0;
+        if (i < length && canonical.charAt(i) == '-') {
+            out.append('-');
+            i++;
+        }
+
+        int integerEnd = i;
+        while (integerEnd < length && isDigit(canonical.charAt(integerEnd))) {
+            integerEnd++;
+        }
+        for (int j = i; j < integerEnd; j++) {
+            if (groupingSeparator != 0 && j > i && (integerEnd - j) % 3 == 0) {
+                out.append(groupingSeparator);
+            }
+            out.append(canonical.charAt(j));
+        }
+
+        for (int j = integerEnd; j < length; j++) {
+            char c = canonical.charAt(j);
+            out.append(c == '.' ? decimalSeparator : c);
+        }
+    }
+
+    private void appendPlain(StringBuilder out) {
+        // Rounded digits without trailing zeros; the point may lie before or after them
+        while (digitCount > 1 && digits[digitCount - 1] == 0) {
+            digitCount--;
+        }
+
+        if (pointPosition <= 0) {
+            out.append("0.");
+            for (int i = pointPosition; i < 0; i++) {
+                out.append('0');
+            }
+            appendDigits(out, 0, digitCount);
+            return;
+        }
+
+        appendDigits(out, 0, Math.min(pointPosition, digitCount));
+        for (int i = digitCount; i < pointPosition; i++) {
+            out.append('0');
+        }
+        if (digitCount > pointPosition) {
+            out.append('.');
+            appendDigits(out, pointPosition, digitCount);
+        }
+    }
+
+    private void appendScientific(StringBuilder out) {
+        out.append((char) ('0' + digits[0])).append('.');
+        for (int i = 1; i <= SCIENTIFIC_FRACTION_DIGITS; i++) {
+            out.append(i < digitCount ? (char) ('0' + digits[i]) : '0');
+        }
+
+        int exponent = pointPosition - 1;
+        out.append('E').append(exponent < 0 ? '-' : '+');
+        exponent = Math.abs(exponent);
+        if (exponent < 10) {
+            out.append('0');
+        }
+        out.append(exponent);
+    }
+
+    private void appendDigits(StringBuilder out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out.append((char) ('0' + digits[i]));
+        }
+    }
+
+    /**
+     * Fills {@link #digits} with the first {@code precision} significant digits of the
+     * exact value of {@code abs}, rounded half-up.
+     */
+    private void generateDigits(double abs, int precision) {
+        long bits = Double.doubleToRawLongBits(abs);
+        int biasedExponent = (int) (bits >>> 52);
+        long significand = bits & ((1L << 52) - 1);
+        int exponent;
+        if (biasedExponent == 0) {
+            exponent = -1074;
+        } else {
+            significand |= 1L << 52;
+            exponent = biasedExponent - 1075;
+        }
+
+        // abs = significand × 2^exponent; one extra digit decides the rounding
+        int needed = precision + 1;
+        digitCount = 0;
+        pointPosition = 0;
+
+        if (exponent >= 0) {
+            if (exponent <= 10) {
+                integerDigits(significand << exponent, needed);
+            } else {
+                largeIntegerDigits(significand, exponent, needed);
+            }
+        } else {
+            int fractionBits = -exponent;
+            long integerPart = fractionBits < 64 ? significand >>> fractionBits : 0;
+            long fraction = fractionBits < 64 ? significand & ((1L << fractionBits) - 1) : significand;
+            if (integerPart != 0) {
+                integerDigits(integerPart, needed);
+            }
+            if (digitCount < needed && fraction != 0) {
+                fractionDigits(fraction, fractionBits, needed);
+            }
+        }
+
+        round(precision);
+    }
+
+    private void integerDigits(long value, int needed) {
+        int count = 0;
+        while (value != 0) {
+            chunks[count++] = (int) (value % CHUNK);
+            value /= CHUNK;
+        }
+        emitIntegerChunks(count, needed);
+    }
+
+    /**
+     * Integer digits of {@code significand × 2^exponent}, by repeated division by 1e9.
+     */
+    private void largeIntegerDigits(long significand, int exponent, int needed) {
+        int wordCount = placeShifted(significand, exponent);
+
+        int count = 0;
+        while (wordCount > 0) {
+            long remainder = 0;
+            for (int i = wordCount - 1; i >= 0; i--) {
+                long current = (remainder << 32) | (words[i] & WORD_MASK);
+                words[i] = (int) (current / CHUNK);
+                remainder = current % CHUNK;
+            }
+            chunks[count++] = (int) remainder;
+            while (wordCount > 0 && words[wordCount - 1] == 0) {
+                wordCount--;
+            }
+        }
+        emitIntegerChunks(count, needed);
+    }
+
+    private void emitIntegerChunks(int count, int needed) {
+        boolean leading = true;
+        for (int c = count - 1; c >= 0; c--) {
+            int chunk = chunks[c];
+            for (int divisor = 100_000_000; divisor > 0; divisor /= 10) {
+                int digit = chunk / divisor % 10;
+                if (leading && digit == 0) continue;
+                leading = false;
+                pointPosition++;
+                if (digitCount < needed) {
+                    digits[digitCount++] = (byte) digit;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decimal digits of {@code fraction × 2^-fractionBits}. The fraction is shifted left so
+     * that it ends on a word boundary; multiplying it by 1e9 then carries the next nine
+     * digits out of the top word.
+     */
+    private void fractionDigits(long fraction, int fractionBits, int needed) {
+        int shift = (32 - fractionBits % 32) % 32;
+        int wordCount = (fractionBits + shift) / 32;
+        int lowWord = placeShifted(fraction, shift) > 0 ? 0 : wordCount;
+        for (int i = 4; i < wordCount; i++) {
+            words[i] = 0;
+        }
+
+        while (digitCount < needed) {
+            while (lowWord < wordCount && words[lowWord] == 0) {
+                // Multiplying never fills low zero words again
+                lowWord++;
+            }
+            if (lowWord == wordCount) {
+                // The expansion terminates; the remaining digits are zero
+                return;
+            }
+
+            long carry = 0;
+            for (int i = lowWord; i < wordCount; i++) {
+                long product = (words[i] & WORD_MASK) * CHUNK + carry;
+                words[i] = (int) product;
+                carry = product >>> 32;
+            }
+
+            int chunk = (int) carry;
+            for (int divisor = 100_000_000; divisor > 0 && digitCount < needed; divisor /= 10) {
+                int digit = chunk / divisor % 10;
+                if (digitCount == 0 && digit == 0) {
+                    pointPosition--;
+                } else {
+                    digits[digitCount++] = (byte) digit;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores {@code value << shift} in {@link #words}, zeroing the words below it. Returns
+     * the number of words in use.
+     */
+    private int placeShifted(long value, int shift) {
+        int wordShift = shift / 32;
+        int bitShift = shift % 32;
+        for (int i = 0; i < wordShift; i++) {
+            words[i] = 0;
+        }
+        long low = value << bitShift;
+        long high = bitShift == 0 ? 0 : value >>> (64 - bitShift);
+        words[wordShift] = (int) low;
+        words[wordShift + 1] = (int) (low >>> 32);
+        words[wordShift + 2] = (int) high;
+        words[wordShift + 3] = 0;
+
+        int count = wordShift + 3;
+        while (count > 0 && words[count - 1] == 0) {
+            count--;
+        }
+        return count;
+    }
+
+    private void round(int precision) {
+        if (digitCount <= precision) {
+            return;
+        }
+        boolean roundUp = digits[precision] >= 5;
+        digitCount = precision;
+        if (!roundUp) {
+            return;
+        }
+
+        int i = precision - 1;
+        while (i >= 0 && digits[i] == 9) {
+            digits[i--] = 0;
+        }
+        if (i >= 0) {
+            digits[i]++;
+        } else {
+            // 99.9 rounded up to 100
+            digits[0] = 1;
+            pointPosition++;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.calculator.engine;
+
+/**
+ * Instruction set shared by the parser, the direct {@link Evaluator} and
+ * {@link CompiledExpression} programs. {@link #CONST}, {@link #LOAD} and
+ * {@link #INTEGER_POWER} take one operand (constant pool index, variable slot or
+ * exponent); every other opcode works on the stack.
+ */
+public final class Opcodes {
+
+    public static final int CONST = 0;
+    public static final int LOAD = 1;
+    public static final int ADD = 2;
+    public static final int SUBTRACT = 3;
+    public static final int MULTIPLY = 4;
+    public static final int DIVIDE = 5;
+    public static final int POWER = 6;
+    public static final int SQRT = 7;
+    public static final int SQUARE = 8;
+    public static final int NEGATE = 9;
+
+    // Functions; see Functions for their names and definitions
+    public static final int SIN = 10;
+    public static final int COS = 11;
+    public static final int TAN = 12;
+    public static final int ASIN = 13;
+    public static final int ACOS = 14;
+    public static final int ATAN = 15;
+    public static final int SINH = 16;
+    public static final int COSH = 17;
+    public static final int TANH = 18;
+    public static final int LN = 19;
+    public static final int LOG = 20;
+    public static final int EXP = 21;
+    public static final int GAMMA = 22;
+    public static final int FACTORIAL = 23;
+    public static final int COMBINATIONS = 24;
+    public static final int PERMUTATIONS = 25;
+    public static final int ROOT = 26;
+
+    // Only in optimized programs: x^n for a small constant n, by repeated squaring
+    public static final int INTEGER_POWER = 27;
+
+    private Opcodes() {}
+
+    public static boolean isUnary(int opcode) {
+        return opcode == SQRT || opcode == SQUARE || opcode == NEGATE || (opcode >= SIN && opcode <= FACTORIAL);
+    }
+
+    /**
+     * Whether {@code opcode} is a named function, evaluated by {@link Functions}.
+     */
+    public static boolean isFunction(int opcode) {
+        return opcode >= SIN && opcode <= ROOT;
+    }
+
+    /**
+     * Whether {@code opcode} is written before its operand, like √.
+     */
+    static boolean isPrefix(int opcode) {
+        return opcode == SQRT || (opcode >= SIN && opcode < FACTORIAL);
+    }
+
+    public static boolean hasOperand(int opcode) {
+        return opcode == CONST || opcode == LOAD || opcode == INTEGER_POWER;
+    }
+
+    static double applyUnary(int opcode, double operand, int position) throws EvaluationException {
+        switch (opcode) {
+            case SQRT:
+                if (operand < 0) {
+                    throw new EvaluationException(EvaluationException.Reason.SQRT_NEGATIVE, position);
+                }
+                return Math.sqrt(operand);
+            case SQUARE:
+                return operand * operand;
+            case NEGATE:
+                return -operand;
+            default:
+                if (!isFunction(opcode)) {
+                    throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, position);
+                }
+                return checkDomain(Functions.unary(opcode, operand), !Double.isNaN(operand), position);
+        }
+    }
+
+    static double applyBinary(int opcode, double a, double b, int position) throws EvaluationException {
+        switch (opcode) {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                if (b == 0) {
+                    throw new EvaluationException(EvaluationException.Reason.DIVISION_BY_ZERO, position);
+                }
+                return a / b;
+            case POWER:
+                return Math.pow(a, b);
+            default:
+                if (!isFunction(opcode)) {
+                    throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, position);
+                }
+                return checkDomain(Functions.binary(opcode, a, b), !Double.isNaN(a) && !Double.isNaN(b), position);
+        }
+    }
+
+    /**
+     * {@code base^exponent} for {@code exponent ≥ 1} in about 2·log₂(exponent)
+     * multiplications. Each rounds, so the result can be a few ulps from
+     * {@link Math#pow}; it is exact whenever the power is representable.
+     */
+    static double integerPower(double base, int exponent) {
+        double result = base;
+        // Skip the leading 1 bit; each further bit squares, and a set bit multiplies in base
+        for (int bit = Integer.highestOneBit(exponent) >>> 1; bit != 0; bit >>>= 1) {
+            result *= result;
+            if ((exponent & bit) != 0) {
+                result *= base;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Functions return NaN outside their domain; for defined operands that is reported at
+     * the function rather than as a NaN result.
+     */
+    private static double checkDomain(double result, boolean defined, int position) throws EvaluationException {
+        if (Double.isNaN(result) && defined) {
+            throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the NaN/infinity checks the calculator performs on every final result.
+     */
+    static double checkResult(double result) throws EvaluationException {
+        if (Double.isNaN(result)) {
+            throw new EvaluationException(EvaluationException.Reason.NOT_A_NUMBER, -1);
+        }
+        if (Double.isInfinite(result)) {
+            throw new EvaluationException(EvaluationException.Reason.INFINITY, -1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Rewrites a {@link CompiledExpression} program into a cheaper one with the same results.
+ *
+ * <p>The postfix program is read back into a tree, children before parents, and each node
+ * is simplified as it is built, so the pass is linear and needs no recursion however deep
+ * the expression nests:
+ *
+ * <ul>
+ * <li>Subtrees of constants are folded with the evaluator's own arithmetic, so a folded
+ *     constant has exactly the bits evaluation would have produced. A subtree that fails,
+ *     such as {@code 1÷0}, is kept so the error is still reported at run time, at its
+ *     position.
+ * <li>{@code x^2} becomes {@code x²}, which multiplies rather than calling
+ *     {@link Math#pow}, and {@code x×x} becomes {@code x²}. Other integer exponents up to
+ *     {@link #MAX_INTEGER_POWER} become {@link Opcodes#INTEGER_POWER}, repeated squaring.
+ * <li>Exact identities are removed: {@code x×1}, {@code x÷1}, {@code x-0}, {@code x^1},
+ *     {@code --x}, and {@code a+-b} becomes {@code a-b}.
+ * <li>Operands of + and × are swapped when the right one needs the deeper stack, so a
+ *     chain nested to the right, {@code a+(b+(c+d))}, runs as a flat left-to-right chain
+ *     in constant stack depth. Swapping is exact in floating point, where regrouping the
+ *     chain would not be, and is only done when the left operand cannot fail, so the
+ *     error reported for an input does not change.
+ * </ul>
+ *
+ * <p>The only rewrite that can change a result is {@link Opcodes#INTEGER_POWER}, by a few
+ * ulps against {@link Math#pow}, and never for powers that are exactly representable.
+ */
+final class Optimizer {
+
+    // Larger exponents are left to Math.pow, whose error does not grow with the exponent
+    static final int MAX_INTEGER_POWER = 64;
+
+    private static final int NONE = -1;
+
+    // The tree in parallel arrays; a node's children always come before it
+    private int[] ops;
+    private double[] values;
+    private int[] operands;
+    private int[] lefts;
+    private int[] rights;
+    private int[] positions;
+    // Stack slots the subtree needs, and whether it can throw
+    private int[] needs;
+    private boolean[] safe;
+    private int count;
+
+    private Optimizer(int capacity) {
+        ops = new int[capacity];
+        values = new double[capacity];
+        operands = new int[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        positions = new int[capacity];
+        needs = new int[capacity];
+        safe = new boolean[capacity];
+    }
+
+    /**
+     * Optimizes a program; {@code eliminated} is the count already removed from it.
+     */
+    static CompiledExpression optimize(String source, String[] variables, int[] code, int[] codePositions,
+                                       double[] constants, int eliminated) {
+        if (code.length == 0) {
+            return new CompiledExpression(source, variables, code, codePositions, constants, 1, eliminated);
+        }
+        Optimizer optimizer = new Optimizer(code.length);
+
+        int[] stack = new int[code.length];
+        int size = 0;
+        int sourceNodes = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            int opcode = code[pc];
+            int position = codePositions[pc];
+            int node;
+            if (opcode == Opcodes.CONST) {
+                node = optimizer.constant(constants[code[++pc]]);
+            } else if (opcode == Opcodes.LOAD) {
+                node = optimizer.add(Opcodes.LOAD, NONE, NONE, position);
+                optimizer.operands[node] = code[++pc];
+            } else if (opcode == Opcodes.INTEGER_POWER) {
+                node = optimizer.integerPower(stack[--size], code[++pc], position);
+            } else if (Opcodes.isUnary(opcode)) {
+                node = optimizer.unary(opcode, stack[--size], position);
+            } else {
+                int right = stack[--size];
+                node = optimizer.binary(opcode, stack[--size], right, position);
+            }
+            stack[size++] = node;
+            sourceNodes++;
+        }
+        return optimizer.emit(stack[0], source, variables, eliminated + sourceNodes);
+    }
+
+    private int unary(int opcode, int operand, int position) {
+        if (ops[operand] == Opcodes.CONST) {
+            try {
+                return constant(Opcodes.applyUnary(opcode, values[operand], position));
+            } catch (EvaluationException e) {
+                // Left for evaluation to report
+            }
+        }
+        if (opcode == Opcodes.NEGATE && ops[operand] == Opcodes.NEGATE) {
+            return lefts[operand];
+        }
+        return add(opcode, operand, NONE, position);
+    }
+
+    private int binary(int opcode, int left, int right, int position) {
+        if (ops[left] == Opcodes.CONST && ops[right] == Opcodes.CONST) {
+            try {
+                return constant(Opcodes.applyBinary(opcode, values[left], values[right], position));
+            } catch (EvaluationException e) {
+                // Left for evaluation to report
+            }
+        }
+        switch (opcode) {
+            case Opcodes.ADD:
+                if (ops[right] == Opcodes.NEGATE) {
+                    return binary(Opcodes.SUBTRACT, left, lefts[right], position);
+                }
+                break;
+            case Opcodes.SUBTRACT:
+                // Not x+0, which turns -0 into +0
+                if (isPositiveZero(right)) return left;
+                if (ops[right] == Opcodes.NEGATE) {
+                    return binary(Opcodes.ADD, left, lefts[right], position);
+                }
+                break;
+            case Opcodes.MULTIPLY:
+                if (isConstant(right, 1)) return left;
+                if (isConstant(left, 1)) return right;
+                if (ops[left] == Opcodes.LOAD && ops[right] == Opcodes.LOAD && operands[left] == operands[right]) {
+                    return add(Opcodes.SQUARE, left, NONE, position);
+                }
+                break;
+            case Opcodes.DIVIDE:
+                if (isConstant(right, 1)) return left;
+                break;
+            case Opcodes.POWER:
+                if (ops[right] == Opcodes.CONST) {
+                    double exponent = values[right];
+                    if (exponent == 1) return left;
+                    if (exponent == 2) return add(Opcodes.SQUARE, left, NONE, position);
+                    if (exponent >= 3 && exponent <= MAX_INTEGER_POWER && exponent == Math.rint(exponent)) {
+                        return integerPower(left, (int) exponent, position);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+
+        if ((opcode == Opcodes.ADD || opcode == Opcodes.MULTIPLY) && needs[right] > needs[left] && safe[left]) {
+            int swap = left;
+            left = right;
+            right = swap;
+        }
+        return add(opcode, left, right, position);
+    }
+
+    private int integerPower(int base, int exponent, int position) {
+        if (ops[base] == Opcodes.CONST) {
+            return constant(Opcodes.integerPower(values[base], exponent));
+        }
+        int node = add(Opcodes.INTEGER_POWER, base, NONE, position);
+        operands[node] = exponent;
+        return node;
+    }
+
+    private int constant(double value) {
+        int node = add(Opcodes.CONST, NONE, NONE, -1);
+        values[node] = value;
+        return node;
+    }
+
+    private int add(int opcode, int left, int right, int position) {
+        if (count == ops.length) {
+            grow();
+        }
+        int node = count++;
+        ops[node] = opcode;
+        lefts[node] = left;
+        rights[node] = right;
+        positions[node] = position;
+        if (left == NONE) {
+            needs[node] = 1;
+            safe[node] = true;
+        } else if (right == NONE) {
+            needs[node] = needs[left];
+            safe[node] = safe[left] && cannotFail(opcode);
+        } else {
+            needs[node] = Math.max(needs[left], needs[right] + 1);
+            safe[node] = safe[left] && safe[right] && cannotFail(opcode);
+        }
+        return node;
+    }
+
+    /**
+     * Writes the tree rooted at {@code root} back out as a postfix program.
+     */
+    private CompiledExpression emit(int root, String source, String[] variables, int sourceNodes) {
+        // Post-order without recursion: visit node, right, left, then reverse
+        int[] order = new int[count];
+        int[] pending = new int[count];
+        int size = 0;
+        int visited = 0;
+        pending[size++] = root;
+        while (size > 0) {
+            int node = pending[--size];
+            order[visited++] = node;
+            if (lefts[node] != NONE) pending[size++] = lefts[node];
+            if (rights[node] != NONE) pending[size++] = rights[node];
+        }
+
+        int[] code = new int[2 * visited];
+        int[] codePositions = new int[2 * visited];
+        double[] constants = new double[visited];
+        int length = 0;
+        int constantCount = 0;
+        for (int i = visited - 1; i >= 0; i--) {
+            int node = order[i];
+            int opcode = ops[node];
+            codePositions[length] = positions[node];
+            code[length++] = opcode;
+            if (opcode == Opcodes.CONST) {
+                constants[constantCount] = values[node];
+                codePositions[length] = -1;
+                code[length++] = constantCount++;
+            } else if (Opcodes.hasOperand(opcode)) {
+                codePositions[length] = positions[node];
+                code[length++] = operands[node];
+            }
+        }
+        return new CompiledExpression(source, variables,
+            Arrays.copyOf(code, length), Arrays.copyOf(codePositions, length),
+            Arrays.copyOf(constants, constantCount), needs[root], sourceNodes - visited);
+    }
+
+    private boolean isConstant(int node, double value) {
+        return ops[node] == Opcodes.CONST && values[node] == value;
+    }
+
+    private boolean isPositiveZero(int node) {
+        return ops[node] == Opcodes.CONST && Double.doubleToRawLongBits(values[node]) == 0;
+    }
+
+    private static boolean cannotFail(int opcode) {
+        switch (opcode) {
+            case Opcodes.ADD:
+            case Opcodes.SUBTRACT:
+            case Opcodes.MULTIPLY:
+            case Opcodes.POWER:
+            case Opcodes.INTEGER_POWER:
+            case Opcodes.SQUARE:
+            case Opcodes.NEGATE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void grow() {
+        int capacity = ops.length * 2;
+        ops = Arrays.copyOf(ops, capacity);
+        values = Arrays.copyOf(values, capacity);
+        operands = Arrays.copyOf(operands, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        needs = Arrays.copyOf(needs, capacity);
+        safe = Arrays.copyOf(safe, capacity);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.calculator.engine;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Offline currency rates in a compact binary file that is used in place, memory-mapped,
+ * so opening a table costs the same however many currencies it lists:
+ *
+ * <pre>
+ * magic:int 'RAT1' count:int timestamp:long base:code reserved:int
+ * entry := code:int rate:double      (count entries, ascending by code)
+ * code  := three ASCII letters and a zero byte, big-endian
+ * </pre>
+ *
+ * <p>A rate is how many units of the currency one unit of the base buys. Entries are
+ * found by binary search on the mapped buffer; nothing is parsed up front.
+ */
+public final class RateTable {
+
+    static final int MAGIC = 0x52415431;
+
+    private static final int HEADER_BYTES = 24;
+    private static final int ENTRY_BYTES = 12;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int base;
+
+    private RateTable(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a rate table");
+        }
+        count = buffer.getInt(4);
+        if (count < 0 || (long) HEADER_BYTES + (long) count * ENTRY_BYTES > buffer.limit()) {
+            throw new IOException("Truncated rate table");
+        }
+        this.buffer = buffer;
+        this.base = buffer.getInt(16);
+    }
+
+    /**
+     * Maps {@code file} read-only. The mapping stays valid after the file is closed.
+     */
+    public static RateTable map(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            return new RateTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a table from a buffer in the file format, such as bundled bytes.
+     */
+    public static RateTable wrap(ByteBuffer buffer) throws IOException {
+        return new RateTable(buffer.duplicate());
+    }
+
+    /**
+     * Writes a table in the file format. {@code codes} need not be sorted.
+     */
+    public static void write(OutputStream out, String base, long timestamp, String[] codes, double[] rates)
+            throws IOException {
+        int[] packed = new int[codes.length];
+        long[] order = new long[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            packed[i] = pack(codes[i], 0, codes[i].length());
+            if (packed[i] == 0 || !(rates[i] > 0)) {
+                throw new IllegalArgumentException("Bad entry " + codes[i] + " " + rates[i]);
+            }
+            // Sort indices by code; codes are positive, so the pair sorts by code first
+            order[i] = (long) packed[i] << 32 | i;
+        }
+        Arrays.sort(order);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(codes.length);
+        data.writeLong(timestamp);
+        data.writeInt(pack(base, 0, base.length()));
+        data.writeInt(0);
+        for (long entry : order) {
+            int i = (int) entry;
+            data.writeInt(packed[i]);
+            data.writeDouble(rates[i]);
+        }
+        data.flush();
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTimestamp() {
+        return buffer.getLong(8);
+    }
+
+    public String getBase() {
+        return unpack(base);
+    }
+
+    /**
+     * Index of the currency named {@code input[start, end)}, {@link #getCount()} for the
+     * base currency, or -1.
+     */
+    int indexOf(CharSequence input, int start, int end) {
+        int code = pack(input, start, end);
+        if (code == 0) return -1;
+        if (code == base) return count;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midCode = buffer.getInt(HEADER_BYTES + mid * ENTRY_BYTES);
+            if (midCode < code) {
+                low = mid + 1;
+            } else if (midCode > code) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Units of currency {@code index} per unit of the base.
+     */
+    double rate(int index) {
+        return index == count ? 1 : buffer.getDouble(HEADER_BYTES + index * ENTRY_BYTES + 4);
+    }
+
+    String code(int index) {
+        return index == count ? getBase() : unpack(buffer.getInt(HEADER_BYTES + index * ENTRY_BYTES));
+    }
+
+    /**
+     * Three upper-case ASCII letters as an int, or 0 if {@code input[start, end)} is not
+     * a currency code.
+     */
+    private static int pack(CharSequence input, int start, int end) {
+        if (end - start != 3) return 0;
+        int code = 0;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c < 'A' || c > 'Z') return 0;
+            code = code << 8 | c;
+        }
+        return code << 8;
+    }
+
+    private static String unpack(int code) {
+        return new String(new char[] {(char) (code >>> 24), (char) (code >>> 16 & 0xff), (char) (code >>> 8 & 0xff)});
+    }
+}
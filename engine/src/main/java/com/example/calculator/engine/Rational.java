@@ -0,0 +1,99 @@
+package com.example.calculator.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * An exact fraction in lowest terms with a positive denominator, as produced by
+ * {@link RationalEvaluator}. Immutable.
+ */
+public final class Rational {
+
+    public static final Rational ZERO = new Rational(BigInteger.ZERO, BigInteger.ONE);
+
+    private final BigInteger numerator;
+    private final BigInteger denominator;
+
+    private Rational(BigInteger numerator, BigInteger denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+    }
+
+    /**
+     * The fraction {@code numerator / denominator}, reduced to lowest terms.
+     */
+    public static Rational valueOf(BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() == 0) {
+            throw new ArithmeticException("Zero denominator");
+        }
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger gcd = numerator.gcd(denominator);
+        if (!gcd.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(gcd);
+            denominator = denominator.divide(gcd);
+        }
+        return new Rational(numerator, denominator);
+    }
+
+    public static Rational valueOf(long numerator, long denominator) {
+        return valueOf(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+    }
+
+    public BigInteger getNumerator() {
+        return numerator;
+    }
+
+    public BigInteger getDenominator() {
+        return denominator;
+    }
+
+    public boolean isInteger() {
+        return denominator.equals(BigInteger.ONE);
+    }
+
+    public int signum() {
+        return numerator.signum();
+    }
+
+    public double doubleValue() {
+        if (numerator.bitLength() < 53 && denominator.bitLength() < 53) {
+            // Both exact as doubles, so one correctly rounded division
+            return numerator.doubleValue() / denominator.doubleValue();
+        }
+        return toBigDecimal(MathContext.DECIMAL64).doubleValue();
+    }
+
+    /**
+     * The decimal value rounded to {@code mathContext}; this is the only division the
+     * rational mode performs.
+     */
+    public BigDecimal toBigDecimal(MathContext mathContext) {
+        BigDecimal value = new BigDecimal(numerator);
+        return isInteger() ? value.round(mathContext) : value.divide(new BigDecimal(denominator), mathContext);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Rational)) return false;
+        Rational rational = (Rational) other;
+        return numerator.equals(rational.numerator) && denominator.equals(rational.denominator);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * numerator.hashCode() + denominator.hashCode();
+    }
+
+    /**
+     * {@code n/d}, or just {@code n} for integers.
+     */
+    @Override
+    public String toString() {
+        return isInteger() ? numerator.toString() : numerator + "/" + denominator;
+    }
+}
@@ -0,0 +1,585 @@
+package com.example.calculator.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Evaluates expressions in exact rational arithmetic, so {@code 1÷3×3} is exactly 1.
+ *
+ * <p>Each value is a numerator/denominator pair of {@code long}s, promoted to
+ * {@link BigInteger} only when a result would overflow. Fractions are not reduced after
+ * every operation: a {@code long} pair is reduced only when an operation would otherwise
+ * overflow, and a promoted pair only once it has grown {@value #REDUCE_GROWTH_BITS} bits
+ * past its size at the last reduction. The result is reduced once, in {@link Rational#valueOf}.
+ *
+ * <p>√ of a fraction whose terms are not perfect squares, and powers with a fractional
+ * exponent, have no exact result; they are computed in double precision and the double
+ * is carried on as the fraction it prints as. So are products and powers whose terms
+ * would pass {@value #MAX_EXACT_BITS} bits, so that repeated squaring cannot grow them
+ * without bound. The same goes for the transcendental
+ * functions and for roots that are not exact; factorials and combinatorics of integers
+ * are exact.
+ *
+ * <p>Instances are reusable but not thread-safe.
+ */
+public final class RationalEvaluator {
+
+    // Reduce a promoted value once it has grown this far past its last reduction
+    private static final int REDUCE_GROWTH_BITS = 64;
+
+    // Exact powers and products beyond this size are computed in double precision instead
+    private static final long MAX_EXACT_BITS = 1 << 12;
+
+    // Same cap on literal exponents as the lexer
+    private static final int MAX_EXPONENT = 10000;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ExpressionParser parser = new ExpressionParser();
+    private final StackSink sink = new StackSink();
+
+    /**
+     * Evaluates display text with the same grammar as {@link Evaluator#evaluate}.
+     */
+    public Rational evaluate(CharSequence expression) throws EvaluationException {
+        sink.size = 0;
+        parser.parse(expression, sink);
+        return Rational.valueOf(sink.numerator(0), sink.denominator(0));
+    }
+
+    /**
+     * GCD reductions performed so far, not counting the final one per result.
+     */
+    public long getReductionCount() {
+        return sink.reductionCount;
+    }
+
+    private static final class StackSink implements ExpressionParser.Sink {
+        // An entry is nums[i]/dens[i] while bigNums[i] is null; denominators are positive
+        long[] nums = new long[16];
+        long[] dens = new long[16];
+        BigInteger[] bigNums = new BigInteger[16];
+        BigInteger[] bigDens = new BigInteger[16];
+        int[] reducedBits = new int[16];
+        int size;
+        long reductionCount;
+
+        @Override
+        public void number(double value) {
+            // Only called for the implicit zero of an empty expression
+            push(0, 1);
+        }
+
+        @Override
+        public void number(double value, CharSequence input, int start, int end)
+                throws EvaluationException {
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean fraction = false;
+            int p = start;
+            for (; p < end; p++) {
+                char c = input.charAt(p);
+                if (c == '.') {
+                    fraction = true;
+                } else if (c >= '0' && c <= '9') {
+                    if (digits > 0 || c != '0') digits++;
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (fraction) scale++;
+                } else {
+                    break;
+                }
+            }
+            int mantissaEnd = p;
+            if (p < end) {
+                // E[+-]digits, already validated by the lexer
+                int exponent = parseExponent(input, p + 1, end);
+                if (exponent > MAX_EXPONENT) {
+                    throw new EvaluationException(EvaluationException.Reason.INFINITY, start);
+                }
+                scale -= Math.max(exponent, -MAX_EXPONENT);
+            }
+
+            if (digits <= 18 && scale >= 0 && scale <= 18) {
+                push(mantissa, POWERS_OF_TEN[scale]);
+                return;
+            }
+
+            // Long literal or large exponent; rare enough to parse the digits again
+            BigInteger unscaled = digits <= 18
+                ? BigInteger.valueOf(mantissa)
+                : new BigDecimal(input.subSequence(start, mantissaEnd).toString()).unscaledValue();
+            BigInteger power = BigInteger.TEN.pow(Math.abs(scale));
+            if (scale >= 0) {
+                pushBig(unscaled, power);
+            } else {
+                pushBig(unscaled.multiply(power), BigInteger.ONE);
+            }
+        }
+
+        @Override
+        public void identifier(CharSequence input, int start, int end) throws EvaluationException {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, start);
+        }
+
+        @Override
+        public void operator(int opcode, int position) throws EvaluationException {
+            if (Opcodes.isUnary(opcode)) {
+                applyUnary(opcode, size - 1, position);
+            } else {
+                size--;
+                applyBinary(opcode, size - 1, size, position);
+            }
+        }
+
+        private void applyUnary(int opcode, int i, int position) throws EvaluationException {
+            switch (opcode) {
+                case Opcodes.NEGATE:
+                    if (bigNums[i] == null && nums[i] != Long.MIN_VALUE) {
+                        nums[i] = -nums[i];
+                    } else {
+                        setBig(i, numerator(i).negate(), denominator(i));
+                    }
+                    return;
+                case Opcodes.SQUARE:
+                    multiply(i, i);
+                    return;
+                case Opcodes.SQRT:
+                    if (signum(i) < 0) {
+                        throw new EvaluationException(EvaluationException.Reason.SQRT_NEGATIVE, position);
+                    }
+                    sqrt(i);
+                    return;
+                case Opcodes.FACTORIAL:
+                case Opcodes.GAMMA:
+                    factorial(opcode, i, position);
+                    return;
+                default:
+                    if (!Opcodes.isFunction(opcode)) {
+                        throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, position);
+                    }
+                    setDouble(i, Opcodes.applyUnary(opcode, doubleValue(i), position));
+            }
+        }
+
+        private void applyBinary(int opcode, int i, int j, int position) throws EvaluationException {
+            switch (opcode) {
+                case Opcodes.ADD:
+                    add(i, j, false);
+                    return;
+                case Opcodes.SUBTRACT:
+                    add(i, j, true);
+                    return;
+                case Opcodes.MULTIPLY:
+                    multiply(i, j);
+                    return;
+                case Opcodes.DIVIDE:
+                    if (signum(j) == 0) {
+                        throw new EvaluationException(EvaluationException.Reason.DIVISION_BY_ZERO, position);
+                    }
+                    invert(j);
+                    multiply(i, j);
+                    return;
+                case Opcodes.POWER:
+                    power(i, j, position);
+                    return;
+                case Opcodes.COMBINATIONS:
+                case Opcodes.PERMUTATIONS:
+                    combinatorics(opcode, i, j, position);
+                    return;
+                case Opcodes.ROOT:
+                    root(i, j, position);
+                    return;
+                default:
+                    throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, position);
+            }
+        }
+
+        private void add(int i, int j, boolean subtract) {
+            for (int attempt = 0; attempt < 2 && bigNums[i] == null && bigNums[j] == null; attempt++) {
+                long a = nums[i];
+                long b = dens[i];
+                long c = nums[j];
+                long d = dens[j];
+                if (subtract) {
+                    if (c == Long.MIN_VALUE) break;
+                    c = -c;
+                }
+                if (b == d) {
+                    long n = a + c;
+                    if (((a ^ n) & (c ^ n)) >= 0) {
+                        nums[i] = n;
+                        return;
+                    }
+                } else {
+                    long ad = a * d;
+                    long cb = c * b;
+                    long bd = b * d;
+                    long n = ad + cb;
+                    if (!IntegerMath.multiplyOverflows(a, d, ad) && !IntegerMath.multiplyOverflows(c, b, cb)
+                            && !IntegerMath.multiplyOverflows(b, d, bd) && ((ad ^ n) & (cb ^ n)) >= 0) {
+                        nums[i] = n;
+                        dens[i] = bd;
+                        return;
+                    }
+                }
+                // Overflow: reduce both terms and try once more before promoting
+                boolean reduced = reduceLong(i);
+                if (!(reduceLong(j) || reduced)) break;
+            }
+
+            BigInteger b = denominator(i);
+            BigInteger c = subtract ? numerator(j).negate() : numerator(j);
+            BigInteger d = denominator(j);
+            if (b.equals(d)) {
+                setBig(i, numerator(i).add(c), b);
+            } else {
+                setBig(i, numerator(i).multiply(d).add(c.multiply(b)), b.multiply(d));
+            }
+        }
+
+        private void multiply(int i, int j) throws EvaluationException {
+            for (int attempt = 0; attempt < 2 && bigNums[i] == null && bigNums[j] == null; attempt++) {
+                long a = nums[i];
+                long b = dens[i];
+                long c = nums[j];
+                long d = dens[j];
+                long n = a * c;
+                long m = b * d;
+                if (!IntegerMath.multiplyOverflows(a, c, n) && !IntegerMath.multiplyOverflows(b, d, m)) {
+                    nums[i] = n;
+                    dens[i] = m;
+                    return;
+                }
+                if (!crossReduce(i, j)) break;
+            }
+            if ((long) bitLength(i) + bitLength(j) > MAX_EXACT_BITS) {
+                setDouble(i, doubleValue(i) * doubleValue(j));
+                return;
+            }
+            setBig(i, numerator(i).multiply(numerator(j)), denominator(i).multiply(denominator(j)));
+        }
+
+        private void invert(int i) {
+            if (bigNums[i] == null && nums[i] != Long.MIN_VALUE) {
+                long n = nums[i];
+                nums[i] = n < 0 ? -dens[i] : dens[i];
+                dens[i] = Math.abs(n);
+            } else {
+                BigInteger n = numerator(i);
+                BigInteger d = denominator(i);
+                setBig(i, n.signum() < 0 ? d.negate() : d, n.abs());
+            }
+        }
+
+        private void sqrt(int i) throws EvaluationException {
+            reduce(i);
+            if (bigNums[i] == null) {
+                long n = IntegerMath.exactSqrt(nums[i]);
+                long d = IntegerMath.exactSqrt(dens[i]);
+                if (n >= 0 && d >= 0) {
+                    nums[i] = n;
+                    dens[i] = d;
+                    return;
+                }
+            } else {
+                BigInteger n = IntegerMath.exactSqrt(bigNums[i]);
+                BigInteger d = IntegerMath.exactSqrt(bigDens[i]);
+                if (n != null && d != null) {
+                    setReduced(i, n, d);
+                    return;
+                }
+            }
+            setDouble(i, Math.sqrt(doubleValue(i)));
+        }
+
+        private void power(int i, int j, int position) throws EvaluationException {
+            reduce(j);
+            boolean integerExponent = bigNums[j] == null ? dens[j] == 1 : bigDens[j].equals(BigInteger.ONE);
+            if (!integerExponent) {
+                setDouble(i, Math.pow(doubleValue(i), doubleValue(j)));
+                return;
+            }
+
+            BigInteger exponent = numerator(j);
+            if (signum(i) == 0) {
+                if (exponent.signum() < 0) {
+                    // 0 to a negative power, Infinity in double mode
+                    throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+                }
+                set(i, exponent.signum() == 0 ? 1 : 0, 1);
+                return;
+            }
+
+            reduce(i);
+            BigInteger n = numerator(i);
+            BigInteger d = denominator(i);
+            if (d.equals(BigInteger.ONE) && n.abs().equals(BigInteger.ONE)) {
+                set(i, n.signum() < 0 && exponent.testBit(0) ? -1 : 1, 1);
+                return;
+            }
+            long bits = Math.max(n.bitLength(), d.bitLength());
+            if (exponent.bitLength() > 31 || bits * Math.abs(exponent.longValue()) > MAX_EXACT_BITS) {
+                setDouble(i, Math.pow(doubleValue(i), exponent.doubleValue()));
+                return;
+            }
+
+            // Powers of coprime terms stay coprime, so no reduction is needed
+            int e = exponent.abs().intValue();
+            n = n.pow(e);
+            d = d.pow(e);
+            if (exponent.signum() < 0) {
+                setReduced(i, n.signum() < 0 ? d.negate() : d, n.abs());
+            } else {
+                setReduced(i, n, d);
+            }
+        }
+
+        /**
+         * n! exactly for integers, Γ(n) = (n - 1)! for gamma; Γ of other fractions in double
+         * precision.
+         */
+        private void factorial(int opcode, int i, int position) throws EvaluationException {
+            reduce(i);
+            if (!isInteger(i)) {
+                setDouble(i, Opcodes.applyUnary(opcode, doubleValue(i), position));
+                return;
+            }
+            BigInteger n = numerator(i);
+            if (opcode == Opcodes.GAMMA) {
+                n = n.subtract(BigInteger.ONE);
+            }
+            if (n.signum() < 0) {
+                // Negative integers, and the poles of Γ
+                throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+            }
+            if (n.bitLength() > 31 || n.intValue() > IntegerMath.MAX_SIEVE
+                    || Functions.lnGamma(n.doubleValue() + 1) / Math.log(2) > MAX_EXACT_BITS) {
+                throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+            }
+            setReduced(i, IntegerMath.factorial(n.intValue()), BigInteger.ONE);
+        }
+
+        /**
+         * nCr or nPr of two non-negative integers, exactly.
+         */
+        private void combinatorics(int opcode, int i, int j, int position) throws EvaluationException {
+            reduce(i);
+            reduce(j);
+            if (!isInteger(i) || !isInteger(j) || signum(i) < 0 || signum(j) < 0
+                    || numerator(i).bitLength() > 62 || numerator(j).bitLength() > 62) {
+                throw new EvaluationException(EvaluationException.Reason.DOMAIN_ERROR, position);
+            }
+            long n = numerator(i).longValue();
+            long k = numerator(j).longValue();
+            if (k <= n) {
+                double bits = opcode == Opcodes.COMBINATIONS
+                    ? Functions.log2Binomial(n, k) : Functions.log2Permutations(n, k);
+                if (bits > MAX_EXACT_BITS) {
+                    throw new EvaluationException(EvaluationException.Reason.INFINITY, position);
+                }
+            }
+            BigInteger result = opcode == Opcodes.COMBINATIONS ? IntegerMath.binomial(n, k) : IntegerMath.permutations(n, k);
+            setReduced(i, result, BigInteger.ONE);
+        }
+
+        /**
+         * The root of index {@code i} of the entry at {@code j}, left at {@code i}: exact
+         * when both terms of a reduced fraction are perfect powers.
+         */
+        private void root(int i, int j, int position) throws EvaluationException {
+            reduce(i);
+            reduce(j);
+            if (isInteger(i) && signum(i) > 0 && numerator(i).bitLength() < 31 && signum(j) != 0) {
+                int index = numerator(i).intValue();
+                boolean negative = signum(j) < 0;
+                if (!negative || (index & 1) != 0) {
+                    BigInteger n = IntegerMath.exactRoot(numerator(j).abs(), index);
+                    BigInteger d = n != null ? IntegerMath.exactRoot(denominator(j), index) : null;
+                    if (d != null) {
+                        setReduced(i, negative ? n.negate() : n, d);
+                        return;
+                    }
+                }
+            }
+            setDouble(i, Opcodes.applyBinary(Opcodes.ROOT, doubleValue(i), doubleValue(j), position));
+        }
+
+        private boolean isInteger(int i) {
+            return bigNums[i] == null ? dens[i] == 1 : bigDens[i].equals(BigInteger.ONE);
+        }
+
+        /**
+         * Carries an inexact double result on as the fraction it prints as.
+         */
+        private void setDouble(int i, double value) throws EvaluationException {
+            BigDecimal decimal = BigDecimal.valueOf(Opcodes.checkResult(value));
+            BigInteger unscaled = decimal.unscaledValue();
+            int scale = decimal.scale();
+            if (scale >= 0) {
+                setBig(i, unscaled, BigInteger.TEN.pow(scale));
+            } else {
+                setBig(i, unscaled.multiply(BigInteger.TEN.pow(-scale)), BigInteger.ONE);
+            }
+        }
+
+        /**
+         * Divides a long entry by the GCD of its terms. Returns false if it was already reduced.
+         */
+        private boolean reduceLong(int i) {
+            reductionCount++;
+            long g = IntegerMath.gcd(Math.abs(nums[i]), dens[i]);
+            if (g <= 1) return false;
+            nums[i] /= g;
+            dens[i] /= g;
+            return true;
+        }
+
+        /**
+         * Cancels common factors within and across two long entries before they are
+         * multiplied. Returns false if there were none.
+         */
+        private boolean crossReduce(int i, int j) {
+            if (i == j) {
+                return reduceLong(i);
+            }
+            boolean changed = reduceLong(i) | reduceLong(j);
+            long g = IntegerMath.gcd(Math.abs(nums[i]), dens[j]);
+            if (g > 1) {
+                nums[i] /= g;
+                dens[j] /= g;
+                changed = true;
+            }
+            g = IntegerMath.gcd(Math.abs(nums[j]), dens[i]);
+            if (g > 1) {
+                nums[j] /= g;
+                dens[i] /= g;
+                changed = true;
+            }
+            return changed;
+        }
+
+        private void reduce(int i) {
+            if (bigNums[i] == null) {
+                reduceLong(i);
+                return;
+            }
+            reductionCount++;
+            BigInteger g = bigNums[i].gcd(bigDens[i]);
+            if (g.equals(BigInteger.ONE)) {
+                reducedBits[i] = bitLength(i);
+            } else {
+                setReduced(i, bigNums[i].divide(g), bigDens[i].divide(g));
+            }
+        }
+
+        /**
+         * Stores a promoted result, reducing it only once it has grown well past its last
+         * reduction, and going back to longs when it fits again.
+         */
+        private void setBig(int i, BigInteger n, BigInteger d) {
+            bigNums[i] = n;
+            bigDens[i] = d;
+            if (bitLength(i) > reducedBits[i] + REDUCE_GROWTH_BITS) {
+                reduce(i);
+            } else {
+                demote(i);
+            }
+        }
+
+        private void setReduced(int i, BigInteger n, BigInteger d) {
+            bigNums[i] = n;
+            bigDens[i] = d;
+            reducedBits[i] = bitLength(i);
+            demote(i);
+        }
+
+        private void demote(int i) {
+            BigInteger n = bigNums[i];
+            BigInteger d = bigDens[i];
+            if (n.bitLength() < 64 && d.bitLength() < 64) {
+                set(i, n.longValue(), d.longValue());
+            }
+        }
+
+        private int bitLength(int i) {
+            if (bigNums[i] == null) {
+                return 64 - Long.numberOfLeadingZeros(Math.abs(nums[i]) | dens[i]);
+            }
+            return Math.max(bigNums[i].bitLength(), bigDens[i].bitLength());
+        }
+
+        BigInteger numerator(int i) {
+            return bigNums[i] != null ? bigNums[i] : BigInteger.valueOf(nums[i]);
+        }
+
+        BigInteger denominator(int i) {
+            return bigDens[i] != null ? bigDens[i] : BigInteger.valueOf(dens[i]);
+        }
+
+        private int signum(int i) {
+            return bigNums[i] != null ? bigNums[i].signum() : Long.signum(nums[i]);
+        }
+
+        private double doubleValue(int i) {
+            if (bigNums[i] == null) {
+                return (double) nums[i] / dens[i];
+            }
+            return Rational.valueOf(bigNums[i], bigDens[i]).doubleValue();
+        }
+
+        private void set(int i, long numerator, long denominator) {
+            nums[i] = numerator;
+            dens[i] = denominator;
+            bigNums[i] = null;
+            bigDens[i] = null;
+        }
+
+        private void push(long numerator, long denominator) {
+            ensureCapacity();
+            set(size, numerator, denominator);
+            reducedBits[size] = 0;
+            size++;
+        }
+
+        private void pushBig(BigInteger numerator, BigInteger denominator) {
+            ensureCapacity();
+            reducedBits[size] = 0;
+            setBig(size, numerator, denominator);
+            size++;
+        }
+
+        private void ensureCapacity() {
+            if (size == nums.length) {
+                int capacity = size * 2;
+                nums = Arrays.copyOf(nums, capacity);
+                dens = Arrays.copyOf(dens, capacity);
+                bigNums = Arrays.copyOf(bigNums, capacity);
+                bigDens = Arrays.copyOf(bigDens, capacity);
+                reducedBits = Arrays.copyOf(reducedBits, capacity);
+            }
+        }
+    }
+
+    private static int parseExponent(CharSequence input, int p, int end) {
+        boolean negative = false;
+        if (input.charAt(p) == '+' || input.charAt(p) == '-') {
+            negative = input.charAt(p) == '-';
+            p++;
+        }
+        int exponent = 0;
+        for (; p < end; p++) {
+            // Saturates past the cap, which is all the caller checks
+            if (exponent <= MAX_EXPONENT) exponent = exponent * 10 + (input.charAt(p) - '0');
+        }
+        return negative ? -exponent : exponent;
+    }
+}
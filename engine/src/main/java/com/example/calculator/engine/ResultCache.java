@@ -0,0 +1,224 @@
+package com.example.calculator.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least-recently-used cache of evaluation results.
+ *
+ * <p>Whole expressions are keyed on their {@link #normalize normalized} text. The
+ * {@link Evaluator} also stores the value of every closed parenthesized group under the
+ * group's text, so re-evaluating {@code (big)×(big)+x} after editing the tail only
+ * re-parses the tail. Region lookups compare characters in place and do not allocate.
+ *
+ * <p>The memory cap is an estimate of retained bytes per entry (key characters plus a
+ * fixed overhead). All methods are synchronized; the cache is shared by the UI thread
+ * and the evaluation worker.
+ */
+public final class ResultCache {
+
+    // Map node, String header and boxed Double, roughly
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Double> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final RegionKey regionKey = new RegionKey();
+    private long currentBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Canonical spelling of an expression: ASCII operators mapped to the display symbols
+     * and whitespace removed. Returns {@code expression} itself when it is already canonical,
+     * which is always the case for text typed on the keypad.
+     */
+    public static String normalize(String expression) {
+        int i = 0;
+        while (i < expression.length() && isCanonical(expression, i)) {
+            i++;
+        }
+        if (i == expression.length()) {
+            return expression;
+        }
+
+        StringBuilder sb = new StringBuilder(expression.length());
+        sb.append(expression, 0, i);
+        for (; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c <= ' ') continue;
+            switch (c) {
+                case '*':
+                    sb.append('×');
+                    break;
+                case '/':
+                    sb.append('÷');
+                    break;
+                case '−':
+                    sb.append('-');
+                    break;
+                case 's':
+                    if (expression.startsWith("sqrt", i)) {
+                        sb.append('√');
+                        i += 3;
+                        break;
+                    }
+                    sb.append(c);
+                    break;
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Cached value for {@code key}, or NaN on a miss. Evaluation never produces NaN.
+     */
+    public synchronized double get(String key) {
+        return found(entries.get(key));
+    }
+
+    /**
+     * Cached value for the text {@code input[start, end)}, or NaN on a miss.
+     */
+    public synchronized double get(CharSequence input, int start, int end) {
+        return found(entries.get(regionKey.set(input, start, end)));
+    }
+
+    public synchronized void put(String key, double value) {
+        long size = sizeOf(key);
+        if (size > maxBytes) return;
+
+        if (entries.put(key, value) == null) {
+            currentBytes += size;
+        }
+        trimToSize();
+    }
+
+    public void put(CharSequence input, int start, int end, double value) {
+        put(input.subSequence(start, end).toString(), value);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private double found(Double value) {
+        if (value == null) {
+            missCount++;
+            return Double.NaN;
+        }
+        hitCount++;
+        return value;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Double>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            currentBytes -= sizeOf(eldest.next().getKey());
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    private static long sizeOf(String key) {
+        return ENTRY_OVERHEAD_BYTES + 2L * key.length();
+    }
+
+    private static boolean isCanonical(String expression, int i) {
+        char c = expression.charAt(i);
+        return c > ' ' && c != '*' && c != '/' && c != '−' && c != 's';
+    }
+
+    /**
+     * Reusable lookup key over a region of another CharSequence. Its hash and equality
+     * match the String keys in the map, which is all HashMap needs for a lookup.
+     */
+    private static final class RegionKey implements CharSequence {
+        private CharSequence input;
+        private int start;
+        private int end;
+        private int hash;
+
+        RegionKey set(CharSequence input, int start, int end) {
+            this.input = input;
+            this.start = start;
+            this.end = end;
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + input.charAt(i);
+            }
+            this.hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof String)) return false;
+            String key = (String) other;
+            if (key.length() != end - start) return false;
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != input.charAt(start + i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return input.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return input.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return input.subSequence(start, end).toString();
+        }
+    }
+}
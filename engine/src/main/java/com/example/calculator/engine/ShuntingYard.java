@@ -0,0 +1,318 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Token-at-a-time operator precedence machine with the same grammar as
+ * {@link ExpressionParser}. Unlike the recursive parser it can stop after any token and
+ * resume later, which is what incremental and streaming evaluation need.
+ *
+ * <p>When journaling is enabled every mutation is logged, so the state after any earlier
+ * token can be restored with {@link #rollback(int)} in time proportional to the work undone.
+ */
+final class ShuntingYard {
+
+    // Operator stack markers for an open parenthesis and a unary plus; the latter does
+    // nothing but still groups a power-level operand, as ExpressionParser.parseUnary does
+    private static final int LEFT_PAREN = -1;
+    private static final int UNARY_PLUS = -2;
+
+    // Journal entry kinds
+    private static final int PUSH_VALUE = 0;
+    private static final int POP_VALUE = 1;
+    private static final int SET_VALUE = 2;
+    private static final int PUSH_OPERATOR = 3;
+    private static final int POP_OPERATOR = 4;
+    private static final int SET_STATE = 5;
+
+    private final boolean journaled;
+
+    private double[] values = new double[16];
+    private int valueCount;
+    private int[] operators = new int[16];
+    private int[] positions = new int[16];
+    private int operatorCount;
+
+    private boolean expectOperand = true;
+    private int tokenCount;
+
+    private int[] journalKinds;
+    private int[] journalInts;
+    private double[] journalValues;
+    private int journalLength;
+
+    ShuntingYard(boolean journaled) {
+        this.journaled = journaled;
+        if (journaled) {
+            journalKinds = new int[64];
+            journalInts = new int[64];
+            journalValues = new double[64];
+        }
+    }
+
+    void reset() {
+        valueCount = 0;
+        operatorCount = 0;
+        expectOperand = true;
+        tokenCount = 0;
+        journalLength = 0;
+    }
+
+    /**
+     * Feeds the current token of {@code lexer}.
+     */
+    void token(Lexer lexer) throws EvaluationException {
+        int token = lexer.token();
+        int position = lexer.tokenStart();
+        setState(expectOperand, tokenCount + 1);
+
+        if (!expectOperand) {
+            if (token == Lexer.SQUARE) {
+                setTop(values[valueCount - 1] * values[valueCount - 1]);
+                return;
+            }
+            if (token == Lexer.FACTORIAL) {
+                apply(Opcodes.FACTORIAL, position);
+                return;
+            }
+            if (token == Lexer.RIGHT_PAREN) {
+                reduce(0);
+                if (operatorCount == 0) {
+                    throw invalid(position);
+                }
+                popOperator();
+                operandComplete();
+                return;
+            }
+            if (ExpressionParser.startsOperand(token)) {
+                // Implicit multiplication, then read the operand below
+                pushBinary(Opcodes.MULTIPLY, position);
+            } else {
+                if (ExpressionParser.binaryPrecedence(token) == 0) {
+                    throw invalid(position);
+                }
+                pushBinary(token == Lexer.INFIX ? lexer.opcode() : ExpressionParser.binaryOpcode(token), position);
+                return;
+            }
+        }
+
+        // Only a prefix function or an operand may follow √ or a function, as in
+        // ExpressionParser.parsePrefix
+        boolean afterPrefix = operatorCount > 0 && Opcodes.isPrefix(operators[operatorCount - 1]);
+        switch (token) {
+            case Lexer.NUMBER:
+                pushValue(lexer.value());
+                operandComplete();
+                break;
+            case Lexer.LEFT_PAREN:
+                pushOperator(LEFT_PAREN, position);
+                break;
+            case Lexer.SQRT:
+                pushOperator(Opcodes.SQRT, position);
+                break;
+            case Lexer.FUNCTION:
+                pushOperator(lexer.opcode(), position);
+                break;
+            case Lexer.MINUS:
+                if (afterPrefix) throw invalid(position);
+                pushOperator(Opcodes.NEGATE, position);
+                break;
+            case Lexer.PLUS:
+                if (afterPrefix) throw invalid(position);
+                pushOperator(UNARY_PLUS, position);
+                break;
+            default:
+                throw invalid(position);
+        }
+    }
+
+    /**
+     * Closes any open parentheses and reduces everything that is left. The machine is
+     * consumed by this; journaled callers roll back afterwards to keep going.
+     */
+    double finish(int position) throws EvaluationException {
+        if (expectOperand) {
+            if (tokenCount == 0) return 0;
+            throw invalid(position);
+        }
+
+        while (true) {
+            reduce(0);
+            if (operatorCount == 0) break;
+            popOperator();
+            operandComplete();
+        }
+        return values[valueCount - 1];
+    }
+
+    boolean isEmpty() {
+        return tokenCount == 0;
+    }
+
+    int operatorDepth() {
+        return operatorCount;
+    }
+
+    int mark() {
+        return journalLength;
+    }
+
+    void rollback(int mark) {
+        while (journalLength > mark) {
+            int i = --journalLength;
+            switch (journalKinds[i]) {
+                case PUSH_VALUE:
+                    valueCount--;
+                    break;
+                case POP_VALUE:
+                    values[valueCount++] = journalValues[i];
+                    break;
+                case SET_VALUE:
+                    values[valueCount - 1] = journalValues[i];
+                    break;
+                case PUSH_OPERATOR:
+                    operatorCount--;
+                    break;
+                case POP_OPERATOR:
+                    operators[operatorCount] = journalInts[i];
+                    positions[operatorCount] = (int) journalValues[i];
+                    operatorCount++;
+                    break;
+                case SET_STATE:
+                    expectOperand = journalInts[i] < 0;
+                    tokenCount = journalInts[i] < 0 ? ~journalInts[i] : journalInts[i];
+                    break;
+            }
+        }
+    }
+
+    private void pushBinary(int opcode, int position) throws EvaluationException {
+        reduce(bindingPower(opcode));
+        pushOperator(opcode, position);
+        setState(true, tokenCount);
+    }
+
+    /**
+     * Applies operators from the top of the stack while they bind at least as tightly as
+     * {@code minBindingPower}, stopping at an open parenthesis.
+     */
+    private void reduce(int minBindingPower) throws EvaluationException {
+        while (operatorCount > 0) {
+            int operator = operators[operatorCount - 1];
+            if (operator == LEFT_PAREN || bindingPower(operator) < minBindingPower) {
+                return;
+            }
+            int position = positions[operatorCount - 1];
+            popOperator();
+            apply(operator, position);
+        }
+    }
+
+    private void operandComplete() throws EvaluationException {
+        // √ and functions bind to the operand that just finished, before any postfix ²
+        while (operatorCount > 0 && Opcodes.isPrefix(operators[operatorCount - 1])) {
+            int operator = operators[operatorCount - 1];
+            int position = positions[operatorCount - 1];
+            popOperator();
+            apply(operator, position);
+        }
+        setState(false, tokenCount);
+    }
+
+    private void apply(int opcode, int position) throws EvaluationException {
+        if (opcode == UNARY_PLUS) {
+            return;
+        }
+        if (Opcodes.isUnary(opcode)) {
+            setTop(Opcodes.applyUnary(opcode, values[valueCount - 1], position));
+        } else {
+            double b = popValue();
+            setTop(Opcodes.applyBinary(opcode, values[valueCount - 1], b, position));
+        }
+    }
+
+    /**
+     * Binding powers are the parser precedences doubled, so unary minus can sit between
+     * × and ^: {@code -2^2} is {@code -(2^2)} but {@code -2×3} negates before multiplying.
+     */
+    private static int bindingPower(int opcode) {
+        switch (opcode) {
+            case Opcodes.ADD:
+            case Opcodes.SUBTRACT:
+                return 2 * ExpressionParser.PRECEDENCE_ADDITIVE;
+            case Opcodes.MULTIPLY:
+            case Opcodes.DIVIDE:
+            case Opcodes.COMBINATIONS:
+            case Opcodes.PERMUTATIONS:
+            case Opcodes.ROOT:
+                return 2 * ExpressionParser.PRECEDENCE_MULTIPLICATIVE;
+            case Opcodes.NEGATE:
+            case UNARY_PLUS:
+                return 2 * ExpressionParser.PRECEDENCE_POWER - 1;
+            default:
+                return 2 * ExpressionParser.PRECEDENCE_POWER;
+        }
+    }
+
+    private static EvaluationException invalid(int position) {
+        return new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, position);
+    }
+
+    // Journaled primitive mutations
+
+    private void pushValue(double value) {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
+        }
+        values[valueCount++] = value;
+        log(PUSH_VALUE, 0, 0);
+    }
+
+    private double popValue() {
+        double value = values[--valueCount];
+        log(POP_VALUE, 0, value);
+        return value;
+    }
+
+    private void setTop(double value) {
+        log(SET_VALUE, 0, values[valueCount - 1]);
+        values[valueCount - 1] = value;
+    }
+
+    private void pushOperator(int operator, int position) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operatorCount * 2);
+            positions = Arrays.copyOf(positions, operatorCount * 2);
+        }
+        operators[operatorCount] = operator;
+        positions[operatorCount] = position;
+        operatorCount++;
+        log(PUSH_OPERATOR, 0, 0);
+    }
+
+    private void popOperator() {
+        operatorCount--;
+        log(POP_OPERATOR, operators[operatorCount], positions[operatorCount]);
+    }
+
+    private void setState(boolean expectOperand, int tokenCount) {
+        if (expectOperand == this.expectOperand && tokenCount == this.tokenCount) return;
+        log(SET_STATE, this.expectOperand ? ~this.tokenCount : this.tokenCount, 0);
+        this.expectOperand = expectOperand;
+        this.tokenCount = tokenCount;
+    }
+
+    private void log(int kind, int intValue, double doubleValue) {
+        if (!journaled) return;
+        if (journalLength == journalKinds.length) {
+            int capacity = journalLength * 2;
+            journalKinds = Arrays.copyOf(journalKinds, capacity);
+            journalInts = Arrays.copyOf(journalInts, capacity);
+            journalValues = Arrays.copyOf(journalValues, capacity);
+        }
+        journalKinds[journalLength] = kind;
+        journalInts[journalLength] = intValue;
+        journalValues[journalLength] = doubleValue;
+        journalLength++;
+    }
+}
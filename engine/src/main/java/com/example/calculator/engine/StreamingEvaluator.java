@@ -0,0 +1,205 @@
+package com.example.calculator.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Evaluates an expression of any length from a {@link Reader} in memory proportional to
+ * its nesting depth.
+ *
+ * <p>Text is read into a fixed window that slides along the input, and each token is fed
+ * to a {@link ShuntingYard} as soon as it is scanned, which reduces whatever precedence
+ * already allows; {@code 1+2+3+…} never holds more than two values. Only a token that
+ * runs into the end of the window is re-read after the window has moved on, so tokens
+ * may straddle reads, and the window grows only for a single token longer than itself.
+ * Error positions are offsets into the whole input.
+ *
+ * <p>Unlike {@link Evaluator}, nothing here recurses, so parentheses may nest as deep as
+ * the heap allows rather than the thread stack. Results are the same as
+ * {@link Evaluator#evaluate}.
+ *
+ * <p>Also runnable from the command line: {@code StreamingEvaluator <file>}.
+ * Instances are reusable but not thread-safe.
+ */
+public final class StreamingEvaluator {
+
+    public static final int DEFAULT_WINDOW_SIZE = 8192;
+
+    // Before each token at least this much text is read ahead when available, so that a
+    // number's exponent or a function name is rarely split
+    static final int LOOKAHEAD = 32;
+
+    private final ShuntingYard machine = new ShuntingYard(false);
+    private final Lexer lexer = new Lexer();
+    private final Window window;
+
+    public StreamingEvaluator() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    public StreamingEvaluator(int windowSize) {
+        if (windowSize <= 2 * LOOKAHEAD) {
+            throw new IllegalArgumentException("Window of " + windowSize + " chars is too small");
+        }
+        window = new Window(windowSize);
+    }
+
+    /**
+     * Evaluates display text that is already in memory, without the recursion limit of
+     * {@link Evaluator}.
+     */
+    public double evaluate(CharSequence expression) throws EvaluationException {
+        machine.reset();
+        lexer.reset(expression);
+        while (lexer.next() != Lexer.END) {
+            machine.token(lexer);
+        }
+        return Opcodes.checkResult(machine.finish(expression.length()));
+    }
+
+    /**
+     * Reads and evaluates the whole of {@code reader}, which is not closed.
+     */
+    public double evaluate(Reader reader) throws IOException, EvaluationException {
+        machine.reset();
+        window.reset(reader);
+        try {
+            int position = 0;
+            while (nextToken(position) != Lexer.END) {
+                machine.token(lexer);
+                position = lexer.tokenEnd();
+            }
+            return Opcodes.checkResult(machine.finish(window.length()));
+        } finally {
+            window.release();
+        }
+    }
+
+    /**
+     * Scans the token at {@code position}, reading more input first if it may not be
+     * complete in the window.
+     */
+    private int nextToken(int position) throws IOException {
+        if (window.length() - position < LOOKAHEAD) {
+            window.fill(position);
+        }
+        while (true) {
+            lexer.reset(window, position, window.length());
+            int token = lexer.next();
+            int end = lexer.tokenEnd();
+            if (window.isExhausted()) return token;
+            // Cut off by the window, or a number whose exponent is cut off, as in "1.5E+"
+            if (end < window.length() && !(token == Lexer.NUMBER && isExponentPrefix(end))) return token;
+            // Whitespace before the token has been skipped and is dropped
+            position = lexer.tokenStart();
+            window.fill(position);
+        }
+    }
+
+    private boolean isExponentPrefix(int p) {
+        int end = window.length();
+        if (window.charAt(p) != 'E') return false;
+        p++;
+        if (p < end && (window.charAt(p) == '+' || window.charAt(p) == '-')) p++;
+        return p == end;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: StreamingEvaluator <file>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            System.out.println(new NumberFormatter().format(new StreamingEvaluator().evaluate(reader)));
+        } catch (EvaluationException e) {
+            System.out.println(e.getReason().name() + " at " + e.getPosition());
+        }
+        System.err.println("in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * The part of the input currently in memory, indexed by offsets into the whole input.
+     * Characters before {@code base} have been dropped and must not be read.
+     */
+    private static final class Window implements CharSequence {
+        private final int initialSize;
+        private char[] buffer;
+        private Reader reader;
+        private int base;
+        private int count;
+        private boolean exhausted;
+
+        Window(int size) {
+            initialSize = size;
+            buffer = new char[size];
+        }
+
+        void reset(Reader reader) {
+            this.reader = reader;
+            base = 0;
+            count = 0;
+            exhausted = false;
+        }
+
+        void release() {
+            reader = null;
+            // Drop a buffer grown for an unusually long token
+            if (buffer.length > initialSize) {
+                buffer = new char[initialSize];
+            }
+        }
+
+        boolean isExhausted() {
+            return exhausted;
+        }
+
+        /**
+         * Drops the text before {@code keepFrom} and reads until the window is full or
+         * the input ends.
+         */
+        void fill(int keepFrom) throws IOException {
+            if (exhausted) return;
+            int kept = base + count - keepFrom;
+            if (kept == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            } else {
+                System.arraycopy(buffer, keepFrom - base, buffer, 0, kept);
+            }
+            base = keepFrom;
+            count = kept;
+            while (count < buffer.length) {
+                int read = reader.read(buffer, count, buffer.length - count);
+                if (read < 0) {
+                    exhausted = true;
+                    return;
+                }
+                count += read;
+            }
+        }
+
+        @Override
+        public int length() {
+            return base + count;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return buffer[index - base];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(buffer, start - base, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, 0, count);
+        }
+    }
+}
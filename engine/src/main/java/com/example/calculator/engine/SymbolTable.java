@@ -0,0 +1,101 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Variable names numbered from 0 in the order they are declared. A slot never changes
+ * once given out, so programs compiled against the table stay valid as it grows.
+ *
+ * <p>Lookups hash the name where it lies in the input, so resolving an identifier does
+ * not allocate; only declaring a new name copies it out.
+ */
+final class SymbolTable {
+
+    private String[] names = new String[16];
+    private int size;
+
+    // Open addressing: slot + 1 of the name hashed there, 0 for empty
+    private int[] index = new int[32];
+
+    int size() {
+        return size;
+    }
+
+    String getName(int slot) {
+        return names[slot];
+    }
+
+    String[] getNames() {
+        return Arrays.copyOf(names, size);
+    }
+
+    int find(CharSequence input, int start, int end) {
+        int mask = index.length - 1;
+        for (int i = hash(input, start, end) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            if (matches(names[slot], input, start, end)) return slot;
+        }
+        return -1;
+    }
+
+    int find(String name) {
+        return find(name, 0, name.length());
+    }
+
+    /**
+     * Slot of the name, added at the end of the table if it is new.
+     */
+    int declare(CharSequence input, int start, int end) {
+        int slot = find(input, start, end);
+        if (slot >= 0) return slot;
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        if (2 * (size + 1) > index.length) {
+            rehash(index.length * 2);
+        }
+        slot = size++;
+        names[slot] = input.subSequence(start, end).toString();
+        insert(slot);
+        return slot;
+    }
+
+    int declare(String name) {
+        return declare(name, 0, name.length());
+    }
+
+    private void insert(int slot) {
+        String name = names[slot];
+        int mask = index.length - 1;
+        int i = hash(name, 0, name.length()) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+    }
+
+    private void rehash(int capacity) {
+        index = new int[capacity];
+        for (int slot = 0; slot < size; slot++) {
+            insert(slot);
+        }
+    }
+
+    // Same as String.hashCode, spread so that short names use the high bits too
+    private static int hash(CharSequence input, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + input.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence input, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != input.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates expressions with units and converts the result, with the same grammar as
+ * {@link Evaluator}: a unit is a name that multiplies whatever it follows, except that a
+ * unit after the number on the right of ÷ is part of the divisor, so {@code 10 m ÷ 2 s}
+ * is 5 m/s.
+ *
+ * <pre>
+ * 5 km + 300 m            → 5.3 km
+ * 60 km/h × 90 min        → 90 km
+ * 100 °F to °C            → 37.77777777777778 °C
+ * 2 GiB to MB             → 2147.483648 MB
+ * 20 EUR to USD           (with a {@link RateTable})
+ * </pre>
+ *
+ * <p>Every value is carried in the base units of its dimension, with the dimension
+ * alongside it in a parallel stack, so a unit costs one multiply and add from
+ * {@link Units} on the way in and one on the way out. Adding or comparing quantities
+ * of different dimensions fails with {@link EvaluationException.Reason#INCOMPATIBLE_UNITS},
+ * as do functions of anything but plain numbers.
+ *
+ * <p>The result is shown in the unit after {@code to} (or →) if there is one, otherwise
+ * in the first unit of the expression that has the result's dimension, otherwise in base
+ * units. A temperature unit only applies its offset to the number directly before it;
+ * used any other way it is one degree of absolute temperature. Such a temperature is a
+ * point on its scale: a difference may be added to or subtracted from it, and the
+ * difference of two of them is shown and converted without the offset, so
+ * {@code 30 °C − 10 °C} is {@code 20 °C} and {@code 36 °F}. Adding two of them, or
+ * scaling one, fails with {@link EvaluationException.Reason#INCOMPATIBLE_UNITS}.
+ *
+ * <p>Instances are reusable but not thread-safe.
+ */
+public final class UnitEvaluator {
+
+    /**
+     * A value and the unit it is expressed in, "" for a plain number.
+     */
+    public static final class Quantity {
+        private final double value;
+        private final String unit;
+
+        Quantity(double value, String unit) {
+            this.value = value;
+            this.unit = unit;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        @Override
+        public String toString() {
+            return unit.isEmpty() ? Double.toString(value) : value + " " + unit;
+        }
+    }
+
+    private static final String TO = "to";
+    private static final char ARROW = '→';
+
+    private final Units units;
+    private final ExpressionParser parser = new ExpressionParser().setUnitsBindToNumbers(true);
+    private final StackSink sink;
+    private final Lexer lexer = new Lexer();
+
+    public UnitEvaluator() {
+        this(null);
+    }
+
+    /**
+     * Creates an evaluator that also knows the currencies in {@code rates}.
+     */
+    public UnitEvaluator(RateTable rates) {
+        units = new Units(rates);
+        sink = new StackSink(units);
+    }
+
+    /**
+     * Whether {@code input} names a unit, so that it is for this evaluator rather than
+     * {@link Evaluator}.
+     */
+    public boolean accepts(CharSequence input) {
+        lexer.reset(input);
+        for (int token = lexer.next(); token != Lexer.END; token = lexer.next()) {
+            if (token == Lexer.IDENTIFIER && units.find(input, lexer.tokenStart(), lexer.tokenEnd()) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Quantity evaluate(CharSequence input) throws EvaluationException {
+        int split = targetStart(input);
+        CharSequence expression = split < 0 ? input : input.subSequence(0, split);
+
+        sink.reset();
+        parser.parse(expression, sink);
+        sink.settle(0);
+        double value = Opcodes.checkResult(sink.values[0]);
+        long dimension = sink.dimensions[0];
+        boolean difference = sink.kinds[0] == StackSink.DIFFERENCE;
+
+        if (split >= 0) {
+            int targetStart = lexer.tokenEnd();
+            CharSequence target = input.subSequence(targetStart, input.length());
+            return convert(value, dimension, difference, target, targetStart);
+        }
+        if (dimension == Units.DIMENSIONLESS) {
+            return new Quantity(value, "");
+        }
+        for (int i = 0; i < sink.mentionedCount; i++) {
+            int unit = sink.mentioned[i];
+            if (units.dimension(unit) == dimension) {
+                double unitOffset = difference ? 0 : units.offset(unit);
+                return new Quantity((value - unitOffset) / units.factor(unit), units.name(unit));
+            }
+        }
+        return new Quantity(value, units.baseName(dimension));
+    }
+
+    /**
+     * Expresses a value in base units in the unit written as {@code target}. A temperature
+     * difference is converted without the target's offset.
+     */
+    private Quantity convert(double value, long dimension, boolean difference, CharSequence target, int offset)
+            throws EvaluationException {
+        if (target.toString().trim().isEmpty()) {
+            throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, offset + target.length());
+        }
+        double factor;
+        double unitOffset = 0;
+        try {
+            sink.reset();
+            parser.parse(target, sink);
+        } catch (EvaluationException e) {
+            throw e.getPosition() < 0 ? e : new EvaluationException(e.getReason(), e.getPosition() + offset);
+        }
+        if (sink.affine[0] >= 0) {
+            // A lone temperature unit; its offset applies
+            factor = units.factor(sink.affine[0]);
+            unitOffset = difference ? 0 : units.offset(sink.affine[0]);
+        } else {
+            factor = sink.values[0];
+        }
+        if (sink.dimensions[0] != dimension || sink.mentionedCount == 0) {
+            throw new EvaluationException(EvaluationException.Reason.INCOMPATIBLE_UNITS, offset);
+        }
+        if (factor == 0) {
+            throw new EvaluationException(EvaluationException.Reason.DIVISION_BY_ZERO, offset);
+        }
+        return new Quantity(Opcodes.checkResult((value - unitOffset) / factor), target.toString().trim());
+    }
+
+    /**
+     * Start of the {@code to} or → that introduces a target unit outside any parentheses,
+     * or -1. The lexer is left on it.
+     */
+    private int targetStart(CharSequence input) {
+        int depth = 0;
+        lexer.reset(input);
+        for (int token = lexer.next(); token != Lexer.END; token = lexer.next()) {
+            if (token == Lexer.LEFT_PAREN) {
+                depth++;
+            } else if (token == Lexer.RIGHT_PAREN) {
+                depth--;
+            } else if (depth == 0 && (token == Lexer.IDENTIFIER && lexer.tokenEquals(TO)
+                    || token == Lexer.INVALID && input.charAt(lexer.tokenStart()) == ARROW)) {
+                return lexer.tokenStart();
+            }
+        }
+        return -1;
+    }
+
+    private static final class StackSink implements ExpressionParser.Sink {
+        // What a value of temperature dimension stands for: a plain quantity, a point on
+        // a scale with an offset, or the difference of two such points
+        static final int PLAIN = 0;
+        static final int ABSOLUTE = 1;
+        static final int DIFFERENCE = 2;
+
+        private final Units units;
+
+        // Values in base units and their dimensions
+        double[] values = new double[16];
+        long[] dimensions = new long[16];
+        // A temperature unit not yet applied to a number, or -1
+        int[] affine = new int[16];
+        int[] kinds = new int[16];
+        int size;
+
+        // Units in the order written, for choosing how to show the result
+        int[] mentioned = new int[8];
+        int mentionedCount;
+
+        StackSink(Units units) {
+            this.units = units;
+        }
+
+        void reset() {
+            size = 0;
+            mentionedCount = 0;
+        }
+
+        @Override
+        public void number(double value) {
+            push(value, Units.DIMENSIONLESS, -1);
+        }
+
+        @Override
+        public void identifier(CharSequence input, int start, int end) throws EvaluationException {
+            int unit = units.find(input, start, end);
+            if (unit < 0) {
+                throw new EvaluationException(EvaluationException.Reason.INVALID_EXPRESSION, start);
+            }
+            if (mentionedCount == mentioned.length) {
+                mentioned = Arrays.copyOf(mentioned, mentionedCount * 2);
+            }
+            mentioned[mentionedCount++] = unit;
+            if (units.offset(unit) != 0) {
+                push(1, units.dimension(unit), unit);
+            } else {
+                push(units.factor(unit), units.dimension(unit), -1);
+            }
+        }
+
+        @Override
+        public void operator(int opcode, int position) throws EvaluationException {
+            if (Opcodes.isUnary(opcode)) {
+                int i = size - 1;
+                settle(i);
+                if (kinds[i] == ABSOLUTE) throw incompatible(position);
+                if (opcode != Opcodes.NEGATE) kinds[i] = PLAIN;
+                dimensions[i] = unaryDimension(opcode, dimensions[i], position);
+                values[i] = Opcodes.applyUnary(opcode, values[i], position);
+                return;
+            }
+
+            int j = --size;
+            int i = j - 1;
+            if (opcode == Opcodes.MULTIPLY && applyOffset(i, j)) return;
+            settle(i);
+            settle(j);
+            kinds[i] = kind(opcode, kinds[i], kinds[j], position);
+            long a = dimensions[i];
+            long b = dimensions[j];
+            switch (opcode) {
+                case Opcodes.ADD:
+                case Opcodes.SUBTRACT:
+                    if (a != b) throw incompatible(position);
+                    break;
+                case Opcodes.MULTIPLY:
+                    dimensions[i] = checked(Units.multiply(a, b), position);
+                    break;
+                case Opcodes.DIVIDE:
+                    dimensions[i] = checked(Units.divide(a, b), position);
+                    break;
+                case Opcodes.POWER:
+                    if (b != Units.DIMENSIONLESS) throw incompatible(position);
+                    if (a != Units.DIMENSIONLESS) {
+                        double exponent = values[j];
+                        if (!Functions.isInteger(exponent) || Math.abs(exponent) > Byte.MAX_VALUE) {
+                            throw incompatible(position);
+                        }
+                        dimensions[i] = checked(Units.power(a, (int) exponent), position);
+                    }
+                    break;
+                default:
+                    if (a != Units.DIMENSIONLESS || b != Units.DIMENSIONLESS) throw incompatible(position);
+                    break;
+            }
+            values[i] = Opcodes.applyBinary(opcode, values[i], values[j], position);
+        }
+
+        /**
+         * Applies a temperature unit to the plain number it multiplies, as in
+         * {@code 20 °C}. Returns false if neither operand is such a pair.
+         */
+        private boolean applyOffset(int i, int j) {
+            int number;
+            int unit;
+            if (affine[j] >= 0 && affine[i] < 0 && dimensions[i] == Units.DIMENSIONLESS) {
+                number = i;
+                unit = affine[j];
+            } else if (affine[i] >= 0 && affine[j] < 0 && dimensions[j] == Units.DIMENSIONLESS) {
+                number = j;
+                unit = affine[i];
+            } else {
+                return false;
+            }
+            values[i] = values[number] * units.factor(unit) + units.offset(unit);
+            dimensions[i] = units.dimension(unit);
+            affine[i] = -1;
+            kinds[i] = ABSOLUTE;
+            return true;
+        }
+
+        /**
+         * Kind of a binary result: a difference may be added to or subtracted from an
+         * absolute temperature and two absolute temperatures subtracted, but nothing else
+         * applies to an absolute temperature.
+         */
+        private static int kind(int opcode, int a, int b, int position) throws EvaluationException {
+            if (opcode == Opcodes.SUBTRACT && b == ABSOLUTE) {
+                if (a == DIFFERENCE) throw incompatible(position);
+                return DIFFERENCE;
+            }
+            if (a == ABSOLUTE || b == ABSOLUTE) {
+                boolean shift = opcode == Opcodes.ADD && a != b || opcode == Opcodes.SUBTRACT;
+                if (!shift) throw incompatible(position);
+                return ABSOLUTE;
+            }
+            return a == DIFFERENCE || b == DIFFERENCE ? DIFFERENCE : PLAIN;
+        }
+
+        /**
+         * Turns an unapplied temperature unit into one degree of it.
+         */
+        void settle(int i) {
+            int unit = affine[i];
+            if (unit >= 0) {
+                values[i] = units.factor(unit) + units.offset(unit);
+                affine[i] = -1;
+                kinds[i] = ABSOLUTE;
+            }
+        }
+
+        private static long unaryDimension(int opcode, long dimension, int position) throws EvaluationException {
+            switch (opcode) {
+                case Opcodes.NEGATE:
+                    return dimension;
+                case Opcodes.SQUARE:
+                    return checked(Units.power(dimension, 2), position);
+                case Opcodes.SQRT:
+                    return checked(Units.sqrt(dimension), position);
+                default:
+                    if (dimension != Units.DIMENSIONLESS) throw incompatible(position);
+                    return dimension;
+            }
+        }
+
+        private static long checked(long dimension, int position) throws EvaluationException {
+            if (dimension < 0) throw incompatible(position);
+            return dimension;
+        }
+
+        private static EvaluationException incompatible(int position) {
+            return new EvaluationException(EvaluationException.Reason.INCOMPATIBLE_UNITS, position);
+        }
+
+        private void push(double value, long dimension, int unit) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                dimensions = Arrays.copyOf(dimensions, size * 2);
+                affine = Arrays.copyOf(affine, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+            }
+            values[size] = value;
+            dimensions[size] = dimension;
+            affine[size] = unit;
+            kinds[size] = PLAIN;
+            size++;
+        }
+    }
+}
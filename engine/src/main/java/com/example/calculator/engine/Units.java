@@ -0,0 +1,250 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * The units {@link UnitEvaluator} understands, each reduced to a factor and offset onto
+ * the base unit of its dimension: a value {@code x} in the unit is {@code x·factor + offset}
+ * in base units, one multiply and add whatever the unit.
+ *
+ * <p>Units are written as a graph, each defined in terms of another ({@code ft} is 12
+ * {@code in}, {@code in} is 2.54 {@code cm}, …) because that is how they are specified,
+ * and the graph is collapsed into direct factors once, when the class loads, so no lookup
+ * walks it. Currencies come from a {@link RateTable} and are numbered after the built-in
+ * units; their base is the table's base currency.
+ *
+ * <p>Dimensions are packed into a {@code long}, a signed 8-bit exponent per base
+ * quantity, so speed is {@code LENGTH - TIME} and checking that two quantities can be
+ * added is one comparison. Temperatures other than kelvin have an offset; they are
+ * absolute temperatures, so arithmetic on them is done in kelvin.
+ */
+final class Units {
+
+    // Base quantities, as field indexes in a packed dimension
+    static final int LENGTH = 0;
+    static final int MASS = 1;
+    static final int TIME = 2;
+    static final int TEMPERATURE = 3;
+    static final int DATA = 4;
+    static final int CURRENCY = 5;
+    private static final int QUANTITIES = 6;
+    private static final int FIELD_BITS = 8;
+
+    static final long DIMENSIONLESS = 0;
+
+    private static final SymbolTable NAMES = new SymbolTable();
+    private static double[] factors = new double[64];
+    private static double[] offsets = new double[64];
+    private static long[] dimensions = new long[64];
+    // Base unit of each quantity, for naming derived results such as m/s
+    private static final String[] BASE_NAMES = new String[QUANTITIES];
+    private static final int BUILT_IN_COUNT;
+
+    static {
+        base("m", LENGTH);
+        unit("nm", 1e-9, "m");
+        unit("mm", 1e-3, "m");
+        unit("cm", 1e-2, "m");
+        unit("km", 1e3, "m");
+        unit("in", 2.54, "cm");
+        unit("ft", 12, "in");
+        unit("yd", 3, "ft");
+        unit("mi", 1760, "yd");
+        unit("nmi", 1852, "m");
+
+        unit("L", 1e-3, "m", 3);
+        unit("mL", 1e-3, "L");
+        unit("gal", 3.785411784, "L");
+
+        base("kg", MASS);
+        unit("g", 1e-3, "kg");
+        unit("mg", 1e-3, "g");
+        unit("t", 1e3, "kg");
+        unit("lb", 0.45359237, "kg");
+        unit("oz", 1.0 / 16, "lb");
+
+        base("s", TIME);
+        unit("ms", 1e-3, "s");
+        unit("min", 60, "s");
+        unit("h", 60, "min");
+        unit("d", 24, "h");
+        unit("wk", 7, "d");
+        unit("yr", 365.25, "d");
+
+        base("K", TEMPERATURE);
+        affine("°C", 1, 273.15, "K");
+        affine("°F", 5.0 / 9, 459.67, "K");
+        alias("degC", "°C");
+        alias("degF", "°F");
+
+        base("B", DATA);
+        unit("b", 1.0 / 8, "B");
+        unit("kB", 1e3, "B");
+        unit("MB", 1e3, "kB");
+        unit("GB", 1e3, "MB");
+        unit("TB", 1e3, "GB");
+        unit("KiB", 1024, "B");
+        unit("MiB", 1024, "KiB");
+        unit("GiB", 1024, "MiB");
+        unit("TiB", 1024, "GiB");
+
+        BUILT_IN_COUNT = NAMES.size();
+    }
+
+    private final RateTable rates;
+
+    Units(RateTable rates) {
+        this.rates = rates;
+    }
+
+    /**
+     * Unit named {@code input[start, end)}, or -1.
+     */
+    int find(CharSequence input, int start, int end) {
+        int unit = NAMES.find(input, start, end);
+        if (unit >= 0 || rates == null) return unit;
+        int currency = rates.indexOf(input, start, end);
+        return currency < 0 ? -1 : BUILT_IN_COUNT + currency;
+    }
+
+    double factor(int unit) {
+        // A rate is currency per base unit, so one unit of the currency is 1/rate of the base
+        return unit < BUILT_IN_COUNT ? factors[unit] : 1 / rates.rate(unit - BUILT_IN_COUNT);
+    }
+
+    double offset(int unit) {
+        return unit < BUILT_IN_COUNT ? offsets[unit] : 0;
+    }
+
+    long dimension(int unit) {
+        return unit < BUILT_IN_COUNT ? dimensions[unit] : of(CURRENCY);
+    }
+
+    String name(int unit) {
+        return unit < BUILT_IN_COUNT ? NAMES.getName(unit) : rates.code(unit - BUILT_IN_COUNT);
+    }
+
+    /**
+     * Name of a dimension in base units, such as {@code kg×m/s^2}, or "" if it has none.
+     */
+    String baseName(long dimension) {
+        StringBuilder numerator = new StringBuilder();
+        StringBuilder denominator = new StringBuilder();
+        for (int quantity = 0; quantity < QUANTITIES; quantity++) {
+            int exponent = exponent(dimension, quantity);
+            if (exponent == 0) continue;
+            String name = quantity == CURRENCY && rates != null ? rates.getBase() : BASE_NAMES[quantity];
+            if (exponent > 0) {
+                if (numerator.length() > 0) numerator.append('×');
+                appendPower(numerator, name, exponent);
+            } else {
+                denominator.append('/');
+                appendPower(denominator, name, -exponent);
+            }
+        }
+        if (numerator.length() == 0 && denominator.length() > 0) numerator.append('1');
+        return numerator.append(denominator).toString();
+    }
+
+    static long of(int quantity) {
+        return 1L << (quantity * FIELD_BITS);
+    }
+
+    static int exponent(long dimension, int quantity) {
+        return (byte) (dimension >>> (quantity * FIELD_BITS));
+    }
+
+    /**
+     * Dimension of a product, or -1 if an exponent overflows. Fields are added one at a
+     * time because a negative exponent would borrow from its neighbour in a plain add.
+     */
+    static long multiply(long a, long b) {
+        return scaleAndAdd(a, 1, b);
+    }
+
+    static long divide(long a, long b) {
+        return scaleAndAdd(a, -1, b);
+    }
+
+    /**
+     * Dimension of {@code a} to the integer power {@code n}, or -1 on overflow.
+     */
+    static long power(long a, int n) {
+        return scaleAndAdd(DIMENSIONLESS, n, a);
+    }
+
+    /**
+     * Dimension of the square root, or -1 if an exponent is odd.
+     */
+    static long sqrt(long a) {
+        long result = 0;
+        for (int quantity = 0; quantity < QUANTITIES; quantity++) {
+            int exponent = exponent(a, quantity);
+            if ((exponent & 1) != 0) return -1;
+            result |= (long) ((exponent / 2) & 0xff) << (quantity * FIELD_BITS);
+        }
+        return result;
+    }
+
+    private static long scaleAndAdd(long a, long n, long b) {
+        long result = 0;
+        for (int quantity = 0; quantity < QUANTITIES; quantity++) {
+            long exponent = exponent(a, quantity) + n * exponent(b, quantity);
+            if (exponent != (byte) exponent) return -1;
+            result |= (exponent & 0xff) << (quantity * FIELD_BITS);
+        }
+        return result;
+    }
+
+    private static void appendPower(StringBuilder sb, String name, int exponent) {
+        sb.append(name);
+        if (exponent == 2) {
+            sb.append('²');
+        } else if (exponent != 1) {
+            sb.append('^').append(exponent);
+        }
+    }
+
+    private static void base(String name, int quantity) {
+        BASE_NAMES[quantity] = name;
+        add(name, 1, 0, of(quantity));
+    }
+
+    /**
+     * {@code name} is {@code factor} of unit {@code of} raised to {@code power}, as a litre
+     * is a thousandth of a cubic metre.
+     */
+    private static void unit(String name, double factor, String of, int power) {
+        int ref = NAMES.find(of);
+        add(name, factor * Math.pow(factors[ref], power), 0, power(dimensions[ref], power));
+    }
+
+    private static void unit(String name, double factor, String of) {
+        unit(name, factor, of, 1);
+    }
+
+    /**
+     * {@code x name} is {@code (x + offset)·factor} of unit {@code of}.
+     */
+    private static void affine(String name, double factor, double offset, String of) {
+        int ref = NAMES.find(of);
+        add(name, factor * factors[ref], offset * factor * factors[ref] + offsets[ref], dimensions[ref]);
+    }
+
+    private static void alias(String name, String of) {
+        int ref = NAMES.find(of);
+        add(name, factors[ref], offsets[ref], dimensions[ref]);
+    }
+
+    private static void add(String name, double factor, double offset, long dimension) {
+        int unit = NAMES.declare(name);
+        if (unit == factors.length) {
+            factors = Arrays.copyOf(factors, unit * 2);
+            offsets = Arrays.copyOf(offsets, unit * 2);
+            dimensions = Arrays.copyOf(dimensions, unit * 2);
+        }
+        factors[unit] = factor;
+        offsets[unit] = offset;
+        dimensions[unit] = dimension;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.calculator.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The values of y = f(x) for x = start, start + step, … over {@code count} rows, computed
+ * only as they are read.
+ *
+ * <p>Rows are computed a page of {@link #PAGE_SIZE} at a time with
+ * {@link CompiledExpression#evaluateBatch} into a plain {@code double[]}, and the most
+ * recently read pages are kept in a small LRU; a table of millions of rows holds no more
+ * than that. Each read also queues the page after it, or before it when reading
+ * backwards, on the prefetch executor, so scrolling normally finds its next page ready.
+ * Prefetches run one at a time; a page that is read while its prefetch is still queued
+ * is computed by the reader.
+ *
+ * <p>Rows are numbers, not text: formatting is left to whoever shows them. x of row
+ * {@code i} is {@code start + i×step}, so it does not drift over a long table. Rows where
+ * the expression is undefined are NaN.
+ *
+ * <p>Reads are meant to come from one thread, such as the UI thread; the prefetch
+ * executor is another.
+ */
+public final class ValueTable {
+
+    public static final int PAGE_SIZE = 256;
+    public static final int DEFAULT_MAX_PAGES = 16;
+
+    private final CompiledExpression expression;
+    private final int slot;
+    private final double[] variables;
+    private final double start;
+    private final double step;
+    private final long count;
+    private final Executor prefetchExecutor;
+
+    // Access-ordered, so iteration starts at the least recently read page
+    private final LinkedHashMap<Long, double[]> pages;
+
+    // Scratch for the reading thread and for the prefetch task, which never overlap
+    private final Scratch readScratch;
+    private final Scratch prefetchScratch;
+
+    // Guarded by pages: the next page to prefetch, or -1, and whether a task is running
+    private long wantedPage = -1;
+    private boolean prefetching;
+    private long lastPage = -1;
+    private long computedPageCount;
+
+    /**
+     * @param prefetchExecutor runs prefetches, or null to compute pages only when read
+     */
+    public ValueTable(CompiledExpression expression, String variable, double start, double step, long count,
+                      Executor prefetchExecutor) {
+        this(expression, variable, start, step, count, prefetchExecutor, DEFAULT_MAX_PAGES);
+    }
+
+    public ValueTable(CompiledExpression expression, String variable, double start, double step, long count,
+                      Executor prefetchExecutor, final int maxPages) {
+        if (count < 0 || maxPages < 1) {
+            throw new IllegalArgumentException("count " + count + ", maxPages " + maxPages);
+        }
+        this.expression = expression;
+        this.slot = expression.getVariableSlot(variable);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Not compiled with " + variable);
+        }
+        this.variables = new double[expression.getVariableCount()];
+        this.start = start;
+        this.step = step;
+        this.count = count;
+        this.prefetchExecutor = prefetchExecutor;
+        this.pages = new LinkedHashMap<Long, double[]>(maxPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+                return size() > maxPages;
+            }
+        };
+        this.readScratch = new Scratch(expression);
+        this.prefetchScratch = new Scratch(expression);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getX(long row) {
+        return start + row * step;
+    }
+
+    /**
+     * Value of the expression at row {@code row}, computing its page if it is not cached.
+     */
+    public double getY(long row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + count);
+        }
+        long page = row / PAGE_SIZE;
+        double[] values;
+        long next;
+        synchronized (pages) {
+            values = pages.get(page);
+            next = page < lastPage ? page - 1 : page + 1;
+            lastPage = page;
+        }
+        if (values == null) {
+            values = compute(page, readScratch);
+        }
+        prefetch(next);
+        return values[(int) (row - page * PAGE_SIZE)];
+    }
+
+    /**
+     * Pages computed so far, by readers and prefetches, including any computed twice.
+     */
+    public long getComputedPageCount() {
+        synchronized (pages) {
+            return computedPageCount;
+        }
+    }
+
+    public int getCachedPageCount() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    public boolean isCached(long row) {
+        synchronized (pages) {
+            return pages.containsKey(row / PAGE_SIZE);
+        }
+    }
+
+    private double[] compute(long page, Scratch scratch) {
+        long first = page * PAGE_SIZE;
+        int rows = (int) Math.min(PAGE_SIZE, count - first);
+        for (int i = 0; i < rows; i++) {
+            scratch.xs[i] = getX(first + i);
+        }
+        double[] values = new double[rows];
+        expression.evaluateBatch(variables, slot, scratch.xs, values, rows, scratch.columns);
+        synchronized (pages) {
+            pages.put(page, values);
+            computedPageCount++;
+        }
+        return values;
+    }
+
+    private void prefetch(long page) {
+        if (prefetchExecutor == null || page < 0 || page * PAGE_SIZE >= count) return;
+        synchronized (pages) {
+            if (pages.containsKey(page)) return;
+            wantedPage = page;
+            if (prefetching) return;
+            prefetching = true;
+        }
+        try {
+            prefetchExecutor.execute(this::runPrefetches);
+        } catch (RejectedExecutionException e) {
+            // Shut down; pages are computed when read from now on
+            synchronized (pages) {
+                prefetching = false;
+            }
+        }
+    }
+
+    /**
+     * Computes wanted pages until none is left. Only one runs at a time, so it owns
+     * {@link #prefetchScratch}.
+     */
+    private void runPrefetches() {
+        while (true) {
+            long page;
+            synchronized (pages) {
+                page = wantedPage;
+                wantedPage = -1;
+                // Read in the meantime
+                if (page >= 0 && pages.containsKey(page)) page = -1;
+                if (page < 0) {
+                    prefetching = false;
+                    return;
+                }
+            }
+            compute(page, prefetchScratch);
+        }
+    }
+
+    private static final class Scratch {
+        final double[] xs = new double[PAGE_SIZE];
+        final double[][] columns;
+
+        Scratch(CompiledExpression expression) {
+            columns = expression.newBatchStack(PAGE_SIZE);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.example.calculator.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Named variables, the {@code ans} and memory registers, and formulas linking them.
+ *
+ * <pre>
+ * workspace.evaluate("rate = 4.5÷12");
+ * workspace.evaluate("payment = principal×rate");   // principal is not defined yet
+ * workspace.evaluate("principal = 1000");           // payment is computed now
+ * </pre>
+ *
+ * <p>Names live in a {@link SymbolTable} and values in a {@code double[]} indexed by its
+ * slots. A formula is compiled once with its names resolved to slots, so re-evaluating it
+ * is a {@link CompiledExpression} run over the value array. Each formula records the slots
+ * it reads and each slot the formulas that read it. When a value changes, the formulas
+ * downstream of it are collected depth-first and recomputed in topological order, each
+ * once; formulas that do not depend on the change are not touched. A formula may name a
+ * variable before it is defined, and a definition that would make a formula depend on
+ * itself is rejected.
+ *
+ * <p>A formula that fails keeps its error instead of a value, and formulas reading it
+ * fail with the same error until it recovers. {@code ans} holds the last result of
+ * {@link #evaluate} that was not an assignment, and {@code M} is the memory register;
+ * both can be used in formulas like any other variable.
+ *
+ * <p>Not thread-safe.
+ */
+public final class Workspace {
+
+    public static final String ANSWER = "ans";
+    public static final String MEMORY = "M";
+
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final Lexer lexer = new Lexer().setNames(symbols);
+    private final int answerSlot;
+    private final int memorySlot;
+
+    // Per slot; a null formula is a plain value
+    private double[] values = new double[0];
+    private EvaluationException[] errors = new EvaluationException[0];
+    private CompiledExpression[] formulas = new CompiledExpression[0];
+    private int[][] dependencies = new int[0][];
+    private int[][] dependents = new int[0][];
+    private int[] dependentCounts = new int[0];
+
+    // Scratch for the depth-first walk; a slot is visited when its mark is the epoch
+    private int[] marks = new int[0];
+    private int epoch;
+    private int[] order = new int[0];
+    private int orderCount;
+    private int[] pathSlots = new int[0];
+    private int[] pathNext = new int[0];
+
+    private int recomputedCount;
+
+    // The name of the assignment last matched by assignmentStart
+    private int nameStart;
+    private int nameEnd;
+
+    public Workspace() {
+        answerSlot = symbols.declare(ANSWER);
+        memorySlot = symbols.declare(MEMORY);
+        ensureCapacity();
+        setValue(answerSlot, 0);
+        setValue(memorySlot, 0);
+    }
+
+    /**
+     * Evaluates {@code input} against the workspace. An assignment {@code name = formula}
+     * defines or redefines {@code name} and returns its value; anything else is evaluated
+     * and becomes {@code ans}.
+     */
+    public double evaluate(CharSequence input) throws EvaluationException {
+        int formulaStart = assignmentStart(input);
+        if (formulaStart >= 0) {
+            int slot = symbols.declare(input, nameStart, nameEnd);
+            ensureCapacity();
+            define(slot, input.subSequence(formulaStart, input.length()), formulaStart);
+            return get(slot);
+        }
+
+        CompiledExpression expression = CompiledExpression.compile(input, symbols, false);
+        for (int slot : expression.getLoadedSlots()) {
+            if (errors[slot] != null) throw errors[slot];
+        }
+        double value = expression.evaluate(values);
+        setValue(answerSlot, value);
+        return value;
+    }
+
+    /**
+     * Whether {@code input} is for the workspace rather than a plain calculation: an
+     * assignment, or an expression whose names are all known here.
+     */
+    public boolean accepts(CharSequence input) {
+        if (assignmentStart(input) >= 0) return true;
+        boolean named = false;
+        lexer.reset(input);
+        for (int token = lexer.next(); token != Lexer.END; token = lexer.next()) {
+            if (token == Lexer.IDENTIFIER) {
+                if (symbols.find(input, lexer.tokenStart(), lexer.tokenEnd()) < 0) return false;
+                named = true;
+            }
+        }
+        return named;
+    }
+
+    /**
+     * Defines {@code name} as {@code formula}, recomputing whatever depends on it.
+     */
+    public void define(String name, CharSequence formula) throws EvaluationException {
+        int slot = symbols.declare(name);
+        ensureCapacity();
+        define(slot, formula, 0);
+    }
+
+    /**
+     * Sets {@code name} to a plain value, replacing any formula.
+     */
+    public void set(String name, double value) {
+        int slot = symbols.declare(name);
+        ensureCapacity();
+        setValue(slot, value);
+    }
+
+    /**
+     * Current value of {@code name}; throws its formula's error, or
+     * {@link EvaluationException.Reason#UNDEFINED_VARIABLE} if it has no value.
+     */
+    public double get(String name) throws EvaluationException {
+        int slot = symbols.find(name);
+        if (slot < 0) {
+            throw new EvaluationException(EvaluationException.Reason.UNDEFINED_VARIABLE, -1);
+        }
+        return get(slot);
+    }
+
+    public boolean isDefined(String name) {
+        int slot = symbols.find(name);
+        return slot >= 0 && (formulas[slot] != null || errors[slot] == null);
+    }
+
+    public double getAnswer() {
+        return values[answerSlot];
+    }
+
+    /**
+     * Records a result computed elsewhere, such as in another precision mode, as {@code ans}.
+     */
+    public void setAnswer(double value) {
+        setValue(answerSlot, value);
+    }
+
+    public void memoryAdd(double value) {
+        setValue(memorySlot, values[memorySlot] + value);
+    }
+
+    public void memorySubtract(double value) {
+        setValue(memorySlot, values[memorySlot] - value);
+    }
+
+    public double memoryRecall() {
+        return values[memorySlot];
+    }
+
+    public void memoryClear() {
+        setValue(memorySlot, 0);
+    }
+
+    /**
+     * Formulas recomputed by the last change, not counting the changed variable itself.
+     */
+    public int getRecomputedCount() {
+        return recomputedCount;
+    }
+
+    /**
+     * Every defined variable as an assignment that {@link #evaluate} accepts, formulas
+     * as written and values in full precision, for {@link #restore}.
+     */
+    public List<String> getDefinitions() {
+        List<String> definitions = new ArrayList<>();
+        for (int slot = 0; slot < symbols.size(); slot++) {
+            if (formulas[slot] != null) {
+                definitions.add(symbols.getName(slot) + " = " + formulas[slot].getSource().trim());
+            } else if (errors[slot] == null) {
+                definitions.add(symbols.getName(slot) + " = " + values[slot]);
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Applies saved {@link #getDefinitions()}. Formulas that cannot be evaluated are
+     * kept like any other; a definition that no longer parses is skipped.
+     */
+    public void restore(List<String> definitions) {
+        for (String definition : definitions) {
+            int formulaStart = assignmentStart(definition);
+            if (formulaStart < 0) continue;
+            int slot = symbols.declare(definition, nameStart, nameEnd);
+            ensureCapacity();
+            try {
+                define(slot, definition.substring(formulaStart), formulaStart);
+            } catch (EvaluationException e) {
+                // Skipped
+            }
+        }
+    }
+
+    private double get(int slot) throws EvaluationException {
+        if (errors[slot] != null) throw errors[slot];
+        return values[slot];
+    }
+
+    private void define(int slot, CharSequence text, int offset) throws EvaluationException {
+        CompiledExpression formula;
+        try {
+            formula = CompiledExpression.compile(text, symbols, true).optimize();
+        } catch (EvaluationException e) {
+            throw offset == 0 || e.getPosition() < 0 ? e
+                : new EvaluationException(e.getReason(), e.getPosition() + offset);
+        }
+        // Names first used by the formula were declared while compiling it
+        ensureCapacity();
+
+        int[] reads = formula.getLoadedSlots();
+        // A cycle would close if the formula reads anything downstream of its own slot
+        collectDownstream(slot);
+        for (int read : reads) {
+            if (marks[read] == epoch) {
+                throw new EvaluationException(EvaluationException.Reason.CIRCULAR_REFERENCE, offset);
+            }
+        }
+
+        unlink(slot);
+        formulas[slot] = formula;
+        dependencies[slot] = reads;
+        for (int read : reads) {
+            addDependent(read, slot);
+        }
+        recompute(slot);
+        propagate(slot);
+    }
+
+    private void setValue(int slot, double value) {
+        unlink(slot);
+        formulas[slot] = null;
+        values[slot] = value;
+        errors[slot] = null;
+        propagate(slot);
+    }
+
+    private void recompute(int slot) {
+        EvaluationException error = null;
+        for (int read : dependencies[slot]) {
+            if (errors[read] != null) {
+                error = errors[read];
+                break;
+            }
+        }
+        if (error == null) {
+            try {
+                values[slot] = formulas[slot].evaluate(values);
+            } catch (EvaluationException e) {
+                error = e;
+            }
+        }
+        if (error != null) values[slot] = Double.NaN;
+        errors[slot] = error;
+    }
+
+    /**
+     * Recomputes the formulas downstream of {@code changed}, dependencies first.
+     */
+    private void propagate(int changed) {
+        collectDownstream(changed);
+        // Post-order puts every formula after those that read it, and changed last
+        for (int i = orderCount - 2; i >= 0; i--) {
+            recompute(order[i]);
+        }
+        recomputedCount = orderCount - 1;
+    }
+
+    /**
+     * Marks every slot reachable from {@code start} through its dependents and lists
+     * them in {@link #order} in depth-first post-order. Iterative, so long chains of
+     * formulas cannot overflow the stack.
+     */
+    private void collectDownstream(int start) {
+        epoch++;
+        orderCount = 0;
+        int depth = 0;
+        pathSlots[0] = start;
+        pathNext[0] = 0;
+        marks[start] = epoch;
+        while (depth >= 0) {
+            int slot = pathSlots[depth];
+            if (pathNext[depth] < dependentCounts[slot]) {
+                int next = dependents[slot][pathNext[depth]++];
+                if (marks[next] != epoch) {
+                    marks[next] = epoch;
+                    depth++;
+                    pathSlots[depth] = next;
+                    pathNext[depth] = 0;
+                }
+            } else {
+                order[orderCount++] = slot;
+                depth--;
+            }
+        }
+    }
+
+    private void unlink(int slot) {
+        for (int read : dependencies[slot]) {
+            int[] list = dependents[read];
+            int count = dependentCounts[read];
+            for (int i = 0; i < count; i++) {
+                if (list[i] == slot) {
+                    list[i] = list[--count];
+                    break;
+                }
+            }
+            dependentCounts[read] = count;
+        }
+        dependencies[slot] = NO_SLOTS;
+    }
+
+    private void addDependent(int slot, int dependent) {
+        int count = dependentCounts[slot];
+        if (count == dependents[slot].length) {
+            dependents[slot] = Arrays.copyOf(dependents[slot], Math.max(4, count * 2));
+        }
+        dependents[slot][count] = dependent;
+        dependentCounts[slot] = count + 1;
+    }
+
+    /**
+     * Grows the per-slot arrays to the symbol table. New slots have no value yet.
+     */
+    private void ensureCapacity() {
+        int size = symbols.size();
+        int old = values.length;
+        if (size <= old) return;
+
+        int capacity = Math.max(16, Math.max(size, old * 2));
+        values = Arrays.copyOf(values, capacity);
+        errors = Arrays.copyOf(errors, capacity);
+        formulas = Arrays.copyOf(formulas, capacity);
+        dependencies = Arrays.copyOf(dependencies, capacity);
+        dependents = Arrays.copyOf(dependents, capacity);
+        dependentCounts = Arrays.copyOf(dependentCounts, capacity);
+        marks = Arrays.copyOf(marks, capacity);
+        order = new int[capacity];
+        pathSlots = new int[capacity];
+        pathNext = new int[capacity];
+        EvaluationException undefined =
+            new EvaluationException(EvaluationException.Reason.UNDEFINED_VARIABLE, -1);
+        for (int slot = old; slot < capacity; slot++) {
+            values[slot] = Double.NaN;
+            errors[slot] = undefined;
+            dependencies[slot] = NO_SLOTS;
+            dependents[slot] = NO_SLOTS;
+        }
+    }
+
+    /**
+     * Start of the formula if {@code input} is {@code name = formula}, else -1. The name
+     * is the whole identifier even where it starts with a function name, as cost does,
+     * but may not be a function name itself.
+     */
+    private int assignmentStart(CharSequence input) {
+        lexer.reset(input);
+        int token = lexer.next();
+        if (token != Lexer.IDENTIFIER && token != Lexer.FUNCTION && token != Lexer.INFIX
+                && token != Lexer.SQRT) {
+            return -1;
+        }
+        nameStart = lexer.tokenStart();
+        nameEnd = lexer.tokenEnd();
+        while (nameEnd < input.length() && Lexer.isIdentifierPart(input.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (Functions.find(input, nameStart, nameEnd) >= 0) return -1;
+        lexer.reset(input, nameEnd, input.length());
+        if (lexer.next() != Lexer.INVALID || input.charAt(lexer.tokenStart()) != '=') return -1;
+        return lexer.tokenEnd();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class BatchEvaluatorTest {
+
+    private static String run(BatchEvaluator batch, String input, BatchEvaluator.Summary[] summary)
+            throws Exception {
+        StringWriter out = new StringWriter();
+        summary[0] = batch.evaluate(new BufferedReader(new StringReader(input)), out);
+        return out.toString();
+    }
+
+    @Test
+    public void eachLine_getsResultOrErrorCode() throws Exception {
+        BatchEvaluator.Summary[] summary = new BatchEvaluator.Summary[1];
+        String output = run(new BatchEvaluator(2, 2),
+            "12.5×(3+4)÷2-√(16)\n1÷0\n√(-4)\n\n2(3\n5+\n1E+308×10\n", summary);
+
+        assertEquals("OK\t39.75\nDIVISION_BY_ZERO\nSQRT_NEGATIVE\nOK\t0\nOK\t6\nINVALID_EXPRESSION\nINFINITY\n",
+            output);
+        assertEquals(7, summary[0].getLineCount());
+        assertEquals(4, summary[0].getFailureCount());
+        assertEquals(1, summary[0].getFailureCount(EvaluationException.Reason.DIVISION_BY_ZERO));
+    }
+
+    @Test
+    public void parallelChunks_keepInputOrder() throws Exception {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            input.append(i).append("+1\n");
+            expected.append("OK\t").append(i + 1).append('\n');
+        }
+
+        BatchEvaluator.Summary[] summary = new BatchEvaluator.Summary[1];
+        assertEquals(expected.toString(), run(new BatchEvaluator(4, 7), input.toString(), summary));
+        assertEquals(10_000, summary[0].getLineCount());
+        assertEquals(0, summary[0].getFailureCount());
+    }
+
+    @Test
+    public void emptyInput_writesNothing() throws Exception {
+        BatchEvaluator.Summary[] summary = new BatchEvaluator.Summary[1];
+        assertEquals("", run(new BatchEvaluator(), "", summary));
+        assertEquals(0, summary[0].getLineCount());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CalculatorSnapshotTest {
+
+    @Test
+    public void roundTrip_keepsAllFields() {
+        CalculatorSnapshot snapshot = new CalculatorSnapshot("12.5×(3+4)÷2-√(16", "39.75", true, false, 3);
+        CalculatorSnapshot restored = CalculatorSnapshot.fromBytes(snapshot.toBytes());
+
+        assertNotNull(restored);
+        assertEquals("12.5×(3+4)÷2-√(16", restored.getExpression());
+        assertEquals("39.75", restored.getLastResult());
+        assertTrue(restored.isResultDisplayed());
+        assertFalse(restored.hasError());
+        assertEquals(3, restored.getPrecisionIndex());
+    }
+
+    @Test
+    public void longExpression_usesMultiByteLength() {
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            expression.append(i).append('+');
+        }
+        expression.append('0');
+        CalculatorSnapshot restored = CalculatorSnapshot.fromBytes(
+            new CalculatorSnapshot(expression.toString(), "0", false, true, 0).toBytes());
+
+        assertEquals(expression.toString(), restored.getExpression());
+        assertTrue(restored.hasError());
+    }
+
+    @Test
+    public void emptyState_isFiveBytes() {
+        assertEquals(5, new CalculatorSnapshot("", "", false, false, 0).toBytes().length);
+    }
+
+    @Test
+    public void damagedSnapshot_isRejected() {
+        byte[] bytes = new CalculatorSnapshot("1+2", "3", false, false, 0).toBytes();
+
+        assertNull(CalculatorSnapshot.fromBytes(null));
+        assertNull(CalculatorSnapshot.fromBytes(Arrays.copyOf(bytes, bytes.length - 1)));
+        bytes[0] = 99;
+        assertNull(CalculatorSnapshot.fromBytes(bytes));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CalculusEvaluatorTest {
+
+    private final CalculusEvaluator evaluator = new CalculusEvaluator();
+
+    private double evaluate(String input) throws Exception {
+        return evaluator.evaluate(input, null);
+    }
+
+    private EvaluationException.Reason failure(String input) throws InterruptedException {
+        try {
+            evaluator.evaluate(input, null);
+            fail();
+            return null;
+        } catch (EvaluationException e) {
+            return e.getReason();
+        }
+    }
+
+    @Test
+    public void solve_findsBracketedRoots() throws Exception {
+        assertEquals(Math.sqrt(2), evaluate("solve(x²-2, 0, 2)"), 1e-15);
+        assertEquals(Math.PI, evaluate("solve(sin x, 3, 4)"), 1e-15);
+        assertEquals(0.7390851332151607, evaluate("solve(cos(x)-x, 0, 1)"), 1e-15);
+        // Brent converges in a handful of steps where bisection would take fifty
+        assertTrue(evaluator.getEvaluationCount() < 15);
+        assertEquals(1, evaluate("solve(x-1, 1, 5)"), 0);
+    }
+
+    @Test
+    public void integrate_reachesTheTolerance() throws Exception {
+        assertEquals(2, evaluate("∫(sin x, 0, 3.141592653589793)"), 1e-14);
+        assertEquals(Math.E - 1, evaluate("integrate(exp x, 0, 1)"), 1e-14);
+        assertEquals(-1.0 / 3, evaluate("∫(x², 1, 0)"), 1e-15);
+        assertEquals(0, evaluate("∫(x, 2, 2)"), 0);
+        // Integrable singularity at an endpoint, which the nodes never touch
+        assertEquals(2, evaluate("∫(1÷√x, 0, 1)"), 1e-9);
+        assertTrue(evaluator.getEvaluationCount() > 1000);
+        // Sharp peak
+        assertEquals(2 * Math.atan(100) / 100, evaluate("∫(1÷(1+10000x²), -1, 1)"), 1e-15);
+    }
+
+    @Test
+    public void differentiate_extrapolatesToZeroStep() throws Exception {
+        assertEquals(12, evaluate("d/dx(x^3, 2)"), 1e-12);
+        assertEquals(Math.cos(1), evaluate("d/dx(sin x, 1)"), 1e-13);
+        assertEquals(1 / (2 * Math.sqrt(0.05)), evaluate("d/dx(√x, 0.05)"), 1e-9);
+        assertEquals(-1e-6, evaluate("d/dx(1÷x, 1000)"), 1e-17);
+    }
+
+    @Test
+    public void differentiate_stepsInsideTheLocalVariation() throws Exception {
+        // Near a pole and in a fast oscillation, where a coarse first step goes astray
+        assertEquals(-400, evaluate("d/dx(1÷x, 0.05)"), 1e-9);
+        assertEquals(1 / (Math.cos(1.5) * Math.cos(1.5)), evaluate("d/dx(tan x, 1.5)"), 1e-9);
+        assertEquals(100, evaluate("d/dx(sin(100x), 0)"), 1e-9);
+    }
+
+    @Test
+    public void bounds_areExpressions() throws Exception {
+        assertEquals(4, evaluate("∫(2x, 0, √(16)÷2)"), 1e-15);
+        assertEquals(3, evaluate(" solve ( x-3 , 1+1 , 2² ) "), 1e-15);
+    }
+
+    @Test
+    public void keypadSpellings_areAccepted() throws Exception {
+        // The keypad types a decimal point for the comma and ÷ for /
+        assertEquals(Math.sqrt(2), evaluate("solve(x²-2;0;2)"), 1e-12);
+        assertEquals(12, evaluate("d÷dx(x^3;2)"), 1e-12);
+        assertEquals(0.5, evaluate("∫(x;0;1)"), 1e-15);
+    }
+
+    @Test
+    public void failures_areReported() throws Exception {
+        assertEquals(EvaluationException.Reason.NO_CONVERGENCE, failure("solve(x²+1, -1, 1)"));
+        // Sign changes across a pole
+        assertEquals(EvaluationException.Reason.NO_CONVERGENCE, failure("solve(tan x, 1, 2)"));
+        assertEquals(EvaluationException.Reason.NO_CONVERGENCE, failure("solve(1÷(x-0.3), 0, 1)"));
+        assertEquals(EvaluationException.Reason.NO_CONVERGENCE, failure("∫(1÷x, 0, 1)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("∫(√x, -1, 1)"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("solve(x, 1)"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("d/dx(x, 1, 2)"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("∫(x, 0, 1)+1"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("solve(x+y, 0, 1)"));
+        try {
+            evaluator.evaluate("solve(x, 0, 1+)", null);
+            fail();
+        } catch (EvaluationException e) {
+            assertEquals(14, e.getPosition());
+        }
+    }
+
+    @Test
+    public void accepts_onlyTheCalls() {
+        assertTrue(CalculusEvaluator.accepts("solve(x, 0, 1)"));
+        assertTrue(CalculusEvaluator.accepts("∫ (x, 0, 1)"));
+        assertTrue(CalculusEvaluator.accepts("d/dx(x², 3)"));
+        assertFalse(CalculusEvaluator.accepts("x²"));
+        assertFalse(CalculusEvaluator.accepts("solve"));
+        assertFalse(CalculusEvaluator.accepts("2×∫(x, 0, 1)"));
+    }
+
+    @Test
+    public void progress_isReportedInOrder() throws Exception {
+        List<Double> fractions = new ArrayList<>();
+        evaluator.evaluate("∫(1÷√x, 0, 1)", fractions::add);
+        assertFalse(fractions.isEmpty());
+        for (int i = 1; i < fractions.size(); i++) {
+            assertTrue(fractions.get(i) > fractions.get(i - 1));
+        }
+        assertTrue(fractions.get(fractions.size() - 1) <= 1);
+    }
+
+    @Test
+    public void interruption_cancels() throws Exception {
+        Thread.currentThread().interrupt();
+        try {
+            evaluator.evaluate("∫(1÷√x, 0, 1)", null);
+            fail();
+        } catch (InterruptedException e) {
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompiledExpressionTest {
+
+    @Test
+    public void compile_matchesDirectEvaluation() throws Exception {
+        Evaluator evaluator = new Evaluator();
+        String[] expressions = {"2+3×4", "(2+3)×4", "2√(16)", "√(9", "-2²", "10÷4-1", "3²(2)", "2^3"};
+        for (String expression : expressions) {
+            CompiledExpression compiled = CompiledExpression.compile(expression);
+            assertEquals(expression, evaluator.evaluate(expression), compiled.evaluate(new double[0]), 0);
+        }
+    }
+
+    @Test
+    public void mentions_matchesWholeIdentifiers() {
+        Lexer lexer = new Lexer();
+        assertTrue(lexer.mentions("x²+2x+1", "x"));
+        assertTrue(lexer.mentions("sin(x)", "x"));
+        assertTrue(lexer.mentions("x;0;1;10", "x"));
+        assertFalse(lexer.mentions("exp(1)", "x"));
+        assertFalse(lexer.mentions("max+1", "x"));
+        assertFalse(lexer.mentions("2×3", "x"));
+    }
+
+    @Test
+    public void variables_bindToSlots() throws Exception {
+        CompiledExpression f = CompiledExpression.compile("x²+2x+1", "x");
+        assertEquals(0, f.getVariableSlot("x"));
+        assertEquals(-1, f.getVariableSlot("y"));
+
+        double[] vars = new double[1];
+        for (int x = -5; x <= 5; x++) {
+            vars[0] = x;
+            assertEquals((x + 1) * (x + 1), f.evaluate(vars), 1e-12);
+        }
+    }
+
+    @Test
+    public void program_isFlatPostfix() throws Exception {
+        CompiledExpression f = CompiledExpression.compile("a×(b+2)", "a", "b");
+        assertEquals("a b 2.0 + *", f.toString());
+        assertEquals(3, f.getMaxStackDepth());
+    }
+
+    @Test
+    public void runtimeErrors_reportReason() throws Exception {
+        CompiledExpression f = CompiledExpression.compile("1÷x", "x");
+        try {
+            f.evaluate(new double[] {0});
+            fail();
+        } catch (EvaluationException e) {
+            assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, e.getReason());
+            assertEquals(1, e.getPosition());
+        }
+    }
+
+    @Test
+    public void optimize_foldsConstantSubtrees() throws Exception {
+        CompiledExpression f = CompiledExpression.compile("2×3+x÷(4-3)+√(16)", "x").optimize();
+        assertEquals("6.0 x + 4.0 +", f.toString());
+        assertEquals(7, f.getEliminatedNodeCount());
+        assertEquals(0, CompiledExpression.compile("x+1", "x").getEliminatedNodeCount());
+    }
+
+    @Test
+    public void optimize_reducesPowersToMultiplication() throws Exception {
+        assertEquals("x sqr", CompiledExpression.compile("x^2", "x").optimize().toString());
+        assertEquals("x sqr", CompiledExpression.compile("x×x", "x").optimize().toString());
+        assertEquals("x ^5", CompiledExpression.compile("x^5", "x").optimize().toString());
+        assertEquals("x", CompiledExpression.compile("x^1×1", "x").optimize().toString());
+        assertEquals("x 0.5 ^", CompiledExpression.compile("x^0.5", "x").optimize().toString());
+        assertEquals("x y -", CompiledExpression.compile("x+-y", "x", "y").optimize().toString());
+
+        CompiledExpression f = CompiledExpression.compile("x^7-x^3", "x").optimize();
+        double[] vars = new double[1];
+        for (int x = -6; x <= 6; x++) {
+            vars[0] = x;
+            assertEquals(Math.pow(x, 7) - Math.pow(x, 3), f.evaluate(vars), 0);
+        }
+    }
+
+    @Test
+    public void optimize_runsRightNestedChainsInConstantDepth() throws Exception {
+        CompiledExpression f = CompiledExpression.compile("a+(b+(c×(d+1)))", "a", "b", "c", "d");
+        assertEquals(5, f.getMaxStackDepth());
+        CompiledExpression optimized = f.optimize();
+        assertEquals("d 1.0 + c * b + a +", optimized.toString());
+        assertEquals(2, optimized.getMaxStackDepth());
+        assertEquals(f.evaluate(new double[] {1, 2, 3, 4}), optimized.evaluate(new double[] {1, 2, 3, 4}), 0);
+    }
+
+    @Test
+    public void optimize_keepsErrorsAndTheirPositions() throws Exception {
+        CompiledExpression f = CompiledExpression.compile("x+1÷0", "x").optimize();
+        try {
+            f.evaluate(new double[] {1});
+            fail();
+        } catch (EvaluationException e) {
+            assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, e.getReason());
+            assertEquals(3, e.getPosition());
+        }
+
+        // The √ must still fail before the division on the right is reached
+        CompiledExpression g = CompiledExpression.compile("√x+(1÷(x+1)+x)", "x").optimize();
+        try {
+            g.evaluate(new double[] {-1});
+            fail();
+        } catch (EvaluationException e) {
+            assertEquals(EvaluationException.Reason.SQRT_NEGATIVE, e.getReason());
+        }
+    }
+
+    @Test
+    public void optimize_matchesUnoptimizedResults() throws Exception {
+        String[] expressions = {
+            "x²+2x+1", "(x+1)×(x-1)÷(x+2)", "sin(x)^2+cos(x)^2", "2^10×x-(3-(x-(1-x)))",
+            "--x×1-0", "√(x×x)+ln(2)", "x^3^2", "5 nCr 2×x", "-(x+(x×(x+(x-1))))"
+        };
+        double[] vars = new double[1];
+        double[] xs = {0.5, 1.25, 3, 17.75};
+        for (String expression : expressions) {
+            CompiledExpression f = CompiledExpression.compile(expression, "x");
+            CompiledExpression optimized = f.optimize();
+            assertTrue(expression, optimized.getMaxStackDepth() <= f.getMaxStackDepth());
+            for (double x : xs) {
+                vars[0] = x;
+                double expected = f.evaluate(vars);
+                assertEquals(expression, expected, optimized.evaluate(vars), Math.abs(expected) * 1e-15);
+            }
+        }
+    }
+
+    @Test(expected = EvaluationException.class)
+    public void unknownIdentifier_isRejected() throws Exception {
+        CompiledExpression.compile("y+1", "x");
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ComplexEvaluatorTest {
+
+    private final ComplexEvaluator evaluator = new ComplexEvaluator();
+
+    private static void assertComplex(double real, double imaginary, ComplexEvaluator.Complex value, double delta) {
+        assertEquals(real, value.getReal(), delta);
+        assertEquals(imaginary, value.getImaginary(), delta);
+    }
+
+    private EvaluationException.Reason failure(String input) {
+        try {
+            evaluator.evaluate(input);
+            fail();
+            return null;
+        } catch (EvaluationException e) {
+            return e.getReason();
+        }
+    }
+
+    @Test
+    public void imaginaryUnit_isAnOperand() throws Exception {
+        assertComplex(0, 1, evaluator.evaluate("i"), 0);
+        assertComplex(-1, 0, evaluator.evaluate("i×i"), 0);
+        assertComplex(-1, 0, evaluator.evaluate("i^2"), 0);
+        assertComplex(1, 0, evaluator.evaluate("i^4"), 0);
+        assertComplex(3, 4, evaluator.evaluate("3+4i"), 0);
+        assertComplex(-7, 24, evaluator.evaluate("(3+4i)²"), 0);
+        assertComplex(0, -1, evaluator.evaluate("1÷i"), 0);
+        assertComplex(0.2, 0.4, evaluator.evaluate("(2+i)÷(4-3i)"), 1e-15);
+    }
+
+    @Test
+    public void negativeOperands_haveComplexResults() throws Exception {
+        assertComplex(0, 2, evaluator.evaluate("√(-4)"), 0);
+        assertComplex(1, Math.sqrt(3), evaluator.evaluate("(-8)^(1÷3)"), 1e-15);
+        assertComplex(0, Math.PI, evaluator.evaluate("ln(-1)"), 0);
+        assertComplex(0, Math.PI / Math.log(10), evaluator.evaluate("log(-1)"), 1e-15);
+        // On the branch cuts, real operands are taken as having a +0 imaginary part
+        assertComplex(Math.PI / 2, Math.log(2 + Math.sqrt(3)), evaluator.evaluate("asin(2)"), 1e-15);
+        assertComplex(0, -Math.log(2 + Math.sqrt(3)), evaluator.evaluate("acos(2)"), 1e-15);
+        assertComplex(0, Math.sqrt(8), evaluator.evaluate("2 root (-8)"), 1e-15);
+        // Odd roots of negative numbers stay real
+        assertComplex(-2, 0, evaluator.evaluate("3 root (-8)"), 0);
+    }
+
+    @Test
+    public void functions_takeComplexOperands() throws Exception {
+        assertComplex(-1, 0, evaluator.evaluate("exp(i×3.141592653589793)"), 1e-15);
+        assertComplex(Math.cosh(1), 0, evaluator.evaluate("cos(i)"), 1e-15);
+        assertComplex(0, Math.sinh(1), evaluator.evaluate("sin(i)"), 1e-15);
+        assertComplex(0, Math.tanh(1), evaluator.evaluate("tan(i)"), 1e-15);
+        assertComplex(0, Math.tan(1), evaluator.evaluate("tanh(i)"), 1e-15);
+        assertComplex(Math.cos(1), 0, evaluator.evaluate("cosh(i)"), 1e-15);
+        assertComplex(Math.PI / 2, 0.5 * Math.log(3), evaluator.evaluate("atan(2i)"), 1e-15);
+        assertComplex(Math.exp(-Math.PI / 2), 0, evaluator.evaluate("i^i"), 1e-15);
+        assertComplex(Math.sqrt(0.5), Math.sqrt(0.5), evaluator.evaluate("√i"), 1e-15);
+    }
+
+    @Test
+    public void realExpressions_matchEvaluator() throws Exception {
+        Evaluator real = new Evaluator();
+        String[] inputs = {"0.1+0.2", "2^0.5", "sin(1)÷3", "ln(10)", "5!", "10 nCr 3", "3 root 27", "(-2)^3",
+            // An infinite real part must not make the imaginary part ∞·0
+            "0.5²÷0.7/((519)^965(1.68))", "1÷(10^400×2)", "5^750×0.8(-169)*(767(0.9))²", "(10^400)²-10^400"};
+        for (String input : inputs) {
+            double expected;
+            try {
+                expected = real.evaluate(input);
+            } catch (EvaluationException e) {
+                assertEquals(input, e.getReason(), failure(input));
+                continue;
+            }
+            ComplexEvaluator.Complex value = evaluator.evaluate(input);
+            assertEquals(input, expected, value.getReal(), 0);
+            assertTrue(input, value.isReal());
+        }
+    }
+
+    @Test
+    public void errors() {
+        assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, failure("1÷(i-i)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("0^i"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("gamma(i)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("atan(i)"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("2j"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("exp(1000)+i"));
+    }
+
+    @Test
+    public void formatComplex_isReadBack() throws Exception {
+        NumberFormatter formatter = new NumberFormatter();
+        assertEquals("3+4i", formatter.formatComplex(3, 4));
+        assertEquals("3-4i", formatter.formatComplex(3, -4));
+        assertEquals("2i", formatter.formatComplex(0, 2));
+        assertEquals("i", formatter.formatComplex(0, 1));
+        assertEquals("-i", formatter.formatComplex(0, -1));
+        assertEquals("-2.5", formatter.formatComplex(-2.5, 0));
+        assertEquals("2.500000E+10-0.001i", formatter.formatComplex(2.5e10, -1e-3));
+        // Rounding noise in one part is not shown
+        assertEquals("-1", formatter.formatComplex(-1, 1.2246467991473532e-16));
+
+        for (String input : new String[] {"3-4i", "-i", "0.25+1.5i", "2.500000E+10-0.001i"}) {
+            ComplexEvaluator.Complex value = evaluator.evaluate(input);
+            assertEquals(input, formatter.formatComplex(value.getReal(), value.getImaginary()));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+import static org.junit.Assert.*;
+
+public class DecimalEvaluatorTest {
+
+    private final DecimalEvaluator evaluator = new DecimalEvaluator(new MathContext(50, RoundingMode.HALF_UP));
+
+    private String eval(String expression) throws EvaluationException {
+        return evaluator.evaluate(expression).stripTrailingZeros().toPlainString();
+    }
+
+    private EvaluationException.Reason failure(String expression) {
+        try {
+            evaluator.evaluate(expression);
+        } catch (EvaluationException e) {
+            return e.getReason();
+        }
+        fail("Expected failure for " + expression);
+        return null;
+    }
+
+    @Test
+    public void decimalFractions_areExact() throws Exception {
+        assertEquals("0.3", eval("0.1+0.2"));
+        assertEquals("0", eval("0.3-0.1-0.2"));
+        assertEquals("2.5", eval("10÷4"));
+        assertEquals("1.21", eval("1.1²"));
+    }
+
+    @Test
+    public void integers_promotePastLongRange() throws Exception {
+        assertEquals("9223372036854775808", eval("9223372036854775807+1"));
+        assertEquals("-9223372036854775809", eval("-9223372036854775807-2"));
+        assertEquals("85070591730234615847396907784232501249", eval("9223372036854775807²"));
+        assertEquals("1267650600228229401496703205376", eval("2^100"));
+        assertEquals("123456789012345678901234567890", eval("123456789012345678901234567890"));
+    }
+
+    @Test
+    public void grammar_matchesDoubleEvaluator() throws Exception {
+        assertEquals("14", eval("2+3×4"));
+        assertEquals("-4", eval("-2²"));
+        assertEquals("-4", eval("-2^2"));
+        assertEquals("4", eval("(√4)²"));
+        assertEquals("14", eval("2×(3+4"));
+        assertEquals("0", eval(""));
+        assertEquals("15000", eval("1.5E+4"));
+    }
+
+    @Test
+    public void division_isRoundedToContext() throws Exception {
+        assertEquals("0.33333333333333333333333333333333333333333333333333", eval("1÷3"));
+        assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, failure("1÷0"));
+        assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, failure("1÷(0.5-0.5)"));
+    }
+
+    @Test
+    public void sqrt_isExactForSquaresAndAccurateOtherwise() throws Exception {
+        assertEquals("12", eval("√144"));
+        assertEquals("3037000499", eval("√9223372030926249001"));
+        assertEquals("1.4142135623730950488016887242096980785696718753769", eval("√2"));
+        assertEquals("0.5", eval("√0.25"));
+        assertEquals("1E+100", evaluator.evaluate("√(1E+200)").stripTrailingZeros().toString());
+        assertEquals(EvaluationException.Reason.SQRT_NEGATIVE, failure("√(-4)"));
+    }
+
+    @Test
+    public void sqrt_atThousandsOfDigits() throws Exception {
+        MathContext context = new MathContext(2000, RoundingMode.HALF_EVEN);
+        BigDecimal root = new DecimalEvaluator(context).evaluate("√2");
+        BigDecimal error = root.multiply(root).subtract(BigDecimal.valueOf(2)).abs();
+        assertTrue(error.compareTo(BigDecimal.ONE.movePointLeft(1998)) < 0);
+    }
+
+    @Test
+    public void powers() throws Exception {
+        assertEquals("0.25", eval("2^-2"));
+        assertEquals("1", eval("7^0"));
+        assertEquals("2", eval("4^0.5"));
+        assertEquals("3.375", eval("1.5^3"));
+        assertEquals("1", eval("(-1)^100000000000000000000"));
+        assertEquals("-1", eval("(-1)^100000000000000000001"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("0^-1"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("2^100000000000000000000"));
+        assertEquals(EvaluationException.Reason.NOT_A_NUMBER, failure("(-8)^0.3"));
+    }
+
+    @Test
+    public void trig_reducesLargeArgumentsAtFullPrecision() throws Exception {
+        assertEquals("0.84147098480789650665250232163029899962256306079837", eval("sin(1)"));
+        assertEquals("0.85827279317023583552388639084840664660020340822073", eval("sin(1E15)"));
+        assertEquals("0.52321478539513894549759447338470949214091997243939", eval("cos(1E22)"));
+        assertEquals("1.5574077246549022305069748074583601730872507723815", eval("tan(1)"));
+        // Close to a multiple of π: the reduction cancels four digits
+        assertEquals("-0.000030144353359488449214330280008650099590255807066325", eval("sin(355)"));
+        assertEquals("3.1415926535897932384626433832795028841971693993751", eval("atan(1)×4"));
+        assertEquals("1.047197551196597746154214461093167628065723133125", eval("acos(0.5)"));
+        // Arguments too large to reduce in reasonable time are rejected
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("sin(1E5000)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("tan(-1E20000)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("sin(exp(513(656)))"));
+    }
+
+    @Test
+    public void expAndLogarithms() throws Exception {
+        assertEquals("2.7182818284590452353602874713526624977572470937", eval("exp(1)"));
+        assertEquals("0.69314718055994530941723212145817656807550013436026", eval("ln(2)"));
+        assertEquals("0.30102999566398119521373889472449302676818988146211", eval("log(2)"));
+        assertEquals("3", eval("log(1000)"));
+        assertEquals("0", eval("ln(1)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("ln(-2)"));
+    }
+
+    @Test
+    public void factorialsAndCombinatorics_areExact() throws Exception {
+        assertEquals("15511210043330985984000000", eval("25!"));
+        assertEquals("100891344545564193334812497256", eval("100 nCr 50"));
+        assertEquals("3", eval("3 root 27"));
+        assertEquals("-3", eval("3 root -27"));
+        assertEquals("2", eval("20 root 1048576"));
+        // A large index only checks exactness when the power is as short as the radicand
+        assertEquals("1.0000022644555836798629822238950603571694417776062", eval("859329 root 7"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("(-1)!"));
+    }
+
+    @Test(timeout = 2000)
+    public void hugeExponents_costNoMoreThanSmallOnes() throws Exception {
+        assertEquals(0, new BigDecimal("1E50000000").compareTo(evaluator.evaluate("√(10^100000000)")));
+        MathContext digits = new MathContext(45);
+        assertEquals(evaluator.evaluate("2^5000000").round(digits), evaluator.evaluate("√(2^10000000)").round(digits));
+        assertEquals("10000000", eval("ln exp 10000000"));
+        assertEquals("-2302585.0929940456840179914546843642076011014886288", eval("ln(1E-1000000)"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("7^(10^10)"));
+    }
+
+    @Test
+    public void fractionalPowers_keepWorkingPrecision() throws Exception {
+        assertEquals("2.8284271247461900976033774484193961571393437507539", eval("2^1.5"));
+        assertEquals("0.31622776601683793319988935444327185337195551393252", eval("10^(-0.5)"));
+        assertEquals("2.1675390925022358061414804140177369614133523282316E+137",
+            evaluator.evaluate("1.0000001^(10^9.5)").toString());
+        assertEquals("0", eval("0^0.5"));
+        assertEquals(EvaluationException.Reason.NOT_A_NUMBER, failure("(-2)^1.5"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("0^(-0.5)"));
+    }
+
+    @Test
+    public void identifiers_areRejected() {
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("2x"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.calculator.engine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class EvaluationSchedulerTest {
+
+    private final EvaluationScheduler scheduler = new EvaluationScheduler(Runnable::run, 50);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void burstOfEdits_isCoalescedIntoOnePreview() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Double> result = new AtomicReference<>();
+        EvaluationScheduler.Callback callback = new RecordingCallback(result, latch);
+
+        scheduler.schedulePreview("1", 0, callback);
+        scheduler.schedulePreview("1+", 1, callback);
+        scheduler.schedulePreview("1+2", 2, callback);
+        scheduler.schedulePreview("1+2×3", 3, callback);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(7.0, result.get(), 0);
+        assertEquals(3, scheduler.getCoalescedCount());
+        assertEquals(1, scheduler.getCompletedCount());
+    }
+
+    @Test
+    public void evaluateNow_skipsCoalescingDelay() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Double> result = new AtomicReference<>();
+
+        scheduler.evaluateNow("√(16)×2", new RecordingCallback(result, latch));
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(8.0, result.get(), 0);
+    }
+
+    @Test
+    public void cancel_dropsPendingPreview() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Double> result = new AtomicReference<>();
+
+        scheduler.schedulePreview("2+2", 0, new RecordingCallback(result, latch));
+        scheduler.cancel();
+
+        assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.getCancelledCount());
+        assertEquals(0, scheduler.getCompletedCount());
+    }
+
+    private static final class RecordingCallback implements EvaluationScheduler.Callback {
+        private final AtomicReference<Double> result;
+        private final CountDownLatch latch;
+
+        RecordingCallback(AtomicReference<Double> result, CountDownLatch latch) {
+            this.result = result;
+            this.latch = latch;
+        }
+
+        @Override
+        public void onResult(double value) {
+            result.set(value);
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(EvaluationException error) {
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EvaluatorTest {
+
+    private final Evaluator evaluator = new Evaluator();
+
+    private double eval(String expression) throws EvaluationException {
+        return evaluator.evaluate(expression);
+    }
+
+    private EvaluationException.Reason failure(String expression) {
+        try {
+            evaluator.evaluate(expression);
+        } catch (EvaluationException e) {
+            return e.getReason();
+        }
+        fail("Expected failure for " + expression);
+        return null;
+    }
+
+    @Test
+    public void basicOperators_followPrecedence() throws Exception {
+        assertEquals(14, eval("2+3×4"), 0);
+        assertEquals(20, eval("(2+3)×4"), 0);
+        assertEquals(2.5, eval("10÷4"), 0);
+        assertEquals(1, eval("8-4-3"), 0);
+        assertEquals(1, eval("8÷4÷2"), 0);
+        assertEquals(7, eval("2*3+4/4"), 0);
+    }
+
+    @Test
+    public void displaySymbols_areReadDirectly() throws Exception {
+        assertEquals(4, eval("√(16)"), 0);
+        assertEquals(25, eval("5²"), 0);
+        assertEquals(3, eval("√(4+5)"), 0);
+        assertEquals(8, eval("2^3"), 0);
+        assertEquals(4, eval("sqrt(16)"), 0);
+    }
+
+    @Test
+    public void implicitMultiplication() throws Exception {
+        assertEquals(10, eval("2(5)"), 0);
+        assertEquals(12, eval("(3)(4)"), 0);
+        assertEquals(6, eval("(3)2"), 0);
+        assertEquals(8, eval("2√(16)"), 0);
+        assertEquals(18, eval("2×(3)²"), 0);
+    }
+
+    @Test
+    public void unclosedParentheses_areClosedAtEnd() throws Exception {
+        assertEquals(3, eval("√(9"), 0);
+        assertEquals(14, eval("2×(3+4"), 0);
+    }
+
+    @Test
+    public void unaryMinus() throws Exception {
+        assertEquals(-5, eval("-5"), 0);
+        assertEquals(-6, eval("2×-3"), 0);
+        assertEquals(-4, eval("-2²"), 0);
+        assertEquals(0.5, eval("2^-1"), 0);
+    }
+
+    @Test
+    public void numbers_parseExactly() throws Exception {
+        assertEquals(0.1, eval("0.1"), 0);
+        assertEquals(0.5, eval(".5"), 0);
+        assertEquals(1.234568E10, eval("1.234568E+10"), 0);
+        assertEquals(1.5e-7, eval("1.5E-7"), 0);
+        assertEquals(Double.parseDouble("12345678901234567890.123"), eval("12345678901234567890.123"), 0);
+        assertEquals(0, eval(""), 0);
+    }
+
+    @Test
+    public void functions_areLookedUpByName() throws Exception {
+        assertEquals(Math.sin(0.5), eval("sin(0.5)"), 0);
+        assertEquals(Math.sin(30), eval("sin30"), 0);
+        assertEquals(Math.sin(30), eval("sin 30"), 0);
+        assertEquals(2 * Math.cos(1), eval("2cos(1)"), 0);
+        assertEquals(Math.sqrt(Math.sin(1)), eval("√sin(1)"), 0);
+        assertEquals(Math.pow(Math.log(5), 2), eval("ln(5)²"), 0);
+        assertEquals(3, eval("log1000"), 0);
+        assertEquals(Math.exp(1), eval("exp(1)"), 0);
+        assertEquals(Math.atan(2), eval("atan(2)"), 0);
+        assertEquals(Math.tanh(0.5), eval("tanh(0.5)"), 0);
+        assertEquals(4, eval("sqrt(16)"), 0);
+    }
+
+    @Test
+    public void trig_isAccurateForLargeArguments() throws Exception {
+        // sin(10^15) = 0.85827279317023583552...
+        assertEquals(0.8582727931702358, eval("sin(1E15)"), 1e-15);
+        // cos(10^22) = 0.52321478539513894549...
+        assertEquals(0.5232147853951389, eval("cos(1E22)"), 1e-15);
+    }
+
+    @Test
+    public void factorialAndCombinatorics() throws Exception {
+        assertEquals(120, eval("5!"), 0);
+        assertEquals(36, eval("3!²"), 0);
+        assertEquals(-6, eval("-3!"), 0);
+        assertEquals(7.257415615307999E306, eval("170!"), 0);
+        assertEquals(Math.sqrt(Math.PI) / 2, eval("0.5!"), 1e-15);
+        assertEquals(24, eval("gamma(5)"), 0);
+        assertEquals(120, eval("10 nCr 3"), 0);
+        assertEquals(10, eval("5nCr2"), 0);
+        assertEquals(240, eval("10 nCr 3×2"), 0);
+        assertEquals(2598960, eval("52 nCr 5"), 0);
+        assertEquals(720, eval("10 nPr 3"), 0);
+        assertEquals(0, eval("3 nCr 5"), 0);
+        assertEquals(1.008913445455642E29, eval("100 nCr 50"), 0);
+    }
+
+    @Test
+    public void roots_areExactForPerfectPowers() throws Exception {
+        assertEquals(3, eval("3 root 27"), 0);
+        assertEquals(-2, eval("3 root -8"), 0);
+        assertEquals(2, eval("5 root 32"), 0);
+        assertEquals(10, eval("6 root 1E6"), 0);
+        assertEquals(Math.pow(2, 0.25), eval("4 root 2"), 1e-15);
+    }
+
+    @Test
+    public void functions_reportDomainErrors() {
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("ln(-1)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("asin(2)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("(-3)!"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("gamma(0)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("2.5 nCr 1"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("2 root -4"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("171!"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("ln(0)"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("sin"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("sin-1"));
+    }
+
+    @Test
+    public void errors_reportReason() {
+        assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, failure("5÷0"));
+        assertEquals(EvaluationException.Reason.SQRT_NEGATIVE, failure("√(2-6)"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("5+"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("1.2.3"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("()"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("2)"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("10^400"));
+    }
+
+    @Test
+    public void deepNesting_isRejectedInsteadOfOverflowing() throws Exception {
+        assertEquals(2, eval("(".repeat(400) + "2" + ")".repeat(400)), 0);
+        assertEquals(-1, eval("-".repeat(399) + "1"), 0);
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("(".repeat(5000) + "1"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("√".repeat(20000) + "2"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("sin".repeat(1000) + "1"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("-".repeat(20000) + "1"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExpressionBufferTest {
+
+    @Test
+    public void typing_appendsAtCursor() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.insert("12");
+        buffer.insert('×');
+        buffer.insert("(3+4)");
+
+        assertEquals("12×(3+4)", buffer.toString());
+        assertEquals(8, buffer.length());
+        assertEquals(8, buffer.getCursor());
+        assertEquals(')', buffer.charBeforeCursor());
+        assertTrue(buffer.contentEquals("12×(3+4)"));
+        assertFalse(buffer.contentEquals("12×(3+4"));
+    }
+
+    @Test
+    public void cursorEdits_insertAndDeleteInPlace() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.insert("12+34");
+        buffer.setCursor(2);
+        buffer.insert("5");
+        assertEquals("125+34", buffer.toString());
+
+        assertTrue(buffer.deleteAfter());
+        assertEquals("12534", buffer.toString());
+        assertTrue(buffer.deleteBefore());
+        assertEquals("1234", buffer.toString());
+        assertEquals(2, buffer.getCursor());
+
+        buffer.setCursor(0);
+        assertFalse(buffer.deleteBefore());
+        assertEquals(0, buffer.charBeforeCursor());
+        buffer.setCursor(buffer.length());
+        assertFalse(buffer.deleteAfter());
+    }
+
+    @Test
+    public void growth_keepsTextOnBothSidesOfGap() {
+        ExpressionBuffer buffer = new ExpressionBuffer(16);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buffer.insert(i % 2 == 0 ? "1+" : "2×");
+            expected.append(i % 2 == 0 ? "1+" : "2×");
+        }
+        buffer.setCursor(10);
+        buffer.insert("(((");
+        expected.insert(10, "(((");
+
+        assertEquals(expected.toString(), buffer.toString());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), buffer.charAt(i));
+        }
+    }
+
+    @Test
+    public void parenCounts_followInsertsAndDeletes() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.insert("√((2+3)×(4");
+        assertEquals(3, buffer.getOpenParenCount());
+        assertEquals(1, buffer.getCloseParenCount());
+
+        buffer.deleteBefore();
+        buffer.deleteBefore();
+        assertEquals(2, buffer.getOpenParenCount());
+
+        buffer.setCursor(0);
+        buffer.deleteAfter();
+        buffer.deleteAfter();
+        assertEquals(1, buffer.getOpenParenCount());
+        assertEquals(1, buffer.getCloseParenCount());
+
+        buffer.clear();
+        assertEquals(0, buffer.getOpenParenCount());
+    }
+
+    @Test
+    public void decimalState_tracksNumberBeforeCursor() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.insert("1.5");
+        assertTrue(buffer.numberHasDecimal());
+
+        buffer.insert('+');
+        assertFalse(buffer.numberHasDecimal());
+        buffer.insert("20");
+        assertFalse(buffer.numberHasDecimal());
+
+        // Deleting back into the first operand brings its decimal point back
+        buffer.deleteBefore();
+        buffer.deleteBefore();
+        buffer.deleteBefore();
+        assertTrue(buffer.numberHasDecimal());
+
+        buffer.deleteBefore();
+        buffer.deleteBefore();
+        assertFalse(buffer.numberHasDecimal());
+
+        buffer.replace("3.25×4");
+        buffer.setCursor(3);
+        assertTrue(buffer.numberHasDecimal());
+        buffer.setCursor(6);
+        assertFalse(buffer.numberHasDecimal());
+    }
+
+    @Test
+    public void functionBeforeCursor_matchesWholeNames() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        String[] calls = {"sin", "2ln", "3×sqrt", "5 nCr", "solve", "∫", "d÷dx"};
+        for (String call : calls) {
+            buffer.replace(call);
+            assertTrue(call, buffer.functionBeforeCursor());
+        }
+        String[] operands = {"", "2", "x", "rate", "(5 km", "sin(30"};
+        for (String operand : operands) {
+            buffer.replace(operand);
+            assertFalse(operand, buffer.functionBeforeCursor());
+        }
+    }
+
+    @Test
+    public void toString_isReusedUntilEdited() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.insert("7+8");
+        String text = buffer.toString();
+        assertSame(text, buffer.toString());
+
+        buffer.insert('9');
+        assertEquals("7+89", buffer.toString());
+    }
+}
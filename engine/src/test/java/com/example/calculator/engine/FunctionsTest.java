@@ -0,0 +1,92 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class FunctionsTest {
+
+    private static BigInteger naiveFactorial(int n) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 2; i <= n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void registry_findsNamesAndPrefixes() {
+        assertEquals(Opcodes.SIN, Functions.find("sin", 0, 3));
+        assertEquals(Opcodes.SINH, Functions.find("sinh", 0, 4));
+        assertEquals(Opcodes.COMBINATIONS, Functions.find("5nCr2", 1, 4));
+        assertEquals(-1, Functions.find("sine", 0, 4));
+        assertEquals(3, Functions.findPrefix("sin30", 0, 5));
+        assertEquals(4, Functions.findPrefix("sinhx", 0, 5));
+        assertEquals(0, Functions.findPrefix("x", 0, 1));
+        assertTrue(Functions.isInfix(Opcodes.ROOT));
+        assertFalse(Functions.isInfix(Opcodes.LN));
+    }
+
+    @Test
+    public void lexer_reportsFunctionTokens() {
+        Lexer lexer = new Lexer().reset("sin30 nCr x!");
+        assertEquals(Lexer.FUNCTION, lexer.next());
+        assertEquals(Opcodes.SIN, lexer.opcode());
+        assertEquals(Lexer.NUMBER, lexer.next());
+        assertEquals(Lexer.INFIX, lexer.next());
+        assertEquals(Opcodes.COMBINATIONS, lexer.opcode());
+        assertEquals(Lexer.IDENTIFIER, lexer.next());
+        assertEquals(Lexer.FACTORIAL, lexer.next());
+        assertEquals(Lexer.SQRT, new Lexer().reset("sqrt").next());
+    }
+
+    @Test
+    public void primeSwingFactorial_matchesNaiveProduct() {
+        for (int n : new int[] {0, 1, 20, 21, 22, 63, 64, 100, 257, 1000, 4099}) {
+            assertEquals("n=" + n, naiveFactorial(n), IntegerMath.factorial(n));
+        }
+    }
+
+    @Test
+    public void binomial_matchesFactorialsOnEveryPath() {
+        // Table, multiplicative and prime factorization paths
+        int[][] cases = {{10, 3}, {66, 33}, {67, 33}, {100, 7}, {100, 50}, {500, 250}, {1000, 999}, {5, 7}};
+        for (int[] c : cases) {
+            int n = c[0];
+            int k = c[1];
+            BigInteger expected = k > n ? BigInteger.ZERO
+                : naiveFactorial(n).divide(naiveFactorial(k).multiply(naiveFactorial(n - k)));
+            assertEquals(n + " C " + k, expected, IntegerMath.binomial(n, k));
+        }
+        assertEquals(naiveFactorial(100).divide(naiveFactorial(60)), IntegerMath.permutations(100, 40));
+        assertEquals(BigInteger.valueOf(720), IntegerMath.permutations(10, 3));
+    }
+
+    @Test
+    public void factorialTable_isCorrectlyRounded() {
+        for (int n = 0; n <= Functions.MAX_DOUBLE_FACTORIAL; n++) {
+            assertEquals(naiveFactorial(n).doubleValue(), Functions.factorial(n), 0);
+        }
+        assertEquals(Double.POSITIVE_INFINITY, Functions.factorial(171), 0);
+    }
+
+    @Test
+    public void gamma_matchesKnownValues() {
+        assertEquals(Math.sqrt(Math.PI), Functions.gamma(0.5), 1e-15);
+        assertEquals(-2 * Math.sqrt(Math.PI), Functions.gamma(-0.5), 1e-14);
+        assertEquals(1.3293403881791355, Functions.gamma(2.5), 1e-14);
+        assertEquals(Math.log(naiveFactorial(100).doubleValue()), Functions.lnGamma(101), 1e-12);
+        assertTrue(Double.isNaN(Functions.gamma(-2)));
+    }
+
+    @Test
+    public void exactRoot_findsPerfectPowersOnly() {
+        assertEquals(BigInteger.valueOf(3), IntegerMath.exactRoot(BigInteger.valueOf(243), 5));
+        assertNull(IntegerMath.exactRoot(BigInteger.valueOf(244), 5));
+        BigInteger big = BigInteger.valueOf(123456789);
+        assertEquals(big, IntegerMath.exactRoot(big.pow(7), 7));
+        assertNull(IntegerMath.exactRoot(big.pow(7).add(BigInteger.ONE), 7));
+    }
+}
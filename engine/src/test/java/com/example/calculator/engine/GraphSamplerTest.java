@@ -0,0 +1,126 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GraphSamplerTest {
+
+    private static GraphSampler sampler(String expression) throws EvaluationException {
+        return new GraphSampler(CompiledExpression.compile(expression, "x"), "x");
+    }
+
+    @Test
+    public void evaluateBatch_matchesScalarEvaluation() throws Exception {
+        CompiledExpression f = CompiledExpression.compile("√(x²+1)÷(x-2)-3x^2×y", "x", "y");
+        double[] xs = new double[101];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = -5 + i * 0.1;
+        }
+        double[] ys = new double[xs.length];
+        double[] variables = {0, 1.5};
+        f.evaluateBatch(variables, 0, xs, ys, xs.length, f.newBatchStack(xs.length));
+
+        for (int i = 0; i < xs.length; i++) {
+            variables[0] = xs[i];
+            try {
+                assertEquals(f.evaluate(variables), ys[i], 1e-12);
+            } catch (EvaluationException e) {
+                assertTrue(Double.isNaN(ys[i]));
+            }
+        }
+    }
+
+    @Test
+    public void evaluateBatch_marksUndefinedPointsNaN() throws Exception {
+        CompiledExpression f = CompiledExpression.compile("1÷x+√(x)", "x");
+        double[] xs = {-1, 0, 4};
+        double[] ys = new double[3];
+        f.evaluateBatch(new double[1], 0, xs, ys, 3, f.newBatchStack(3));
+
+        assertTrue(Double.isNaN(ys[0]));
+        assertTrue(Double.isNaN(ys[1]));
+        assertEquals(2.25, ys[2], 0);
+    }
+
+    @Test
+    public void smoothCurve_coversViewportInOrder() throws Exception {
+        GraphSampler.Plot plot = sampler("x²").sample(-2, 2, -1, 5, 400, 300);
+
+        assertTrue(plot.getCount() >= 400 / GraphSampler.PIXELS_PER_SAMPLE);
+        assertTrue(plot.getX(0) <= -2);
+        assertTrue(plot.getX(plot.getCount() - 1) >= 2);
+        for (int i = 0; i < plot.getCount(); i++) {
+            if (i > 0) assertTrue(plot.getX(i) > plot.getX(i - 1));
+            assertEquals(plot.getX(i) * plot.getX(i), plot.getY(i), 1e-12);
+        }
+    }
+
+    @Test
+    public void domainEdge_isRefined() throws Exception {
+        GraphSampler.Plot plot = sampler("√(x)").sample(-1, 1, -1, 1, 100, 100);
+
+        // The last undefined point sits within a refined step of 0
+        double lastUndefined = Double.NEGATIVE_INFINITY;
+        double firstDefined = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < plot.getCount(); i++) {
+            if (Double.isNaN(plot.getY(i))) {
+                lastUndefined = Math.max(lastUndefined, plot.getX(i));
+            } else {
+                firstDefined = Math.min(firstDefined, plot.getX(i));
+            }
+        }
+        double uniformStep = 2.0 * GraphSampler.PIXELS_PER_SAMPLE / 100;
+        assertTrue(firstDefined - lastUndefined <= uniformStep / (1 << GraphSampler.MAX_REFINE_DEPTH));
+    }
+
+    @Test
+    public void pole_breaksLine() throws Exception {
+        GraphSampler.Plot plot = sampler("1÷x").sample(-1.3, 1.7, -10, 10, 300, 200);
+
+        boolean brokenAtZero = false;
+        for (int i = 1; i + 1 < plot.getCount(); i++) {
+            if (Double.isNaN(plot.getY(i)) && Math.abs(plot.getX(i)) < 0.05) brokenAtZero = true;
+            // No segment joins the two branches
+            if (!Double.isNaN(plot.getY(i)) && !Double.isNaN(plot.getY(i + 1))) {
+                assertTrue(Math.signum(plot.getX(i)) == Math.signum(plot.getX(i + 1))
+                    || plot.getX(i) == 0 || plot.getX(i + 1) == 0);
+            }
+        }
+        assertTrue(brokenAtZero);
+    }
+
+    @Test
+    public void panAndZoom_reuseSamples() throws Exception {
+        GraphSampler sampler = sampler("x");
+        sampler.sample(0, 10, 0, 10, 100, 100);
+        long first = sampler.getEvaluatedCount();
+
+        // Half the viewport is already known
+        sampler.sample(5, 15, 5, 15, 100, 100);
+        long pan = sampler.getEvaluatedCount() - first;
+        assertTrue(pan + " evaluated after pan", pan <= first / 2 + 2);
+
+        // Zooming in by two reuses every other point
+        sampler.sample(5, 10, 5, 10, 100, 100);
+        long zoom = sampler.getEvaluatedCount() - first - pan;
+        assertTrue(zoom + " evaluated after zoom", zoom <= first / 2 + 2);
+    }
+
+    @Test
+    public void degenerateViewport_isWidenedToTheNarrowestRange() throws Exception {
+        // Collapsed to a point, as an unbounded pinch left it
+        GraphSampler.Plot plot = sampler("x²").sample(3, 3, 9, 9, 100, 100);
+        assertTrue(plot.getCount() > 2);
+        assertTrue(plot.getX(0) < 3 && plot.getX(plot.getCount() - 1) > 3);
+        assertTrue(plot.getX(plot.getCount() - 1) - plot.getX(0) < 1e-9);
+
+        // Wider than the widest range, sampled at that range about the centre
+        plot = sampler("x").sample(-1e300, 1e300, -1, 1, 100, 100);
+        assertTrue(plot.getX(0) <= -5e299 && plot.getX(0) > -1e300);
+        assertTrue(plot.getX(plot.getCount() - 1) >= 5e299);
+        assertEquals(1e-6, GraphSampler.clampRange(1e6, 0), 1e-18);
+        assertEquals(1e-12, GraphSampler.clampRange(0.5, 0), 0);
+        assertEquals(1e300, GraphSampler.clampRange(0, Double.MAX_VALUE), 0);
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.calculator.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class HistoryLogTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("history", ".log").toFile();
+        // open() must create the file itself
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".compact").delete();
+    }
+
+    @Test
+    public void entries_surviveReopen() throws Exception {
+        try (HistoryLog log = HistoryLog.open(file)) {
+            log.append("12.5×(3+4)÷2-√(16)", "39.75", 1000L);
+            log.append("1÷3", "0.333333333333333", 2000L);
+            assertEquals(2, log.size());
+        }
+
+        try (HistoryLog log = HistoryLog.open(file)) {
+            assertEquals(2, log.size());
+            HistoryLog.Entry entry = log.get(0);
+            assertEquals("12.5×(3+4)÷2-√(16)", entry.getExpression());
+            assertEquals("39.75", entry.getResult());
+            assertEquals(1000L, entry.getTimestamp());
+            assertEquals("1÷3", log.get(1).getExpression());
+        }
+    }
+
+    @Test
+    public void get_readsEntriesAppendedAfterOpen() throws Exception {
+        try (HistoryLog log = HistoryLog.open(file)) {
+            for (int i = 0; i < 100; i++) {
+                log.append(i + "+1", String.valueOf(i + 1), i);
+                assertEquals(String.valueOf(i + 1), log.get(i).getResult());
+            }
+        }
+    }
+
+    @Test
+    public void clear_dropsEarlierEntries() throws Exception {
+        try (HistoryLog log = HistoryLog.open(file)) {
+            log.append("1+1", "2", 1L);
+            log.clear();
+            log.append("2+2", "4", 2L);
+            assertEquals(1, log.size());
+        }
+        try (HistoryLog log = HistoryLog.open(file)) {
+            assertEquals(1, log.size());
+            assertEquals("2+2", log.get(0).getExpression());
+            assertTrue(log.getDeadBytes() > 0);
+        }
+    }
+
+    @Test
+    public void tornRecord_isDiscarded() throws Exception {
+        try (HistoryLog log = HistoryLog.open(file)) {
+            log.append("1+1", "2", 1L);
+            log.append("2+2", "4", 2L);
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 3);
+        }
+        try (HistoryLog log = HistoryLog.open(file)) {
+            assertEquals(1, log.size());
+            log.append("3+3", "6", 3L);
+        }
+        try (HistoryLog log = HistoryLog.open(file)) {
+            assertEquals(2, log.size());
+            assertEquals("3+3", log.get(1).getExpression());
+        }
+    }
+
+    @Test
+    public void compact_keepsNewestEntries() throws Exception {
+        try (HistoryLog log = HistoryLog.open(file)) {
+            log.append("0", "0", 0L);
+            log.clear();
+            for (int i = 0; i < 10; i++) {
+                log.append(i + "×2", String.valueOf(i * 2), i);
+            }
+            long before = file.length();
+
+            log.compact(4);
+            assertEquals(4, log.size());
+            assertEquals("6×2", log.get(0).getExpression());
+            assertEquals(0, log.getDeadBytes());
+            assertTrue(file.length() < before);
+
+            log.append("10×2", "20", 10L);
+            assertEquals(5, log.size());
+        }
+        try (HistoryLog log = HistoryLog.open(file)) {
+            assertEquals(5, log.size());
+            assertEquals("10×2", log.get(4).getExpression());
+        }
+    }
+
+    @Test
+    public void compactIfNeeded_onlyWhenOverLimitOrMostlyDead() throws Exception {
+        try (HistoryLog log = HistoryLog.open(file)) {
+            for (int i = 0; i < 10; i++) {
+                log.append(i + "+1", String.valueOf(i + 1), i);
+            }
+            assertFalse(log.compactIfNeeded(10));
+            assertTrue(log.compactIfNeeded(5));
+            assertEquals(5, log.size());
+
+            log.clear();
+            log.append("1+1", "2", 1L);
+            assertTrue(log.compactIfNeeded(10));
+            assertEquals(1, log.size());
+        }
+    }
+
+    @Test
+    public void search_findsSubstringsNewestFirst() throws Exception {
+        try (HistoryLog log = HistoryLog.open(file)) {
+            log.append("12+34", "46", 0L);
+            log.append("√(16)", "4", 1L);
+            log.append("3412×2", "6824", 2L);
+            log.append("5-3", "2", 3L);
+
+            assertArrayEquals(new int[] {2, 0}, log.search("34", false, 10));
+            assertArrayEquals(new int[] {2, 0}, log.search("12", false, 10));
+            assertArrayEquals(new int[] {0}, log.search("12+", false, 10));
+            assertArrayEquals(new int[] {1}, log.search("√(1", false, 10));
+            assertArrayEquals(new int[] {2}, log.search("341", true, 10));
+            assertArrayEquals(new int[] {0}, log.search("12+3", true, 10));
+            assertArrayEquals(new int[0], log.search("99", false, 10));
+            assertArrayEquals(new int[] {2}, log.search("34", false, 1));
+
+            // Appends after the index was built are searchable too
+            log.append("7+12+3", "22", 4L);
+            assertArrayEquals(new int[] {4, 0}, log.search("12+", false, 10));
+
+            log.compact(2);
+            assertArrayEquals(new int[] {1}, log.search("12+", false, 10));
+        }
+    }
+
+    @Test
+    public void largeHistory_opensAndSearches() throws Exception {
+        int count = 100_000;
+        try (HistoryLog log = HistoryLog.open(file)) {
+            for (int i = 0; i < count; i++) {
+                log.append(i + "×" + (i % 97), String.valueOf((long) i * (i % 97)), i);
+            }
+        }
+        try (HistoryLog log = HistoryLog.open(file)) {
+            assertEquals(count, log.size());
+            assertEquals("99999×89", log.get(count - 1).getExpression());
+
+            int[] matches = log.search("99999×", true, 10);
+            assertArrayEquals(new int[] {99999}, matches);
+            assertEquals(10, log.search("×96", false, 10).length);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IncrementalEvaluatorTest {
+
+    private static final String[] EXPRESSIONS = {
+        "2+3×4", "(2+3)×4", "2√(16)", "√(9", "-2²", "2^-1×3", "√4²", "3²(2)", "1.5E+3-1",
+        "5÷0", "√(2-6)", "5+", "()", "2)", "1.2.3", "√-4", "12×(3+4)÷(2-0.5)", "",
+        "sin30+cos(2)", "2ln(5)!", "10 nCr 3×2", "3 root -27", "sinh(1)", "asin(2)", "sin-1"
+    };
+
+    @Test
+    public void typingCharacterByCharacter_matchesEvaluator() {
+        Evaluator evaluator = new Evaluator();
+        for (String expression : EXPRESSIONS) {
+            IncrementalEvaluator incremental = new IncrementalEvaluator();
+            for (int i = 0; i < expression.length(); i++) {
+                incremental.append(expression.charAt(i));
+                String prefix = expression.substring(0, i + 1);
+                assertSameOutcome(prefix, evaluator, incremental);
+            }
+        }
+    }
+
+    @Test
+    public void deleting_rollsBackToCheckpoints() {
+        Evaluator evaluator = new Evaluator();
+        for (String expression : EXPRESSIONS) {
+            IncrementalEvaluator incremental = new IncrementalEvaluator();
+            incremental.update(expression, 0);
+            for (int length = expression.length(); length >= 0; length--) {
+                incremental.truncate(length);
+                assertSameOutcome(expression.substring(0, length), evaluator, incremental);
+            }
+        }
+    }
+
+    @Test
+    public void update_appliesWatcherDelta() throws Exception {
+        IncrementalEvaluator incremental = new IncrementalEvaluator();
+        incremental.update("12+34", 0);
+        assertEquals(46, incremental.evaluate(), 0);
+
+        incremental.update("12×34", 2);
+        assertEquals(408, incremental.evaluate(), 0);
+
+        incremental.update("12×3", 4);
+        assertEquals(36, incremental.evaluate(), 0);
+        assertEquals(2, incremental.getCommittedTokenCount());
+    }
+
+    @Test
+    public void failure_clearsWhenDeleted() throws Exception {
+        IncrementalEvaluator incremental = new IncrementalEvaluator();
+        incremental.update("5÷0+1", 0);
+        try {
+            incremental.evaluate();
+            fail();
+        } catch (EvaluationException e) {
+            assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, e.getReason());
+        }
+        incremental.truncate(3);
+        incremental.append('2');
+        assertEquals(2.5, incremental.evaluate(), 0);
+    }
+
+    @Test
+    public void longExpression_keepsPrefixCommitted() throws Exception {
+        IncrementalEvaluator incremental = new IncrementalEvaluator();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            incremental.append('1');
+            incremental.append('+');
+            expected.append("1+");
+        }
+        incremental.append('1');
+        assertEquals(2001, incremental.evaluate(), 0);
+        assertEquals(4000, incremental.getCommittedTokenCount());
+    }
+
+    private static void assertSameOutcome(String prefix, Evaluator evaluator, IncrementalEvaluator incremental) {
+        Object expected;
+        Object actual;
+        try {
+            expected = evaluator.evaluate(prefix);
+        } catch (EvaluationException e) {
+            expected = e.getReason();
+        }
+        try {
+            actual = incremental.evaluate();
+        } catch (EvaluationException e) {
+            actual = e.getReason();
+        }
+        assertEquals("\"" + prefix + "\"", expected, actual);
+    }
+}
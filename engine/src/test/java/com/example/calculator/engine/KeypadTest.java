@@ -0,0 +1,130 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeypadTest {
+
+    // Records dispatched keys in their display form
+    private static class Recorder implements Keypad.Target {
+        final StringBuilder keys = new StringBuilder();
+
+        @Override public void onDigit(String digit) { keys.append(digit); }
+        @Override public void onDecimal() { keys.append('.'); }
+        @Override public void onOperator(String operator) { keys.append(operator); }
+        @Override public void onVariable(String name) { keys.append(name); }
+        @Override public void onText(String text) { keys.append('[').append(text).append(']'); }
+        @Override public void onPercent() { keys.append('%'); }
+        @Override public void onSquareRoot() { keys.append('√'); }
+        @Override public void onSquare() { keys.append('²'); }
+        @Override public void onParentheses() { keys.append("()"); }
+        @Override public void onClear() { keys.append('C'); }
+        @Override public void onDelete() { keys.append('⌫'); }
+        @Override public void onEquals() { keys.append('='); }
+        @Override public void onMemoryAdd() { keys.append("M+"); }
+        @Override public void onMemoryRecall() { keys.append("MR"); }
+    }
+
+    @Test
+    public void everyKey_dispatchesItsSymbol() {
+        Recorder recorder = new Recorder();
+        StringBuilder expected = new StringBuilder();
+        for (int key = 0; key < Keypad.KEY_COUNT; key++) {
+            Keypad.dispatch(key, recorder);
+            expected.append(Keypad.symbol(key));
+        }
+        assertEquals(expected.toString(), recorder.keys.toString());
+    }
+
+    @Test
+    public void digitsAndOperators_passSharedConstants() {
+        Keypad.Target target = new Recorder() {
+            @Override
+            public void onDigit(String digit) {
+                assertSame(Keypad.symbol(Keypad.KEY_0 + digit.charAt(0) - '0'), digit);
+            }
+        };
+        Keypad.dispatch(7, target);
+        Keypad.dispatch(0, target);
+    }
+
+    @Test
+    public void forChar_acceptsDisplayAndAsciiSpellings() {
+        assertEquals(Keypad.KEY_MULTIPLY, Keypad.forChar('×'));
+        assertEquals(Keypad.KEY_MULTIPLY, Keypad.forChar('*'));
+        assertEquals(Keypad.KEY_DIVIDE, Keypad.forChar('/'));
+        assertEquals(Keypad.KEY_SQRT, Keypad.forChar('√'));
+        assertEquals(Keypad.KEY_EQUALS, Keypad.forChar('\n'));
+        assertEquals(Keypad.KEY_X, Keypad.forChar('x'));
+        assertEquals(5, Keypad.forChar('5'));
+        assertEquals(Keypad.NO_KEY, Keypad.forChar(' '));
+        assertEquals(Keypad.NO_KEY, Keypad.forChar('π'));
+    }
+
+    @Test
+    public void play_skipsNonKeys() {
+        Recorder recorder = new Recorder();
+        assertEquals(9, Keypad.play("12 * (3+4)=", recorder));
+        assertEquals("12×()3+4()=", recorder.keys.toString());
+    }
+
+    @Test
+    public void type_entersNamesAndSeparatorsAsText() {
+        Recorder recorder = new Recorder();
+        assertEquals(12, Keypad.play("rate:4.5/12 M", recorder));
+        assertEquals("rate[=]4.5÷12M", recorder.keys.toString());
+
+        recorder = new Recorder();
+        Keypad.play("solve(x^-2;0;2)", recorder);
+        assertEquals("solve()x²-2[;]0[;]2()", recorder.keys.toString());
+
+        recorder = new Recorder();
+        Keypad.play("100°F>°C", recorder);
+        assertEquals("100°F[→]°C", recorder.keys.toString());
+
+        recorder = new Recorder();
+        Keypad.play("d/dx(exp(x);1) ∫ 5! 3+4i", recorder);
+        assertEquals("d÷dx()exp()x()[;]1()∫5[!]3+4i", recorder.keys.toString());
+
+        assertEquals(Keypad.NO_KEY, Keypad.forChar('a'));
+        assertNull(Keypad.textFor(' '));
+        assertNull(Keypad.textFor('π'));
+        assertFalse(Keypad.type(' ', new Recorder()));
+    }
+
+    @Test
+    public void type_passesSharedConstants() {
+        Keypad.Target target = new Recorder() {
+            @Override
+            public void onVariable(String name) {
+                assertSame(Keypad.textFor(name.charAt(0)), name);
+            }
+        };
+        Keypad.type('q', target);
+        Keypad.type('Q', target);
+    }
+
+    @Test
+    public void memoryKeys() {
+        Recorder recorder = new Recorder();
+        Keypad.dispatch(Keypad.KEY_MEMORY_ADD, recorder);
+        Keypad.dispatch(Keypad.KEY_MEMORY_RECALL, recorder);
+        assertEquals("M+MR", recorder.keys.toString());
+        assertEquals(Keypad.GROUP_FUNCTION, Keypad.group(Keypad.KEY_MEMORY_ADD));
+    }
+
+    @Test
+    public void groups() {
+        assertEquals(Keypad.GROUP_DIGIT, Keypad.group(Keypad.KEY_9));
+        assertEquals(Keypad.GROUP_DIGIT, Keypad.group(Keypad.KEY_DECIMAL));
+        assertEquals(Keypad.GROUP_OPERATOR, Keypad.group(Keypad.KEY_DIVIDE));
+        assertEquals(Keypad.GROUP_FUNCTION, Keypad.group(Keypad.KEY_SQRT));
+        assertEquals(Keypad.GROUP_CONTROL, Keypad.group(Keypad.KEY_EQUALS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownKey_isRejected() {
+        Keypad.dispatch(Keypad.KEY_COUNT, new Recorder());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.calculator.engine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @After
+    public void tearDown() {
+        Instrumentation.setEnabled(false);
+        Instrumentation.reset();
+    }
+
+    @Test
+    public void buckets_coverRangeWithinThreePercent() {
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            int index = LatencyHistogram.index(value);
+            long highest = LatencyHistogram.highestInBucket(index);
+            assertTrue(value + " above its bucket", value <= highest);
+            assertTrue(value + " bucket too wide", highest - value <= Math.max(1, value / 32));
+            assertEquals(index + 1, LatencyHistogram.index(highest + 1));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestInBucket(LatencyHistogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_500, histogram.getMeanNanos(), 1e-6);
+        assertEquals(500_000, histogram.getPercentileNanos(50), 500_000 / 32.0);
+        assertEquals(990_000, histogram.getPercentileNanos(99), 990_000 / 32.0);
+        assertEquals(1_000_000, histogram.getPercentileNanos(100));
+        assertEquals(500, histogram.getCountAbove(500_000), 20);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void concurrentRecording_losesNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(99_999, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void instrumentation_recordsOnlyWhenEnabled() {
+        long start = Instrumentation.start();
+        assertEquals(0, start);
+        Instrumentation.stop(Instrumentation.FORMAT, start);
+        Instrumentation.record(Instrumentation.FRAME, 20_000_000);
+        assertEquals(0, Instrumentation.histogram(Instrumentation.FORMAT).getCount());
+        assertEquals(0, Instrumentation.histogram(Instrumentation.FRAME).getCount());
+
+        Instrumentation.setEnabled(true);
+        Instrumentation.stop(Instrumentation.FORMAT, Instrumentation.start());
+        Instrumentation.record(Instrumentation.FRAME, 20_000_000);
+        Instrumentation.record(Instrumentation.FRAME, 5_000_000);
+        assertEquals(1, Instrumentation.histogram(Instrumentation.FORMAT).getCount());
+
+        String dump = Instrumentation.dump();
+        assertTrue(dump, dump.contains("format"));
+        assertTrue(dump, dump.matches("(?s).*frame\\s+2 .* 1\\n.*"));
+        assertFalse(dump, dump.contains("evaluate"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NumberFormatterTest {
+
+    private final NumberFormatter formatter = new NumberFormatter();
+
+    @Test
+    public void plainNotation_roundsToFifteenDigits() {
+        assertEquals("0.3", formatter.format(0.1 + 0.2));
+        assertEquals("2.5", formatter.format(2.5));
+        assertEquals("-42", formatter.format(-42));
+        assertEquals("100", formatter.format(100));
+        assertEquals("0.000001", formatter.format(1e-6));
+        assertEquals("3.14159265358979", formatter.format(Math.PI));
+        assertEquals("9999999999", formatter.format(9999999999.0));
+        assertEquals("10000000000", formatter.format(9999999999.999998));
+        assertEquals("0", formatter.format(0.0));
+        assertEquals("0", formatter.format(-0.0));
+    }
+
+    @Test
+    public void scientificNotation_matchesPercentE() {
+        assertEquals("1.000000E+10", formatter.format(1e10));
+        assertEquals("1.234568E+10", formatter.format(12345678900.0));
+        assertEquals("-1.500000E-07", formatter.format(-1.5e-7));
+        assertEquals("1.797693E+308", formatter.format(Double.MAX_VALUE));
+        // Exact digits, where String.format rounded the shortest representation "4.9E-324"
+        assertEquals("4.940656E-324", formatter.format(Double.MIN_VALUE));
+        assertEquals("1.000000E+100", formatter.format(9.9999999e99));
+    }
+
+    @Test
+    public void randomValues_matchBigDecimalRounding() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            double value = Math.pow(10, random.nextDouble() * 40 - 20) * (random.nextBoolean() ? 1 : -1);
+            assertEquals(String.valueOf(value), reference(value), formatter.format(value));
+        }
+        for (int i = 0; i < 2000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong() & Long.MAX_VALUE);
+            if (Double.isNaN(value) || Double.isInfinite(value)) continue;
+            assertEquals(String.valueOf(value), reference(value), formatter.format(value));
+        }
+    }
+
+    @Test
+    public void formatAppend_doesNotTouchExistingText() {
+        StringBuilder out = new StringBuilder("= ");
+        formatter.format(1234.5, out);
+        assertEquals("= 1234.5", out.toString());
+    }
+
+    @Test
+    public void localize_groupsIntegerDigits() {
+        NumberFormatter german = new NumberFormatter(',', '.');
+        assertEquals("1.234.567,891", localize(german, "1234567.891"));
+        assertEquals("-123", localize(german, "-123"));
+        assertEquals("-1.234", localize(german, "-1234"));
+        assertEquals("1,234568E+10", localize(german, "1.234568E+10"));
+        assertEquals("0,5", localize(german, "0.5"));
+        assertEquals("1234.5", localize(formatter, "1234.5"));
+    }
+
+    private static String localize(NumberFormatter formatter, String canonical) {
+        StringBuilder out = new StringBuilder();
+        formatter.localize(canonical, out);
+        return out.toString();
+    }
+
+    /**
+     * The formatting this class replaced, with exact rounding in the scientific branch.
+     */
+    private static String reference(double number) {
+        if (Math.abs(number) >= 1e10 || (Math.abs(number) < 1e-6 && number != 0)) {
+            BigDecimal rounded = new BigDecimal(number).round(new MathContext(7, RoundingMode.HALF_UP));
+            int exponent = rounded.precision() - rounded.scale() - 1;
+            String digits = rounded.unscaledValue().abs().toString();
+            while (digits.length() < 7) digits += "0";
+            return (number < 0 ? "-" : "") + digits.charAt(0) + "." + digits.substring(1, 7)
+                + "E" + (exponent < 0 ? "-" : "+") + (Math.abs(exponent) < 10 ? "0" : "") + Math.abs(exponent);
+        }
+        BigDecimal bd = new BigDecimal(number, new MathContext(15, RoundingMode.HALF_UP)).stripTrailingZeros();
+        return bd.scale() <= 0 ? bd.toBigInteger().toString() : bd.toPlainString();
+    }
+}
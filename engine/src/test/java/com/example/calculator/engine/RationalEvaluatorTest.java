@@ -0,0 +1,115 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.math.MathContext;
+
+import static org.junit.Assert.*;
+
+public class RationalEvaluatorTest {
+
+    private final RationalEvaluator evaluator = new RationalEvaluator();
+
+    private String eval(String expression) throws EvaluationException {
+        return evaluator.evaluate(expression).toString();
+    }
+
+    private EvaluationException.Reason failure(String expression) {
+        try {
+            evaluator.evaluate(expression);
+        } catch (EvaluationException e) {
+            return e.getReason();
+        }
+        fail("Expected failure for " + expression);
+        return null;
+    }
+
+    @Test
+    public void divisionChains_areExact() throws Exception {
+        assertEquals("1", eval("1÷3×3"));
+        assertEquals("3/10", eval("0.1+0.2"));
+        assertEquals("0", eval("1÷3+1÷3+1÷3-1"));
+        assertEquals("-5/6", eval("1÷2-4÷3"));
+        assertEquals("3", eval("1.5E+1÷5"));
+        assertEquals("1/1000", eval("1E-3"));
+    }
+
+    @Test
+    public void grammar_matchesDoubleEvaluator() throws Exception {
+        assertEquals("14", eval("2+3×4"));
+        assertEquals("-4", eval("-2²"));
+        assertEquals("4", eval("(√4)²"));
+        assertEquals("10", eval("2(5"));
+        assertEquals("0", eval(""));
+        assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, failure("1÷(1÷2-0.5)"));
+        assertEquals(EvaluationException.Reason.SQRT_NEGATIVE, failure("√(-1÷4)"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure("2x"));
+    }
+
+    @Test
+    public void factorialsAndRoots_areExact() throws Exception {
+        assertEquals("15511210043330985984000000", eval("25!"));
+        assertEquals("100891344545564193334812497256", eval("100 nCr 50"));
+        assertEquals("720", eval("10 nPr 3"));
+        assertEquals("3/2", eval("3 root (27÷8)"));
+        assertEquals("-3", eval("3 root -27"));
+        assertEquals("0", eval("sin(0)"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("2 root -4"));
+        assertEquals(EvaluationException.Reason.DOMAIN_ERROR, failure("(1÷2) nCr 1"));
+    }
+
+    @Test
+    public void overflow_promotesToBigInteger() throws Exception {
+        assertEquals("9223372036854775808", eval("9223372036854775807+1"));
+        assertEquals("1/85070591730234615847396907784232501249", eval("1÷9223372036854775807²"));
+        assertEquals("1267650600228229401496703205376", eval("2^100"));
+        assertEquals("1", eval("2^100÷2^100"));
+        assertEquals("1/8", eval("2^-3"));
+        assertEquals("27/8", eval("(3÷2)^3"));
+        // Products past the exact bit limit are computed as doubles, as powers are
+        assertEquals(EvaluationException.Reason.INFINITY, failure("1E9999²²²²²²²²²²"));
+        assertEquals(EvaluationException.Reason.INFINITY, failure("1E9999×1E9999×1E9999" + "×1E9999".repeat(40)));
+    }
+
+    @Test(timeout = 2000)
+    public void powersOfLongFractions_fallBackToDouble() throws Exception {
+        // Each power of a double carried on as a fraction adds its bits again
+        assertEquals(EvaluationException.Reason.INFINITY, failure("(exp7^7201"));
+        assertEquals(Math.pow(Math.cos(7), 3112), evaluator.evaluate("cos7^3112").doubleValue(), 0);
+        assertEquals(Math.pow(Math.cos(7), 40), evaluator.evaluate("cos7^40").doubleValue(), 1e-20);
+    }
+
+    @Test
+    public void sqrt_isExactForSquareFractions() throws Exception {
+        assertEquals("2/3", eval("√(4÷9)"));
+        assertEquals("3037000499", eval("√9223372030926249001"));
+        assertEquals("85070591730234615847396907784232501249",
+            eval("√(85070591730234615847396907784232501249²)"));
+        assertEquals(Math.sqrt(2), evaluator.evaluate("√2").doubleValue(), 1e-15);
+        assertEquals(2, evaluator.evaluate("4^0.5").doubleValue(), 0);
+    }
+
+    @Test
+    public void reduction_isLazy() throws Exception {
+        long before = evaluator.getReductionCount();
+        assertEquals("7/12", eval("1÷4+1÷3"));
+        assertEquals(before, evaluator.getReductionCount());
+
+        // A long harmonic-style sum overflows and has to reduce, but far less than per operation
+        StringBuilder sum = new StringBuilder("0");
+        double expected = 0;
+        for (int i = 1; i <= 200; i++) {
+            sum.append("+1÷").append(i % 7 + 2);
+            expected += 1.0 / (i % 7 + 2);
+        }
+        assertEquals(expected, evaluator.evaluate(sum).doubleValue(), 1e-12);
+        assertTrue(evaluator.getReductionCount() - before < 200);
+    }
+
+    @Test
+    public void toBigDecimal_dividesOnce() throws Exception {
+        Rational third = evaluator.evaluate("1÷3");
+        assertEquals("0.333333333333333", third.toBigDecimal(new MathContext(15)).toPlainString());
+        assertEquals(1.0 / 3, third.doubleValue(), 0);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResultCacheTest {
+
+    @Test
+    public void normalize_mapsAsciiOperatorsToDisplaySymbols() {
+        assertEquals("2×3÷√(4)-1", ResultCache.normalize("2 * 3 / sqrt(4) − 1"));
+        String canonical = "2×(3+4)";
+        assertSame(canonical, ResultCache.normalize(canonical));
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        ResultCache cache = new ResultCache(1024);
+        assertTrue(Double.isNaN(cache.get("1+1")));
+        cache.put("1+1", 2);
+        assertEquals(2, cache.get("1+1"), 0);
+        assertEquals(2, cache.get("x1+1", 1, 4), 0);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedOverMemoryCap() {
+        // Room for two short entries
+        ResultCache cache = new ResultCache(2 * (96 + 2 * 3));
+        cache.put("1+1", 2);
+        cache.put("2+2", 4);
+        cache.get("1+1");
+        cache.put("3+3", 6);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(Double.isNaN(cache.get("2+2")));
+        assertEquals(2, cache.get("1+1"), 0);
+        assertTrue(cache.getCurrentBytes() <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void evaluator_reusesClosedGroups() throws Exception {
+        ResultCache cache = new ResultCache(64 * 1024);
+        Evaluator evaluator = new Evaluator(cache);
+
+        assertEquals(45, evaluator.evaluate("(1+2+3+4+5)×(6+7+8+9+10)÷40×3"), 1e-12);
+        long hits = cache.getHitCount();
+
+        assertEquals(60, evaluator.evaluate("(1+2+3+4+5)×(6+7+8+9+10)÷40×4"), 1e-12);
+        assertEquals(hits + 2, cache.getHitCount());
+    }
+
+    @Test
+    public void evaluator_doesNotCacheOverflowingGroups() {
+        ResultCache cache = new ResultCache(64 * 1024);
+        Evaluator evaluator = new Evaluator(cache);
+        for (int i = 0; i < 2; i++) {
+            try {
+                evaluator.evaluate("(1E300×1E300)");
+                fail();
+            } catch (EvaluationException e) {
+                assertEquals(EvaluationException.Reason.INFINITY, e.getReason());
+            }
+        }
+        // The same text as a whole expression, as EvaluationScheduler looks it up
+        assertTrue(Double.isNaN(cache.get("1E300×1E300")));
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class StreamingEvaluatorTest {
+
+    private static final String[] EXPRESSIONS = {
+        "2+3×4", "(2+3)×4", "2√(16)", "√(9", "-2²", "10÷4-1", "3²(2)", "2^3^2", "1.5E+3×2",
+        "12.5×(3+4)÷2-√(16)", "sin30+cos(2)", "5nCr2", "3 root 27", "4!-gamma(2.5)", "-(-(-1))"
+    };
+
+    /**
+     * Hands out at most {@code chunk} characters per read, as a socket might.
+     */
+    private static Reader chunked(String text, int chunk) {
+        return new StringReader(text) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws java.io.IOException {
+                return super.read(buffer, offset, Math.min(length, chunk));
+            }
+        };
+    }
+
+    /**
+     * {@code prefix}, then {@code repeat} copies of {@code unit}, then {@code suffix},
+     * generated as it is read.
+     */
+    private static Reader repeated(String prefix, String unit, long repeat, String suffix) {
+        return new Reader() {
+            private long index;
+            private final long length = prefix.length() + unit.length() * repeat + suffix.length();
+
+            @Override
+            public int read(char[] buffer, int offset, int count) {
+                if (index == length) return -1;
+                int n = 0;
+                while (n < count && index < length) {
+                    long i = index++;
+                    char c;
+                    if (i < prefix.length()) {
+                        c = prefix.charAt((int) i);
+                    } else if (i - prefix.length() < unit.length() * repeat) {
+                        c = unit.charAt((int) ((i - prefix.length()) % unit.length()));
+                    } else {
+                        c = suffix.charAt((int) (i - prefix.length() - unit.length() * repeat));
+                    }
+                    buffer[offset + n++] = c;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private static EvaluationException.Reason failure(StreamingEvaluator evaluator, Reader reader) throws Exception {
+        try {
+            evaluator.evaluate(reader);
+            fail();
+            return null;
+        } catch (EvaluationException e) {
+            return e.getReason();
+        }
+    }
+
+    @Test
+    public void results_matchEvaluator() throws Exception {
+        Evaluator reference = new Evaluator();
+        StreamingEvaluator evaluator = new StreamingEvaluator();
+        for (String expression : EXPRESSIONS) {
+            double expected = reference.evaluate(expression);
+            assertEquals(expression, expected, evaluator.evaluate(expression), 0);
+            assertEquals(expression, expected, evaluator.evaluate(new StringReader(expression)), 0);
+        }
+        assertEquals(0, evaluator.evaluate(new StringReader("")), 0);
+    }
+
+    @Test
+    public void tokens_mayStraddleReads() throws Exception {
+        Evaluator reference = new Evaluator();
+        StreamingEvaluator evaluator = new StreamingEvaluator(2 * StreamingEvaluator.LOOKAHEAD + 1);
+        // Padding moves every token across the window boundary in turn
+        for (String expression : EXPRESSIONS) {
+            double expected = reference.evaluate(expression);
+            for (int pad = 0; pad < 80; pad++) {
+                String padded = " ".repeat(pad) + expression;
+                for (int chunk : new int[] {1, 3, 1000}) {
+                    assertEquals(padded, expected, evaluator.evaluate(chunked(padded, chunk)), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tokenLongerThanWindow_isRead() throws Exception {
+        StreamingEvaluator evaluator = new StreamingEvaluator(2 * StreamingEvaluator.LOOKAHEAD + 1);
+        String digits = "1" + "0".repeat(299);
+        assertEquals(2E299, evaluator.evaluate(chunked(digits + "+" + digits, 7)), 0);
+        // And the window shrinks back afterwards
+        assertEquals(3, evaluator.evaluate(new StringReader("1+2")), 0);
+    }
+
+    @Test
+    public void longChains_evaluateInConstantMemory() throws Exception {
+        StreamingEvaluator evaluator = new StreamingEvaluator();
+        // Two million terms; the text is never held in memory
+        assertEquals(2_000_000, evaluator.evaluate(repeated("", "1+", 1_999_999, "1")), 0);
+        assertEquals(1, evaluator.evaluate(repeated("1", "×(2-1)", 500_000, "")), 0);
+    }
+
+    @Test
+    public void deepNesting_doesNotRecurse() throws Exception {
+        StreamingEvaluator evaluator = new StreamingEvaluator();
+        assertEquals(7, evaluator.evaluate(repeated("", "(", 200_000, "7" + ")".repeat(100))), 0);
+    }
+
+    @Test
+    public void errors_reportOffsetsIntoWholeInput() throws Exception {
+        StreamingEvaluator evaluator = new StreamingEvaluator();
+        try {
+            evaluator.evaluate(repeated("", "1+", 100_000, "1÷0"));
+            fail();
+        } catch (EvaluationException e) {
+            assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, e.getReason());
+            assertEquals(200_001, e.getPosition());
+        }
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure(evaluator, new StringReader("2+")));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure(evaluator, new StringReader("2)")));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure(evaluator, new StringReader("y")));
+        assertEquals(EvaluationException.Reason.INFINITY, failure(evaluator, new StringReader("10^400")));
+    }
+}
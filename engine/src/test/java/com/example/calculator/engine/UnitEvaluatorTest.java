@@ -0,0 +1,159 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class UnitEvaluatorTest {
+
+    private final UnitEvaluator evaluator = new UnitEvaluator();
+
+    private static void assertQuantity(double value, String unit, UnitEvaluator.Quantity quantity, double delta) {
+        assertEquals(unit, quantity.getUnit());
+        assertEquals(value, quantity.getValue(), delta);
+    }
+
+    private static EvaluationException.Reason failure(UnitEvaluator evaluator, String input) {
+        try {
+            evaluator.evaluate(input);
+            fail();
+            return null;
+        } catch (EvaluationException e) {
+            return e.getReason();
+        }
+    }
+
+    private static RateTable rates() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RateTable.write(out, "EUR", 1_700_000_000_000L,
+            new String[] {"USD", "JPY", "GBP", "CHF"}, new double[] {1.08, 160, 0.85, 0.95});
+        return RateTable.wrap(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    @Test
+    public void sums_areShownInTheFirstUnit() throws Exception {
+        assertQuantity(5.3, "km", evaluator.evaluate("5 km + 300 m"), 1e-15);
+        assertQuantity(5300, "m", evaluator.evaluate("300 m + 5 km"), 1e-12);
+        assertQuantity(90, "km", evaluator.evaluate("60 km/h × 90 min"), 1e-12);
+        assertQuantity(1.5, "ft", evaluator.evaluate("1 ft + 6 in"), 1e-15);
+        assertQuantity(6, "", evaluator.evaluate("3 km ÷ (500 m)"), 1e-15);
+    }
+
+    @Test
+    public void targets_convertTheResult() throws Exception {
+        assertQuantity(1.609344, "km", evaluator.evaluate("1 mi to km"), 1e-15);
+        assertQuantity(2147.483648, "MB", evaluator.evaluate("2 GiB to MB"), 1e-9);
+        assertQuantity(28.349523125, "g", evaluator.evaluate("1 oz → g"), 1e-12);
+        assertQuantity(3.785411784, "L", evaluator.evaluate("1 gal to L"), 1e-15);
+        assertQuantity(1000, "L", evaluator.evaluate("1 m^3 to L"), 1e-12);
+        assertQuantity(100 / 3.6, "m/s", evaluator.evaluate("100 km/h to m/s"), 1e-12);
+        assertQuantity(168, "h", evaluator.evaluate("1 wk to h"), 0);
+    }
+
+    @Test
+    public void temperatures_applyTheirOffsets() throws Exception {
+        assertQuantity(37.77777777777778, "°C", evaluator.evaluate("100 °F to °C"), 1e-12);
+        assertQuantity(-40, "degF", evaluator.evaluate("-40 °C to degF"), 1e-12);
+        assertQuantity(0, "K", evaluator.evaluate("-273.15 °C to K"), 1e-12);
+        assertQuantity(25, "°C", evaluator.evaluate("20 °C + 5 K"), 1e-12);
+        assertQuantity(15, "°C", evaluator.evaluate("20 °C − 5 K"), 1e-12);
+        // The unit applies to the product written before it, as in 2 × 20 km
+        assertQuantity(40, "°C", evaluator.evaluate("2 × 20 °C"), 1e-12);
+    }
+
+    @Test
+    public void temperatureDifferences_haveNoOffset() throws Exception {
+        assertQuantity(20, "°C", evaluator.evaluate("30 °C − 10 °C"), 1e-12);
+        assertQuantity(36, "°F", evaluator.evaluate("(30 °C − 10 °C) to °F"), 1e-12);
+        assertQuantity(20, "K", evaluator.evaluate("(30 °C − 10 °C) to K"), 1e-12);
+        assertQuantity(40, "°C", evaluator.evaluate("2 × (30 °C − 10 °C)"), 1e-12);
+        assertQuantity(35, "°C", evaluator.evaluate("15 °C + (30 °C − 10 °C)"), 1e-12);
+    }
+
+    @Test
+    public void absoluteTemperatures_areNotAddedOrScaled() {
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "20 °C + 5 °C"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "20 °C × 2"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "20 °C ÷ 2"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "(20 °C)²"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "-(20 °C)"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "(30 °C − 10 °C) − 5 °C"));
+    }
+
+    @Test
+    public void derivedDimensions_useBaseUnits() throws Exception {
+        assertQuantity(2, "m²", evaluator.evaluate("2 m × 100 cm"), 1e-15);
+        assertQuantity(3, "m", evaluator.evaluate("√(9 m²)"), 1e-15);
+        assertEquals("m×kg/s²", evaluator.evaluate("kg×m/s²").getUnit());
+        assertEquals("1/s", evaluator.evaluate("5/s").getUnit());
+    }
+
+    @Test
+    public void unitsAfterADivisor_belongToIt() throws Exception {
+        assertQuantity(5, "m/s", evaluator.evaluate("10 m ÷ 2 s"), 1e-15);
+        assertQuantity(0.5, "1/s", evaluator.evaluate("1 ÷ 2 s"), 1e-15);
+        assertQuantity(5, "m/s²", evaluator.evaluate("10 m ÷ 2 s²"), 1e-15);
+        assertQuantity(100000 / 7200.0, "m÷s", evaluator.evaluate("100 km ÷ 2 h → m÷s"), 1e-12);
+        // Only a number takes the unit; after a unit it is a divisor of its own
+        assertQuantity(60, "km", evaluator.evaluate("120 km/h × 30 min"), 1e-12);
+    }
+
+    @Test
+    public void mismatchedDimensions_areRejected() {
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "5 km + 3 kg"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "5 km to s"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "sin(2 m)"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "2^(3 m)"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "m^0.5"));
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(evaluator, "√(2 m)"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure(evaluator, "5 parsecs"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure(evaluator, "5 km to"));
+    }
+
+    @Test
+    public void accepts_onlyInputWithUnits() {
+        assertTrue(evaluator.accepts("5 km + 300 m"));
+        assertTrue(evaluator.accepts("20 °C to °F"));
+        assertFalse(evaluator.accepts("2+3"));
+        assertFalse(evaluator.accepts("x²"));
+        assertFalse(evaluator.accepts("5 USD"));
+    }
+
+    @Test
+    public void currencies_comeFromTheRateTable() throws Exception {
+        UnitEvaluator withRates = new UnitEvaluator(rates());
+        assertTrue(withRates.accepts("5 USD"));
+        assertQuantity(108, "USD", withRates.evaluate("100 EUR to USD"), 1e-12);
+        assertQuantity(160, "JPY", withRates.evaluate("0.85 GBP to JPY"), 1e-9);
+        assertQuantity(29.5, "CHF", withRates.evaluate("20 CHF + 10.8 USD"), 1e-12);
+        assertEquals(EvaluationException.Reason.INCOMPATIBLE_UNITS, failure(withRates, "5 USD + 2 m"));
+        assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, failure(withRates, "5 XYZ"));
+    }
+
+    @Test
+    public void rateTables_areMappedFromFiles() throws Exception {
+        File file = File.createTempFile("rates", ".bin");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                RateTable.write(out, "USD", 42, new String[] {"EUR"}, new double[] {0.5});
+            }
+            RateTable table = RateTable.map(file);
+            assertEquals(1, table.getCount());
+            assertEquals(42, table.getTimestamp());
+            assertEquals("USD", table.getBase());
+            assertQuantity(6, "USD", new UnitEvaluator(table).evaluate("3 EUR to USD"), 0);
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void rateTables_rejectOtherFiles() throws Exception {
+        RateTable.wrap(ByteBuffer.wrap(new byte[32]));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ValueTableTest {
+
+    private static CompiledExpression compile(String expression) throws EvaluationException {
+        return CompiledExpression.compile(expression, "x").optimize();
+    }
+
+    @Test
+    public void rows_matchTheExpression() throws Exception {
+        CompiledExpression expression = compile("x²-3x+1÷x");
+        int count = ValueTable.PAGE_SIZE * 2 + 17;
+        ValueTable table = new ValueTable(expression, "x", -5, 0.25, count, null);
+        double[] variables = new double[1];
+        for (int row = 0; row < count; row++) {
+            double x = -5 + row * 0.25;
+            assertEquals(x, table.getX(row), 0);
+            if (x == 0) {
+                assertTrue(Double.isNaN(table.getY(row)));
+                continue;
+            }
+            variables[0] = x;
+            assertEquals(expression.evaluate(variables), table.getY(row), 0);
+        }
+        assertEquals(3, table.getComputedPageCount());
+    }
+
+    @Test
+    public void hugeTables_computeOnlyWhatIsRead() throws Exception {
+        ValueTable table = new ValueTable(compile("√x"), "x", 0, 1, 10_000_000_000L, null);
+        assertEquals(3e4, table.getY(900_000_000L), 0);
+        assertEquals(1e5, table.getY(10_000_000_000L - 1), 1e-5);
+        assertEquals(2, table.getComputedPageCount());
+        assertEquals(1_000_000 * 0.1, new ValueTable(compile("x"), "x", 0, 0.1, 2_000_000, null).getX(1_000_000), 0);
+    }
+
+    @Test
+    public void pages_areEvictedLeastRecentlyReadFirst() throws Exception {
+        ValueTable table = new ValueTable(compile("x"), "x", 0, 1, 10 * ValueTable.PAGE_SIZE, null, 2);
+        table.getY(0);
+        table.getY(ValueTable.PAGE_SIZE);
+        table.getY(1);
+        table.getY(2 * ValueTable.PAGE_SIZE);
+        assertEquals(2, table.getCachedPageCount());
+        assertTrue(table.isCached(0));
+        assertFalse(table.isCached(ValueTable.PAGE_SIZE));
+        assertEquals(3, table.getComputedPageCount());
+    }
+
+    @Test
+    public void prefetch_followsTheScrollDirection() throws Exception {
+        ValueTable table = new ValueTable(compile("x"), "x", 0, 1, 10 * ValueTable.PAGE_SIZE, Runnable::run);
+        table.getY(5 * ValueTable.PAGE_SIZE);
+        assertTrue(table.isCached(6 * ValueTable.PAGE_SIZE));
+        table.getY(4 * ValueTable.PAGE_SIZE);
+        assertTrue(table.isCached(3 * ValueTable.PAGE_SIZE));
+        // Nothing past either end
+        table.getY(0);
+        table.getY(10 * ValueTable.PAGE_SIZE - 1);
+        assertEquals(6, table.getComputedPageCount());
+    }
+
+    @Test
+    public void prefetchedPages_areReadFromTheCache() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ValueTable table = new ValueTable(compile("2x"), "x", 0, 1, 100 * ValueTable.PAGE_SIZE, executor);
+            for (long row = 0; row < 100 * ValueTable.PAGE_SIZE; row++) {
+                assertEquals(2 * row, table.getY(row), 0);
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            // Each page once, whichever thread got there first, plus at most a few races
+            assertTrue(table.getComputedPageCount() >= 100);
+            assertTrue(table.getCachedPageCount() <= ValueTable.DEFAULT_MAX_PAGES);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
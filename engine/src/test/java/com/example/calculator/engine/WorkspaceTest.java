@@ -0,0 +1,190 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WorkspaceTest {
+
+    private static EvaluationException.Reason failure(Workspace workspace, String input) {
+        try {
+            workspace.evaluate(input);
+            fail();
+            return null;
+        } catch (EvaluationException e) {
+            return e.getReason();
+        }
+    }
+
+    @Test
+    public void assignments_defineVariables() throws Exception {
+        Workspace workspace = new Workspace();
+        assertEquals(3.2, workspace.evaluate("a = 3.2"), 0);
+        assertEquals(6.4, workspace.evaluate("2a"), 0);
+        assertEquals(6.4, workspace.evaluate("ans"), 0);
+        assertEquals(0.8, workspace.evaluate("rate = ans÷8"), 1e-15);
+        assertEquals(0.8, workspace.get("rate"), 1e-15);
+        // An assignment does not replace ans
+        assertEquals(6.4, workspace.getAnswer(), 0);
+        assertTrue(workspace.isDefined("rate"));
+        assertFalse(workspace.isDefined("b"));
+    }
+
+    @Test
+    public void changes_recomputeOnlyDownstreamFormulas() throws Exception {
+        Workspace workspace = new Workspace();
+        workspace.evaluate("principal = 1000");
+        workspace.evaluate("rate = 6÷1200");
+        workspace.evaluate("interest = principal×rate");
+        workspace.evaluate("total = principal+interest");
+        workspace.evaluate("unrelated = rate×2");
+        workspace.evaluate("other = 7");
+
+        workspace.evaluate("principal = 2000");
+        assertEquals(2, workspace.getRecomputedCount());
+        assertEquals(10, workspace.get("interest"), 1e-12);
+        assertEquals(2010, workspace.get("total"), 1e-12);
+
+        workspace.set("other", 8);
+        assertEquals(0, workspace.getRecomputedCount());
+        workspace.evaluate("rate = 12÷1200");
+        assertEquals(3, workspace.getRecomputedCount());
+        assertEquals(0.02, workspace.get("unrelated"), 1e-15);
+    }
+
+    @Test
+    public void diamonds_recomputeInTopologicalOrder() throws Exception {
+        Workspace workspace = new Workspace();
+        workspace.define("d", "b+c");
+        workspace.define("b", "a×2");
+        workspace.define("c", "a+b");
+        workspace.evaluate("a = 1");
+        assertEquals(3, workspace.getRecomputedCount());
+        assertEquals(5, workspace.get("d"), 0);
+        workspace.set("a", 10);
+        assertEquals(50, workspace.get("d"), 0);
+    }
+
+    @Test
+    public void longChains_doNotOverflowTheStack() throws Exception {
+        Workspace workspace = new Workspace();
+        workspace.evaluate("v0 = 0");
+        for (int i = 1; i <= 20_000; i++) {
+            workspace.define("v" + i, "v" + (i - 1) + "+1");
+        }
+        workspace.set("v0", 5);
+        assertEquals(20_000, workspace.getRecomputedCount());
+        assertEquals(20_005, workspace.get("v20000"), 0);
+    }
+
+    @Test
+    public void forwardReferences_resolveWhenDefined() throws Exception {
+        Workspace workspace = new Workspace();
+        assertEquals(EvaluationException.Reason.UNDEFINED_VARIABLE, failure(workspace, "area = w×h"));
+        workspace.evaluate("w = 3");
+        assertEquals(EvaluationException.Reason.UNDEFINED_VARIABLE, failure(workspace, "area"));
+        workspace.evaluate("h = 4");
+        assertEquals(12, workspace.get("area"), 0);
+        assertEquals(EvaluationException.Reason.UNDEFINED_VARIABLE, failure(workspace, "volume+1"));
+    }
+
+    @Test
+    public void errors_propagateAndRecover() throws Exception {
+        Workspace workspace = new Workspace();
+        workspace.evaluate("n = 2");
+        // Defined even though it cannot be evaluated yet
+        assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, failure(workspace, "inverse = 1÷(n-2)"));
+        workspace.define("twice", "2inverse");
+        assertEquals(EvaluationException.Reason.DIVISION_BY_ZERO, failure(workspace, "twice"));
+        workspace.set("n", 3);
+        assertEquals(2, workspace.get("twice"), 0);
+    }
+
+    @Test
+    public void cycles_areRejected() throws Exception {
+        Workspace workspace = new Workspace();
+        workspace.define("a", "b+1");
+        workspace.evaluate("b = 2");
+        assertEquals(EvaluationException.Reason.CIRCULAR_REFERENCE, failure(workspace, "b = a×2"));
+        assertEquals(EvaluationException.Reason.CIRCULAR_REFERENCE, failure(workspace, "a = a+1"));
+        // The rejected definitions left the old ones in place
+        assertEquals(3, workspace.get("a"), 0);
+        workspace.set("b", 5);
+        assertEquals(6, workspace.get("a"), 0);
+    }
+
+    @Test
+    public void memoryRegister() throws Exception {
+        Workspace workspace = new Workspace();
+        workspace.memoryAdd(5);
+        workspace.memoryAdd(2.5);
+        workspace.memorySubtract(1);
+        assertEquals(6.5, workspace.memoryRecall(), 0);
+        workspace.evaluate("tip = M×0.2");
+        assertEquals(13, workspace.evaluate("2M"), 0);
+        workspace.memoryClear();
+        assertEquals(0, workspace.get("tip"), 0);
+    }
+
+    @Test
+    public void accepts_assignmentsAndKnownNames() throws Exception {
+        Workspace workspace = new Workspace();
+        workspace.evaluate("tax = 0.2");
+        assertTrue(workspace.accepts("a = 1"));
+        assertTrue(workspace.accepts("100×tax"));
+        assertTrue(workspace.accepts("ans+M"));
+        assertFalse(workspace.accepts("x²"));
+        assertFalse(workspace.accepts("2+3"));
+        assertFalse(workspace.accepts("tax×x"));
+    }
+
+    @Test
+    public void namesStartingWithFunctions_areReadWhole() throws Exception {
+        Workspace workspace = new Workspace();
+        assertEquals(5, workspace.evaluate("cost = 5"), 0);
+        assertEquals(2, workspace.evaluate("single = 2"), 0);
+        assertEquals(1, workspace.evaluate("tank = 1"), 0);
+        assertEquals(4, workspace.evaluate("expenses = 4"), 0);
+        assertEquals(15, workspace.evaluate("cost×single+tank+expenses"), 0);
+        assertEquals(8, workspace.evaluate("total = cost+single+tank"), 0);
+        assertTrue(workspace.accepts("cost÷2"));
+        // A function's own name stays the function
+        assertEquals(5, workspace.evaluate("sin 0+cost"), 0);
+        assertFalse(workspace.accepts("sin = 1"));
+
+        Workspace restored = new Workspace();
+        restored.restore(workspace.getDefinitions());
+        assertEquals(8, restored.get("total"), 0);
+    }
+
+    @Test
+    public void definitions_restoreTheWorkspace() throws Exception {
+        Workspace workspace = new Workspace();
+        workspace.define("total", "price×(1+tax)");
+        workspace.evaluate("price = 40");
+        workspace.evaluate("tax = 1÷8");
+        workspace.memoryAdd(3);
+        List<String> definitions = workspace.getDefinitions();
+        assertTrue(definitions.contains("total = price×(1+tax)"));
+        assertTrue(definitions.contains("M = 3.0"));
+
+        Workspace restored = new Workspace();
+        restored.restore(definitions);
+        assertEquals(45, restored.get("total"), 0);
+        assertEquals(3, restored.memoryRecall(), 0);
+    }
+
+    @Test
+    public void errorPositions_pointIntoTheInput() {
+        Workspace workspace = new Workspace();
+        try {
+            workspace.evaluate("a = 2+");
+            fail();
+        } catch (EvaluationException e) {
+            assertEquals(EvaluationException.Reason.INVALID_EXPRESSION, e.getReason());
+            assertEquals(6, e.getPosition());
+        }
+    }
+}
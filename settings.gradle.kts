@@ -21,3 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "Calculator"
 include(":app")
+include(":engine")
+include(":benchmarks")